@@ -28,12 +28,15 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -122,11 +125,19 @@ public class Localization {
 	}
 	
 	public static class Bundle implements InvocationHandler {
+		private static final int MAX_CACHED_LOCALES = 100;
 		private Map<String, Properties> iProperties = new Hashtable<String, Properties>();
 		private Class<?> iMessages = null;
+		private Map<String, Map<Method, Message>> iCache = null;
 
-		public Bundle(Class<?> messages) {
+		public Bundle(Class<?> messages, boolean cache) {
 			iMessages = messages;
+			if (cache)
+				iCache = new ConcurrentHashMap<String, Map<Method, Message>>();
+		}
+		
+		public Bundle(Class<?> messages) {
+			this(messages, true);
 		}
 		
 		private synchronized String getProperty(String locale, String name) {
@@ -180,7 +191,7 @@ public class Localization {
 		
 		private Object type(String value, Class returnType) {
 			if (value == null) return value;
-			if (String.class.equals(returnType))
+			if (returnType == null || String.class.equals(returnType))
 				return value;
 			
 			if (Boolean.class.equals(returnType) || boolean.class.equals(returnType))
@@ -209,6 +220,61 @@ public class Localization {
 			return value;
 		}
 		
+		/**
+		 * Resolve the message of the given method for the current locale. The result is cached, so that the message
+		 * bundles and the method annotations are only looked up once per locale and method.
+		 */
+		private Message getMessage(Method method) {
+			String locale = getLocale();
+			Map<Method, Message> messages = iCache.get(locale);
+			if (messages == null) {
+				if (iCache.size() >= MAX_CACHED_LOCALES) iCache.clear();
+				messages = new ConcurrentHashMap<Method, Message>();
+				iCache.put(locale, messages);
+			}
+			Message message = messages.get(method);
+			if (message == null) {
+				message = resolve(method);
+				messages.put(method, message);
+			}
+			return message;
+		}
+		
+		private Message resolve(Method method) {
+			int nrArgs = method.getParameterTypes().length;
+			String value = getProperty(method.getName());
+			if (value != null) {
+				if (nrArgs == 0)
+					return new Message(type(value, method.getReturnType()));
+				return new Message(value, nrArgs, method.getReturnType());
+			}
+			Messages.DefaultMessage dm = method.getAnnotation(Messages.DefaultMessage.class);
+			if (dm != null)
+				return (nrArgs == 0 ? new Message(dm.value()) : new Message(dm.value(), nrArgs, null));
+			Constants.DefaultBooleanValue db = method.getAnnotation(Constants.DefaultBooleanValue.class);
+			if (db != null)
+				return new Message(db.value());
+			Constants.DefaultDoubleValue dd = method.getAnnotation(Constants.DefaultDoubleValue.class);
+			if (dd != null)
+				return new Message(dd.value());
+			Constants.DefaultFloatValue df = method.getAnnotation(Constants.DefaultFloatValue.class);
+			if (df != null)
+				return new Message(df.value());
+			Constants.DefaultIntValue di = method.getAnnotation(Constants.DefaultIntValue.class);
+			if (di != null)
+				return new Message(di.value());
+			Constants.DefaultStringValue ds = method.getAnnotation(Constants.DefaultStringValue.class);
+			if (ds != null)
+				return new Message(ds.value());
+			Constants.DefaultStringArrayValue dsa = method.getAnnotation(Constants.DefaultStringArrayValue.class);
+			if (dsa != null)
+				return new Message(dsa.value());
+			Constants.DefaultStringMapValue dsm = method.getAnnotation(Constants.DefaultStringMapValue.class);
+			if (dsm != null)
+				return new Message(array2map(dsm.value()));
+			return new Message(method.getName());
+		}
+		
 		@Override
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 			if ("getStrutsActions".equals(method.getName()) && method.getParameterTypes().length == 1)
@@ -217,6 +283,12 @@ public class Localization {
 				String value = (args[0] == null ? null : getProperty((String) args[0]));
 				return (value == null ? (String) args[1] : fillArgumentsIn(value, args, 2));
 			}
+			if (iCache != null) {
+				Message message = getMessage(method);
+				if (message.isPattern())
+					return type(message.format(args), message.getReturnType());
+				return message.getValue();
+			}
 			String value = getProperty(method.getName());
 			if (value != null) 
 				return type(fillArgumentsIn(value, args, 0), method.getReturnType());
@@ -279,6 +351,74 @@ public class Localization {
 		}
 	}
 	
+	/**
+	 * Resolved message: either a value that does not depend on the arguments, or a pre-parsed message pattern
+	 * with the argument placeholders {0}, {1}, ... (only placeholders of the existing arguments are replaced).
+	 */
+	static class Message {
+		private Object iValue = null;
+		private String[] iParts = null;
+		private int[] iArgs = null;
+		private int iLength = 0;
+		private Class<?> iReturnType = null;
+		
+		Message(Object value) {
+			iValue = value;
+		}
+		
+		Message(String pattern, int nrArgs, Class<?> returnType) {
+			iReturnType = returnType;
+			List<String> parts = new ArrayList<String>();
+			List<Integer> arguments = new ArrayList<Integer>();
+			int last = 0;
+			for (int i = pattern.indexOf('{'); i >= 0; i = pattern.indexOf('{', i + 1)) {
+				int j = pattern.indexOf('}', i);
+				if (j < 0) break;
+				String index = pattern.substring(i + 1, j);
+				int arg = -1;
+				try {
+					arg = Integer.parseInt(index);
+				} catch (NumberFormatException e) {}
+				if (arg < 0 || arg >= nrArgs || !index.equals(String.valueOf(arg))) continue;
+				parts.add(pattern.substring(last, i));
+				arguments.add(arg);
+				last = j + 1;
+			}
+			parts.add(pattern.substring(last));
+			iParts = parts.toArray(new String[parts.size()]);
+			iArgs = new int[arguments.size()];
+			for (int i = 0; i < iArgs.length; i++)
+				iArgs[i] = arguments.get(i);
+			for (String part: iParts)
+				iLength += part.length();
+		}
+		
+		boolean isPattern() { return iParts != null; }
+		
+		Class<?> getReturnType() { return iReturnType; }
+		
+		String format(Object[] args) {
+			if (iArgs.length == 0) return iParts[0];
+			StringBuilder sb = new StringBuilder(iLength + 16 * iArgs.length);
+			for (int i = 0; i < iArgs.length; i++) {
+				sb.append(iParts[i]);
+				Object arg = args[iArgs[i]];
+				if (arg != null) sb.append(arg.toString());
+			}
+			sb.append(iParts[iArgs.length]);
+			return sb.toString();
+		}
+		
+		/** Cached value, arrays and maps are copied as they can be modified by the caller */
+		Object getValue() {
+			if (iValue instanceof String[])
+				return ((String[])iValue).clone();
+			if (iValue instanceof Map)
+				return new HashMap<String, String>((Map<String, String>)iValue);
+			return iValue;
+		}
+	}
+	
 	public static interface StrutsActionsRetriever {
 		Map<String, String> getStrutsActions(Class<? extends LocalizedLookupDispatchAction> apply);
 	}
@@ -34,6 +34,8 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.unitime.commons.Debug;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -50,7 +52,11 @@ import org.unitime.timetable.util.Constants;
  */
 public class ApplicationProperties {
 	private static DateFormat sTempFileDateFormat = new SimpleDateFormat("yy-MM-dd_HHmmssSSS", Locale.US);
-	private static Properties props = new Properties();
+	private static AtomicLong sGeneration = new AtomicLong(0);
+	private static volatile Snapshot sSnapshot = null;
+	private static final int MAX_SESSION_SNAPSHOTS = 100;
+	private static Map<Long, Snapshot> sSessionSnapshots = new ConcurrentHashMap<Long, Snapshot>();
+	private static Properties props = new TrackedProperties();
     private static long appPropertiesLastModified = -1, custPropertiesLastModified = -1;  
     private static PropertyFileChangeListener pfc=null;
     private static Properties configProps = null;
@@ -141,6 +147,7 @@ public class ApplicationProperties {
 		} catch (Exception e) {
 			Debug.error(e);
 		}
+		changed();
 	}
 
 	/**
@@ -181,13 +188,15 @@ public class ApplicationProperties {
 	}
 	
 	public static Properties getConfigProperties() {
-	    if (configProps==null && _RootDAO.isConfigured())
-	        configProps = ApplicationConfig.toProperties();
+	    if (configProps==null && _RootDAO.isConfigured()) {
+	        configProps = new TrackedProperties(ApplicationConfig.toProperties());
+	    }
 	    return (configProps==null?new Properties():configProps);
 	}
 	
 	public static void clearConfigProperties() {
 	    configProps = null;
+	    changed();
 	}
 	
 	public static Properties getSessionProperties(Long sessionId) {
@@ -196,7 +205,7 @@ public class ApplicationProperties {
 		
 		Properties properties = sSessionProperties.get(sessionId);
 		if (properties == null) {
-			properties = SessionConfig.toProperties(sessionId);
+			properties = new TrackedProperties(SessionConfig.toProperties(sessionId));
 			sSessionProperties.put(sessionId, properties);
 		}
 		return properties;
@@ -207,6 +216,36 @@ public class ApplicationProperties {
 			sSessionProperties.clear();
 		else
 			sSessionProperties.remove(sessionId);
+		changed();
+	}
+	
+	/**
+	 * Invalidate all resolved property snapshots (see {@link #getSnapshot()}).
+	 * Called automatically whenever the default, configuration, or session properties are changed.
+	 */
+	public static void changed() {
+		sGeneration.incrementAndGet();
+		sSessionSnapshots.clear();
+	}
+	
+	/**
+	 * Resolved values of all the application properties (without a reference) for the current academic session
+	 * (see {@link #getSessionId()}). The snapshot is computed once and reused until one of the properties changes.
+	 */
+	public static Snapshot getSnapshot() {
+		long generation = sGeneration.get();
+		boolean configured = _RootDAO.isConfigured();
+		Long sessionId = (configured ? getSessionId() : null);
+		Snapshot snapshot = (sessionId == null ? sSnapshot : sSessionSnapshots.get(sessionId));
+		if (snapshot != null && snapshot.isValid(generation, configured)) return snapshot;
+		snapshot = new Snapshot(generation, configured);
+		if (sessionId == null) {
+			sSnapshot = snapshot;
+		} else {
+			if (sSessionSnapshots.size() >= MAX_SESSION_SNAPSHOTS) sSessionSnapshots.clear();
+			sSessionSnapshots.put(sessionId, snapshot);
+		}
+		return snapshot;
 	}
 	
 	/**
@@ -256,7 +295,8 @@ public class ApplicationProperties {
 	 * @return Properties object
 	 */
 	public static Properties getProperties() {
-        Properties ret = (Properties)props.clone();
+        Properties ret = new Properties();
+        ret.putAll(props);
         ret.putAll(getConfigProperties());
         
 	    Long sessionId = ApplicationProperties.getSessionId();
@@ -367,6 +407,105 @@ public class ApplicationProperties {
 		return file;
 	}
 	
+	/**
+	 * Immutable snapshot of the resolved application properties with pre-parsed typed values.
+	 */
+	public static class Snapshot {
+		private long iGeneration;
+		private boolean iConfigured;
+		private String[] iValues;
+		private boolean[] iTrue;
+		private Integer[] iIntValues;
+		private Float[] iFloatValues;
+		private Double[] iDoubleValues;
+		
+		private Snapshot(long generation, boolean configured) {
+			iGeneration = generation;
+			iConfigured = configured;
+			ApplicationProperty[] properties = ApplicationProperty.values();
+			iValues = new String[properties.length];
+			iTrue = new boolean[properties.length];
+			iIntValues = new Integer[properties.length];
+			iFloatValues = new Float[properties.length];
+			iDoubleValues = new Double[properties.length];
+			for (ApplicationProperty property: properties) {
+				int idx = property.ordinal();
+				String value = property.value(null, null);
+				iValues[idx] = value;
+				iTrue[idx] = "true".equalsIgnoreCase(value);
+				if (value != null) {
+					try {
+						iIntValues[idx] = Integer.valueOf(value);
+					} catch (NumberFormatException e) {}
+					try {
+						iFloatValues[idx] = Float.valueOf(value);
+					} catch (NumberFormatException e) {}
+					try {
+						iDoubleValues[idx] = Double.valueOf(value);
+					} catch (NumberFormatException e) {}
+				}
+			}
+		}
+		
+		private boolean isValid(long generation, boolean configured) {
+			return iGeneration == generation && iConfigured == configured;
+		}
+		
+		public String value(ApplicationProperty property) { return iValues[property.ordinal()]; }
+		
+		public boolean isTrue(ApplicationProperty property) { return iTrue[property.ordinal()]; }
+		
+		public Integer intValue(ApplicationProperty property) { return iIntValues[property.ordinal()]; }
+		
+		public Float floatValue(ApplicationProperty property) { return iFloatValues[property.ordinal()]; }
+		
+		public Double doubleValue(ApplicationProperty property) { return iDoubleValues[property.ordinal()]; }
+	}
+	
+	/**
+	 * Properties that invalidate the resolved property snapshots when changed.
+	 * The initial values (first load of the configuration or session properties) do not invalidate the snapshots.
+	 */
+	private static class TrackedProperties extends Properties {
+		private static final long serialVersionUID = 1L;
+		private boolean iTracking = false;
+		
+		private TrackedProperties() {
+			iTracking = true;
+		}
+		
+		private TrackedProperties(Map<? extends Object, ? extends Object> initial) {
+			super.putAll(initial);
+			iTracking = true;
+		}
+
+		@Override
+		public synchronized Object put(Object key, Object value) {
+			Object ret = super.put(key, value);
+			if (iTracking) changed();
+			return ret;
+		}
+		
+		@Override
+		public synchronized Object remove(Object key) {
+			Object ret = super.remove(key);
+			if (iTracking) changed();
+			return ret;
+		}
+		
+		@Override
+		public synchronized void putAll(Map<? extends Object, ? extends Object> t) {
+			super.putAll(t);
+			if (iTracking) changed();
+		}
+		
+		@Override
+		public synchronized void clear() {
+			super.clear();
+			if (iTracking) changed();
+		}
+	}
+	
 	/**
 	 * Stop Property File Change Listener Thread 
 	 */
@@ -38,7 +38,6 @@ import org.cpsolver.ifs.util.ProgressListener;
 import org.cpsolver.ifs.util.Progress.Message;
 import org.dom4j.Document;
 import org.dom4j.io.OutputFormat;
-import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -251,6 +250,16 @@ public class DataImportAction extends Action {
 			return "Data Exchange";
 		}
 		
+		@Override
+		public int maxRunning() {
+			return maxRunning(1);
+		}
+		
+		@Override
+		public String exclusiveGroup() {
+			return exclusiveGroup(sExclusiveGroupSessionData);
+		}
+		
 		@Override
 		public String name() {
 			return (iImport ? "Import of " + iForm.getFile().getFileName() : "Export of " + iForm.getExportType().getLabel());
@@ -319,7 +328,7 @@ public class DataImportAction extends Action {
 				SessionRestoreInterface restore = (SessionRestoreInterface)Class.forName(ApplicationProperty.SessionRestoreInterface.value()).getConstructor().newInstance();
 				restore.restore(iForm.getFile().getInputStream(), iProgress);
 			} else {
-				DataExchangeHelper.importDocument((new SAXReader()).read(iForm.getFile().getInputStream()), getOwnerId(), this);
+				DataExchangeHelper.importDocument(iForm.getFile().getInputStream(), getOwnerId(), this);
 			}
 		}
 
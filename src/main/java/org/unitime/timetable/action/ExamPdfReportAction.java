@@ -132,8 +132,8 @@ public class ExamPdfReportAction extends Action {
 			String name = item.name();
 			if (name.length() > 60) name = name.substring(0, 57) + "...";
 			String delete = null;
-			if (sessionContext.getUser().getExternalUserId().equals(item.getOwnerId()) && (item.started() == null || item.finished() != null)) {
-				delete = "<img src='images/action_delete.png' border='0' onClick=\"if (confirm('Do you really want to remove this report?')) document.location='examPdfReport.do?remove="+item.getId()+"'; event.cancelBubble=true;\">";
+			if (sessionContext.getUser().getExternalUserId().equals(item.getOwnerId())) {
+				delete = "<img src='images/action_delete.png' border='0' onClick=\"if (confirm('Do you really want to " + (item.started() != null && item.finished() == null ? "cancel" : "remove") + " this report?')) document.location='examPdfReport.do?remove="+item.getId()+"'; event.cancelBubble=true;\">";
 			}
 			WebTableLine line = table.addLine(item.log().isEmpty() ? null : "onClick=\"document.location='examPdfReport.do?log=" + item.getId() + "';\"",
 					new String[] {
@@ -750,10 +750,10 @@ public class ManageSolversAction extends Action {
            try {
                WebTable.setOrder(sessionContext,"manageSolvers.ord[ONLINE]",request.getParameter("ordo"),1);
                
-               WebTable webTable = new WebTable( 14,
+               WebTable webTable = new WebTable( 15,
                        "Manage Online Scheduling Servers", "manageSolvers.do?ordo=%%",
-                       new String[] {"Created", "Session", "Host", "Mode", "Mem", "Assign", "Total", "CompSched", "DistConf", "TimeConf", "FreeConf", "AvgDisb", "Disb[>=10%]", "Operation(s)"},
-                       new String[] {"left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left"},
+                       new String[] {"Created", "Session", "Host", "Mode", "Mem", "Assign", "Total", "CompSched", "DistConf", "TimeConf", "FreeConf", "AvgDisb", "Disb[>=10%]", "Async", "Operation(s)"},
+                       new String[] {"left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left"},
                        null );
                webTable.setRowStyle("white-space:nowrap");
                
@@ -778,6 +778,7 @@ public class ManageSolversAction extends Action {
                        String free = (info == null ? null : info.get("Free time overlapping conflicts"));
                        String disb = (info == null ? null : info.get("Average disbalance"));
                        String disb10 = (info == null ? null : info.get("Sections disbalanced by 10% or more"));
+                       String async = (info == null ? null : info.get("Asynchronous actions"));
                        Date loaded = new Date(solver.getConfig().getPropertyLong("General.StartUpDate", 0));
 
                        String op = "";
@@ -817,6 +818,7 @@ public class ManageSolversAction extends Action {
                                    (free==null?"N/A":free),
                                    (disb==null?"N/A":disb),
                                    (disb10==null?"N/A":disb10),
+                                   (async==null?"N/A":async),
                                    op},
                                new Comparable[] {
                                    loaded,
@@ -832,6 +834,7 @@ public class ManageSolversAction extends Action {
                                    (free==null?"":free),
                                    (disb==null?"":disb),
                                    (disb10==null?"":disb10),
+                                   (async==null?"":async),
                                    null});
                            nrLines++;
                    }
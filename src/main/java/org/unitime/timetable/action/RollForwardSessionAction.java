@@ -220,6 +220,11 @@ public class RollForwardSessionAction extends Action {
 			return iForm;
 		}
 		
+		/** No errors so far and the roll forward has not been cancelled */
+		private boolean canContinue() {
+			return iErrors.isEmpty() && !isCancelled();
+		}
+		
 		@Override
 		protected void execute() throws Exception {
 	        SessionRollForward sessionRollForward = new SessionRollForward(this);
@@ -227,151 +232,153 @@ public class RollForwardSessionAction extends Action {
 			if (toAcadSession == null){
 	   			iErrors.add("mustSelectSession", new ActionMessage("errors.rollForward.missingToSession"));
 			}
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateDepartmentRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardDepartments()) {
+        	if (canContinue() && iForm.getRollForwardDepartments()) {
 				setStatus("Departments ...");
 	        	sessionRollForward.rollDepartmentsForward(iErrors, iForm);	
 	        }
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateCurriculaRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardSessionConfig()) {
+        	if (canContinue() && iForm.getRollForwardSessionConfig()) {
 				setStatus("Session Configuration ...");
         	    sessionRollForward.rollSessionConfigurationForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateManagerRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardManagers()) {
+        	if (canContinue() && iForm.getRollForwardManagers()) {
 				setStatus("Managers ...");
         		sessionRollForward.rollManagersForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateBuildingAndRoomRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardRoomData()) {
+        	if (canContinue() && iForm.getRollForwardRoomData()) {
 				setStatus("Rooms ...");
         		sessionRollForward.rollBuildingAndRoomDataForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateDatePatternRollForward(toAcadSession, iErrors);
 			}
-	        if (iErrors.isEmpty() && iForm.getRollForwardDatePatterns()) {
+	        if (canContinue() && iForm.getRollForwardDatePatterns()) {
 				setStatus("Date patterns ...");
 	        	sessionRollForward.rollDatePatternsForward(iErrors, iForm);
 	        }
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateTimePatternRollForward(toAcadSession, iErrors);
 			}
-            if (iErrors.isEmpty() && iForm.getRollForwardTimePatterns()) {
+            if (canContinue() && iForm.getRollForwardTimePatterns()) {
 				setStatus("Time patterns ...");
 	        	sessionRollForward.rollTimePatternsForward(iErrors, iForm);
 	        }
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateSubjectAreaRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardSubjectAreas()) {
+        	if (canContinue() && iForm.getRollForwardSubjectAreas()) {
 				setStatus("Subjects ...");
         		sessionRollForward.rollSubjectAreasForward(iErrors, iForm);
         	}
 	        iProgress++;
-        	if (iErrors.isEmpty() && iForm.getRollForwardInstructorData()) {
+        	if (canContinue() && iForm.getRollForwardInstructorData()) {
 				setStatus("Instructors ...");
         		sessionRollForward.rollInstructorDataForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateCourseOfferingRollForward(toAcadSession, iErrors);
 			}
-			if (iErrors.isEmpty() && iForm.getRollForwardCourseOfferings()) {
+			if (canContinue() && iForm.getRollForwardCourseOfferings()) {
 				setStatus("Courses ...");
         		sessionRollForward.rollCourseOfferingsForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateClassInstructorRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardClassInstructors()) {
+        	if (canContinue() && iForm.getRollForwardClassInstructors()) {
 				setStatus("Class instructors ...");
         		sessionRollForward.rollClassInstructorsForward(iErrors, iForm);
         	}
 	        iProgress++;
-	        if (iErrors.isEmpty()){
+	        if (canContinue()){
 				iForm.validateOfferingCoordinatorsRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardOfferingCoordinators()) {
+        	if (canContinue() && iForm.getRollForwardOfferingCoordinators()) {
 				setStatus("Offering coordinators ...");
         		sessionRollForward.rollOfferingCoordinatorsForward(iErrors, iForm);
         	}
 			iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateTeachingRequestsRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardTeachingRequests()) {
+        	if (canContinue() && iForm.getRollForwardTeachingRequests()) {
 				setStatus("Teaching requests ...");
         		sessionRollForward.rollTeachingRequestsForward(iErrors, iForm);
         	}
 	        iProgress++;
-        	if (iErrors.isEmpty() && iForm.getAddNewCourseOfferings()) {
+        	if (canContinue() && iForm.getAddNewCourseOfferings()) {
 				setStatus("New courses ...");
         		sessionRollForward.addNewCourseOfferings(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateExamConfigurationRollForward(toAcadSession, iErrors);
 			}
-			if (iErrors.isEmpty() && iForm.getRollForwardExamConfiguration()) {
+			if (canContinue() && iForm.getRollForwardExamConfiguration()) {
 				setStatus("Exam config ...");
         		sessionRollForward.rollExamConfigurationDataForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateMidtermExamRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardMidtermExams()) {
+        	if (canContinue() && iForm.getRollForwardMidtermExams()) {
 				setStatus("Midterm exams ...");
         		sessionRollForward.rollMidtermExamsForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateFinalExamRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardFinalExams()) {
+        	if (canContinue() && iForm.getRollForwardFinalExams()) {
 				setStatus("Final exams ...");
         		sessionRollForward.rollFinalExamsForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateLastLikeDemandRollForward(toAcadSession, iErrors);
 			}
-			if (iErrors.isEmpty() && iForm.getRollForwardStudents()) {
+			if (canContinue() && iForm.getRollForwardStudents()) {
 				setStatus("Students ...");
         	    sessionRollForward.rollStudentsForward(iErrors, iForm);
         	}
 	        iProgress++;
-			if (iErrors.isEmpty()){
+			if (canContinue()){
 				iForm.validateCurriculaRollForward(toAcadSession, iErrors);
 			}
-        	if (iErrors.isEmpty() && iForm.getRollForwardCurricula()) {
+        	if (canContinue() && iForm.getRollForwardCurricula()) {
 				setStatus("Curricula ...");
         	    sessionRollForward.rollCurriculaForward(iErrors, iForm);
         	}
 	        iProgress++;
-        	if (iErrors.isEmpty() && iForm.getRollForwardReservations()) {
+        	if (canContinue() && iForm.getRollForwardReservations()) {
 				setStatus("Reservations ...");
         	    sessionRollForward.rollReservationsForward(iErrors, iForm);
         	}
 	        iProgress++;
 	        if (!iErrors.isEmpty()) {
 	        	setError(new Exception(((ActionMessage)iErrors.get().next()).getValues()[0].toString()));
+	        } else if (isCancelled()) {
+	        	warn("Roll forward cancelled.");
 	        } else {
 	        	log("All done.");
 	        }
@@ -414,6 +421,16 @@ public class RollForwardSessionAction extends Action {
 			return "Roll Forward";
 		}
 		
+		@Override
+		public int maxRunning() {
+			return maxRunning(1);
+		}
+		
+		@Override
+		public String exclusiveGroup() {
+			return exclusiveGroup(sExclusiveGroupSessionData);
+		}
+		
 	}
 	
 	protected void setToFromSessionsInForm(RollForwardSessionForm rollForwardSessionForm){
@@ -26,6 +26,7 @@ import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -38,6 +39,14 @@ import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 import org.apache.commons.logging.Log;
@@ -50,6 +59,8 @@ import org.dom4j.Document;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
 import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.engine.spi.SessionImplementor;
@@ -105,12 +116,15 @@ public class SessionBackup implements SessionBackupInterface {
 	private PrintWriter iDebug = null;
 	private Long iSessionId = null;
 	private Progress iProgress = null;
+	private int iChunkSize = 10000;
+	private int iThreads = 1;
+	private ConcurrentHashMap<String, Set<Serializable>> iAllExportedIds = null;
 	
 	public Progress getProgress() {
 		return iProgress;
 	}
 	
-	private void add(TableData.Table table) throws IOException {
+	private synchronized void add(TableData.Table table) throws IOException {
 		iProgress.info("Writing " + table.getName().substring(table.getName().lastIndexOf('.') + 1) + " [" + table.getRecordCount() + " records, " + table.getSerializedSize() + " bytes]");
 		iOut.writeInt32NoTag(table.getSerializedSize());
 		table.writeTo(iOut);
@@ -131,6 +145,8 @@ public class SessionBackup implements SessionBackupInterface {
         iOut = CodedOutputStream.newInstance(out);
         iProgress = progress;
 		iSessionId = sessionId;
+		iChunkSize = ApplicationProperty.SessionBackupChunkSize.intValue();
+		iThreads = Math.max(1, ApplicationProperty.SessionBackupThreads.intValue());
         iHibSession = new _RootDAO().createNewSession(); 
         iHibSession.setCacheMode(CacheMode.IGNORE);
         iHibSessionFactory = iHibSession.getSessionFactory();
@@ -264,160 +280,17 @@ public class SessionBackup implements SessionBackupInterface {
             }
             iProgress.incProgress();
             
-            Map<String, Set<Serializable>> allExportedIds = new HashMap<String, Set<Serializable>>();
+            iAllExportedIds = new ConcurrentHashMap<String, Set<Serializable>>();
+            List<String> names = new ArrayList<String>();
             for (String name: new TreeSet<String>(data.keySet())) {
-            	List<QueueItem> list = data.get(name);
-            	Map<String, TableData.Table.Builder> tables = new HashMap<String, TableData.Table.Builder>();
-            	for (QueueItem current: list) {
-            		if (current.size() == 0) continue;
-            		iProgress.info("Loading " + current);
-            		List<Object> objects = current.list();
-            		if (objects == null || objects.isEmpty()) continue;
-            		iProgress.setPhase(current.abbv() + " [" + objects.size() + "]", objects.size());
-            		objects: for (Object object: objects) {
-            			iProgress.incProgress();
-            			
-            			// Get meta data (check for sub-classes)
-            			ClassMetadata meta = iHibSessionFactory.getClassMetadata(object.getClass());
-            			if (meta == null) meta = current.meta();
-            			if (meta.hasSubclasses()) {
-            	            for (Iterator i=iHibSessionFactory.getAllClassMetadata().entrySet().iterator();i.hasNext();) {
-            	                Map.Entry entry = (Map.Entry)i.next();
-            	                ClassMetadata classMetadata = (ClassMetadata)entry.getValue();
-            	                if (classMetadata.getMappedClass().isInstance(object) && !classMetadata.hasSubclasses()) {
-            	                	meta = classMetadata; break;
-            	                }
-            	            }
-            			}
-            			
-            			// Get unique identifier
-            			Serializable id = meta.getIdentifier(object, (SessionImplementor)iHibSession);
-            			if (meta.getIdentifierType().isComponentType()) {
-            				ComponentType cid = (ComponentType)meta.getIdentifierType();
-            				Object[] ids = new Object[cid.getPropertyNames().length];
-            				for (int i = 0; i < cid.getPropertyNames().length; i++) {
-            					Type type = meta.getPropertyType(cid.getPropertyNames()[i]);
-                				Object value = cid.getPropertyValue(object, i);
-                				if (value == null) continue;
-                				if (type.isEntityType()) {
-                					ids[i] = iHibSessionFactory.getClassMetadata(type.getReturnedClass()).getIdentifier(value, (SessionImplementor)iHibSession); 
-                				} else {
-                					ids[i] = value;
-                				}
-            				}
-            				id = new CompositeId(ids);
-            			}
-            			
-            			// Check if already exported
-            			Set<Serializable> exportedIds = allExportedIds.get(meta.getEntityName());
-            			if (exportedIds == null) {
-            				exportedIds = new HashSet<Serializable>();
-            				allExportedIds.put(meta.getEntityName(), exportedIds);
-            			}
-            			if (!exportedIds.add(id)) continue;
-            			
-            			// Check relation to an academic session (if exists)
-            			for (String property: meta.getPropertyNames()) {
-            				Type type = meta.getPropertyType(property);
-                        	if (type instanceof EntityType && type.getReturnedClass().equals(Session.class)) {
-                        		Session s = (Session)meta.getPropertyValue(object, property);
-                        		if (s != null && !s.getUniqueId().equals(iSessionId)) {
-                        			iProgress.warn(meta.getEntityName().substring(meta.getEntityName().lastIndexOf('.') + 1) + "@" + id + " belongs to a different academic session (" + s + ")");
-                        			continue objects; // wrong session
-                        		}
-                        	}
-            			}
-
-            			// Get appropriate table
-            			TableData.Table.Builder table = tables.get(meta.getEntityName());
-            			if (table == null) {
-            				table = TableData.Table.newBuilder();
-            				tables.put(meta.getEntityName(), table);
-            				table.setName(meta.getEntityName());
-            			}
-
-            			// Export object
-            			TableData.Record.Builder record = TableData.Record.newBuilder();
-            			record.setId(id.toString());
-            			for (String property: meta.getPropertyNames()) {
-            				Type type = meta.getPropertyType(property);
-            				Object value = meta.getPropertyValue(object, property);
-            				if (value == null) continue;
-            				TableData.Element.Builder element = TableData.Element.newBuilder();
-            				element.setName(property);
-            				if (type instanceof PrimitiveType) {
-            					element.addValue(((PrimitiveType)type).toString(value));
-            				} else if (type instanceof StringType) {	
-            					element.addValue(((StringType)type).toString((String)value));
-            				} else if (type instanceof BinaryType) {	
-            					element.addValueBytes(ByteString.copyFrom((byte[])value));
-            				} else if (type instanceof TimestampType) {
-            					element.addValue(((TimestampType)type).toString((Date)value));
-            				} else if (type instanceof DateType) {
-            					element.addValue(((DateType)type).toString((Date)value));
-            				} else if (type instanceof EntityType) {
-    							List<Object> ids = current.relation(property, id, false);
-    							if (ids != null)
-    								for (Object i: ids)
-    									element.addValue(i.toString());
-    							iHibSession.evict(value);
-            				} else if (type instanceof CustomType && value instanceof Document) {
-            					if (object instanceof CurriculumClassification && property.equals("students")) continue;
-            					StringWriter w = new StringWriter();
-            					XMLWriter x = new XMLWriter(w, OutputFormat.createCompactFormat());
-            					x.write((Document)value);
-            					x.flush(); x.close();
-            					element.addValue(w.toString());
-            				} else if (type instanceof CollectionType) {
-    							List<Object> ids = current.relation(property, id, false);
-    							if (ids != null)
-    								for (Object i: ids)
-    									element.addValue(i.toString());
-            				} else if (type instanceof EmbeddedComponentType && property.equalsIgnoreCase("uniqueCourseNbr")) {
-            					continue;
-            				} else {
-            					iProgress.warn("Unknown data type: " + type + " (property " + meta.getEntityName() + "." + property + ", class " + value.getClass() + ")");
-            					continue;
-            				}
-            				record.addElement(element.build());
-            			}
-            			if (meta.getIdentifierType().isComponentType()) {
-            				ComponentType cid = (ComponentType)meta.getIdentifierType();
-            				for (int i = 0; i < cid.getPropertyNames().length; i++) {
-            					String property = cid.getPropertyNames()[i];
-            					Type type = cid.getSubtypes()[i];
-                				Object value = ((CompositeId)id).iId[i];
-                				if (value == null) continue;
-                				TableData.Element.Builder element = TableData.Element.newBuilder();
-                				element.setName(property);
-                				if (type instanceof PrimitiveType) {
-                					element.addValue(((PrimitiveType)type).toString(value));
-                				} else if (type instanceof StringType) {	
-                					element.addValue(((StringType)type).toString((String)value));
-                				} else if (type instanceof BinaryType) {	
-                					element.addValueBytes(ByteString.copyFrom((byte[])value));
-                				} else if (type instanceof TimestampType) {
-                					element.addValue(((TimestampType)type).toString((Date)value));
-                				} else if (type instanceof DateType) {
-                					element.addValue(((DateType)type).toString((Date)value));
-                				} else if (type instanceof EntityType) {
-                    				element.addValue(value.toString());
-                				} else {
-                					iProgress.warn("Not-supported composite key data type: " + type + " (property " + meta.getEntityName() + "." + property + ", class " + value.getClass() + ")");
-                					continue;
-                				}
-                				record.addElement(element.build());
-            				}
-            			}
-            			table.addRecord(record.build());
-            			iHibSession.evict(object);
-            		}
-            		current.clearCache();
-            	}
-            	
-            	for (TableData.Table.Builder table: tables.values()) {
-            		add(table.build());
-            	}
+            	for (QueueItem current: data.get(name))
+            		if (current.size() > 0) { names.add(name); break; }
+            }
+            if (iThreads <= 1) {
+            	for (String name: names)
+            		export(iHibSession, data.get(name), true);
+            } else {
+            	export(names, data);
             }
             
             /*
@@ -449,6 +322,225 @@ public class SessionBackup implements SessionBackupInterface {
         }
 	}
 	
+	/**
+	 * Export all records reachable by the given queue items (all of the same entity name), using the given Hibernate session.
+	 * The records are read using a scrollable cursor and written out in chunks of at most {@link ApplicationProperty#SessionBackupChunkSize} records,
+	 * so that a table is never fully loaded in memory.
+	 */
+	protected void export(org.hibernate.Session hibSession, List<QueueItem> list, boolean detailedProgress) throws IOException {
+		Map<String, TableData.Table.Builder> tables = new HashMap<String, TableData.Table.Builder>();
+		for (QueueItem current: list) {
+			if (current.size() == 0) continue;
+			iProgress.info("Loading " + current);
+			ScrollableResults objects = current.scroll(hibSession);
+			if (objects == null) continue;
+			if (detailedProgress)
+				iProgress.setPhase(current.abbv() + " [" + current.size() + "]", current.size());
+			try {
+				objects: while (objects.next()) {
+					Object object = objects.get(0);
+					if (detailedProgress) iProgress.incProgress();
+					
+					// Get meta data (check for sub-classes)
+					ClassMetadata meta = iHibSessionFactory.getClassMetadata(object.getClass());
+					if (meta == null) meta = current.meta();
+					if (meta.hasSubclasses()) {
+						for (Iterator i=iHibSessionFactory.getAllClassMetadata().entrySet().iterator();i.hasNext();) {
+							Map.Entry entry = (Map.Entry)i.next();
+							ClassMetadata classMetadata = (ClassMetadata)entry.getValue();
+							if (classMetadata.getMappedClass().isInstance(object) && !classMetadata.hasSubclasses()) {
+								meta = classMetadata; break;
+							}
+						}
+					}
+					
+					// Get unique identifier
+					Serializable id = meta.getIdentifier(object, (SessionImplementor)hibSession);
+					if (meta.getIdentifierType().isComponentType()) {
+						ComponentType cid = (ComponentType)meta.getIdentifierType();
+						Object[] ids = new Object[cid.getPropertyNames().length];
+						for (int i = 0; i < cid.getPropertyNames().length; i++) {
+							Type type = meta.getPropertyType(cid.getPropertyNames()[i]);
+							Object value = cid.getPropertyValue(object, i);
+							if (value == null) continue;
+							if (type.isEntityType()) {
+								ids[i] = iHibSessionFactory.getClassMetadata(type.getReturnedClass()).getIdentifier(value, (SessionImplementor)hibSession); 
+							} else {
+								ids[i] = value;
+							}
+						}
+						id = new CompositeId(ids);
+					}
+					
+					// Check if already exported
+					Set<Serializable> exportedIds = iAllExportedIds.get(meta.getEntityName());
+					if (exportedIds == null) {
+						exportedIds = Collections.newSetFromMap(new ConcurrentHashMap<Serializable, Boolean>());
+						Set<Serializable> other = iAllExportedIds.putIfAbsent(meta.getEntityName(), exportedIds);
+						if (other != null) exportedIds = other;
+					}
+					if (!exportedIds.add(id)) continue;
+					
+					// Check relation to an academic session (if exists)
+					for (String property: meta.getPropertyNames()) {
+						Type type = meta.getPropertyType(property);
+						if (type instanceof EntityType && type.getReturnedClass().equals(Session.class)) {
+							Session s = (Session)meta.getPropertyValue(object, property);
+							if (s != null && !s.getUniqueId().equals(iSessionId)) {
+								iProgress.warn(meta.getEntityName().substring(meta.getEntityName().lastIndexOf('.') + 1) + "@" + id + " belongs to a different academic session (" + s + ")");
+								continue objects; // wrong session
+							}
+						}
+					}
+	
+					// Get appropriate table
+					TableData.Table.Builder table = tables.get(meta.getEntityName());
+					if (table == null) {
+						table = TableData.Table.newBuilder();
+						tables.put(meta.getEntityName(), table);
+						table.setName(meta.getEntityName());
+					}
+	
+					// Export object
+					TableData.Record.Builder record = TableData.Record.newBuilder();
+					record.setId(id.toString());
+					for (String property: meta.getPropertyNames()) {
+						Type type = meta.getPropertyType(property);
+						Object value = meta.getPropertyValue(object, property);
+						if (value == null) continue;
+						TableData.Element.Builder element = TableData.Element.newBuilder();
+						element.setName(property);
+						if (type instanceof PrimitiveType) {
+							element.addValue(((PrimitiveType)type).toString(value));
+						} else if (type instanceof StringType) {	
+							element.addValue(((StringType)type).toString((String)value));
+						} else if (type instanceof BinaryType) {	
+							element.addValueBytes(ByteString.copyFrom((byte[])value));
+						} else if (type instanceof TimestampType) {
+							element.addValue(((TimestampType)type).toString((Date)value));
+						} else if (type instanceof DateType) {
+							element.addValue(((DateType)type).toString((Date)value));
+						} else if (type instanceof EntityType) {
+							List<Object> ids = current.relation(hibSession, property, id, false);
+							if (ids != null)
+								for (Object i: ids)
+									element.addValue(i.toString());
+							hibSession.evict(value);
+						} else if (type instanceof CustomType && value instanceof Document) {
+							if (object instanceof CurriculumClassification && property.equals("students")) continue;
+							StringWriter w = new StringWriter();
+							XMLWriter x = new XMLWriter(w, OutputFormat.createCompactFormat());
+							x.write((Document)value);
+							x.flush(); x.close();
+							element.addValue(w.toString());
+						} else if (type instanceof CollectionType) {
+							List<Object> ids = current.relation(hibSession, property, id, false);
+							if (ids != null)
+								for (Object i: ids)
+									element.addValue(i.toString());
+						} else if (type instanceof EmbeddedComponentType && property.equalsIgnoreCase("uniqueCourseNbr")) {
+							continue;
+						} else {
+							iProgress.warn("Unknown data type: " + type + " (property " + meta.getEntityName() + "." + property + ", class " + value.getClass() + ")");
+							continue;
+						}
+						record.addElement(element.build());
+					}
+					if (meta.getIdentifierType().isComponentType()) {
+						ComponentType cid = (ComponentType)meta.getIdentifierType();
+						for (int i = 0; i < cid.getPropertyNames().length; i++) {
+							String property = cid.getPropertyNames()[i];
+							Type type = cid.getSubtypes()[i];
+							Object value = ((CompositeId)id).iId[i];
+							if (value == null) continue;
+							TableData.Element.Builder element = TableData.Element.newBuilder();
+							element.setName(property);
+							if (type instanceof PrimitiveType) {
+								element.addValue(((PrimitiveType)type).toString(value));
+							} else if (type instanceof StringType) {	
+								element.addValue(((StringType)type).toString((String)value));
+							} else if (type instanceof BinaryType) {	
+								element.addValueBytes(ByteString.copyFrom((byte[])value));
+							} else if (type instanceof TimestampType) {
+								element.addValue(((TimestampType)type).toString((Date)value));
+							} else if (type instanceof DateType) {
+								element.addValue(((DateType)type).toString((Date)value));
+							} else if (type instanceof EntityType) {
+								element.addValue(value.toString());
+							} else {
+								iProgress.warn("Not-supported composite key data type: " + type + " (property " + meta.getEntityName() + "." + property + ", class " + value.getClass() + ")");
+								continue;
+							}
+							record.addElement(element.build());
+						}
+					}
+					table.addRecord(record.build());
+					hibSession.evict(object);
+					
+					// Write a chunk of the table, when big enough
+					if (iChunkSize > 0 && table.getRecordCount() >= iChunkSize) {
+						add(table.build());
+						tables.remove(meta.getEntityName());
+						hibSession.clear();
+					}
+				}
+			} finally {
+				objects.close();
+			}
+			current.clearCache();
+		}
+		
+		for (TableData.Table.Builder table: tables.values()) {
+			if (table.getRecordCount() > 0)
+				add(table.build());
+		}
+	}
+	
+	/**
+	 * Export the given tables in parallel, each table using its own Hibernate session.
+	 */
+	protected void export(List<String> names, final Map<String, List<QueueItem>> data) throws IOException {
+		iProgress.setPhase("Exporting " + names.size() + " tables", names.size());
+		ExecutorService executor = Executors.newFixedThreadPool(iThreads, new ThreadFactory() {
+			private AtomicInteger iCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SessionBackup-" + iCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<Future<String>> tasks = new ArrayList<Future<String>>();
+		try {
+			for (final String name: names) {
+				tasks.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+						hibSession.setCacheMode(CacheMode.IGNORE);
+						hibSession.setDefaultReadOnly(true);
+						try {
+							export(hibSession, data.get(name), false);
+						} finally {
+							hibSession.close();
+						}
+						iProgress.incProgress();
+						return name;
+					}
+				}));
+			}
+			for (Future<String> task: tasks)
+				task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IOException("Backup failed: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			throw new IOException("Backup failed: " + e.getMessage(), e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
 	enum Relation {
 		None, Parent, One, Many, Empty
 	}
@@ -598,19 +690,19 @@ public class SessionBackup implements SessionBackupInterface {
 			}
 		}
 		
-		List<Object> list() {
+		ScrollableResults scroll(org.hibernate.Session hibSession) {
 			if (relation() == Relation.Empty) return null;
 			if (AssignmentInfo.class.getName().equals(name())) return null;
 			if (ConstraintInfo.class.getName().equals(name())) return null;
 			if (ChangeLog.class.getName().equals(name())) return null;
-			return iHibSession.createQuery(
+			return hibSession.createQuery(
 					"select " + (distinct() ? "" : "distinct ") + hqlName() + " from " + hqlFrom() + " where " + hqlWhere()
-					).setLong("sessionId", iSessionId).list();
+					).setLong("sessionId", iSessionId).setFetchSize(1000).scroll(ScrollMode.FORWARD_ONLY);
 		}
 		
 		Map<String, Map<Serializable, List<Object>>> iRelationCache = new HashMap<String, Map<Serializable,List<Object>>>();
 		
-		List<Object> relation(String property, Serializable id, boolean data) {
+		List<Object> relation(org.hibernate.Session hibSession, String property, Serializable id, boolean data) {
 			Map<Serializable, List<Object>> relation = iRelationCache.get(property);
 			if (relation == null) {
 				Type type = meta().getPropertyType(property);
@@ -652,7 +744,7 @@ public class SessionBackup implements SessionBackupInterface {
 						else
 							select += (i > 0 ? ", " : "") + hqlName() + "." + idtype.getPropertyNames()[i] + "." + meta.getIdentifierPropertyName();
 					}
-					for (Object[] o: (List<Object[]>)iHibSession.createQuery(
+					for (Object[] o: (List<Object[]>)hibSession.createQuery(
 							"select distinct " + select + (data ? ", p" : ", p." + idProperty) + " from " + hqlFrom() + " inner join " + hqlName() + "." + property + " p where " + hqlWhere()
 							).setLong("sessionId", iSessionId).list()) {
 						Object[] cid = new Object[idtype.getPropertyNames().length];
@@ -673,7 +765,7 @@ public class SessionBackup implements SessionBackupInterface {
 						}
 					}
 				} else {
-					for (Object[] o: (List<Object[]>)iHibSession.createQuery(
+					for (Object[] o: (List<Object[]>)hibSession.createQuery(
 							"select distinct " + hqlName() + "." + meta().getIdentifierPropertyName() + (data ? ", p" : ", p." + idProperty) + 
 							" from " + hqlFrom() + " inner join " + hqlName() + "." + property + " p where " + hqlWhere()
 							).setLong("sessionId", iSessionId).list()) {
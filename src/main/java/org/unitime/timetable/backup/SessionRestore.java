@@ -28,6 +28,8 @@ import java.io.StringReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -136,7 +138,7 @@ public class SessionRestore implements SessionRestoreInterface {
 	private List<Entity> iAllEntitites = new ArrayList<Entity>();
 	private Map<String, Student> iStudents = new Hashtable<String, Student>();
 	private PrintWriter iDebug = null;
-	private Map<String, TableData.Table> iSkippedTables = new Hashtable<String, TableData.Table>();
+	private Map<String, Map<String, TableData.Record>> iSkippedTables = new Hashtable<String, Map<String, TableData.Record>>();
 
 	private InputStream iIn;
 
@@ -215,18 +217,24 @@ public class SessionRestore implements SessionRestoreInterface {
 	}
 	
 	protected Entity lookupSkippedRecord(String tableName, String id) {
-		TableData.Table table = iSkippedTables.get(tableName);
+		Map<String, TableData.Record> table = iSkippedTables.get(tableName);
 		if (table == null) return null;
-		for (TableData.Record record: table.getRecordList()) {
-			if (id.equals(record.getId()) && record.getElementCount() > 0) return new Entity(null, record, null, id);
-		}
-		return null;
+		TableData.Record record = table.get(id);
+		return (record == null ? null : new Entity(null, record, null, id));
 	}
 	
 	public void create(TableData.Table table) throws InstantiationException, IllegalAccessException, DocumentException {
 		ClassMetadata metadata = iHibSessionFactory.getClassMetadata(table.getName());
 		if (metadata == null) {
-			iSkippedTables.put(table.getName(), table);
+			// a table can be split into multiple chunks
+			Map<String, TableData.Record> records = iSkippedTables.get(table.getName());
+			if (records == null) {
+				records = new HashMap<String, TableData.Record>();
+				iSkippedTables.put(table.getName(), records);
+			}
+			for (TableData.Record record: table.getRecordList())
+				if (record.getElementCount() > 0 && !records.containsKey(record.getId()))
+					records.put(record.getId(), record);
 			return;
 		}
 		PersistentClass mapping = _RootDAO.getConfiguration().getClassMapping(table.getName());
@@ -453,7 +461,17 @@ public class SessionRestore implements SessionRestoreInterface {
     		}
     		
     		iProgress.setPhase("Saving (not-null)", iAllEntitites.size());
-    		List<Entity> save = new ArrayList<Entity>(iAllEntitites);
+    		// keep records of the same entity together, so that the inserts (and updates) can be sent to the database in JDBC batches
+    		List<Entity> entities = new ArrayList<Entity>(iAllEntitites);
+    		Collections.sort(entities, new Comparator<Entity>() {
+				@Override
+				public int compare(Entity e1, Entity e2) {
+					return e1.getName().compareTo(e2.getName());
+				}
+			});
+    		int flushInterval = ApplicationProperty.SessionRestoreFlushInterval.intValue();
+    		int unflushed = 0;
+    		List<Entity> save = new ArrayList<Entity>(entities);
     		List<Object> otherObjectsToSave = new ArrayList<Object>();
     		boolean saved = true;
     		while (!save.isEmpty() && saved) {
@@ -466,9 +484,12 @@ public class SessionRestore implements SessionRestoreInterface {
     					iHibSession.save(e.getObject());
     					i.remove();
     					saved = true;
+    					if (flushInterval > 0 && ++unflushed >= flushInterval) {
+    						iHibSession.flush(); unflushed = 0;
+    					}
     				}
     			}
-    			iHibSession.flush();
+    			iHibSession.flush(); unflushed = 0;
     		}
     		for (Object object: otherObjectsToSave)
     			iHibSession.save(object);
@@ -476,12 +497,15 @@ public class SessionRestore implements SessionRestoreInterface {
     		iHibSession.flush();
 
     		iProgress.setPhase("Saving (all)", iAllEntitites.size());
-    		for (Entity e: iAllEntitites) {
+    		for (Entity e: entities) {
     			iProgress.incProgress();
     			String property = e.canSave();
     			if (property == null) {
     				e.fixRelations(otherObjectsToSave);
     				iHibSession.update(e.getObject());
+    				if (flushInterval > 0 && ++unflushed >= flushInterval) {
+    					iHibSession.flush(); unflushed = 0;
+    				}
     			} else {
     				message("Skipping " + e.getAbbv() + " (missing not-null relation " + property + ")", e.getId());
     				continue;
@@ -124,30 +124,59 @@ public abstract class BaseCourseOfferingImport extends EventRelatedImports {
 	}
 
 	public void loadXml(Element rootElement) throws Exception {
+		loadXmlAsStream(rootElement);
+	}
+	
+	@Override
+	protected void beginStream(Element rootElement) throws Exception {
 		initializeTrimLeadingZeros();
 		
-		try {
-	        if (!rootElement.getName().equalsIgnoreCase(rootElementName)) {
-	        	throw new Exception("Given XML file is not a Course Offerings load file.");
-	        }
-	        beginTransaction();
-	        
-	        incremental = "true".equalsIgnoreCase(rootElement.attributeValue("incremental", "false"));
-	        if (incremental)
-	        	info("Incremental mode.");
-	        
-	        includeExams = rootElement.attributeValue("includeExams", "none");
-	        if (!"none".equals(includeExams))
-	        	info("Includes " + includeExams + " exams.");
-	        
-	        SolverParameterDef maxRoomsParam = SolverParameterDef.findByNameType(getHibSession(), "Exams.MaxRooms", SolverParameterGroup.SolverType.EXAM);
-	        if (maxRoomsParam != null && maxRoomsParam.getDefault() != null) 
-	        	defaultMaxNbrRooms = Integer.valueOf(maxRoomsParam.getDefault());
+        if (!rootElement.getName().equalsIgnoreCase(rootElementName)) {
+        	throw new Exception("Given XML file is not a Course Offerings load file.");
+        }
+        beginTransaction();
+        
+        incremental = "true".equalsIgnoreCase(rootElement.attributeValue("incremental", "false"));
+        if (incremental)
+        	info("Incremental mode.");
+        
+        includeExams = rootElement.attributeValue("includeExams", "none");
+        if (!"none".equals(includeExams))
+        	info("Includes " + includeExams + " exams.");
+        
+        SolverParameterDef maxRoomsParam = SolverParameterDef.findByNameType(getHibSession(), "Exams.MaxRooms", SolverParameterGroup.SolverType.EXAM);
+        if (maxRoomsParam != null && maxRoomsParam.getDefault() != null) 
+        	defaultMaxNbrRooms = Integer.valueOf(maxRoomsParam.getDefault());
 
-	        initializeLoad(rootElement, rootElementName);
-			preLoadAction();
-	        loadOfferings(rootElement);
-	        
+        initializeLoad(rootElement, rootElementName);
+		preLoadAction();
+	}
+	
+	@Override
+	protected void streamElement(Element element) throws Exception {
+		try {
+			elementOffering(element);
+			flush(true);
+		} catch (Exception e) {
+			addNote("Not Loading 'offering' Error:  " + e.getMessage());
+			e.printStackTrace();
+			addNote("\t " + element.asXML());
+			updateChangeList(true);
+		}
+	}
+	
+	@Override
+	protected void failStream(Exception exception) {
+		try {
+			super.failStream(exception);
+		} finally {
+			postLoadAction();
+		}
+	}
+	
+	@Override
+	protected void endStream(Element rootElement) throws Exception {
+		try {
 	        if (!incremental) {
 		        deleteUnmatchedInstructionalOfferings();
 		        deleteUnmatchedCourseOfferings();
@@ -201,18 +230,9 @@ public abstract class BaseCourseOfferingImport extends EventRelatedImports {
 	protected abstract void postLoadAction();
 
 	protected void loadOfferings(Element rootElement) throws Exception{    
-			for ( Iterator<?> it = rootElement.elementIterator(); it.hasNext(); ) {
-	    		Element element = (Element) it.next();
-	    		try {
-	            elementOffering(element);	             
-	            flush(true);
-	    		} catch (Exception e) {
-	    			addNote("Not Loading 'offering' Error:  " + e.getMessage());
-	    			e.printStackTrace();
-	    			addNote("\t " + element.asXML());
-	    			updateChangeList(true);
-	    		}	
-	    	}
+		for ( Iterator<?> it = rootElement.elementIterator(); it.hasNext(); ) {
+			streamElement((Element) it.next());
+		}
  	}
 	
 	protected void elementOffering(Element element) throws Exception{
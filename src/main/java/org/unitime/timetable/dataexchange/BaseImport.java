@@ -22,14 +22,18 @@ package org.unitime.timetable.dataexchange;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
+import org.dom4j.ElementHandler;
+import org.dom4j.ElementPath;
 import org.dom4j.io.SAXReader;
 import org.unitime.timetable.model.TimetableManager;
+import org.xml.sax.SAXException;
 
 /**
  * 
@@ -63,8 +67,12 @@ public abstract class BaseImport extends DataExchangeHelper {
     
     public void loadXml(InputStream inputStream) throws Exception {
         try {
-            Document document = (new SAXReader()).read(inputStream);
-            loadXml(document.getRootElement());
+        	if (canStream()) {
+        		importStream(inputStream, this, null, null);
+        	} else {
+                Document document = (new SAXReader()).read(inputStream);
+                loadXml(document.getRootElement());
+        	}
         } catch (DocumentException e) {
             fatal("Unable to parse given XML, reason:"+e.getMessage(), e);
         }
@@ -72,6 +80,185 @@ public abstract class BaseImport extends DataExchangeHelper {
     
     public abstract void loadXml(Element rootElement) throws Exception;
     
+    /**
+     * Return true if the import can process the top-level elements one by one (see {@link #beginStream(Element)},
+     * {@link #streamElement(Element)}, and {@link #endStream(Element)}), so that the whole document does not need
+     * to be kept in memory.
+     */
+    public boolean canStream() {
+    	return false;
+    }
+    
+    /**
+     * Streaming import: start the import.
+     * @param rootElement root element, with its attributes only (no child elements are available at this point)
+     */
+    protected void beginStream(Element rootElement) throws Exception {
+    	throw new Exception("Import " + getClass().getSimpleName() + " does not support streaming.");
+    }
+    
+    /**
+     * Streaming import: import one top-level element, the element is discarded afterwards.
+     */
+    protected void streamElement(Element element) throws Exception {
+    	throw new Exception("Import " + getClass().getSimpleName() + " does not support streaming.");
+    }
+    
+    /**
+     * Streaming import: finish the import, this method is responsible for its own error handling (e.g., rolling back the transaction).
+     * @param rootElement root element, all the top-level elements have been already processed and removed
+     */
+    protected void endStream(Element rootElement) throws Exception {
+    	throw new Exception("Import " + getClass().getSimpleName() + " does not support streaming.");
+    }
+    
+    /**
+     * Streaming import: called when {@link #beginStream(Element)} or {@link #streamElement(Element)} have failed.
+     */
+    protected void failStream(Exception exception) {
+    	fatal("Exception: " + exception.getMessage(), exception);
+    	rollbackTransaction();
+    }
+    
+    /**
+     * Import the whole document using the streaming methods (e.g., for a document that has been already loaded).
+     */
+    protected void loadXmlAsStream(Element rootElement) throws Exception {
+    	try {
+    		beginStream(rootElement);
+    		for (Iterator<?> i = rootElement.elementIterator(); i.hasNext(); )
+    			streamElement((Element)i.next());
+    	} catch (Exception e) {
+    		failStream(e);
+    		throw e;
+    	}
+    	endStream(rootElement);
+    }
+    
+    /**
+     * Read and import the given XML input. When the import supports streaming, the document is never fully loaded:
+     * each top-level element is imported as soon as it is read and removed from the document afterwards.
+     * @param importer import to use, if null the import is selected by the name of the root element
+     * @param userId external id of the manager doing the import (used when the importer is null, can be null)
+     * @param log log writer (used when the importer is null, can be null)
+     */
+    protected static void importStream(InputStream input, BaseImport importer, String userId, DataExchangeHelper.LogWriter log) throws Exception {
+    	StreamHandler handler = new StreamHandler(importer, userId, log);
+    	SAXReader reader = new SAXReader();
+    	reader.setDefaultHandler(handler);
+    	try {
+    		reader.read(input);
+    	} catch (DocumentException e) {
+    		// SAXReader wraps exceptions thrown by the element handler, rethrow the original import exception
+    		Exception exception = getImportException(e);
+    		if (exception == null) {
+    			// the XML is not well formed: make sure the started import is rolled back
+    			if (handler.isOpen()) handler.fail(e);
+    			throw e;
+    		}
+    		throw exception;
+    	}
+    }
+    
+    private static Exception getImportException(Throwable t) {
+    	while (t != null) {
+    		if (t instanceof StreamException)
+    			return ((StreamException)t).getException();
+    		Throwable nested = null;
+    		if (t instanceof DocumentException)
+    			nested = ((DocumentException)t).getNestedException();
+    		else if (t instanceof SAXException)
+    			nested = ((SAXException)t).getException();
+    		if (nested == null)
+    			nested = t.getCause();
+    		if (nested == t) break;
+    		t = nested;
+    	}
+    	return null;
+    }
+    
+    private static class StreamException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private Exception iException;
+		
+		private StreamException(Exception exception) {
+			super(exception.getMessage(), exception);
+			iException = exception;
+		}
+		
+		public Exception getException() { return iException; }
+    }
+    
+    private static class StreamHandler implements ElementHandler {
+    	private BaseImport iImport;
+    	private String iUserId;
+    	private DataExchangeHelper.LogWriter iLog;
+    	private boolean iStreaming = false;
+    	private boolean iOpen = false;
+    	
+    	private StreamHandler(BaseImport importer, String userId, DataExchangeHelper.LogWriter log) {
+    		iImport = importer; iUserId = userId; iLog = log;
+    	}
+
+		@Override
+		public void onStart(ElementPath path) {
+			if (path.size() != 1) return;
+			try {
+				if (iImport == null) {
+					iImport = createImportBase(path.getCurrent().getName());
+					iImport.setLog(iLog);
+					if (iUserId != null)
+						iImport.setManager(TimetableManager.findByExternalId(iUserId));
+				}
+				iStreaming = iImport.canStream();
+				if (iStreaming) {
+					iOpen = true;
+					iImport.beginStream(path.getCurrent());
+				}
+			} catch (Exception e) {
+				if (iOpen) fail(e);
+				throw new StreamException(e);
+			}
+		}
+		
+		/**
+		 * True when the streaming import has been started, but it has been neither finished nor failed
+		 */
+		private boolean isOpen() {
+			return iOpen;
+		}
+		
+		private void fail(Exception e) {
+			iOpen = false;
+			iImport.failStream(e);
+		}
+
+		@Override
+		public void onEnd(ElementPath path) {
+			if (path.size() == 2 && iStreaming) {
+				Element element = path.getCurrent();
+				try {
+					iImport.streamElement(element);
+				} catch (Exception e) {
+					fail(e);
+					throw new StreamException(e);
+				} finally {
+					element.detach();
+				}
+			} else if (path.size() == 1) {
+				try {
+					if (iStreaming) {
+						iOpen = false;
+						iImport.endStream(path.getCurrent());
+					} else
+						iImport.loadXml(path.getCurrent());
+				} catch (Exception e) {
+					throw new StreamException(e);
+				}
+			}
+		}
+    }
+    
     protected String getRequiredStringAttribute(Element element, String attributeName, String elementName) throws Exception{		
 		String attributeValue = element.attributeValue(attributeName);
 		if (attributeValue == null || attributeValue.trim().length() == 0){
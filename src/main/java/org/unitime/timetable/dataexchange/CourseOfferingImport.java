@@ -37,6 +37,11 @@ public class CourseOfferingImport extends BaseCourseOfferingImport {
 		super();
 		rootElementName = "offerings";
 	}
+	
+	@Override
+	public boolean canStream() {
+		return true;
+	}
 
 	@Override
 	protected boolean handleCustomCourseChildElements(CourseOffering courseOffering,
@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.dataexchange;
 
+import java.io.InputStream;
 import java.util.Hashtable;
 import java.util.Properties;
 
@@ -276,6 +277,14 @@ public class DataExchangeHelper {
         imp.loadXml(document.getRootElement());
     }
     
+    /**
+     * Import the given XML input. Unlike {@link #importDocument(Document, String, LogWriter)}, imports that support streaming
+     * (see {@link BaseImport#canStream()}) do not need the whole document to be loaded in memory.
+     */
+    public static void importDocument(InputStream input, String userId, LogWriter log) throws Exception {
+    	BaseImport.importStream(input, null, userId, log);
+    }
+    
     public static Document exportDocument(String rootName, Session session, Properties parameters, LogWriter log) throws Exception {
         BaseExport exp = createExportBase(rootName);
         exp.setLog(log);
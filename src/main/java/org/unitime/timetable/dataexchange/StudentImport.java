@@ -43,6 +43,7 @@ import org.unitime.timetable.model.StudentAreaClassificationMinor;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentGroup;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.model.dao.StudentDAO;
 
 /**
  * @author Tomas Muller, Timothy Almon
@@ -53,96 +54,139 @@ public class StudentImport extends BaseImport {
 		super();
 	}
 
+	private boolean iTrimLeadingZerosFromExternalId = false;
+	private boolean iIncremental = false;
+	private Session iSession = null;
+	private Hashtable<String, Long> iStudentIds = null;
+	private Map<String, AcademicArea> iAbbv2area = null;
+	private Map<String, AcademicClassification> iCode2clasf = null;
+	private Map<String, PosMajor> iCode2major = null;
+	private Map<String, PosMinor> iCode2minor = null;
+	private Map<String, StudentGroup> iCode2group = null;
+	private Map<String, StudentAccomodation> iCode2accomodation = null;
+	private Set<Long> iUpdatedStudents = null;
+
 	@Override
 	public void loadXml(Element rootElement) throws Exception {
-		try {
-			boolean trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
-			
-	        String campus = rootElement.attributeValue("campus");
-	        String year   = rootElement.attributeValue("year");
-	        String term   = rootElement.attributeValue("term");
-	        boolean incremental = "true".equals(rootElement.attributeValue("incremental", "false"));
-
-	        Session session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
-	        if(session == null)
-	           	throw new Exception("No session found for the given campus, year, and term.");
-	        
-	        if (incremental) {
-	        	info("Incremental mode enabled: only included students will be updated.");
-	        } else {
-	        	info("Incremental mode disabled: students not included in this file will be deleted.");
-	        }
+		loadXmlAsStream(rootElement);
+	}
+	
+	@Override
+	public boolean canStream() {
+		return true;
+	}
+	
+	@Override
+	protected void beginStream(Element rootElement) throws Exception {
+		iTrimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
+		
+        String campus = rootElement.attributeValue("campus");
+        String year   = rootElement.attributeValue("year");
+        String term   = rootElement.attributeValue("term");
+        iIncremental = "true".equals(rootElement.attributeValue("incremental", "false"));
 
-			beginTransaction();
-            
-	        Hashtable<String, Student> students = new Hashtable<String, Student>();
-	        for (Student student: (List<Student>)getHibSession().createQuery(
-	        		"from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId is not null").
-                    setLong("sessionId",session.getUniqueId()).list()) { 
-	        	students.put(student.getExternalUniqueId(), student);
-	        }
-	        
-            Map<String, AcademicArea> abbv2area = new Hashtable<String, AcademicArea>();
-            for (AcademicArea area: (List<AcademicArea>)getHibSession().createQuery(
-            		"from AcademicArea where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	abbv2area.put(area.getAcademicAreaAbbreviation(), area);
-            }
+        iSession = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
+        if(iSession == null)
+           	throw new Exception("No session found for the given campus, year, and term.");
+        
+        if (iIncremental) {
+        	info("Incremental mode enabled: only included students will be updated.");
+        } else {
+        	info("Incremental mode disabled: students not included in this file will be deleted.");
+        }
 
-            Map<String, AcademicClassification> code2clasf = new Hashtable<String, AcademicClassification>();
-            for (AcademicClassification clasf: (List<AcademicClassification>)getHibSession().createQuery(
-            		"from AcademicClassification where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	code2clasf.put(clasf.getCode(), clasf);
-            }
-            
-            Map<String, PosMajor> code2major = new Hashtable<String, PosMajor>();
-            for (PosMajor major: (List<PosMajor>)getHibSession().createQuery(
-            		"from PosMajor where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: major.getAcademicAreas())
-            		code2major.put(area.getAcademicAreaAbbreviation() + ":" + major.getCode(), major);
-            }
-            
-            Map<String, PosMinor> code2minor = new Hashtable<String, PosMinor>();
-            for (PosMinor minor: (List<PosMinor>)getHibSession().createQuery(
-            		"from PosMinor where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: minor.getAcademicAreas())
-            		code2minor.put(area.getAcademicAreaAbbreviation() + ":" + minor.getCode(), minor);
-            }
+		beginTransaction();
+        
+        // only the student ids are kept, the students are loaded one by one and the hibernate session is cleared after each batch
+        iStudentIds = new Hashtable<String, Long>();
+        for (Object[] o: (List<Object[]>)getHibSession().createQuery(
+        		"select s.externalUniqueId, s.uniqueId from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId is not null").
+                setLong("sessionId",iSession.getUniqueId()).list()) { 
+        	iStudentIds.put((String)o[0], (Long)o[1]);
+        }
+        
+        loadLookupTables();
+        
+        iUpdatedStudents = new HashSet<Long>();
+	}
+	
+	/**
+	 * (Re)load the academic areas, classifications, majors, minors, groups, and accommodations of the session.
+	 * Called at the beginning of the import and whenever the hibernate session is cleared (the student groups and
+	 * accommodations collections are updated by the import, so these need to be attached to the current session).
+	 */
+	protected void loadLookupTables() {
+        iAbbv2area = new Hashtable<String, AcademicArea>();
+        for (AcademicArea area: (List<AcademicArea>)getHibSession().createQuery(
+        		"from AcademicArea where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iAbbv2area.put(area.getAcademicAreaAbbreviation(), area);
+        }
 
-            Map<String, StudentGroup> code2group = new Hashtable<String, StudentGroup>();
-            for (StudentGroup group: (List<StudentGroup>)getHibSession().createQuery(
-            		"from StudentGroup where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	code2group.put(group.getGroupAbbreviation(), group);
-            }
-            
-            Map<String, StudentAccomodation> code2accomodation = new Hashtable<String, StudentAccomodation>();
-            for (StudentAccomodation accomodation: (List<StudentAccomodation>)getHibSession().createQuery(
-            		"from StudentAccomodation where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	code2accomodation.put(accomodation.getAbbreviation(), accomodation);
-            }
-	        
-	        Set<Long> updatedStudents = new HashSet<Long>(); 
-	        
-	        for (Iterator i1 = rootElement.elementIterator(); i1.hasNext(); ) {
-	            Element element = (Element) i1.next();
+        iCode2clasf = new Hashtable<String, AcademicClassification>();
+        for (AcademicClassification clasf: (List<AcademicClassification>)getHibSession().createQuery(
+        		"from AcademicClassification where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iCode2clasf.put(clasf.getCode(), clasf);
+        }
+        
+        iCode2major = new Hashtable<String, PosMajor>();
+        for (PosMajor major: (List<PosMajor>)getHibSession().createQuery(
+        		"from PosMajor where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	for (AcademicArea area: major.getAcademicAreas())
+        		iCode2major.put(area.getAcademicAreaAbbreviation() + ":" + major.getCode(), major);
+        }
+        
+        iCode2minor = new Hashtable<String, PosMinor>();
+        for (PosMinor minor: (List<PosMinor>)getHibSession().createQuery(
+        		"from PosMinor where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	for (AcademicArea area: minor.getAcademicAreas())
+        		iCode2minor.put(area.getAcademicAreaAbbreviation() + ":" + minor.getCode(), minor);
+        }
 
-	            String externalId = element.attributeValue("externalId");
-	            if (externalId == null) continue;
-	            while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
+        iCode2group = new Hashtable<String, StudentGroup>();
+        for (StudentGroup group: (List<StudentGroup>)getHibSession().createQuery(
+        		"from StudentGroup where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iCode2group.put(group.getGroupAbbreviation(), group);
+        }
+        
+        iCode2accomodation = new Hashtable<String, StudentAccomodation>();
+        for (StudentAccomodation accomodation: (List<StudentAccomodation>)getHibSession().createQuery(
+        		"from StudentAccomodation where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iCode2accomodation.put(accomodation.getAbbreviation(), accomodation);
+        }
+	}
+	
+	@Override
+	protected void streamElement(Element element) throws Exception {
+        String externalId = element.attributeValue("externalId");
+        if (externalId == null) return;
+        while (iTrimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
 
-	            importStudent(element, externalId, students, session, updatedStudents,
-	            		abbv2area, code2clasf, code2major, code2minor, code2group, code2accomodation);
-	        }
+        Long studentId = iStudentIds.remove(externalId);
+        Student student = (studentId == null ? null : StudentDAO.getInstance().get(studentId, getHibSession()));
 
-	        if (!incremental)
-	 	        for (Student student: students.values()) {
-	        		updatedStudents.add(student.getUniqueId());
+        importStudent(element, externalId, student, iSession, iUpdatedStudents,
+        		iAbbv2area, iCode2clasf, iCode2major, iCode2minor, iCode2group, iCode2accomodation);
+        
+        flushIfNeeded(false);
+        if (iFlushIfNeededCounter == 0) loadLookupTables(); // hibernate session has been cleared
+	}
+	
+	@Override
+	protected void endStream(Element rootElement) throws Exception {
+		try {
+	        if (!iIncremental)
+	 	        for (Long studentId: iStudentIds.values()) {
+	 	        	Student student = StudentDAO.getInstance().get(studentId, getHibSession());
+	 	        	if (student == null) continue;
+	 	        	iUpdatedStudents.add(studentId);
 	        		getHibSession().delete(student);
+	        		flushIfNeeded(false);
 	 	        }
 	        
-            info(updatedStudents.size() + " students changed");
+            info(iUpdatedStudents.size() + " students changed");
 
- 	        if (!updatedStudents.isEmpty())
- 	 	        StudentSectioningQueue.studentChanged(getHibSession(), null, session.getUniqueId(), updatedStudents);
+ 	        if (!iUpdatedStudents.isEmpty())
+ 	 	        StudentSectioningQueue.studentChanged(getHibSession(), null, iSession.getUniqueId(), iUpdatedStudents);
             
             commitTransaction();
 		} catch (Exception e) {
@@ -152,11 +196,11 @@ public class StudentImport extends BaseImport {
 		}
 	}
 	
-	protected Student importStudent(Element element, String externalId, Hashtable<String, Student> students, Session session, Set<Long> updatedStudents,
+	protected Student importStudent(Element element, String externalId, Student student, Session session, Set<Long> updatedStudents,
 			Map<String, AcademicArea> abbv2area, Map<String, AcademicClassification> code2clasf, Map<String, PosMajor> code2major, Map<String, PosMinor> code2minor,
 			Map<String, StudentGroup> code2group, Map<String, StudentAccomodation> code2accomodation) {
 		
-        Student student = updateStudentInfo(element, externalId, students, session, updatedStudents);
+        student = updateStudentInfo(element, externalId, student, session, updatedStudents);
 		
 		updateStudentMajors(element, student, updatedStudents, abbv2area, code2clasf, code2major);
 		
@@ -171,13 +215,12 @@ public class StudentImport extends BaseImport {
     	return student;
 	}
 	
-	protected Student updateStudentInfo(Element element, String externalId, Hashtable<String, Student> students, Session session, Set<Long> updatedStudents) {
+	protected Student updateStudentInfo(Element element, String externalId, Student student, Session session, Set<Long> updatedStudents) {
     	String fName = element.attributeValue("firstName", "Name");
     	String mName = element.attributeValue("middleName");
     	String lName = element.attributeValue("lastName", "Unknown");
     	String email = element.attributeValue("email");
 
-    	Student student = students.remove(externalId);
     	if (student == null) {
     		student = new Student();
             student.setSession(session);
@@ -388,6 +388,11 @@ public enum ApplicationProperty {
 	@Description("Room Filter: distance limit (in meters) for nearby locations")
 	EventNearByDistance("tmtbl.events.nearByDistance"),
 
+	@Type(Integer.class)
+	@DefaultValue("300")
+	@Description("Room Filter: how long (in seconds) is the in-memory room catalog of an academic session kept before it is reloaded (it is also reloaded when a room is changed using the Rooms page)")
+	RoomCatalogTimeToLive("tmtbl.events.roomCatalog.timeToLive"),
+
 	@Type(Integer.class)
 	@DefaultValue("0")
 	@Description("Rooms: default break time for a room of type % (% is the room type reference)")
@@ -409,6 +414,16 @@ public enum ApplicationProperty {
 	@Description("Solver: minimal amount of free memory (in MB) for the solver to load")
 	SolverMemoryLimit("tmtbl.solver.mem_limit"),
 
+	@Type(Double.class)
+	@DefaultValue("10.0")
+	@Description("Solver: when placing a new solver instance, weight of the memory (per GB) that would remain available on the solver server once the problem is loaded")
+	SolverPlacementMemoryWeight("tmtbl.solver.placement.memoryWeight"),
+
+	@Type(Double.class)
+	@DefaultValue("10.0")
+	@Description("Solver: when placing a new solver instance, weight of the system load (per processor) of the solver server")
+	SolverPlacementLoadWeight("tmtbl.solver.placement.loadWeight"),
+
 	@Values({"fatal", "error", "warn", "info", "debug", "trace"})
 	@Description("Solver: log level for %")
 	@Parameter("operation")
@@ -589,6 +604,11 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: allow student to select over-expected sections (even if there is a choice avoiding them)")
 	OnlineSchedulingAllowOverExpected("unitime.sectioning.allowOverExpected"),
 
+	@Type(Integer.class)
+	@DefaultValue("1")
+	@Description("Online Student Scheduling: number of workers the computation of suggestions is split into (when greater than one, suggestions are computed in parallel using a shared thread pool of this size)")
+	OnlineSchedulingSuggestionsThreads("unitime.sectioning.suggestions.threads"),
+
 	@Type(Boolean.class)
 	@DefaultValue("true")
 	@Description("Online Student Scheduling Log: enable logging (online sectioning log)")
@@ -599,6 +619,21 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling Log: limit on the number of records held in memory (before persisted)")
 	OnlineSchedulingLogLimit("unitime.sectioning.log.limit"),
 
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Online Student Scheduling Log: number of records persisted at once (records are persisted as soon as there is this many of them waiting)")
+	OnlineSchedulingLogBatchSize("unitime.sectioning.log.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("5")
+	@Description("Online Student Scheduling Log: maximal time in seconds a record waits before it is persisted (at least one second)")
+	OnlineSchedulingLogFlushInterval("unitime.sectioning.log.flushInterval"),
+
+	@Type(Integer.class)
+	@DefaultValue("2")
+	@Description("Online Student Scheduling Log: number of threads persisting the records")
+	OnlineSchedulingLogThreads("unitime.sectioning.log.threads"),
+
 	@Description("Online Student Scheduling Log: besides of the database, also log the actions in the given file (if set)")
 	OnlineSchedulingLogFile("unitime.sectioning.log.file"),
 
@@ -1196,6 +1231,21 @@ public enum ApplicationProperty {
 	@Description("Event ICS Calendar: set main contact as organizer")
 	EventCalendarSetOrganizer("unitime.events.ics_set_organizer"),
 	
+	@Type(Integer.class)
+	@DefaultValue("1000")
+	@Description("iCalendar Feed: number of calendar feeds that are cached (0 to disable the cache, conditional GET is still supported using the ETag header)")
+	CalendarFeedCacheSize("unitime.calendar.cache.size"),
+	
+	@Type(Integer.class)
+	@DefaultValue("900")
+	@Description("iCalendar Feed: time to live of a cached calendar feed in seconds (changes that are not reflected in the feed version, e.g., a change of an examination status, are picked up after this time)")
+	CalendarFeedCacheTimeToLive("unitime.calendar.cache.ttl"),
+	
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Events Export: approximate number of meetings looked up at once by the streaming exports (CSV, JSON, and iCalendar); a larger export is split into multiple lookups whose results are written to temporary files and merged (0 to disable)")
+	EventExportChunkSize("unitime.export.events.chunkSize"),
+	
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Events: departmental managers can only see class events of their department(s) until the schedule is published (academic session status includes no-role class schedule)")
@@ -1415,6 +1465,11 @@ public enum ApplicationProperty {
 	@Description("Clustering: solver request timeout in milliseconds (0 means wait until all responses have been received)")
 	SolverClusterTimeout("unitime.solver.timeout"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Clustering: use the compact marshaller for the solver proxy calls (method ids instead of method names and parameter types, streamed externalizable arguments); must be the same on all the nodes of the solver cluster")
+	SolverClusterCompactMarshaller("unitime.solver.jgroups.compact"),
+
 	@Type(Integer.class)
 	@DefaultValue("100")
 	@Description("Test HQL: maximum number of returned lines")
@@ -1430,6 +1485,21 @@ public enum ApplicationProperty {
 	@Description("Query Log: record request object/parameters as JSON message")
 	QueryLogJSON("unitime.query.log.json"),
 
+	@Type(Integer.class)
+	@DefaultValue("10")
+	@Description("GWT RPC: maximal number of asynchronous requests (e.g., reports or exports) that are being executed at the same time")
+	GwtRpcAsyncThreads("unitime.rpc.async.threads"),
+
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("GWT RPC: maximal number of asynchronous requests waiting for execution, any further request is rejected")
+	GwtRpcAsyncQueueLimit("unitime.rpc.async.queue"),
+
+	@Type(Integer.class)
+	@DefaultValue("10")
+	@Description("GWT RPC: number of seconds a waiting asynchronous request is held on the server before its queue position is reported back to the client")
+	GwtRpcAsyncQueueWait("unitime.rpc.async.queueWait"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Classes: if there are two or more scheduling subparts in a parent-child relation with the same instructional type (e.g., Lec - Lec a - Lec b stacked underneath), inherit preferences and the date pattern from the parent subpart whenever possible")
@@ -1603,6 +1673,11 @@ public enum ApplicationProperty {
 	@Description("Solver: passivate solution after given number of minutes of inactivity (disable passivation by setting to zero)")
 	SolverPasivationTime("unitime.solver.passivation.time"),
 
+	@Type(Integer.class)
+	@DefaultValue("300")
+	@Description("Solver: minimal number of seconds of inactivity before a solution can be passivated to make room for another solution being activated (when there is no solution idle for this long, the activation goes over the memory limit instead)")
+	SolverPasivationMinIdleTime("unitime.solver.passivation.minIdleTime"),
+
 	@Type(Integer.class)
 	@DefaultValue("300")
 	@Description("Online Student Scheduling: sectioning queue load interval in seconds")
@@ -1632,6 +1707,41 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: server support replications (it can be loaded on multiple machines of the cluster)")
 	OnlineSchedulingServerReplicated("unitime.enrollment.server.replicated"),
 
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: use striped (per offering / per student) locking instead of a single read-write lock for the whole academic session")
+	OnlineSchedulingServerStripedLocking("unitime.enrollment.server.stripedLocking"),
+	
+	@Type(Integer.class)
+	@DefaultValue("1024")
+	@Description("Online Student Scheduling: number of lock stripes used by the striped locking (student and offering ids are mapped to the stripes)")
+	OnlineSchedulingServerLockStripes("unitime.enrollment.server.lockStripes"),
+
+	@Type(Integer.class)
+	@DefaultValue("4")
+	@Description("Online Student Scheduling: number of threads executing asynchronous actions (e.g., wait-list checks and student emails) of an academic session; actions of the same student or offering are still executed in order")
+	OnlineSchedulingServerAsyncThreads("unitime.enrollment.server.asyncThreads"),
+
+	@Type(Integer.class)
+	@DefaultValue("300")
+	@Description("Online Student Scheduling: time to live (in seconds) of the course search index of the database server (used when the online scheduling server is not running); the index is also dropped when an offering change is recorded in the student sectioning queue")
+	OnlineSchedulingDatabaseServerCourseIndexTTL("unitime.enrollment.dbserver.courseIndexTTL"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: periodically save a snapshot of the server data and use it on start-up (warm start) instead of reloading everything from the database")
+	OnlineSchedulingServerSnapshot("unitime.enrollment.server.snapshot"),
+
+	@Type(Integer.class)
+	@DefaultValue("900")
+	@Description("Online Student Scheduling: how often (in seconds) the server snapshot is saved")
+	OnlineSchedulingServerSnapshotInterval("unitime.enrollment.server.snapshot.interval"),
+
+	@Type(Integer.class)
+	@DefaultValue("1440")
+	@Description("Online Student Scheduling: maximal age (in minutes) of a server snapshot that can be used on start-up, an older snapshot is ignored and all the data are reloaded from the database")
+	OnlineSchedulingServerSnapshotMaxAge("unitime.enrollment.server.snapshot.maxAge"),
+
 	@Type(Integer.class)
 	@DefaultValue("366")
 	@Description("Change Log: automatically remove records after the given number of days")
@@ -1792,6 +1902,16 @@ public enum ApplicationProperty {
 	@Description("Timetable Grid: skip holidays in room utilization computations")
 	TimetableGridUtilizationSkipHolidays("tmtbl.timeGrid.utilizationSkipHolidays"),
 
+	@Type(Integer.class)
+	@DefaultValue("300")
+	@Description("Timetable Grid: how long (in seconds) are the timetable grid models of a saved solution kept in the cache, unless the solution is changed in the meantime (0 disables the cache)")
+	TimetableGridCacheTimeToLive("tmtbl.timeGrid.cache.timeToLive"),
+
+	@Type(Integer.class)
+	@DefaultValue("20")
+	@Description("Timetable Grid: maximal number of timetable grids (of saved solutions) kept in the cache")
+	TimetableGridCacheSize("tmtbl.timeGrid.cache.size"),
+
 	@Description("Contact Us: address")
 	ContactUsAddress("tmtbl.contact.address"),
 
@@ -2264,28 +2384,92 @@ public enum ApplicationProperty {
 	@Description("Session Backup: include point in time data")
 	SessionBackupPointInTime("unitime.session_backup.pointInTimeData"),
 	
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Session Backup: maximal number of records written in one table chunk (tables are read using a scrollable cursor and written in chunks to keep the memory footprint low, 0 to write each table at once)")
+	SessionBackupChunkSize("unitime.session_backup.chunkSize"),
+	
+	@Type(Integer.class)
+	@DefaultValue("4")
+	@Description("Session Backup: number of tables that are exported in parallel, each using its own database session (1 to export all tables using a single session)")
+	SessionBackupThreads("unitime.session_backup.threads"),
+	
+	@Type(Integer.class)
+	@DefaultValue("1000")
+	@Description("Session Restore: number of records that are saved between two flushes (the inserts are sent to the database in JDBC batches, see hibernate.jdbc.batch_size)")
+	SessionRestoreFlushInterval("unitime.session_restore.flushInterval"),
+	
+	@Type(Integer.class)
+	@DefaultValue("2")
+	@Description("Queue Processor: number of background tasks (e.g., PDF examination reports, data exchange, roll forward, scripts) that can run at the same time")
+	QueueProcessorWorkers("unitime.queue.workers"),
+	
+	@Type(Integer.class)
+	@DefaultValue("0")
+	@Parameter("item type")
+	@Description("Queue Processor: priority of a background task of the given type (spaces in the type are replaced by underscores, e.g., unitime.queue.priority.PDF_Exam_Report), tasks with a higher priority are started first")
+	QueueItemPriority("unitime.queue.priority.%"),
+	
+	@Type(Integer.class)
+	@Parameter("item type")
+	@Description("Queue Processor: maximal number of background tasks of the given type that can run at the same time (spaces in the type are replaced by underscores, 0 for no limit; defaults to 1 for Roll Forward and Data Exchange, no limit otherwise)")
+	QueueItemMaxRunning("unitime.queue.maxRunning.%"),
+	
+	@Parameter("item type")
+	@Description("Queue Processor: exclusive group of background tasks of the given type, tasks of the same group never run at the same time (spaces in the type are replaced by underscores, empty for no group; defaults to the same group for Roll Forward, Data Exchange, and Script, no group otherwise)")
+	QueueItemExclusiveGroup("unitime.queue.exclusive.%"),
+	
 	@Type(Integer.class)
 	@DefaultValue("1")
 	@Description("Instructional Offerings / Classes: maximal number of selected subject areas for the search to start automatically")
 	MaxSubjectsToSearchAutomatically("unitime.auto_search.maxSubjects"),
+	
+	@Type(Integer.class)
+	@DefaultValue("0")
+	@Description("Permissions: time to live (in seconds) of the permission decisions shared between requests (0 to only cache the decisions within a request)")
+	PermissionCacheTimeToLive("unitime.permissions.cache.ttl"),
 	;
 
 	String iKey;
+	private volatile Defaults iDefaults = null;
 	
 	ApplicationProperty(String key) { iKey = key; }
 	
+	/**
+	 * Default value and old keys of the property, the annotations are only looked up once.
+	 */
+	private static class Defaults {
+		private final String iDefaultValue;
+		private final String[] iReplaces;
+		
+		private Defaults(ApplicationProperty property) {
+			DefaultValue defaultValue = null;
+			Replaces replaces = null;
+			try {
+				defaultValue = ApplicationProperty.class.getField(property.name()).getAnnotation(DefaultValue.class);
+				replaces = ApplicationProperty.class.getField(property.name()).getAnnotation(Replaces.class);
+			} catch (NoSuchFieldException e) {
+			} catch (SecurityException e) {
+			}
+			iDefaultValue = (defaultValue == null ? null : defaultValue.value());
+			iReplaces = (replaces == null ? null : replaces.value());
+		}
+	}
+	
+	private Defaults defaults() {
+		Defaults defaults = iDefaults;
+		if (defaults == null) {
+			defaults = new Defaults(this);
+			iDefaults = defaults;
+		}
+		return defaults;
+	}
+	
 	public String key() { return iKey; }
 	public String key(String reference) { return (reference == null ? iKey : iKey.replace("%", reference)); }
 	
 	public String defaultValue() {
-		try {
-			DefaultValue defaultValue = ApplicationProperty.class.getField(name()).getAnnotation(DefaultValue.class);
-			return (defaultValue == null ? null : defaultValue.value());
-		} catch (NoSuchFieldException e) {
-			return null;
-		} catch (SecurityException e) {
-			return null;
-		}
+		return defaults().iDefaultValue;
 	}
 	public String description() {
 		try {
@@ -2342,8 +2526,11 @@ public enum ApplicationProperty {
 		}
 	}
 	
+	/**
+	 * Resolved value of the property, see {@link ApplicationProperties#getSnapshot()}.
+	 */
 	public String value() {
-		return value(null, null);
+		return ApplicationProperties.getSnapshot().value(this);
 	}
 	
 	public String value(String reference) {
@@ -2365,7 +2552,7 @@ public enum ApplicationProperty {
 	}
 	
 	public boolean isTrue() {
-		return "true".equalsIgnoreCase(value());
+		return ApplicationProperties.getSnapshot().isTrue(this);
 	}
 	
 	public boolean isTrue(String reference) {
@@ -2381,11 +2568,7 @@ public enum ApplicationProperty {
 	}
 	
 	public Integer intValue() {
-		try {
-			return Integer.valueOf(value());
-		} catch (Exception e) {
-			return null;
-		}
+		return ApplicationProperties.getSnapshot().intValue(this);
 	}
 	
 	public Integer intValue(String reference) {
@@ -2397,30 +2580,15 @@ public enum ApplicationProperty {
 	}
 	
 	public Float floatValue() {
-		try {
-			return Float.valueOf(value());
-		} catch (Exception e) {
-			return null;
-		}
+		return ApplicationProperties.getSnapshot().floatValue(this);
 	}
 	
 	public Double doubleValue() {
-		try {
-			return Double.valueOf(value());
-		} catch (Exception e) {
-			return null;
-		}
+		return ApplicationProperties.getSnapshot().doubleValue(this);
 	}
 	
 	private String[] replaces() {
-		try {
-			Replaces replaces = ApplicationProperty.class.getField(name()).getAnnotation(Replaces.class);
-			return (replaces == null ? null : replaces.value());
-		} catch (NoSuchFieldException e) {
-			return null;
-		} catch (SecurityException e) {
-			return null;
-		}
+		return defaults().iReplaces;
 	}
 	
 	public boolean matches(String key) {
@@ -508,6 +508,16 @@ public class EventFilterBackend extends FilterBoxBackend<EventFilterRpcRequest>
 			params.put(name, value);
 		}
 		
+		/**
+		 * Only return events of the given partition, i.e., events with the unique id modulo the number of partitions equal to the partition.
+		 * See {@link EventLookupBackend#setPartition(int, int)}.
+		 */
+		public void restrictToPartition(int partition, int nrPartitions) {
+			addWhere("partition", "mod(e.uniqueId, :nrPartitions) = :partition");
+			addParameter("partition", "nrPartitions", nrPartitions);
+			addParameter("partition", "partition", partition);
+		}
+		
 		public String getFrom(Collection<String> excludeOption) {
 			String from = "";
 			for (Map.Entry<String, String> entry: iFrom.entrySet()) {
@@ -97,6 +97,21 @@ import org.unitime.timetable.util.Formats;
 @GwtRpcImplements(EventLookupRpcRequest.class)
 public class EventLookupBackend extends EventAction<EventLookupRpcRequest, GwtRpcResponseList<EventInterface>>{
 	private static Logger sLog = Logger.getLogger(EventLookupBackend.class);
+	private int iPartition = 0, iNrPartitions = 1;
+	
+	/**
+	 * Only look up events of the given partition (events are partitioned by their unique id modulo the number of partitions).
+	 * This is used to split a large lookup into a few smaller ones, see {@link org.unitime.timetable.export.events.EventsExporter}.
+	 */
+	public void setPartition(int partition, int nrPartitions) {
+		iPartition = partition; iNrPartitions = nrPartitions;
+	}
+	
+	public boolean isPartitioned() { return iNrPartitions > 1; }
+	
+	protected boolean isInPartition(Long eventId) {
+		return !isPartitioned() || eventId == null || Math.abs(eventId % iNrPartitions) == iPartition;
+	}
 
 	@Override
 	public GwtRpcResponseList<EventInterface> execute(EventLookupRpcRequest request, EventContext context) {
@@ -206,6 +221,7 @@ public class EventLookupBackend extends EventAction<EventLookupRpcRequest, GwtRp
 					request.getEventFilter().addOption("type", Event.sEventTypesAbbv[Event.sEventTypeUnavailable]);
 				}
 				EventFilterBackend.EventQuery query = EventFilterBackend.getQuery(request.getEventFilter(), context);
+				if (isPartitioned()) query.restrictToPartition(iPartition, iNrPartitions);
 				int limit = request.getLimit();
 				String nameFormat = context.getUser().getProperty(UserProperty.NameFormat);
 				
@@ -1910,6 +1926,7 @@ public class EventLookupBackend extends EventAction<EventLookupRpcRequest, GwtRp
 				if (request.getEventFilter().hasOptions("flag") && request.getEventFilter().getOptions("flag").contains("Conflicts")) {
 					request.getEventFilter().setOption("mode", "Conflicting Events");
 					query = EventFilterBackend.getQuery(request.getEventFilter(), context);
+					if (isPartitioned()) query.restrictToPartition(iPartition, iNrPartitions);
 					
 					List<Object[]> conflicts = null;
 					switch (request.getResourceType()) {
@@ -2776,6 +2793,11 @@ public class EventLookupBackend extends EventAction<EventLookupRpcRequest, GwtRp
 					}
 				}
 				
+				// Events that are not stored in the database (e.g., arranged hours or unavailabilities) are filtered here
+				if (isPartitioned())
+					for (Iterator<EventInterface> i = ret.iterator(); i.hasNext(); )
+						if (!isInPartition(i.next().getId())) i.remove();
+				
 				return ret;
 			} finally {
 				hibSession.close();
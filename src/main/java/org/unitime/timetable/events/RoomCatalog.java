@@ -0,0 +1,528 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.events;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cpsolver.ifs.util.DistanceMetric;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Building;
+import org.unitime.timetable.model.Department;
+import org.unitime.timetable.model.DepartmentRoomFeature;
+import org.unitime.timetable.model.ExamType;
+import org.unitime.timetable.model.GlobalRoomFeature;
+import org.unitime.timetable.model.Location;
+import org.unitime.timetable.model.Room;
+import org.unitime.timetable.model.RoomDept;
+import org.unitime.timetable.model.RoomFeature;
+import org.unitime.timetable.model.RoomGroup;
+import org.unitime.timetable.model.RoomType;
+import org.unitime.timetable.model.RoomTypeOption;
+
+/**
+ * In-memory catalog of the rooms of an academic session, used by the {@link RoomFilterBackend}.<br>
+ * Each room is kept as a detached {@link Entry} (with its type, building, features, groups, departments, and examination types)
+ * and it is given an ordinal number, so that a set of rooms can be represented by a bit set. The catalog contains inverted
+ * indexes of rooms by room type, building, feature, and group (with the facet counts of all the rooms precomputed), and
+ * a spatial grid index that is used to find rooms that are near some given coordinates.<br>
+ * The catalog is immutable: it is dropped when rooms are changed (see {@link #invalidate(Long)}) or when it is older
+ * than {@link ApplicationProperty#RoomCatalogTimeToLive}, and it is created again on the next request.
+ *
+ * @author Tomas Muller
+ */
+public class RoomCatalog {
+	private static Map<Long, RoomCatalog> sCatalogs = new ConcurrentHashMap<Long, RoomCatalog>();
+	
+	private Long iSessionId;
+	private long iCreated;
+	private List<Entry> iEntries = new ArrayList<Entry>();
+	private Map<Long, Integer> iOrdinals = new HashMap<Long, Integer>();
+	private Map<Long, Item> iTypes = new HashMap<Long, Item>(), iBuildings = new HashMap<Long, Item>(), iFeatures = new HashMap<Long, Item>(), iGroups = new HashMap<Long, Item>();
+	private Map<Long, BitSet> iTypeIndex = new HashMap<Long, BitSet>(), iBuildingIndex = new HashMap<Long, BitSet>(), iFeatureIndex = new HashMap<Long, BitSet>(), iGroupIndex = new HashMap<Long, BitSet>();
+	private Map<Long, Integer> iTypeCounts = new HashMap<Long, Integer>(), iBuildingCounts = new HashMap<Long, Integer>(), iFeatureCounts = new HashMap<Long, Integer>(), iGroupCounts = new HashMap<Long, Integer>();
+	private Map<String, BitSet> iBuildingAbbvIndex = new HashMap<String, BitSet>();
+	private SpatialIndex iSpatialIndex = null;
+	
+	protected RoomCatalog(Long sessionId, org.hibernate.Session hibSession) {
+		iSessionId = sessionId;
+		iCreated = System.currentTimeMillis();
+		List<Location> locations = (List<Location>)hibSession.createQuery(
+				"select distinct l from Location l left join fetch l.roomType left join fetch l.eventDepartment where l.session.uniqueId = :sessionId")
+				.setLong("sessionId", sessionId).setCacheable(true).list();
+		// initialize the collections by a few queries, instead of one query per room and collection
+		for (String collection: new String[] {"features", "roomGroups", "roomDepts", "examTypes"})
+			hibSession.createQuery("select distinct l from Location l left join fetch l." + collection + " where l.session.uniqueId = :sessionId")
+				.setLong("sessionId", sessionId).list();
+		for (Location location: locations) {
+			Entry entry = new Entry(iEntries.size(), location);
+			iEntries.add(entry);
+			iOrdinals.put(entry.getId(), entry.getOrdinal());
+			index(iTypes, iTypeIndex, entry.getRoomType(), entry);
+			if (entry.getBuilding() != null) {
+				index(iBuildings, iBuildingIndex, entry.getBuilding(), entry);
+				BitSet bits = iBuildingAbbvIndex.get(entry.getBuilding().getAbbreviation());
+				if (bits == null) {
+					bits = new BitSet();
+					iBuildingAbbvIndex.put(entry.getBuilding().getAbbreviation(), bits);
+				}
+				bits.set(entry.getOrdinal());
+			}
+			for (Feature feature: entry.getFeatures())
+				index(iFeatures, iFeatureIndex, feature, entry);
+			for (Group group: entry.getGroups())
+				index(iGroups, iGroupIndex, group, entry);
+		}
+		precount(iTypeIndex, iTypeCounts);
+		precount(iBuildingIndex, iBuildingCounts);
+		precount(iFeatureIndex, iFeatureCounts);
+		precount(iGroupIndex, iGroupCounts);
+	}
+	
+	private static void index(Map<Long, Item> items, Map<Long, BitSet> index, Item item, Entry entry) {
+		if (item == null) return;
+		BitSet bits = index.get(item.getId());
+		if (bits == null) {
+			bits = new BitSet();
+			index.put(item.getId(), bits);
+			items.put(item.getId(), item);
+		}
+		bits.set(entry.getOrdinal());
+	}
+	
+	private static void precount(Map<Long, BitSet> index, Map<Long, Integer> counts) {
+		for (Map.Entry<Long, BitSet> e: index.entrySet())
+			counts.put(e.getKey(), e.getValue().cardinality());
+	}
+	
+	/**
+	 * Room catalog of the given academic session, it is created when there is no (valid) catalog for the session
+	 */
+	public static RoomCatalog getCatalog(Long sessionId, org.hibernate.Session hibSession) {
+		RoomCatalog catalog = sCatalogs.get(sessionId);
+		if (catalog == null || catalog.isExpired()) {
+			catalog = new RoomCatalog(sessionId, hibSession);
+			sCatalogs.put(sessionId, catalog);
+		}
+		return catalog;
+	}
+	
+	/** Drop the room catalog of the given academic session (e.g., because a room has been changed) */
+	public static void invalidate(Long sessionId) {
+		if (sessionId != null) sCatalogs.remove(sessionId);
+	}
+	
+	/** Drop all room catalogs */
+	public static void invalidateAll() {
+		sCatalogs.clear();
+	}
+	
+	public boolean isExpired() {
+		return System.currentTimeMillis() - iCreated > 1000l * ApplicationProperty.RoomCatalogTimeToLive.intValue();
+	}
+	
+	public Long getSessionId() { return iSessionId; }
+	
+	public int size() { return iEntries.size(); }
+	
+	public Entry getEntry(int ordinal) { return iEntries.get(ordinal); }
+	
+	public List<Entry> getEntries() { return Collections.unmodifiableList(iEntries); }
+	
+	/** Entries of the given set, null meaning all the rooms */
+	public List<Entry> getEntries(BitSet rooms) {
+		if (rooms == null) return new ArrayList<Entry>(iEntries);
+		List<Entry> ret = new ArrayList<Entry>(rooms.cardinality());
+		for (int i = rooms.nextSetBit(0); i >= 0; i = rooms.nextSetBit(i + 1))
+			ret.add(iEntries.get(i));
+		return ret;
+	}
+	
+	/** All the rooms */
+	public BitSet all() {
+		BitSet ret = new BitSet(iEntries.size());
+		ret.set(0, iEntries.size());
+		return ret;
+	}
+	
+	/** Rooms of the given unique ids */
+	public BitSet toBitSet(Collection<Long> locationIds) {
+		BitSet ret = new BitSet(iEntries.size());
+		for (Long id: locationIds) {
+			Integer ordinal = iOrdinals.get(id);
+			if (ordinal != null) ret.set(ordinal);
+		}
+		return ret;
+	}
+	
+	/** Rooms of the given building abbreviations */
+	public BitSet getRoomsOfBuildings(Collection<String> abbreviations) {
+		BitSet ret = new BitSet(iEntries.size());
+		for (String abbv: abbreviations) {
+			BitSet bits = iBuildingAbbvIndex.get(abbv);
+			if (bits != null) ret.or(bits);
+		}
+		return ret;
+	}
+	
+	public Collection<Item> getRoomTypes() { return iTypes.values(); }
+	public Collection<Item> getBuildings() { return iBuildings.values(); }
+	public Collection<Item> getFeatures() { return iFeatures.values(); }
+	public Collection<Item> getGroups() { return iGroups.values(); }
+	
+	private static int count(Map<Long, BitSet> index, Map<Long, Integer> counts, Long id, BitSet rooms) {
+		if (rooms == null) {
+			Integer count = counts.get(id);
+			return (count == null ? 0 : count);
+		}
+		BitSet bits = index.get(id);
+		if (bits == null) return 0;
+		bits = (BitSet)bits.clone();
+		bits.and(rooms);
+		return bits.cardinality();
+	}
+	
+	/** Number of rooms of the given set (null meaning all the rooms) that are of the given room type */
+	public int countRoomType(Long typeId, BitSet rooms) { return count(iTypeIndex, iTypeCounts, typeId, rooms); }
+	
+	/** Number of rooms of the given set (null meaning all the rooms) that are in the given building */
+	public int countBuilding(Long buildingId, BitSet rooms) { return count(iBuildingIndex, iBuildingCounts, buildingId, rooms); }
+	
+	/** Number of rooms of the given set (null meaning all the rooms) that have the given feature */
+	public int countFeature(Long featureId, BitSet rooms) { return count(iFeatureIndex, iFeatureCounts, featureId, rooms); }
+	
+	/** Number of rooms of the given set (null meaning all the rooms) that are in the given group */
+	public int countGroup(Long groupId, BitSet rooms) { return count(iGroupIndex, iGroupCounts, groupId, rooms); }
+	
+	/**
+	 * Rooms that may be within the given distance from any of the given coordinates, using the spatial grid index.
+	 * The returned set is a superset of the rooms that are that close (the exact distance is to be checked using the distance metric),
+	 * but it never contains a room without coordinates.
+	 * @param coordinates list of x, y coordinate pairs (and the unique id of the room or a negative building id)
+	 */
+	public BitSet getNearbyCandidates(Collection<RoomFilterBackend.Coordinates> coordinates, double distanceInMeters, DistanceMetric metric) {
+		SpatialIndex index = iSpatialIndex;
+		if (index == null || !index.isApplicable(distanceInMeters, metric.isLegacy())) {
+			index = new SpatialIndex(distanceInMeters, metric.isLegacy());
+			iSpatialIndex = index;
+		}
+		BitSet ret = new BitSet(iEntries.size());
+		for (RoomFilterBackend.Coordinates c: coordinates)
+			if (c.hasCoordinates()) index.nearby(c.x(), c.y(), ret);
+		ret.or(index.getUnbounded());
+		// travel times take precedence over the distances computed from the coordinates
+		Map<Long, Map<Long, Integer>> travelTimes = metric.getTravelTimes();
+		if (travelTimes != null && !travelTimes.isEmpty()) {
+			for (RoomFilterBackend.Coordinates c: coordinates) {
+				if (!c.hasCoordinates() || c.id() == null) continue;
+				for (Map.Entry<Long, Map<Long, Integer>> e: travelTimes.entrySet()) {
+					if (c.id().equals(e.getKey())) {
+						for (Long id: e.getValue().keySet()) {
+							Integer ordinal = iOrdinals.get(id);
+							if (ordinal != null && iEntries.get(ordinal).hasCoordinates()) ret.set(ordinal);
+						}
+					} else if (e.getValue().containsKey(c.id())) {
+						Integer ordinal = iOrdinals.get(e.getKey());
+						if (ordinal != null && iEntries.get(ordinal).hasCoordinates()) ret.set(ordinal);
+					}
+				}
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Spatial grid index: rooms are bucketed by their coordinates into square cells, so that only the rooms in the cells
+	 * around a point need to be checked. Cell size is derived from the distance (in meters): for the legacy coordinates,
+	 * the distance is the euclidean distance of the coordinates, otherwise the coordinates are latitude and longitude
+	 * (in degrees).
+	 */
+	private class SpatialIndex {
+		private double iDistance;
+		private boolean iLegacy;
+		private double iCellSize;
+		private Map<Long, BitSet> iCells = new HashMap<Long, BitSet>();
+		private BitSet iUnbounded = new BitSet();
+		
+		private SpatialIndex(double distanceInMeters, boolean legacy) {
+			iDistance = distanceInMeters; iLegacy = legacy;
+			iCellSize = Math.max(legacy ? distanceInMeters : distanceInMeters / 110000.0, 1e-6);
+			for (Entry entry: iEntries) {
+				if (!entry.hasCoordinates()) continue;
+				// legacy metric returns a fixed distance for negative coordinates
+				if (legacy && (entry.getX() < 0 || entry.getY() < 0)) { iUnbounded.set(entry.getOrdinal()); continue; }
+				long key = cell(entry.getX(), entry.getY());
+				BitSet bits = iCells.get(key);
+				if (bits == null) {
+					bits = new BitSet();
+					iCells.put(key, bits);
+				}
+				bits.set(entry.getOrdinal());
+			}
+		}
+		
+		private boolean isApplicable(double distanceInMeters, boolean legacy) {
+			return iDistance == distanceInMeters && iLegacy == legacy;
+		}
+		
+		private BitSet getUnbounded() { return iUnbounded; }
+		
+		private long cell(double x, double y) {
+			return cell((int)Math.floor(x / iCellSize), (int)Math.floor(y / iCellSize));
+		}
+		
+		private long cell(int cx, int cy) {
+			return (((long)cx) << 32) | (cy & 0xffffffffl);
+		}
+		
+		private void nearby(double x, double y, BitSet ret) {
+			double dx, dy;
+			if (iLegacy) {
+				if (x < 0 || y < 0) { ret.or(all()); return; }
+				dx = dy = iDistance;
+			} else {
+				// one degree of latitude is at least 110574 meters, one degree of longitude is 111320 * cos(latitude) meters (10% margin)
+				dx = 1.1 * iDistance / 110574.0;
+				double lat = Math.abs(x) + dx;
+				if (lat >= 89.0) { ret.or(all()); return; }
+				dy = 1.1 * iDistance / (111320.0 * Math.cos(Math.toRadians(lat)));
+			}
+			int x0 = (int)Math.floor((x - dx) / iCellSize), x1 = (int)Math.floor((x + dx) / iCellSize);
+			int y0 = (int)Math.floor((y - dy) / iCellSize), y1 = (int)Math.floor((y + dy) / iCellSize);
+			if ((long)(x1 - x0 + 1) * (y1 - y0 + 1) > iCells.size()) {
+				for (Map.Entry<Long, BitSet> e: iCells.entrySet()) {
+					int cx = (int)(e.getKey() >> 32), cy = (int)(e.getKey().longValue());
+					if (cx >= x0 && cx <= x1 && cy >= y0 && cy <= y1) ret.or(e.getValue());
+				}
+			} else {
+				for (int cx = x0; cx <= x1; cx++)
+					for (int cy = y0; cy <= y1; cy++) {
+						BitSet bits = iCells.get(cell(cx, cy));
+						if (bits != null) ret.or(bits);
+					}
+			}
+		}
+	}
+	
+	/**
+	 * Catalog item (room type, building, feature, group, department, or examination type)
+	 */
+	public static class Item {
+		private Long iId;
+		private String iAbbreviation, iLabel, iDescription;
+		
+		public Item(Long id, String abbreviation, String label, String description) {
+			iId = id; iAbbreviation = abbreviation; iLabel = label; iDescription = description;
+		}
+		
+		public Long getId() { return iId; }
+		public String getAbbreviation() { return iAbbreviation; }
+		public String getLabel() { return iLabel; }
+		public String getDescription() { return iDescription; }
+		
+		@Override
+		public int hashCode() { return iId.hashCode(); }
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof Item)) return false;
+			return getId().equals(((Item)o).getId());
+		}
+		
+		@Override
+		public String toString() { return iAbbreviation; }
+	}
+	
+	public static class RoomTypeItem extends Item {
+		private int iOrd;
+		
+		public RoomTypeItem(RoomType type) {
+			super(type.getUniqueId(), type.getReference(), type.getLabel(), null);
+			iOrd = type.getOrd();
+		}
+		
+		public int getOrd() { return iOrd; }
+	}
+	
+	public static class BuildingItem extends Item {
+		private String iAbbrName;
+		private Double iX, iY;
+		
+		public BuildingItem(Building building) {
+			super(building.getUniqueId(), building.getAbbreviation(), building.getName(), null);
+			iAbbrName = building.getAbbrName();
+			iX = building.getCoordinateX(); iY = building.getCoordinateY();
+		}
+		
+		public String getAbbrName() { return iAbbrName; }
+		public Double getX() { return iX; }
+		public Double getY() { return iY; }
+	}
+	
+	public static class DepartmentItem extends Item {
+		private String iDeptCode, iExternalMgrAbbv, iExternalMgrLabel;
+		private boolean iExternalManager, iAllowEvents;
+		
+		public DepartmentItem(Department department) {
+			super(department.getUniqueId(), department.getAbbreviation(), department.getName(), null);
+			iDeptCode = department.getDeptCode();
+			iExternalManager = Boolean.TRUE.equals(department.isExternalManager());
+			iExternalMgrAbbv = department.getExternalMgrAbbv();
+			iExternalMgrLabel = department.getExternalMgrLabel();
+			iAllowEvents = Boolean.TRUE.equals(department.isAllowEvents());
+		}
+		
+		public String getDeptCode() { return iDeptCode; }
+		public String getName() { return getLabel(); }
+		public boolean isExternalManager() { return iExternalManager; }
+		public String getExternalMgrAbbv() { return iExternalMgrAbbv; }
+		public String getExternalMgrLabel() { return iExternalMgrLabel; }
+		public boolean isAllowEvents() { return iAllowEvents; }
+	}
+	
+	public static class Feature extends Item {
+		private boolean iGlobal;
+		private String iDeptCode;
+		private Long iTypeId;
+		private String iTypeReference;
+		
+		public Feature(RoomFeature feature) {
+			super(feature.getUniqueId(), feature.getAbbv(), feature.getLabel(), feature.getDescription());
+			iGlobal = (feature instanceof GlobalRoomFeature);
+			if (feature instanceof DepartmentRoomFeature && ((DepartmentRoomFeature)feature).getDepartment() != null)
+				iDeptCode = ((DepartmentRoomFeature)feature).getDepartment().getDeptCode();
+			if (feature.getFeatureType() != null) {
+				iTypeId = feature.getFeatureType().getUniqueId();
+				iTypeReference = feature.getFeatureType().getReference();
+			}
+		}
+		
+		public boolean isGlobal() { return iGlobal; }
+		public String getDeptCode() { return iDeptCode; }
+		public Long getTypeId() { return iTypeId; }
+		public String getTypeReference() { return iTypeReference; }
+	}
+	
+	public static class Group extends Item {
+		private boolean iGlobal;
+		private String iDeptCode;
+		
+		public Group(RoomGroup group) {
+			super(group.getUniqueId(), group.getAbbv(), group.getName(), group.getDescription());
+			iGlobal = Boolean.TRUE.equals(group.isGlobal());
+			if (group.getDepartment() != null)
+				iDeptCode = group.getDepartment().getDeptCode();
+		}
+		
+		public boolean isGlobal() { return iGlobal; }
+		public String getDeptCode() { return iDeptCode; }
+		public String getName() { return getLabel(); }
+	}
+	
+	public static class RoomDeptItem {
+		private DepartmentItem iDepartment;
+		private boolean iControl;
+		
+		public RoomDeptItem(RoomDept rd) {
+			iDepartment = new DepartmentItem(rd.getDepartment());
+			iControl = Boolean.TRUE.equals(rd.isControl());
+		}
+		
+		public DepartmentItem getDepartment() { return iDepartment; }
+		public boolean isControl() { return iControl; }
+	}
+	
+	/**
+	 * Detached room
+	 */
+	public static class Entry {
+		private int iOrdinal;
+		private Long iId;
+		private String iLabel, iDisplayName, iLabelWithDisplayName, iRoomNumber;
+		private Integer iCapacity;
+		private Double iX, iY;
+		private RoomTypeItem iRoomType;
+		private BuildingItem iBuilding;
+		private DepartmentItem iEventDepartment;
+		private boolean iEventManagement;
+		private List<Feature> iFeatures = new ArrayList<Feature>();
+		private List<Group> iGroups = new ArrayList<Group>();
+		private List<RoomDeptItem> iRoomDepts = new ArrayList<RoomDeptItem>();
+		private List<Item> iExamTypes = new ArrayList<Item>();
+		
+		public Entry(int ordinal, Location location) {
+			iOrdinal = ordinal;
+			iId = location.getUniqueId();
+			iLabel = location.getLabel();
+			iDisplayName = location.getDisplayName();
+			iLabelWithDisplayName = location.getLabelWithDisplayName();
+			iCapacity = location.getCapacity();
+			iX = location.getCoordinateX(); iY = location.getCoordinateY();
+			iRoomType = (location.getRoomType() == null ? null : new RoomTypeItem(location.getRoomType()));
+			if (location instanceof Room) {
+				iRoomNumber = ((Room)location).getRoomNumber();
+				iBuilding = new BuildingItem(((Room)location).getBuilding());
+			}
+			if (location.getEventDepartment() != null) {
+				iEventDepartment = new DepartmentItem(location.getEventDepartment());
+				iEventManagement = iEventDepartment.isAllowEvents() && location.getEffectiveEventStatus() != RoomTypeOption.Status.NoEventManagement;
+			}
+			for (RoomFeature feature: location.getFeatures())
+				iFeatures.add(new Feature(feature));
+			for (RoomGroup group: location.getRoomGroups())
+				iGroups.add(new Group(group));
+			for (RoomDept rd: location.getRoomDepts())
+				iRoomDepts.add(new RoomDeptItem(rd));
+			for (ExamType type: location.getExamTypes())
+				iExamTypes.add(new Item(type.getUniqueId(), type.getReference(), type.getLabel(), null));
+		}
+		
+		public int getOrdinal() { return iOrdinal; }
+		public Long getId() { return iId; }
+		public String getLabel() { return iLabel; }
+		public String getDisplayName() { return iDisplayName; }
+		public String getLabelWithDisplayName() { return iLabelWithDisplayName; }
+		/** Room number, null for non-university locations */
+		public String getRoomNumber() { return iRoomNumber; }
+		public Integer getCapacity() { return iCapacity; }
+		public Double getX() { return iX; }
+		public Double getY() { return iY; }
+		public boolean hasCoordinates() { return iX != null && iY != null; }
+		public RoomTypeItem getRoomType() { return iRoomType; }
+		/** Building, null for non-university locations */
+		public BuildingItem getBuilding() { return iBuilding; }
+		public DepartmentItem getEventDepartment() { return iEventDepartment; }
+		/** Event department allows events and the room is not set to no event management */
+		public boolean isEventManagement() { return iEventManagement; }
+		public List<Feature> getFeatures() { return iFeatures; }
+		public List<Group> getGroups() { return iGroups; }
+		public List<RoomDeptItem> getRoomDepts() { return iRoomDepts; }
+		public List<Item> getExamTypes() { return iExamTypes; }
+		
+		@Override
+		public String toString() { return iLabel; }
+	}
+}
@@ -21,6 +21,7 @@ package org.unitime.timetable.events;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -46,23 +47,16 @@ import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcResponse;
 import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcResponse.Entity;
 import org.unitime.timetable.gwt.shared.EventInterface.RoomFilterRpcRequest;
 import org.unitime.timetable.model.Building;
-import org.unitime.timetable.model.Department;
-import org.unitime.timetable.model.DepartmentRoomFeature;
 import org.unitime.timetable.model.DepartmentStatusType;
 import org.unitime.timetable.model.ExamType;
-import org.unitime.timetable.model.GlobalRoomFeature;
 import org.unitime.timetable.model.Location;
-import org.unitime.timetable.model.Room;
-import org.unitime.timetable.model.RoomDept;
-import org.unitime.timetable.model.RoomFeature;
 import org.unitime.timetable.model.RoomFeatureType;
-import org.unitime.timetable.model.RoomGroup;
-import org.unitime.timetable.model.RoomTypeOption;
 import org.unitime.timetable.model.TravelTime;
 import org.unitime.timetable.model.dao.RoomDAO;
 import org.unitime.timetable.model.dao.RoomFeatureTypeDAO;
 import org.unitime.timetable.model.dao.TimetableManagerDAO;
 import org.unitime.timetable.security.UserAuthority;
+import org.unitime.timetable.security.qualifiers.SimpleQualifier;
 import org.unitime.timetable.security.rights.Right;
 
 /**
@@ -98,70 +92,72 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		
 		fixRoomFeatureTypes(request);
 		
-		Map<Long, Entity> types = new HashMap<Long, Entity>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "type", context)) {
-			Entity type = types.get(location.getRoomType().getUniqueId());
-			if (type == null) {
-				type = new Entity(location.getRoomType().getUniqueId(), location.getRoomType().getReference(), location.getRoomType().getLabel(), "order", sNF.format(location.getRoomType().getOrd()), "translated-value", location.getRoomType().getLabel());
-				types.put(type.getUniqueId(), type);
-			}
-			type.incCount();
-		}
-		response.add("type", new TreeSet<Entity>(types.values()));
-		
-		Map<String, Map<Long, Entity>> featuresByType = new HashMap<String, Map<Long, Entity>>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, null, context)) {
-			for (RoomFeature rf: location.getFeatures()) {
-				if (rf instanceof GlobalRoomFeature || (rf instanceof DepartmentRoomFeature && departments != null && departments.contains(((DepartmentRoomFeature)rf).getDepartment().getDeptCode()))) {
-					if (showRoomFeature(rf.getFeatureType())) {
-						String type = (rf.getFeatureType() == null ? "feature" : rf.getFeatureType().getReference());
-						Map<Long, Entity> features = featuresByType.get(type);
-						if (features == null) {
-							features = new HashMap<Long, Entity>();
-							featuresByType.put(type, features);
-						}
-						Entity feature = features.get(rf.getUniqueId());
-						if (feature == null) {
-							feature = new Entity(rf.getUniqueId(), rf.getAbbv(), rf.getLabel(), "translated-value", rf.getLabel(), "hint", rf.getDescription());
-							features.put(feature.getUniqueId(), feature);
-						}
-						feature.incCount();
-					}
-				}
+		org.hibernate.Session hibSession = RoomDAO.getInstance().getSession();
+		RoomCatalog catalog = RoomCatalog.getCatalog(request.getSessionId(), hibSession);
+		RoomQuery rq = getQuery(request.getSessionId(), request.getOptions(), context);
+		Map<String, BitSet> filters = new HashMap<String, BitSet>();
+		
+		BitSet rooms = rooms(catalog, rq, request.getOptions(), null, -1, null, "type", filters);
+		Set<Entity> types = new TreeSet<Entity>();
+		for (RoomCatalog.Item item: catalog.getRoomTypes()) {
+			RoomCatalog.RoomTypeItem rt = (RoomCatalog.RoomTypeItem)item;
+			int count = catalog.countRoomType(rt.getId(), rooms);
+			if (count == 0) continue;
+			Entity type = new Entity(rt.getId(), rt.getAbbreviation(), rt.getLabel(), "order", sNF.format(rt.getOrd()), "translated-value", rt.getLabel());
+			type.setCount(count);
+			types.add(type);
+		}
+		response.add("type", types);
+		
+		rooms = rooms(catalog, rq, request.getOptions(), null, -1, null, null, filters);
+		Map<Long, RoomFeatureType> featureTypes = new HashMap<Long, RoomFeatureType>();
+		for (RoomFeatureType ft: RoomFeatureTypeDAO.getInstance().findAll())
+			featureTypes.put(ft.getUniqueId(), ft);
+		Map<String, Set<Entity>> featuresByType = new HashMap<String, Set<Entity>>();
+		for (RoomCatalog.Item item: catalog.getFeatures()) {
+			RoomCatalog.Feature rf = (RoomCatalog.Feature)item;
+			if (!rf.isGlobal() && (rf.getDeptCode() == null || departments == null || !departments.contains(rf.getDeptCode()))) continue;
+			if (!showRoomFeature(rf.getTypeId() == null ? null : featureTypes.get(rf.getTypeId()))) continue;
+			int count = catalog.countFeature(rf.getId(), rooms);
+			if (count == 0) continue;
+			String type = (rf.getTypeReference() == null ? "feature" : rf.getTypeReference());
+			Set<Entity> features = featuresByType.get(type);
+			if (features == null) {
+				features = new TreeSet<Entity>();
+				featuresByType.put(type, features);
 			}
+			Entity feature = new Entity(rf.getId(), rf.getAbbreviation(), rf.getLabel(), "translated-value", rf.getLabel(), "hint", rf.getDescription());
+			feature.setCount(count);
+			features.add(feature);
 		}
 		for (String type: new TreeSet<String>(featuresByType.keySet())) {
-			response.add(type.replace(' ', '_'), new TreeSet<Entity>(featuresByType.get(type).values()));
-		}
-		
-		Map<Long, Entity> groups = new HashMap<Long, Entity>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "group", context)) {
-			for (RoomGroup rg: location.getRoomGroups()) {
-				if (rg.isGlobal() || (departments != null && departments.contains(rg.getDepartment().getDeptCode()))) {
-					Entity group = groups.get(rg.getUniqueId());
-					if (group == null) {
-						group = new Entity(rg.getUniqueId(), rg.getAbbv(), rg.getName(), "translated-value", rg.getName(), "hint", rg.getDescription());
-						groups.put(group.getUniqueId(), group);
-					}
-					group.incCount();
-				}
-			}
-		}
-		response.add("group", new TreeSet<Entity>(groups.values()));
-		
-		Map<Long, Entity> buildings = new HashMap<Long, Entity>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "building", context)) {
-			if (location instanceof Room) {
-				Room room = (Room)location;
-				Entity building = buildings.get(room.getBuilding().getUniqueId());
-				if (building == null) {
-					building = new Entity(room.getBuilding().getUniqueId(), room.getBuilding().getAbbreviation(), room.getBuilding().getAbbrName());
-					buildings.put(building.getUniqueId(), building);
-				}
-				building.incCount();
-			}
-		}
-		response.add("building", new TreeSet<Entity>(buildings.values()));
+			response.add(type.replace(' ', '_'), featuresByType.get(type));
+		}
+		
+		rooms = rooms(catalog, rq, request.getOptions(), null, -1, null, "group", filters);
+		Set<Entity> groups = new TreeSet<Entity>();
+		for (RoomCatalog.Item item: catalog.getGroups()) {
+			RoomCatalog.Group rg = (RoomCatalog.Group)item;
+			if (!rg.isGlobal() && (rg.getDeptCode() == null || departments == null || !departments.contains(rg.getDeptCode()))) continue;
+			int count = catalog.countGroup(rg.getId(), rooms);
+			if (count == 0) continue;
+			Entity group = new Entity(rg.getId(), rg.getAbbreviation(), rg.getName(), "translated-value", rg.getName(), "hint", rg.getDescription());
+			group.setCount(count);
+			groups.add(group);
+		}
+		response.add("group", groups);
+		
+		rooms = rooms(catalog, rq, request.getOptions(), null, -1, null, "building", filters);
+		Set<Entity> buildings = new TreeSet<Entity>();
+		for (RoomCatalog.Item item: catalog.getBuildings()) {
+			RoomCatalog.BuildingItem b = (RoomCatalog.BuildingItem)item;
+			int count = catalog.countBuilding(b.getId(), rooms);
+			if (count == 0) continue;
+			Entity building = new Entity(b.getId(), b.getAbbreviation(), b.getAbbrName());
+			building.setCount(count);
+			buildings.add(building);
+		}
+		response.add("building", buildings);
 
 		Entity managed = new Entity(0l, "Managed", MESSAGES.labelDepartmentManagedRooms(), "translated-value", MESSAGES.attrDepartmentManagedRooms());
 		Map<Long, Entity> exams = null;
@@ -177,45 +173,48 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		boolean allRooms = (request.hasOptions("flag") && (request.getOptions("flag").contains("all") || request.getOptions("flag").contains("All")));
 		boolean deptIndep = context.hasPermission(Right.DepartmentIndependent);
 		UserAuthority autority = (context.getUser() == null ? null : context.getUser().getCurrentAuthority());
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "department", context)) {
-			Department evtDept = (location.getEventDepartment() != null && location.getEventDepartment().isAllowEvents() ? location.getEventDepartment() : null);
+		for (RoomCatalog.Entry location: catalog.getEntries(rooms(catalog, rq, request.getOptions(), null, -1, null, "department", filters))) {
+			RoomCatalog.DepartmentItem evtDept = (location.getEventDepartment() != null && location.getEventDepartment().isAllowEvents() ? location.getEventDepartment() : null);
 			boolean isManaged = false;
 			if (eventRooms) {
-				Entity department = depts.get(location.getEventDepartment().getUniqueId());
-				if (department == null) {
-					department = new Entity(location.getEventDepartment().getUniqueId(), location.getEventDepartment().getDeptCode(), location.getEventDepartment().getDeptCode() + " - " + location.getEventDepartment().getName());
-					depts.put(department.getUniqueId(), department);
+				if (location.getEventDepartment() != null) {
+					Entity department = depts.get(location.getEventDepartment().getId());
+					if (department == null) {
+						department = new Entity(location.getEventDepartment().getId(), location.getEventDepartment().getDeptCode(), location.getEventDepartment().getDeptCode() + " - " + location.getEventDepartment().getName());
+						depts.put(department.getUniqueId(), department);
+					}
+					department.incCount();
+					if (deptIndep || (userDepts != null && userDepts.contains(location.getEventDepartment().getId()))) isManaged = true;
 				}
-				department.incCount();
-				if (deptIndep || (userDepts != null && userDepts.contains(location.getEventDepartment().getUniqueId()))) isManaged = true;
 			} else {
-				for (RoomDept rd: location.getRoomDepts()) {
-					if (!deptIndep && !allRooms && (userDepts == null || !(userDepts.contains(rd.getDepartment().getUniqueId())))
-							&& (autority == null || !autority.hasQualifier(rd.getDepartment()))) continue;
-					if (evtDept != null && rd.getDepartment().equals(evtDept)) evtDept = null;
-					Entity department = depts.get(rd.getDepartment().getUniqueId());
+				for (RoomCatalog.RoomDeptItem rd: location.getRoomDepts()) {
+					RoomCatalog.DepartmentItem d = rd.getDepartment();
+					if (!deptIndep && !allRooms && (userDepts == null || !(userDepts.contains(d.getId())))
+							&& (autority == null || !autority.hasQualifier(new SimpleQualifier("Department", d.getId())))) continue;
+					if (evtDept != null && d.equals(evtDept)) evtDept = null;
+					Entity department = depts.get(d.getId());
 					if (department == null) {
-						department = new Entity(rd.getDepartment().getUniqueId(), rd.getDepartment().getDeptCode(),
-								rd.getDepartment().getDeptCode() + " - " + rd.getDepartment().getName() + (rd.getDepartment().isExternalManager() ? " (" + rd.getDepartment().getExternalMgrLabel() + ")" : ""));
+						department = new Entity(d.getId(), d.getDeptCode(),
+								d.getDeptCode() + " - " + d.getName() + (d.isExternalManager() ? " (" + d.getExternalMgrLabel() + ")" : ""));
 						depts.put(department.getUniqueId(), department);
 					}
 					department.incCount();
-					if (deptIndep || (userDepts != null && userDepts.contains(rd.getDepartment().getUniqueId()))) isManaged = true;
+					if (deptIndep || (userDepts != null && userDepts.contains(d.getId()))) isManaged = true;
 				}
 				if (evtDept != null && allRooms) {
-					Entity department = depts.get(evtDept.getUniqueId());
+					Entity department = depts.get(evtDept.getId());
 					if (department == null) {
-						department = new Entity(evtDept.getUniqueId(), evtDept.getDeptCode(),
+						department = new Entity(evtDept.getId(), evtDept.getDeptCode(),
 								evtDept.getDeptCode() + " - " + evtDept.getName() + (evtDept.isExternalManager() ? " (" + evtDept.getExternalMgrLabel() + ")" : ""));
 						depts.put(department.getUniqueId(), department);
 					}
-					if (deptIndep || (userDepts != null && userDepts.contains(evtDept.getUniqueId()))) isManaged = true;
+					if (deptIndep || (userDepts != null && userDepts.contains(evtDept.getId()))) isManaged = true;
 					department.incCount();					
 				}
 			}
 			if (exams != null && !exams.isEmpty()) {
-				for (ExamType type: location.getExamTypes()) {
-					Entity e = exams.get(type.getUniqueId());
+				for (RoomCatalog.Item type: location.getExamTypes()) {
+					Entity e = exams.get(type.getId());
 					if (e != null) e.incCount();
 				}
 			}
@@ -245,38 +244,87 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 	
 	protected List<Location> locations(Long sessionId, Map<String, Set<String>> options, Query query, int limit, Map<Long, Double> room2distance, String ignoreCommand, EventContext context) {
 		org.hibernate.Session hibSession = RoomDAO.getInstance().getSession();
-
+		RoomCatalog catalog = RoomCatalog.getCatalog(sessionId, hibSession);
 		RoomQuery rq = getQuery(sessionId, options, context);
-		org.hibernate.Query q = rq.select().exclude(ignoreCommand).query(hibSession);
-		List<Location> locations = q.setCacheable(true).list();
 		
-		Set<String> building = (options == null || "building".equals(ignoreCommand) ? null : options.get("building"));
+		final Map<Long, Double> distances = (room2distance == null ? new Hashtable<Long, Double>() : room2distance);
+		List<RoomCatalog.Entry> ret = catalog.getEntries(rooms(catalog, rq, options, query, limit, distances, ignoreCommand, new HashMap<String, BitSet>()));
+		
 		Set<String> size = (options == null || "size".equals(ignoreCommand) ? null : options.get("size"));
+		final boolean sortBySize = (size != null && !size.isEmpty());
+		Collections.sort(ret, new Comparator<RoomCatalog.Entry>() {
+			@Override
+			public int compare(RoomCatalog.Entry l1, RoomCatalog.Entry l2) {
+				Double d1 = distances.get(l1.getId());
+				Double d2 = distances.get(l2.getId());
+				if (d1 == null && d2 != null) return -1;
+				if (d1 != null && d2 == null) return 1;
+				if (d1 != null) {
+					int cmp = new Long(Math.round(d1)).compareTo(Math.round(d2));
+					if (cmp != 0) return cmp;
+				}
+				if (sortBySize) {
+					int cmp = new Integer(l1.getCapacity() != null ? l1.getCapacity() : Integer.MAX_VALUE).compareTo(l2.getCapacity() != null ? l2.getCapacity() : Integer.MAX_VALUE);
+					if (cmp != 0) return cmp;
+				}
+				return l1.getLabel().compareTo(l2.getLabel());
+			}
+		});
+		
+		List<Long> locationIds = new ArrayList<Long>(ret.size());
+		for (RoomCatalog.Entry location: (limit <= 0 || ret.size() < limit ? ret : ret.subList(0, limit)))
+			locationIds.add(location.getId());
+		return rq.locations(locationIds, hibSession);
+	}
+	
+	/**
+	 * Rooms of the catalog that match the given filter. Each option of the room query is evaluated separately (and only once, the results
+	 * are kept in the filters map), so that the rooms for all the facets can be computed from the same results. The text query and the nearby
+	 * rooms (using the spatial index of the catalog) are evaluated in memory.
+	 * @return matching rooms, null when no filter is applied (that is, when all the rooms of the catalog match)
+	 */
+	protected BitSet rooms(RoomCatalog catalog, RoomQuery rq, Map<String, Set<String>> options, Query query, int limit, Map<Long, Double> room2distance, String ignoreCommand, Map<String, BitSet> filters) {
+		BitSet rooms = null;
+		for (String option: rq.getOptions()) {
+			if (option.equals(ignoreCommand)) continue;
+			BitSet bits = filters.get(option);
+			if (bits == null && !filters.containsKey(option)) {
+				Set<Long> ids = rq.ids(option, RoomDAO.getInstance().getSession());
+				bits = (ids == null ? null : catalog.toBitSet(ids));
+				filters.put(option, bits);
+			}
+			if (bits == null) continue;
+			if (rooms == null)
+				rooms = (BitSet)bits.clone();
+			else
+				rooms.and(bits);
+		}
+		
+		Set<String> building = (options == null || "building".equals(ignoreCommand) ? null : options.get("building"));
 		Set<String> flag = (options == null || "flag".equals(ignoreCommand) ? null : options.get("flag"));
-		boolean nearby = (flag != null && (flag.contains("nearby") || flag.contains("Nearby")));
+		boolean nearby = (flag != null && (flag.contains("nearby") || flag.contains("Nearby")) && building != null && !building.isEmpty());
+		if (query == null && !nearby) return rooms;
 
 		Set<String> featureTypes = new HashSet<String>();
-		for (RoomFeatureType ft: RoomFeatureTypeDAO.getInstance().findAll())
-			if (showRoomFeature(ft)) featureTypes.add(ft.getReference().toLowerCase().replace(' ', '_'));
+		if (query != null)
+			for (RoomFeatureType ft: RoomFeatureTypeDAO.getInstance().findAll())
+				if (showRoomFeature(ft)) featureTypes.add(ft.getReference().toLowerCase().replace(' ', '_'));
 		
-		List<Location> ret = new ArrayList<Location>();
-		for (Location location: locations) {
-			if (query != null && !query.match(new LocationMatcher(location, featureTypes))) continue;
-			if (nearby && building != null && !building.isEmpty() && (!(location instanceof Room) || !building.contains(((Room)location).getBuilding().getAbbreviation()))) continue;
-			ret.add(location);
-		}
+		BitSet candidates = (rooms == null ? catalog.all() : rooms);
+		BitSet ret = (BitSet)candidates.clone();
+		if (nearby) ret.and(catalog.getRoomsOfBuildings(building));
+		if (query != null) match(catalog, ret, query, featureTypes);
 		
-		final Map<Long, Double> distances = (room2distance == null ? new Hashtable<Long, Double>() : room2distance);
-		if (nearby && building != null && !building.isEmpty() && (limit <= 0 || ret.size() < limit)) {
+		if (nearby && (limit <= 0 || ret.cardinality() < limit)) {
 			double allowedDistance = ApplicationProperty.EventNearByDistance.doubleValue();
 			Set<Coordinates> coord = new HashSet<Coordinates>();
-			for (Location location: ret)
-				coord.add(new Coordinates(location));
+			for (int i = ret.nextSetBit(0); i >= 0; i = ret.nextSetBit(i + 1))
+				coord.add(new Coordinates(catalog.getEntry(i)));
 
 			if (coord.isEmpty()) {
-				for (Building b: (List<Building>)hibSession.createQuery("select b from Building b where" +
+				for (Building b: (List<Building>)RoomDAO.getInstance().getSession().createQuery("select b from Building b where" +
 						" b.session.uniqueId = :sessionId and b.abbreviation in :building")
-						.setLong("sessionId", sessionId)
+						.setLong("sessionId", catalog.getSessionId())
 						.setParameterList("building", building, new StringType())
 						.list()) {
 					coord.add(new Coordinates(-b.getUniqueId(), b.getCoordinateX(), b.getCoordinateY()));
@@ -284,44 +332,31 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 			}
 			
 			if (!coord.isEmpty()) {
-				for (Location location: locations) {
-					if (building != null && !building.isEmpty() && (location instanceof Room) && building.contains(((Room)location).getBuilding().getAbbreviation())) continue;
-					if (query != null && !query.match(new LocationMatcher(location, featureTypes))) continue;
-					Coordinates c = new Coordinates(location);
+				BitSet near = catalog.getNearbyCandidates(coord, allowedDistance, getDistanceMetric());
+				near.and(candidates);
+				near.andNot(catalog.getRoomsOfBuildings(building));
+				if (query != null) match(catalog, near, query, featureTypes);
+				for (int i = near.nextSetBit(0); i >= 0; i = near.nextSetBit(i + 1)) {
+					Coordinates c = new Coordinates(catalog.getEntry(i));
 					Double distance = null;
 					for (Coordinates x: coord) {
 						double d = c.distance(x);
 						if (distance == null || distance > d) distance = d;
 					}
 					if (distance != null && distance <= allowedDistance) {
-						ret.add(location);
-						if (distances != null) distances.put(location.getUniqueId(), distance);
+						ret.set(i);
+						if (room2distance != null) room2distance.put(c.id(), distance);
 					}
 				}
 			}
 		}
 		
-		final boolean sortBySize = (size != null && !size.isEmpty());
-		Collections.sort(ret, new Comparator<Location>() {
-			@Override
-			public int compare(Location l1, Location l2) {
-				Double d1 = distances.get(l1.getUniqueId());
-				Double d2 = distances.get(l2.getUniqueId());
-				if (d1 == null && d2 != null) return -1;
-				if (d1 != null && d2 == null) return 1;
-				if (d1 != null) {
-					int cmp = new Long(Math.round(d1)).compareTo(Math.round(d2));
-					if (cmp != 0) return cmp;
-				}
-				if (sortBySize) {
-					int cmp = new Integer(l1.getCapacity() != null ? l1.getCapacity() : Integer.MAX_VALUE).compareTo(l2.getCapacity() != null ? l2.getCapacity() : Integer.MAX_VALUE);
-					if (cmp != 0) return cmp;
-				}
-				return l1.getLabel().compareTo(l2.getLabel());
-			}
-		});
-		
-		return (limit <= 0 || ret.size() < limit ? ret : ret.subList(0, limit));
+		return ret;
+	}
+	
+	private void match(RoomCatalog catalog, BitSet rooms, Query query, Set<String> featureTypes) {
+		for (int i = rooms.nextSetBit(0); i >= 0; i = rooms.nextSetBit(i + 1))
+			if (!query.match(new LocationMatcher(catalog.getEntry(i), featureTypes))) rooms.clear(i);
 	}
 	
 	private String suggestionQuery(String query) {
@@ -388,6 +423,7 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		Double iX, iY;
 		public Coordinates(Long id, Double x, Double y) { iId = id; iX = x; iY = y; }
 		public Coordinates(Location location) { iId = location.getUniqueId(); iX = location.getCoordinateX(); iY = location.getCoordinateY(); }
+		public Coordinates(RoomCatalog.Entry location) { iId = location.getId(); iX = location.getX(); iY = location.getY(); }
 		
 		public Long id() { return iId; }
 		public Double x() { return iX; }
@@ -420,41 +456,41 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 	}
 	
 	public class LocationMatcher implements TermMatcher {
-		private Location iLocation;
+		private RoomCatalog.Entry iLocation;
 		private Set<String> iFeatureTypes = null;
 		
-		LocationMatcher(Location location, Set<String> featureTypes) {
+		LocationMatcher(RoomCatalog.Entry location, Set<String> featureTypes) {
 			iLocation = location;
 			iFeatureTypes = featureTypes;
 		}
 		
-		public Location getLocation() { return iLocation; }
+		public RoomCatalog.Entry getLocation() { return iLocation; }
 
 		@Override
 		public boolean match(String attr, String term) {
 			if (attr == null || attr.isEmpty()) {
 				return term.isEmpty() || has(getLocation().getLabel(), term) || has(getLocation().getDisplayName(), term) || eq(getLocation().getLabelWithDisplayName(), term);
 			} else if ("feature".equals(attr) || (iFeatureTypes != null && iFeatureTypes.contains(attr.toLowerCase()))) {
-				for (RoomFeature rf: getLocation().getFeatures())
-					if (rf instanceof GlobalRoomFeature && (eq(rf.getAbbv(), term) || has(rf.getLabel(), term))) return true;
+				for (RoomCatalog.Feature rf: getLocation().getFeatures())
+					if (rf.isGlobal() && (eq(rf.getAbbreviation(), term) || has(rf.getLabel(), term))) return true;
 				return false;
 			} else if ("group".equals(attr)) {
-				for (RoomGroup rg: getLocation().getRoomGroups())
-					if (rg.isGlobal() && (eq(rg.getAbbv(), term) || has(rg.getName(), term))) return true;
+				for (RoomCatalog.Group rg: getLocation().getGroups())
+					if (rg.isGlobal() && (eq(rg.getAbbreviation(), term) || has(rg.getName(), term))) return true;
 				return false;
 			} else if ("type".equals(attr)) {
-				return eq(getLocation().getRoomType().getReference(), term) || has(getLocation().getRoomType().getLabel(), term);
+				return eq(getLocation().getRoomType().getAbbreviation(), term) || has(getLocation().getRoomType().getLabel(), term);
 			} else if ("room".equals(attr)) {
 				return has(getLocation().getLabel(), term) || has(getLocation().getDisplayName(), term);
 			} else if ("starts".equals(attr)) {
-				return getLocation().getLabel().toLowerCase().startsWith(term.toLowerCase()) || (getLocation() instanceof Room && ((Room)getLocation()).getRoomNumber().toLowerCase().startsWith(term.toLowerCase())) 
+				return getLocation().getLabel().toLowerCase().startsWith(term.toLowerCase()) || (getLocation().getRoomNumber() != null && getLocation().getRoomNumber().toLowerCase().startsWith(term.toLowerCase())) 
 						|| getLocation().getLabelWithDisplayName().toLowerCase().startsWith(term.toLowerCase())  || starts(getLocation().getDisplayName(), term);
 			} else if ("contains".equals(attr)) {
-				return getLocation().getLabel().toLowerCase().contains(term.toLowerCase()) || (getLocation() instanceof Room && ((Room)getLocation()).getRoomNumber().toLowerCase().contains(term.toLowerCase()));
+				return getLocation().getLabel().toLowerCase().contains(term.toLowerCase()) || (getLocation().getRoomNumber() != null && getLocation().getRoomNumber().toLowerCase().contains(term.toLowerCase()));
 			} else if ("building".equals(attr) || "bldg".equals(attr)) {
-				if (getLocation() instanceof Room) {
-					Building building = ((Room)getLocation()).getBuilding();
-					return eq(building.getAbbreviation(), term) || has(building.getName(), term);
+				if (getLocation().getBuilding() != null) {
+					RoomCatalog.BuildingItem building = getLocation().getBuilding();
+					return eq(building.getAbbreviation(), term) || has(building.getLabel(), term);
 				}
 				return false;
 			} else if ("size".equals(attr)) {
@@ -485,10 +521,10 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 				}
 				return min <= getLocation().getCapacity() && getLocation().getCapacity() <= max;
 			} else if ("flag".equals(attr) && "event".equalsIgnoreCase(term)) {
-				return getLocation().getEventDepartment() != null && getLocation().getEventDepartment().isAllowEvents() && getLocation().getEffectiveEventStatus() != RoomTypeOption.Status.NoEventManagement;
+				return getLocation().isEventManagement();
 			} else if ("department".equals(attr) || "dept".equals(attr) || "event".equals(attr) || "control".equals(attr)) {
 				if ("event".equalsIgnoreCase(term))
-					return getLocation().getEventDepartment() != null && getLocation().getEventDepartment().isAllowEvents() && getLocation().getEffectiveEventStatus() != RoomTypeOption.Status.NoEventManagement;
+					return getLocation().isEventManagement();
 				else if ("managed".equals(term))
 					return false; // not supported
 				else {
@@ -496,15 +532,15 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 						if (getLocation().getEventDepartment() != null && (eq(getLocation().getEventDepartment().getDeptCode(), term) || eq(getLocation().getEventDepartment().getAbbreviation(), term) || has(getLocation().getEventDepartment().getName(), term)))
 							return true;
 					if (!"event".equals(attr)) {
-						for (RoomDept rd: getLocation().getRoomDepts()) {
+						for (RoomCatalog.RoomDeptItem rd: getLocation().getRoomDepts()) {
 							if ("control".equals(attr) && !rd.isControl()) continue;
 							if (eq(rd.getDepartment().getDeptCode(), term) || eq(rd.getDepartment().getAbbreviation(), term) || has(rd.getDepartment().getName(), term)
 									|| (rd.getDepartment().isExternalManager() && (eq(rd.getDepartment().getExternalMgrAbbv(), term) || has(rd.getDepartment().getExternalMgrLabel(), term))))
 								return true;
 						}
 						if (!"control".equals(attr))
-							for (ExamType t: getLocation().getExamTypes()) {
-								if (eq(t.getReference(), term) || has(t.getLabel(), term)) return true;
+							for (RoomCatalog.Item t: getLocation().getExamTypes()) {
+								if (eq(t.getAbbreviation(), term) || has(t.getLabel(), term)) return true;
 							}
 					}
 					return false;
@@ -791,6 +827,54 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 			return query;
 		}
 		
+		/** Options that have a from or a where clause */
+		public Set<String> getOptions() {
+			Set<String> options = new HashSet<String>(iFrom.keySet());
+			options.addAll(iWhere.keySet());
+			return options;
+		}
+		
+		/** False for options that cannot restrict the rooms, that is options with no where clause and only left outer joins (e.g., fetching) */
+		public boolean isRestricting(String option) {
+			if (iWhere.containsKey(option)) return true;
+			String from = iFrom.get(option);
+			if (from == null) return false;
+			from = from.trim().toLowerCase();
+			return !from.startsWith("left") || from.contains("inner join");
+		}
+		
+		/**
+		 * Unique ids of the rooms matching the given option (ignoring all the other options)
+		 * @return null if the option does not restrict the rooms
+		 */
+		public Set<Long> ids(String option, org.hibernate.Session hibSession) {
+			if (!isRestricting(option)) return null;
+			RoomInstance instance = select("distinct l.uniqueId");
+			for (String other: getOptions())
+				if (!other.equals(option)) instance.exclude(other);
+			return new HashSet<Long>((List<Long>)instance.query(hibSession).list());
+		}
+		
+		/**
+		 * Rooms of the given unique ids, in the same order, loaded in batches (using the options that do not restrict the rooms, e.g., fetching)
+		 */
+		public List<Location> locations(List<Long> locationIds, org.hibernate.Session hibSession) {
+			Map<Long, Location> locations = new HashMap<Long, Location>();
+			for (int i = 0; i < locationIds.size(); i += 1000) {
+				RoomInstance instance = select().where("l.uniqueId in (:Xids)").set("Xids", locationIds.subList(i, Math.min(i + 1000, locationIds.size())));
+				for (String option: getOptions())
+					if (isRestricting(option)) instance.exclude(option);
+				for (Location location: (List<Location>)instance.query(hibSession).list())
+					locations.put(location.getUniqueId(), location);
+			}
+			List<Location> ret = new ArrayList<Location>(locationIds.size());
+			for (Long id: locationIds) {
+				Location location = locations.get(id);
+				if (location != null) ret.add(location);
+			}
+			return ret;
+		}
+		
 		public RoomInstance select(String select) {
 			return new RoomInstance(select);
 		}
@@ -852,6 +936,8 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 						query.setBoolean(param.getKey(), (Boolean)param.getValue());
 					} else if (param.getValue() instanceof Date) {
 						query.setDate(param.getKey(), (Date)param.getValue());
+					} else if (param.getValue() instanceof Collection) {
+						query.setParameterList(param.getKey(), (Collection)param.getValue());
 					} else {
 						query.setString(param.getKey(), param.getValue().toString());
 					}
@@ -21,6 +21,7 @@ package org.unitime.timetable.export.events;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import org.springframework.stereotype.Service;
@@ -49,6 +50,19 @@ public class EventsExportEventsToCSV extends EventsExporter {
 	@Override
 	protected void print(ExportHelper helper, EventLookupRpcRequest request, List<EventInterface> events, int eventCookieFlags, EventMeetingSortBy sort, boolean asc) throws IOException {
 		sort(events, sort, asc);
+		Printer printer = new CSVPrinter(helper.getWriter(), false);
+		helper.setup(printer.getContentType(), reference(), false);
+		hideColumns(printer, events, eventCookieFlags);
+		print(printer, events.iterator(), EventFlag.SHOW_MEETING_CONTACTS.in(eventCookieFlags));
+	}
+	
+	@Override
+	protected boolean isStreaming() {
+		return true;
+	}
+	
+	@Override
+	protected void print(ExportHelper helper, EventStream events, int eventCookieFlags) throws IOException {
 		Printer printer = new CSVPrinter(helper.getWriter(), false);
 		helper.setup(printer.getContentType(), reference(), false);
 		hideColumns(printer, events, eventCookieFlags);
@@ -76,7 +90,7 @@ public class EventsExportEventsToCSV extends EventsExporter {
 		}
 	}
 	
-	protected void print(Printer out, List<EventInterface> events, boolean showMeetingContacts) throws IOException {
+	protected void print(Printer out, Iterator<EventInterface> events, boolean showMeetingContacts) throws IOException {
 		out.printHeader(
 				/*  0 */ MESSAGES.colName(),
 				/*  1 */ MESSAGES.colSection(),
@@ -106,7 +120,8 @@ public class EventsExportEventsToCSV extends EventsExporter {
 		
 		Formats.Format<Date> df = Formats.getDateFormat(Formats.Pattern.DATE_EVENT);
 		
-		for (EventInterface event: events) {
+		while (events.hasNext()) {
+			EventInterface event = events.next();
 			for (MultiMeetingInterface multi: EventInterface.getMultiMeetings(event.getMeetings(), false, showMeetingContacts)) {
 				MeetingInterface meeting = multi.getMeetings().first();
 				out.printLine(
@@ -20,6 +20,8 @@
 package org.unitime.timetable.export.events;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -83,6 +85,7 @@ import biweekly.util.Recurrence.Frequency;
  */
 @Service("org.unitime.timetable.export.Exporter:events.ics")
 public class EventsExportEventsToICal extends EventsExporter {
+	private static int sChunkSize = 100;
 	
 	@Override
 	public String reference() {
@@ -93,13 +96,7 @@ public class EventsExportEventsToICal extends EventsExporter {
 	protected void print(ExportHelper helper, EventLookupRpcRequest request, List<EventInterface> events, int eventCookieFlags, EventMeetingSortBy sort, boolean asc) throws IOException {
 		helper.setup("text/calendar", reference(), false);
 		
-		ICalendar ical = new ICalendar();
-		ical.setVersion(ICalVersion.V2_0);
-		ical.setCalendarScale(CalendarScale.gregorian());
-		ical.setMethod(new Method("PUBLISH"));
-		ical.setExperimentalProperty("X-WR-CALNAME", guessScheduleName(helper, request));
-		ical.setExperimentalProperty("X-WR-TIMEZONE", TimeZone.getDefault().getID());
-		ical.setProductId("-//UniTime LLC/UniTime " + Constants.getVersion() + " Events//EN");
+		ICalendar ical = createCalendar(helper, request);
 
         for (EventInterface event: events)
 			print(ical, event);
@@ -114,6 +111,69 @@ public class EventsExportEventsToICal extends EventsExporter {
         }
 	}
 	
+	@Override
+	protected boolean isStreaming() {
+		return true;
+	}
+	
+	/**
+	 * Events are added to the calendar and written out in chunks of {@link EventsExportEventsToICal#sChunkSize} events.
+	 * The calendar header is only written with the first chunk, the following chunks only contain the events.
+	 */
+	@Override
+	protected void print(ExportHelper helper, EventStream events, int eventCookieFlags) throws IOException {
+		helper.setup("text/calendar", reference(), false);
+		
+		PrintWriter out = helper.getWriter();
+		ICalendar ical = createCalendar(helper, events.getRequest());
+		boolean header = true;
+		int count = 0;
+		while (events.hasNext()) {
+			if (print(ical, events.next())) count ++;
+			if (count >= sChunkSize) {
+				write(out, ical, header);
+				ical = new ICalendar(); header = false; count = 0;
+			}
+		}
+		if (header || count > 0)
+			write(out, ical, header);
+		out.write("END:VCALENDAR\r\n");
+		out.flush();
+	}
+	
+	/**
+	 * Write the calendar without the closing END:VCALENDAR line
+	 * @param header include the calendar header, only events are written otherwise
+	 */
+	protected void write(PrintWriter out, ICalendar ical, boolean header) throws IOException {
+		StringWriter buffer = new StringWriter();
+        ICalWriter writer = new ICalWriter(buffer, ICalVersion.V2_0);
+    	writer.getTimezoneInfo().setDefaultTimeZone(TimeZone.getDefault());
+        try {
+        	writer.write(ical);
+        	writer.flush();
+        } finally {
+        	writer.close();
+        }
+        String text = buffer.toString();
+        int start = (header ? 0 : text.indexOf("BEGIN:VEVENT"));
+        int end = text.lastIndexOf("END:VCALENDAR");
+        if (start >= 0 && end > start)
+        	out.write(text, start, end - start);
+        out.flush();
+	}
+	
+	protected ICalendar createCalendar(ExportHelper helper, EventLookupRpcRequest request) {
+		ICalendar ical = new ICalendar();
+		ical.setVersion(ICalVersion.V2_0);
+		ical.setCalendarScale(CalendarScale.gregorian());
+		ical.setMethod(new Method("PUBLISH"));
+		ical.setExperimentalProperty("X-WR-CALNAME", guessScheduleName(helper, request));
+		ical.setExperimentalProperty("X-WR-TIMEZONE", TimeZone.getDefault().getID());
+		ical.setProductId("-//UniTime LLC/UniTime " + Constants.getVersion() + " Events//EN");
+		return ical;
+	}
+	
 	public boolean print(ICalendar ical, EventInterface event) throws IOException {
 		return print(ical, event, null);
 	}
@@ -41,6 +41,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * @author Tomas Muller
@@ -57,7 +58,32 @@ public class EventsExportEventsToJSON extends EventsExporter {
 	protected void print(ExportHelper helper, EventLookupRpcRequest request, List<EventInterface> events, int eventCookieFlags, EventMeetingSortBy sort, boolean asc) throws IOException {
 		helper.setup("application/json", reference(), false);
 		
-    	Gson gson = new GsonBuilder().registerTypeAdapter(Date.class, new JsonSerializer<Date>() {
+    	helper.getWriter().write(createGson().setPrettyPrinting().create().toJson(events));
+	}
+	
+	@Override
+	protected boolean isStreaming() {
+		return true;
+	}
+	
+	@Override
+	protected void print(ExportHelper helper, EventStream events, int eventCookieFlags) throws IOException {
+		helper.setup("application/json", reference(), false);
+		
+		Gson gson = createGson().create();
+		JsonWriter writer = new JsonWriter(helper.getWriter());
+		writer.setIndent("  ");
+		writer.beginArray();
+		while (events.hasNext()) {
+			gson.toJson(events.next(), EventInterface.class, writer);
+			writer.flush();
+		}
+		writer.endArray();
+		writer.flush();
+	}
+	
+	protected GsonBuilder createGson() {
+		return new GsonBuilder().registerTypeAdapter(Date.class, new JsonSerializer<Date>() {
 			@Override
 			public JsonElement serialize(Date src, Type typeOfSrc, JsonSerializationContext context) {
 				return new JsonPrimitive(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(src));
@@ -73,9 +99,6 @@ public class EventsExportEventsToJSON extends EventsExporter {
 				else
 					return f.getName();
 			}
-		})
-		.setPrettyPrinting().create();
-    	
-    	helper.getWriter().write(gson.toJson(events));
+		});
 	}
 }
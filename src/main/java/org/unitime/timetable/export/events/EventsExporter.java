@@ -19,16 +19,30 @@
 */
 package org.unitime.timetable.export.events;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.events.EventFilterBackend;
 import org.unitime.timetable.events.EventLookupBackend;
 import org.unitime.timetable.events.ResourceLookupBackend;
 import org.unitime.timetable.events.EventAction.EventContext;
@@ -48,9 +62,17 @@ import org.unitime.timetable.gwt.shared.EventInterface.ResourceInterface;
 import org.unitime.timetable.gwt.shared.EventInterface.ResourceType;
 import org.unitime.timetable.gwt.shared.EventInterface.RoomFilterRpcRequest;
 import org.unitime.timetable.model.Session;
+import org.unitime.timetable.model.dao.EventDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.security.rights.Right;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 /**
  * @author Tomas Muller
  */
@@ -67,7 +89,64 @@ public abstract class EventsExporter implements Exporter {
 		Session session = SessionDAO.getInstance().get(sessionId);
 		if (session == null)
 			throw new IllegalArgumentException("Given academic session no longer exists.");
-
+		
+		EventContext context = new EventContext(helper.getSessionContext(), helper.getSessionContext().getUser(), sessionId);
+		EventLookupRpcRequest request = createRequest(helper, context);
+    	
+    	String sortBy = helper.getParameter("sort");
+    	EventMeetingSortBy sort = null;
+    	boolean asc = true;
+    	if (sortBy == null || sortBy.isEmpty()) {
+    		sort = null; asc = true;
+		} else if (sortBy.startsWith("+")) {
+			asc = true;
+			sort = EventMeetingSortBy.values()[Integer.parseInt(sortBy.substring(1))];
+		} else if (sortBy.startsWith("-")) {
+			asc = false;
+			sort = EventMeetingSortBy.values()[Integer.parseInt(sortBy.substring(1))];
+		} else {
+			asc = true;
+			sort = (sortBy == null ? null : EventMeetingSortBy.values()[Integer.parseInt(sortBy)]);	
+		}
+    	
+    	int eventCookieFlags = (helper.getParameter("flags") == null ? EventInterface.sDefaultEventFlags : Integer.parseInt(helper.getParameter("flags")));
+    	if (!context.hasPermission(Right.EventLookupContact)) {
+    		eventCookieFlags = EventFlag.SHOW_MAIN_CONTACT.clear(eventCookieFlags);
+    		eventCookieFlags = EventFlag.SHOW_LAST_CHANGE.clear(eventCookieFlags);
+    	}
+    	if (!context.hasPermission(Right.EventCanViewMeetingContacts)) {
+    		eventCookieFlags = EventFlag.SHOW_MEETING_CONTACTS.clear(eventCookieFlags);
+    	}
+    	eventCookieFlags = EventFlag.SHOW_SECTION.set(eventCookieFlags);
+    	
+    	if (isStreaming()) {
+    		EventStream events = new EventStream(helper, context, request, sort, asc, !"1".equals(helper.getParameter("ua")));
+    		try {
+    			print(helper, events, eventCookieFlags);
+    		} finally {
+    			events.close();
+    		}
+    		return;
+    	}
+    	
+    	List<EventInterface> events = new EventLookupBackend().findEvents(request, context);
+    	
+    	if (!"1".equals(helper.getParameter("ua"))) {
+    		for (Iterator<EventInterface> i = events.iterator(); i.hasNext();) {
+    			EventInterface event = i.next();
+    			if (event.getType() == EventType.Unavailabile) i.remove();
+    		}
+    	}
+    	
+    	print(helper, request, events, eventCookieFlags, sort, asc);
+	}
+	
+	/**
+	 * Create event lookup request from the export parameters, check permissions.
+	 * A new request is needed for each lookup as {@link EventLookupBackend#findEvents(EventLookupRpcRequest, EventContext)} may change it.
+	 */
+	protected EventLookupRpcRequest createRequest(ExportHelper helper, EventContext context) {
+		Long sessionId = helper.getAcademicSessionId();
 		EventLookupRpcRequest request = new EventLookupRpcRequest();
     	request.setSessionId(sessionId);
     	String id = helper.getParameter("id");
@@ -99,7 +178,6 @@ public abstract class EventsExporter implements Exporter {
     	}
 		request.setRoomFilter(roomFilter);
     	
-    	EventContext context = new EventContext(helper.getSessionContext(), helper.getSessionContext().getUser(), sessionId);
 		context.checkPermission(Right.Events);
 		if (request.getResourceType() == ResourceType.PERSON && !context.getUser().getExternalUserId().equals(request.getResourceExternalId()))
 			context.checkPermission(Right.EventLookupSchedule);
@@ -112,43 +190,25 @@ public abstract class EventsExporter implements Exporter {
 					request.setResourceId(resource.getId());
 			}
 		}
-    	
-    	List<EventInterface> events = new EventLookupBackend().findEvents(request, context);
-    	
-    	String sortBy = helper.getParameter("sort");
-    	EventMeetingSortBy sort = null;
-    	boolean asc = true;
-    	if (sortBy == null || sortBy.isEmpty()) {
-    		sort = null; asc = true;
-		} else if (sortBy.startsWith("+")) {
-			asc = true;
-			sort = EventMeetingSortBy.values()[Integer.parseInt(sortBy.substring(1))];
-		} else if (sortBy.startsWith("-")) {
-			asc = false;
-			sort = EventMeetingSortBy.values()[Integer.parseInt(sortBy.substring(1))];
-		} else {
-			asc = true;
-			sort = (sortBy == null ? null : EventMeetingSortBy.values()[Integer.parseInt(sortBy)]);	
-		}
-    	
-    	int eventCookieFlags = (helper.getParameter("flags") == null ? EventInterface.sDefaultEventFlags : Integer.parseInt(helper.getParameter("flags")));
-    	if (!context.hasPermission(Right.EventLookupContact)) {
-    		eventCookieFlags = EventFlag.SHOW_MAIN_CONTACT.clear(eventCookieFlags);
-    		eventCookieFlags = EventFlag.SHOW_LAST_CHANGE.clear(eventCookieFlags);
-    	}
-    	if (!context.hasPermission(Right.EventCanViewMeetingContacts)) {
-    		eventCookieFlags = EventFlag.SHOW_MEETING_CONTACTS.clear(eventCookieFlags);
-    	}
-    	eventCookieFlags = EventFlag.SHOW_SECTION.set(eventCookieFlags);
-    	
-    	if (!"1".equals(helper.getParameter("ua"))) {
-    		for (Iterator<EventInterface> i = events.iterator(); i.hasNext();) {
-    			EventInterface event = i.next();
-    			if (event.getType() == EventType.Unavailabile) i.remove();
-    		}
-    	}
-    	
-    	print(helper, request, events, eventCookieFlags, sort, asc);
+		
+		return request;
+	}
+	
+	/**
+	 * Streaming exporters get the events using {@link EventsExporter#print(ExportHelper, EventStream, int)} in the right order,
+	 * without having all the events in memory at once (see {@link EventStream}).
+	 */
+	protected boolean isStreaming() { return false; }
+	
+	/**
+	 * Exporters that do not override this method get all the events of the stream in one list,
+	 * using {@link EventsExporter#print(ExportHelper, EventLookupRpcRequest, List, int, EventMeetingSortBy, boolean)}.
+	 */
+	protected void print(ExportHelper helper, EventStream events, int eventCookieFlags) throws IOException {
+		List<EventInterface> list = new ArrayList<EventInterface>();
+		while (events.hasNext())
+			list.add(events.next());
+		print(helper, events.getRequest(), list, eventCookieFlags, events.getSort(), events.isAsc());
 	}
 	
 	protected abstract void print(ExportHelper helper, EventLookupRpcRequest request, List<EventInterface> events, int eventCookieFlags, EventMeetingSortBy sort, boolean asc) throws IOException;
@@ -164,35 +224,53 @@ public abstract class EventsExporter implements Exporter {
 		if (!hasSection) hideColumn(out, events, EventFlag.SHOW_SECTION);
 	}
 	
+	protected void hideColumns(Printer out, EventStream events, int eventCookieFlags) {
+		for (EventFlag flag: EventFlag.values()) {
+			if (!flag.in(eventCookieFlags)) hideColumn(out, null, flag);
+		}
+		if (!events.hasSection()) hideColumn(out, null, EventFlag.SHOW_SECTION);
+	}
+	
+	/**
+	 * Hide column of the given flag
+	 * @param events exported events, null when streaming
+	 */
 	protected void hideColumn(Printer out, List<EventInterface> events, EventFlag flag) {}
 	
-	protected void sort(List<EventInterface> events, final EventMeetingSortBy sort, boolean asc) {
-		if (sort != null) {
-    		Collections.sort(events, new ReverseComparator<EventInterface>(new Comparator<EventInterface>() {
+	protected Comparator<EventInterface> getComparator(final EventMeetingSortBy sort, boolean asc) {
+		if (sort == null)
+			return new Comparator<EventInterface>() {
 				@Override
 				public int compare(EventInterface e1, EventInterface e2) {
-					int cmp = EventComparator.compareEvents(e1, e2, sort);
+					return e1.compareTo(e2);
+				}
+			};
+		return new ReverseComparator<EventInterface>(new Comparator<EventInterface>() {
+			@Override
+			public int compare(EventInterface e1, EventInterface e2) {
+				int cmp = EventComparator.compareEvents(e1, e2, sort);
+				if (cmp != 0) return cmp;
+				Iterator<MeetingInterface> i1 = e1.getMeetings().iterator(), i2 = e2.getMeetings().iterator();
+				while (i1.hasNext() && i2.hasNext()) {
+					cmp = EventComparator.compareMeetings(i1.next(), i2.next(), sort);
 					if (cmp != 0) return cmp;
-					Iterator<MeetingInterface> i1 = e1.getMeetings().iterator(), i2 = e2.getMeetings().iterator();
-					while (i1.hasNext() && i2.hasNext()) {
-						cmp = EventComparator.compareMeetings(i1.next(), i2.next(), sort);
-						if (cmp != 0) return cmp;
-					}
-					cmp = EventComparator.compareFallback(e1, e2);
+				}
+				cmp = EventComparator.compareFallback(e1, e2);
+				if (cmp != 0) return cmp;
+				i1 = e1.getMeetings().iterator(); i2 = e2.getMeetings().iterator();
+				while (i1.hasNext() && i2.hasNext()) {
+					cmp = EventComparator.compareFallback(i1.next(), i2.next());
 					if (cmp != 0) return cmp;
-					i1 = e1.getMeetings().iterator(); i2 = e2.getMeetings().iterator();
-					while (i1.hasNext() && i2.hasNext()) {
-						cmp = EventComparator.compareFallback(i1.next(), i2.next());
-						if (cmp != 0) return cmp;
-					}
-					if (i1.hasNext() && !i2.hasNext()) return 1;
-					if (!i1.hasNext() && i2.hasNext()) return -1;
-					return e1.compareTo(e2);
 				}
-			}, !asc));
-    	} else {
-    		Collections.sort(events);
-    	}
+				if (i1.hasNext() && !i2.hasNext()) return 1;
+				if (!i1.hasNext() && i2.hasNext()) return -1;
+				return e1.compareTo(e2);
+			}
+		}, !asc);
+	}
+	
+	protected void sort(List<EventInterface> events, final EventMeetingSortBy sort, boolean asc) {
+		Collections.sort(events, getComparator(sort, asc));
 	}
 	
 	protected Set<EventMeeting> meetings(List<EventInterface> events, final EventMeetingSortBy sort, boolean asc) {
@@ -300,6 +378,192 @@ public abstract class EventsExporter implements Exporter {
 		}
 	}
 	
+	/**
+	 * Exported events in the order given by the comparator.<br>
+	 * When the export is expected to contain more than {@link ApplicationProperty#EventExportChunkSize} meetings, the events are
+	 * looked up in multiple partitions (see {@link EventLookupBackend#setPartition(int, int)}). Each partition is sorted and written
+	 * into a temporary file, and the files are merged while iterating. This way only one partition is kept in memory at a time.
+	 */
+	protected class EventStream implements Iterator<EventInterface> {
+		private EventLookupRpcRequest iRequest;
+		private Comparator<EventInterface> iComparator;
+		private EventMeetingSortBy iSort;
+		private boolean iAsc;
+		private boolean iSkipUnavailable;
+		private boolean iHasSection = false;
+		private Iterator<EventInterface> iEvents = null;
+		private List<File> iFiles = new ArrayList<File>();
+		private List<EventReader> iReaders = new ArrayList<EventReader>();
+		private PriorityQueue<EventReader> iQueue = null;
+		private Gson iGson = null;
+		
+		public EventStream(ExportHelper helper, EventContext context, EventLookupRpcRequest request, EventMeetingSortBy sort, boolean asc, boolean skipUnavailable) throws IOException {
+			iRequest = request;
+			iSort = sort; iAsc = asc;
+			iComparator = getComparator(sort, asc);
+			iSkipUnavailable = skipUnavailable;
+			int nrPartitions = getNrPartitions(request, context);
+			if (nrPartitions <= 1) {
+				iEvents = lookup(request, context, 0, 1).iterator();
+				return;
+			}
+			iGson = new GsonBuilder().registerTypeHierarchyAdapter(Date.class, new TypeAdapter<Date>() {
+				@Override
+				public void write(JsonWriter out, Date value) throws IOException {
+					if (value == null) out.nullValue(); else out.value(value.getTime());
+				}
+				@Override
+				public Date read(JsonReader in) throws IOException {
+					if (in.peek() == JsonToken.NULL) { in.nextNull(); return null; }
+					return new Date(in.nextLong());
+				}
+			}).create();
+			iQueue = new PriorityQueue<EventReader>(nrPartitions, new Comparator<EventReader>() {
+				@Override
+				public int compare(EventReader r1, EventReader r2) {
+					return iComparator.compare(r1.peek(), r2.peek());
+				}
+			});
+			try {
+				for (int p = 0; p < nrPartitions; p++) {
+					List<EventInterface> events = lookup(p == 0 ? request : createRequest(helper, context), context, p, nrPartitions);
+					if (events.isEmpty()) continue;
+					File file = File.createTempFile("events-", ".json");
+					iFiles.add(file);
+					Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+					try {
+						for (EventInterface event: events) {
+							iGson.toJson(event, EventInterface.class, writer);
+							writer.write('\n');
+						}
+					} finally {
+						writer.close();
+					}
+				}
+				for (File file: iFiles) {
+					EventReader reader = new EventReader(file);
+					iReaders.add(reader);
+					if (reader.peek() != null) iQueue.add(reader);
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Estimated number of partitions, based on the number of meetings that the export is going to contain.
+		 * Only room exports are partitioned (the other resources are naturally limited in size).
+		 */
+		protected int getNrPartitions(EventLookupRpcRequest request, EventContext context) {
+			int chunkSize = ApplicationProperty.EventExportChunkSize.intValue();
+			if (chunkSize <= 0 || request.getResourceType() != ResourceType.ROOM) return 1;
+			org.hibernate.Session hibSession = EventDAO.getInstance().createNewSession();
+			try {
+				EventFilterBackend.EventQuery.EventInstance query = EventFilterBackend.getQuery(request.getEventFilter(), context).select("count(distinct m)");
+				if (request.getResourceId() != null)
+					query.joinWithLocation().where("l.uniqueId = :resourceId").set("resourceId", request.getResourceId());
+				else if (request.getResourceExternalId() != null)
+					query.joinWithLocation().where("l.externalUniqueId = :externalId").set("externalId", request.getResourceExternalId());
+				Number nrMeetings = (Number)query.query(hibSession).uniqueResult();
+				return (nrMeetings == null ? 1 : (int)Math.ceil(nrMeetings.doubleValue() / chunkSize));
+			} finally {
+				hibSession.close();
+			}
+		}
+		
+		protected List<EventInterface> lookup(EventLookupRpcRequest request, EventContext context, int partition, int nrPartitions) {
+			EventLookupBackend backend = new EventLookupBackend();
+			backend.setPartition(partition, nrPartitions);
+			List<EventInterface> events = backend.findEvents(request, context);
+			for (Iterator<EventInterface> i = events.iterator(); i.hasNext();) {
+				EventInterface event = i.next();
+				if (iSkipUnavailable && event.getType() == EventType.Unavailabile) { i.remove(); continue; }
+				if (!iHasSection && getSection(event) != null) iHasSection = true;
+			}
+			Collections.sort(events, iComparator);
+			return events;
+		}
+		
+		/** Event lookup request of the (first) lookup, as updated by the {@link EventLookupBackend} */
+		public EventLookupRpcRequest getRequest() { return iRequest; }
+		
+		/** Sort by of the export, the events are returned in this order */
+		public EventMeetingSortBy getSort() { return iSort; }
+		
+		public boolean isAsc() { return iAsc; }
+		
+		/** True if there is at least one event with a section */
+		public boolean hasSection() { return iHasSection; }
+		
+		@Override
+		public boolean hasNext() {
+			if (iEvents != null) return iEvents.hasNext();
+			return !iQueue.isEmpty();
+		}
+		
+		@Override
+		public EventInterface next() {
+			if (iEvents != null) return iEvents.next();
+			EventReader reader = iQueue.poll();
+			if (reader == null) throw new NoSuchElementException();
+			try {
+				EventInterface event = reader.next();
+				if (reader.peek() != null) iQueue.add(reader);
+				return event;
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to read events: " + e.getMessage(), e);
+			}
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		/** Close and delete the temporary files */
+		public void close() {
+			for (EventReader reader: iReaders)
+				reader.close();
+			iReaders.clear();
+			for (File file: iFiles)
+				file.delete();
+			iFiles.clear();
+		}
+		
+		private class EventReader {
+			private BufferedReader iReader;
+			private EventInterface iNext = null;
+			
+			private EventReader(File file) throws IOException {
+				iReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+				advance();
+			}
+			
+			private void advance() throws IOException {
+				String line = iReader.readLine();
+				iNext = (line == null ? null : iGson.fromJson(line, EventInterface.class));
+			}
+			
+			public EventInterface peek() { return iNext; }
+			
+			public EventInterface next() throws IOException {
+				EventInterface event = iNext;
+				advance();
+				return event;
+			}
+			
+			public void close() {
+				try {
+					iReader.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+	
 	public static class ReverseComparator<T> implements Comparator<T> {
 		private Comparator<T> iComparator = null;
 		private boolean iReverse;
@@ -123,6 +123,16 @@ public class LoadingWidget extends Composite {
 		iCancelTimer.schedule(2500);
 	}
 	
+	protected void showQueuePosition(String message, int queuePosition) {
+		if (iCount == 0) return;
+		String queued = MESSAGES.waitingForQueuePosition(queuePosition + 1);
+		boolean showing = !iMessage.getText().isEmpty();
+		iMessage.setHTML(message == null || message.isEmpty() ? queued : message + "<br>" + queued);
+		if (!showing)
+			RootPanel.get().add(iMessage, Window.getScrollLeft() + Window.getClientWidth() / 2 - 225, Window.getScrollTop() + Window.getClientHeight() / 3);
+		AriaStatus.getInstance().setText(queued.replace("...", "."));
+	}
+	
 	protected void hideCancel() {
 		iCancelTimer.cancel();
 		RootPanel.get().remove(iCancel);
@@ -193,7 +203,7 @@ public class LoadingWidget extends Composite {
 	
 	public static <T extends GwtRpcResponse> void execute(GwtRpcRequest<T> request, final AsyncCallback<T> callback, final String loadingMessage) {
 		showLoading(loadingMessage);
-		GwtRpc.execute(request, new GwtRpc.CancellableCallback<T>() {
+		GwtRpc.execute(request, new GwtRpc.QueuedCallback<T>() {
 
 			@Override
 			public void onFailure(Throwable caught) {
@@ -211,6 +221,11 @@ public class LoadingWidget extends Composite {
 			public void onExecution(Long executionId) {
 				getInstance().showCancel(executionId);
 			}
+
+			@Override
+			public void onQueued(Long executionId, int queuePosition) {
+				getInstance().showQueuePosition(loadingMessage, queuePosition);
+			}
 		});
 	}
 }
@@ -42,17 +42,28 @@ public class GwtRpc {
 			@Override
 			public void onSuccess(Long executionId) {
 				callback.onExecution(executionId);
-				RPC.waitForResults(executionId, new AsyncCallback<T>() {
-					@Override
-					public void onFailure(Throwable caught) {
-						callback.onFailure(caught);
-					}
+				waitForResults(executionId, callback);
+			}
+		});
+	}
+	
+	private static <T extends GwtRpcResponse> void waitForResults(final Long executionId, final CancellableCallback<T> callback) {
+		RPC.waitForResults(executionId, new AsyncCallback<T>() {
+			@Override
+			public void onFailure(Throwable caught) {
+				if (caught instanceof GwtRpcQueuedException) {
+					// execution has not started yet -> keep waiting
+					if (callback instanceof QueuedCallback)
+						((QueuedCallback<T>)callback).onQueued(executionId, ((GwtRpcQueuedException)caught).getQueuePosition());
+					waitForResults(executionId, callback);
+				} else {
+					callback.onFailure(caught);
+				}
+			}
 
-					@Override
-					public void onSuccess(T result) {
-						callback.onSuccess(result);
-					}
-				});
+			@Override
+			public void onSuccess(T result) {
+				callback.onSuccess(result);
 			}
 		});
 	}
@@ -71,5 +82,9 @@ public class GwtRpc {
 	public static interface CancellableCallback<T> extends AsyncCallback<T> {
 		public void onExecution(Long executionId);
 	}
+	
+	public static interface QueuedCallback<T> extends CancellableCallback<T> {
+		public void onQueued(Long executionId, int queuePosition);
+	}
 
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.gwt.command.client;
+
+/**
+ * Thrown by {@link GwtRpcService#waitForResults(Long)} when the asynchronous execution is still waiting in the queue.
+ * The client is expected to call {@link GwtRpcService#waitForResults(Long)} again.
+ * 
+ * @author Tomas Muller
+ */
+public class GwtRpcQueuedException extends GwtRpcException {
+	private static final long serialVersionUID = 1L;
+	private int iQueuePosition = 0;
+	
+	public GwtRpcQueuedException() {
+		super();
+	}
+	
+	public GwtRpcQueuedException(String message, int queuePosition) {
+		super(message);
+		iQueuePosition = queuePosition;
+	}
+	
+	/** Number of executions that are ahead of this one in the queue (0 = the next one to be executed) */
+	public int getQueuePosition() { return iQueuePosition; }
+}
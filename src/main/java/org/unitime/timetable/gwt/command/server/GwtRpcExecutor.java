@@ -0,0 +1,196 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.gwt.command.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded executor of the asynchronous GWT RPC requests (see {@link GwtRpcServlet#executeAsync(org.unitime.timetable.gwt.command.client.GwtRpcRequest)}).<br>
+ * At most the given number of tasks is executed at the same time, the other tasks are waiting in a priority queue
+ * and any task over the queue limit is rejected. Tasks of an owner (user) with fewer tasks submitted go first,
+ * tasks with the same priority are executed in the order in which they were submitted.
+ * The executor is registered as an MBean (org.unitime.timetable:type=GwtRpcExecutor).
+ * 
+ * @author Tomas Muller
+ */
+public class GwtRpcExecutor implements GwtRpcExecutorMBean {
+	private static Log sLog = LogFactory.getLog(GwtRpcExecutor.class);
+	private ThreadPoolExecutor iExecutor;
+	private int iQueueLimit;
+	private AtomicLong iSequence = new AtomicLong(0);
+	private AtomicLong iRejected = new AtomicLong(0), iCompleted = new AtomicLong(0);
+	private Map<String, Integer> iLoad = new HashMap<String, Integer>();
+	private ObjectName iObjectName = null;
+	
+	public GwtRpcExecutor(int maxThreads, int queueLimit) {
+		iQueueLimit = queueLimit;
+		iExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+			private AtomicInteger iCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "GwtRpcExecutor-" + iCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		iExecutor.allowCoreThreadTimeOut(true);
+	}
+	
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("org.unitime.timetable:type=GwtRpcExecutor");
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+			server.registerMBean(this, name);
+			iObjectName = name;
+		} catch (Exception e) {
+			sLog.warn("Failed to register GWT RPC executor MBean: " + e.getMessage(), e);
+		}
+	}
+	
+	public void shutdown() {
+		if (iObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(iObjectName);
+			} catch (Exception e) {}
+			iObjectName = null;
+		}
+		iExecutor.shutdownNow();
+	}
+	
+	/**
+	 * Submit a task for execution
+	 * @param task task to execute
+	 * @param owner task owner (e.g., user external id), used to prioritize the tasks
+	 * @return false if the task was rejected because the queue is full
+	 */
+	public boolean submit(Task task, String owner) {
+		synchronized (iLoad) {
+			if (iQueueLimit > 0 && iExecutor.getQueue().size() >= iQueueLimit) {
+				iRejected.incrementAndGet();
+				return false;
+			}
+			Integer load = iLoad.get(owner);
+			task.iExecutor = this;
+			task.iOwner = owner;
+			task.iPriority = (load == null ? 0 : load.intValue());
+			task.iSequence = iSequence.incrementAndGet();
+			iLoad.put(owner, task.iPriority + 1);
+		}
+		iExecutor.execute(task);
+		return true;
+	}
+	
+	/**
+	 * Remove a task that has not yet been started from the queue
+	 * @return true if the task has been removed (it will not be executed)
+	 */
+	public boolean cancel(Task task) {
+		if (iExecutor.remove(task)) {
+			finished(task);
+			return true;
+		}
+		return false;
+	}
+	
+	/** Number of tasks that are in the queue ahead of the given task */
+	public int getQueuePosition(Task task) {
+		int position = 0;
+		for (Runnable r: iExecutor.getQueue())
+			if (r != task && r instanceof Task && ((Task)r).compareTo(task) < 0) position ++;
+		return position;
+	}
+	
+	private void finished(Task task) {
+		synchronized (iLoad) {
+			Integer load = iLoad.get(task.iOwner);
+			if (load == null || load.intValue() <= 1)
+				iLoad.remove(task.iOwner);
+			else
+				iLoad.put(task.iOwner, load - 1);
+		}
+	}
+	
+	@Override
+	public int getActiveCount() { return iExecutor.getActiveCount(); }
+	
+	@Override
+	public int getQueueSize() { return iExecutor.getQueue().size(); }
+	
+	@Override
+	public long getRejectedCount() { return iRejected.get(); }
+	
+	@Override
+	public long getCompletedCount() { return iCompleted.get(); }
+	
+	@Override
+	public int getMaxThreads() { return iExecutor.getMaximumPoolSize(); }
+	
+	@Override
+	public int getQueueLimit() { return iQueueLimit; }
+	
+	@Override
+	public String toString() {
+		return getActiveCount() + " active, " + getQueueSize() + " queued, " + getRejectedCount() + " rejected, " + getCompletedCount() + " completed";
+	}
+	
+	/**
+	 * Task executed by the {@link GwtRpcExecutor}
+	 */
+	public static abstract class Task implements Runnable, Comparable<Task> {
+		private GwtRpcExecutor iExecutor;
+		private String iOwner;
+		private int iPriority;
+		private long iSequence;
+		
+		/** Execute the task */
+		protected abstract void execute();
+		
+		@Override
+		public final void run() {
+			try {
+				execute();
+			} finally {
+				iExecutor.iCompleted.incrementAndGet();
+				iExecutor.finished(this);
+			}
+		}
+		
+		@Override
+		public int compareTo(Task task) {
+			if (iPriority != task.iPriority) return (iPriority < task.iPriority ? -1 : 1);
+			return (iSequence < task.iSequence ? -1 : iSequence == task.iSequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.gwt.command.server;
+
+/**
+ * JMX interface of the {@link GwtRpcExecutor}.
+ * 
+ * @author Tomas Muller
+ */
+public interface GwtRpcExecutorMBean {
+	/** Number of asynchronous executions that are running */
+	public int getActiveCount();
+	
+	/** Number of asynchronous executions that are waiting in the queue */
+	public int getQueueSize();
+	
+	/** Number of asynchronous executions that have been rejected because the queue was full */
+	public long getRejectedCount();
+	
+	/** Number of finished asynchronous executions */
+	public long getCompletedCount();
+	
+	/** Maximal number of asynchronous executions running at the same time */
+	public int getMaxThreads();
+	
+	/** Maximal number of asynchronous executions waiting in the queue */
+	public int getQueueLimit();
+}
@@ -45,6 +45,7 @@ import org.unitime.timetable.filter.QueryLogFilter;
 import org.unitime.timetable.gwt.command.client.GwtRpcCancelledException;
 import org.unitime.timetable.gwt.command.client.GwtRpcRequest;
 import org.unitime.timetable.gwt.command.client.GwtRpcException;
+import org.unitime.timetable.gwt.command.client.GwtRpcQueuedException;
 import org.unitime.timetable.gwt.command.client.GwtRpcResponse;
 import org.unitime.timetable.gwt.command.client.GwtRpcService;
 import org.unitime.timetable.gwt.shared.PageAccessException;
@@ -74,6 +75,7 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	private QueryLogFilter.Saver iSaver = null;
 	private static IdGenerator sIdGenerator = new IdGenerator();
 	private static Map<Long, Execution> sExecutions = new Hashtable<Long, Execution>();
+	private static GwtRpcExecutor sExecutor = null;
 	private Gson iGson = null;
 	
 	protected SessionContext getSessionContext() {
@@ -91,6 +93,12 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 		iSaver = new QueryLogFilter.Saver();
 		iSaver.setName("GwtRpcLogSaver");
 		iSaver.start();
+		synchronized (GwtRpcServlet.class) {
+			if (sExecutor == null) {
+				sExecutor = new GwtRpcExecutor(ApplicationProperty.GwtRpcAsyncThreads.intValue(), ApplicationProperty.GwtRpcAsyncQueueLimit.intValue());
+				sExecutor.register();
+			}
+		}
 		iGson = new GsonBuilder()
 				.registerTypeAdapter(java.sql.Timestamp.class, new JsonSerializer<java.sql.Timestamp>() {
 					@Override
@@ -127,6 +135,12 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	@Override
 	public void destroy() {
 		if (iSaver != null) iSaver.interrupt();
+		synchronized (GwtRpcServlet.class) {
+			if (sExecutor != null) {
+				sExecutor.shutdown();
+				sExecutor = null;
+			}
+		}
 	}
 	
 	public static <T extends GwtRpcResponse> GwtRpcImplementation<GwtRpcRequest<T>, T> getImplementation(Class<? extends GwtRpcRequest<T>> requestClass, ApplicationContext applicationContext) throws BeansException {
@@ -269,8 +283,16 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 			synchronized (sExecutions) {
 				sExecutions.put(execution.getExecutionId(), execution);
 			}
-			execution.start();
+			if (!sExecutor.submit(execution, execution.getOwner())) {
+				synchronized (sExecutions) {
+					sExecutions.remove(execution.getExecutionId());
+				}
+				sLog.warn("Execute async rejected: there are too many requests waiting (" + sExecutor + ").");
+				throw new GwtRpcException("The server is too busy at the moment, please try again later.");
+			}
 			return execution.getExecutionId();
+		} catch (GwtRpcException e) {
+			throw e;
 		} catch (Exception e) {
 			sLog.warn("Execute async failed: " + e.getMessage());
 			throw new GwtRpcException(e.getMessage(), e);
@@ -286,7 +308,11 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 			}
 			if (execution == null) throw new GwtRpcException("No execution with given id found.");
 			try {
-				execution.waitToFinish();
+				if (!execution.waitToFinish(1000l * ApplicationProperty.GwtRpcAsyncQueueWait.intValue())) {
+					// execution has not started yet -> let the client know its position in the queue
+					int position = sExecutor.getQueuePosition(execution);
+					throw new GwtRpcQueuedException("Waiting for " + (position + 1) + ". position in the queue.", position);
+				}
 			} catch (InterruptedException e) {
 			}
 			synchronized (sExecutions) {
@@ -327,28 +353,35 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 		}
 	}
 	
-	private class Execution<R extends GwtRpcRequest<T>, T extends GwtRpcResponse> extends Thread {
+	private class Execution<R extends GwtRpcRequest<T>, T extends GwtRpcResponse> extends GwtRpcExecutor.Task {
 		R iRequest;
 		T iResponse = null;
 		SessionContext iContext = null;
 		GwtRpcException iException = null;
-		Thread iWaitingThread = null;
+		Thread iThread = null;
 		long iExecutionId;
-		boolean iRunning = false;
+		boolean iQueued = true;
+		boolean iFinished = false;
 		String iLocale = null;
+		String iOwner = null;
 		
 		Execution(R request) {
-			setName("RPC:" + request);
-			setDaemon(true);
 			iRequest = request;
 			iExecutionId = sIdGenerator.generatedId();
 			iContext = new GwtRpcHelper(getSessionContext(), getPermissionCheck());
 			iLocale = Localization.getLocale();
+			iOwner = (iContext.isAuthenticated() ? iContext.getUser().getTrueExternalUserId() : iContext.getHttpSessionId());
 		}
 
 		@Override
-		public void run() {
-			iRunning = true;
+		protected void execute() {
+			synchronized (this) {
+				if (iFinished) return;
+				iQueued = false;
+				iThread = Thread.currentThread();
+			}
+			String threadName = iThread.getName();
+			iThread.setName("RPC:" + iRequest);
 			Localization.setLocale(iLocale);
 			ApplicationProperties.setSessionId(iContext.getUser() == null ? null : iContext.getUser().getCurrentAcademicSessionId());
 			// start time
@@ -394,27 +427,47 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 				_RootDAO.closeCurrentThreadSessions();
 			}
 			synchronized (this) {
-				iWaitingThread = null;
-				iRunning = false;
+				iThread = null;
+				iFinished = true;
 				iContext = null;
+				notifyAll();
 			}
+			// the pool thread is reused -> clear a possible interruption by the cancel
+			Thread.interrupted();
+			Thread.currentThread().setName(threadName);
 		}
 		
-		void waitToFinish() throws InterruptedException {
-			synchronized (this) {
-				if (iRunning) {
-					iWaitingThread = Thread.currentThread();
-					join();
+		/**
+		 * Wait for the execution to finish
+		 * @param queueWait how long to wait (in milliseconds) when the execution has not started yet
+		 * @return false if the execution is still waiting in the queue
+		 */
+		synchronized boolean waitToFinish(long queueWait) throws InterruptedException {
+			long end = System.currentTimeMillis() + queueWait;
+			while (!iFinished && !(iException instanceof GwtRpcCancelledException)) {
+				if (iQueued) {
+					long wait = end - System.currentTimeMillis();
+					if (wait <= 0) return false;
+					wait(wait);
+				} else {
+					wait();
 				}
 			}
+			return true;
 		}
 		
 		void cancelExecution() {
+			boolean removed = sExecutor.cancel(this);
 			synchronized (this) {
 				iException = new GwtRpcCancelledException("Operation cancelled by the user.");
-				if (iWaitingThread != null) iWaitingThread.interrupt();
+				if (removed) {
+					iQueued = false;
+					iFinished = true;
+					iContext = null;
+				}
+				if (iThread != null) iThread.interrupt();
+				notifyAll();
 			}
-			interrupt();
 		}
 		
 		T getResponse() { return iResponse; }
@@ -422,5 +475,7 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 		GwtRpcException getException() { return iException; }
 		
 		Long getExecutionId() { return iExecutionId; }
+		
+		String getOwner() { return iOwner; }
 	}
-}
\ No newline at end of file
+}
@@ -44,6 +44,9 @@ public interface GwtMessages extends Messages {
 	
 	@DefaultMessage("The operation may take a lot of time...<br>Click this message to cancel the operation.")
 	String warnLoadingTooLongCanCancel();
+	
+	@DefaultMessage("Waiting for {0}. position in the queue...")
+	String waitingForQueuePosition(int position);
 
 	@DefaultMessage("Login is required to access this page.")
 	String authenticationRequired();
@@ -21,9 +21,12 @@ package org.unitime.timetable.gwt.server;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -32,6 +35,7 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -50,6 +54,7 @@ import org.springframework.web.context.support.SpringBeanAutowiringSupport;
 import org.unitime.commons.Debug;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.action.PersonalizedExamReportAction;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.events.EventDetailBackend;
 import org.unitime.timetable.events.QueryEncoderBackend;
 import org.unitime.timetable.export.events.EventsExportEventsToICal;
@@ -166,10 +171,54 @@ public class CalendarServlet extends HttpServlet {
     	String userId = params.getParameter("uid");
     	if (q == null) userId = QueryEncoderBackend.decode(userId);
    
+		org.hibernate.Session hibSession = CurriculumDAO.getInstance().getSession();
+		String key = getFeedKey(sessionId, classIds, fts, examIds, eventIds, userId);
+		String version = getFeedVersion(hibSession, session, classIds, examIds, eventIds, userId);
+		CalendarFeed feed = getCachedFeed(key, version);
+		if (feed == null) {
+			ICalendar ical = null;
+			try {
+				ical = createCalendar(hibSession, session, classIds, fts, examIds, eventIds, userId);
+			} catch (Exception e) {
+				Debug.error(e.getMessage(), e);
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+				return;
+			}
+			StringWriter buffer = new StringWriter();
+			ICalWriter writer = new ICalWriter(buffer, ICalVersion.V2_0);
+			try {
+				writer.getTimezoneInfo().setDefaultTimeZone(TimeZone.getDefault());
+				writer.write(ical);
+				writer.flush();
+			} finally {
+				writer.close();
+			}
+			feed = putCachedFeed(key, new CalendarFeed(version, buffer.toString()));
+		}
+		
+		response.setHeader("ETag", feed.getETag());
+		response.setDateHeader("Last-Modified", feed.getLastModified());
+		response.setHeader("Cache-Control", "private, no-cache");
+		if (feed.isNotModified(request)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+   
 		response.setContentType("text/calendar; charset=UTF-8");
 		response.setCharacterEncoding("UTF-8");
 		response.setHeader( "Content-Disposition", "attachment; filename=\"schedule.ics\"" );
-        
+		
+		PrintWriter out = response.getWriter();
+		try {
+			out.write(feed.getContent());
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+	
+	protected ICalendar createCalendar(org.hibernate.Session hibSession, Session session, String classIds, String fts, String examIds, String eventIds, String userId) throws IOException {
+		Long sessionId = session.getUniqueId();
 		ICalendar ical = new ICalendar();
 		ical.setVersion(ICalVersion.V2_0);
 		ical.setCalendarScale(CalendarScale.gregorian());
@@ -177,111 +226,265 @@ public class CalendarServlet extends HttpServlet {
 		ical.setExperimentalProperty("X-WR-CALNAME", "UniTime Schedule");
 		ical.setExperimentalProperty("X-WR-TIMEZONE", TimeZone.getDefault().getID());
 		ical.setProductId("-//UniTime LLC/UniTime " + Constants.getVersion() + " Schedule//EN");
-
-		org.hibernate.Session hibSession = CurriculumDAO.getInstance().getSession();
-		try {
-			EventsExportEventsToICal exporter = new EventsExportEventsToICal();
-        	if (classIds != null && !classIds.isEmpty()) {
-        		for (String classId: classIds.split(",")) {
-        			if (classId.isEmpty()) continue;
-        			String[] courseAndClassId = classId.split("-");
-        			if (courseAndClassId.length != 2) continue;
-    				CourseOffering course = CourseOfferingDAO.getInstance().get(Long.valueOf(courseAndClassId[0]), hibSession);
-    				Class_ clazz = Class_DAO.getInstance().get(Long.valueOf(courseAndClassId[1]), hibSession);
-    				if (course == null || clazz == null) continue;
-            		printClass(course, clazz, ical);
-        		}
-        	}
-        	if (fts != null && !fts.isEmpty()) {
-    			Date dpFirstDate = DateUtils.getDate(1, session.getPatternStartMonth(), session.getSessionStartYear());
-    			BitSet weekCode = session.getDefaultDatePattern().getPatternBitSet();
-        		for (String ft: fts.split(",")) {
-        			if (ft.isEmpty()) continue;
-        			String[] daysStartLen = ft.split("-");
-        			if (daysStartLen.length != 3) continue;
-        			printFreeTime(dpFirstDate, weekCode, daysStartLen[0], Integer.parseInt(daysStartLen[1]), Integer.parseInt(daysStartLen[2]), ical);
-        		}
-        	}
-            if (examIds != null && !examIds.isEmpty()) {
-            	for (String examId: examIds.split(",")) {
-            		if (examId.isEmpty()) continue;
-            		try {
-                		Exam exam = ExamDAO.getInstance().get(Long.valueOf(examId), hibSession);
-                		if (exam != null)
-                			printExam(exam, ical);
-            		} catch (NumberFormatException e) {}
-            	}
-            }
-            if (eventIds != null && !eventIds.isEmpty()) {
-            	for (String eventId: eventIds.split(",")) {
-            		if (eventId.isEmpty()) continue;
-            		try {
-            			Event event = EventDAO.getInstance().get(Long.valueOf(eventId), hibSession);
-            			if (event != null)
-            				exporter.print(ical, EventDetailBackend.getEventDetail(session, event, null));
-            		} catch (NumberFormatException e) {}
-            	}
-            }
-            if (userId != null && !userId.isEmpty()) {
-                for (DepartmentalInstructor instructor: (List<DepartmentalInstructor>)hibSession.createQuery("select i from DepartmentalInstructor i " +
-                		"where i.externalUniqueId = :externalId and i.department.session.uniqueId = :sessionId").
-                		setLong("sessionId", sessionId).setString("externalId", userId).list()) {
-                	if (!PersonalizedExamReportAction.canDisplay(instructor.getDepartment().getSession())) continue;
-                	for (ExamType t: ExamType.findAll(hibSession)) {
-                		ExamStatus status = ExamStatus.findStatus(hibSession, instructor.getSession().getUniqueId(), t.getUniqueId());
-                		DepartmentStatusType type = (status == null || status.getStatus() == null ? instructor.getSession().getStatusType() : status.getStatus());
-                		if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
-                			for (Exam exam: instructor.getExams(t))
-                				printExam(exam, ical);
-                		} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
-                			for (Exam exam: instructor.getExams(t))
-                				printExam(exam, ical);
-                		}
-                	}
-                    if (instructor.getDepartment().getSession().getStatusType().canNoRoleReportClass()) {
-                        for (ClassInstructor ci: instructor.getClasses()) {
-                            printClass(ci.getClassInstructing().getSchedulingSubpart().getInstrOfferingConfig().getControllingCourseOffering(), ci.getClassInstructing(), ical);
-                        }
-                    }
-                }
-                for (Student student: (List<Student>)hibSession.createQuery("select s from Student s where " +
-                		"s.externalUniqueId=:externalId and s.session.uniqueId = :sessionId").
-                		setLong("sessionId", sessionId).setString("externalId", userId).list()) {
-                	if (!PersonalizedExamReportAction.canDisplay(student.getSession())) continue;
-                	for (ExamType t: ExamType.findAll(hibSession)) {
-                		ExamStatus status = ExamStatus.findStatus(hibSession, student.getSession().getUniqueId(), t.getUniqueId());
-                		DepartmentStatusType type = (status == null || status.getStatus() == null ? student.getSession().getStatusType() : status.getStatus());
-                		if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
-                			for (Exam exam: student.getExams(t))
-                				printExam(exam, ical);
-                		} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
-                			for (Exam exam: student.getExams(t))
-                				printExam(exam, ical);
-                		}
-                	}
-                    if (student.getSession().getStatusType().canNoRoleReportClass()) {
-                        for (Iterator i=student.getClassEnrollments().iterator();i.hasNext();) {
-                            StudentClassEnrollment sce = (StudentClassEnrollment)i.next();
-                            printClass(sce.getCourseOffering(), sce.getClazz(), ical);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-        	Debug.error(e.getMessage(), e);
-        	response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
-        }
 		
-		PrintWriter out = response.getWriter();
-        ICalWriter writer = new ICalWriter(out, ICalVersion.V2_0);
+		EventsExportEventsToICal exporter = new EventsExportEventsToICal();
+		if (classIds != null && !classIds.isEmpty()) {
+			for (String classId: classIds.split(",")) {
+				if (classId.isEmpty()) continue;
+				String[] courseAndClassId = classId.split("-");
+				if (courseAndClassId.length != 2) continue;
+				CourseOffering course = CourseOfferingDAO.getInstance().get(Long.valueOf(courseAndClassId[0]), hibSession);
+				Class_ clazz = Class_DAO.getInstance().get(Long.valueOf(courseAndClassId[1]), hibSession);
+				if (course == null || clazz == null) continue;
+				printClass(course, clazz, ical);
+			}
+		}
+		if (fts != null && !fts.isEmpty()) {
+			Date dpFirstDate = DateUtils.getDate(1, session.getPatternStartMonth(), session.getSessionStartYear());
+			BitSet weekCode = session.getDefaultDatePattern().getPatternBitSet();
+			for (String ft: fts.split(",")) {
+				if (ft.isEmpty()) continue;
+				String[] daysStartLen = ft.split("-");
+				if (daysStartLen.length != 3) continue;
+				printFreeTime(dpFirstDate, weekCode, daysStartLen[0], Integer.parseInt(daysStartLen[1]), Integer.parseInt(daysStartLen[2]), ical);
+			}
+		}
+		if (examIds != null && !examIds.isEmpty()) {
+			for (String examId: examIds.split(",")) {
+				if (examId.isEmpty()) continue;
+				try {
+					Exam exam = ExamDAO.getInstance().get(Long.valueOf(examId), hibSession);
+					if (exam != null)
+						printExam(exam, ical);
+				} catch (NumberFormatException e) {}
+			}
+		}
+		if (eventIds != null && !eventIds.isEmpty()) {
+			for (String eventId: eventIds.split(",")) {
+				if (eventId.isEmpty()) continue;
+				try {
+					Event event = EventDAO.getInstance().get(Long.valueOf(eventId), hibSession);
+					if (event != null)
+						exporter.print(ical, EventDetailBackend.getEventDetail(session, event, null));
+				} catch (NumberFormatException e) {}
+			}
+		}
+		if (userId != null && !userId.isEmpty()) {
+			for (DepartmentalInstructor instructor: (List<DepartmentalInstructor>)hibSession.createQuery("select i from DepartmentalInstructor i " +
+					"where i.externalUniqueId = :externalId and i.department.session.uniqueId = :sessionId").
+					setLong("sessionId", sessionId).setString("externalId", userId).list()) {
+				if (!PersonalizedExamReportAction.canDisplay(instructor.getDepartment().getSession())) continue;
+				for (ExamType t: ExamType.findAll(hibSession)) {
+					ExamStatus status = ExamStatus.findStatus(hibSession, instructor.getSession().getUniqueId(), t.getUniqueId());
+					DepartmentStatusType type = (status == null || status.getStatus() == null ? instructor.getSession().getStatusType() : status.getStatus());
+					if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
+						for (Exam exam: instructor.getExams(t))
+							printExam(exam, ical);
+					} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
+						for (Exam exam: instructor.getExams(t))
+							printExam(exam, ical);
+					}
+				}
+				if (instructor.getDepartment().getSession().getStatusType().canNoRoleReportClass()) {
+					for (ClassInstructor ci: instructor.getClasses()) {
+						printClass(ci.getClassInstructing().getSchedulingSubpart().getInstrOfferingConfig().getControllingCourseOffering(), ci.getClassInstructing(), ical);
+					}
+				}
+			}
+			for (Student student: (List<Student>)hibSession.createQuery("select s from Student s where " +
+					"s.externalUniqueId=:externalId and s.session.uniqueId = :sessionId").
+					setLong("sessionId", sessionId).setString("externalId", userId).list()) {
+				if (!PersonalizedExamReportAction.canDisplay(student.getSession())) continue;
+				for (ExamType t: ExamType.findAll(hibSession)) {
+					ExamStatus status = ExamStatus.findStatus(hibSession, student.getSession().getUniqueId(), t.getUniqueId());
+					DepartmentStatusType type = (status == null || status.getStatus() == null ? student.getSession().getStatusType() : status.getStatus());
+					if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
+						for (Exam exam: student.getExams(t))
+							printExam(exam, ical);
+					} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
+						for (Exam exam: student.getExams(t))
+							printExam(exam, ical);
+					}
+				}
+				if (student.getSession().getStatusType().canNoRoleReportClass()) {
+					for (Iterator i=student.getClassEnrollments().iterator();i.hasNext();) {
+						StudentClassEnrollment sce = (StudentClassEnrollment)i.next();
+						printClass(sce.getCourseOffering(), sce.getClazz(), ical);
+					}
+				}
+			}
+		}
+		return ical;
+	}
+	
+	private static Map<String, CalendarFeed> sFeeds = new LinkedHashMap<String, CalendarFeed>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CalendarFeed> eldest) {
+			return size() > ApplicationProperty.CalendarFeedCacheSize.intValue();
+		}
+	};
+	
+	private static String normalize(String ids) {
+		if (ids == null || ids.isEmpty()) return "";
+		TreeSet<String> sorted = new TreeSet<String>();
+		for (String id: ids.split(","))
+			if (!id.isEmpty()) sorted.add(id);
+		return sorted.toString();
+	}
+	
+	/**
+	 * Cache key of a calendar feed, the same feed can be requested using different (e.g., hashed or reordered) parameters
+	 */
+	protected String getFeedKey(Long sessionId, String classIds, String fts, String examIds, String eventIds, String userId) {
+		return sessionId + "|" + normalize(classIds) + "|" + normalize(fts) + "|" + normalize(examIds) + "|" + normalize(eventIds) + "|" + (userId == null ? "" : userId);
+	}
+	
+	/**
+	 * Version of a calendar feed, it changes whenever the relevant class or exam assignments, events, or enrollments are changed
+	 * @return null if the version cannot be computed (the feed is not cached in this case)
+	 */
+	protected String getFeedVersion(org.hibernate.Session hibSession, Session session, String classIds, String examIds, String eventIds, String userId) {
+		if (ApplicationProperty.CalendarFeedCacheSize.intValue() <= 0) return null;
 		try {
-	    	writer.getTimezoneInfo().setDefaultTimeZone(TimeZone.getDefault());
-        	writer.write(ical);
-        	writer.flush();
-        	out.flush();
-		} finally {
-			out.close();
-			writer.close();
+			StringBuffer version = new StringBuffer(session.getStatusType() == null ? "" : session.getStatusType().getReference());
+			if ((classIds != null && !classIds.isEmpty()) || (examIds != null && !examIds.isEmpty()) || (userId != null && !userId.isEmpty())) {
+				// changes in the class and exam assignments, instructor assignments, etc. are recorded in the change log
+				version.append("|" + hibSession.createQuery(
+						"select max(c.timeStamp) from ChangeLog c where c.session.uniqueId = :sessionId"
+						).setLong("sessionId", session.getUniqueId()).setCacheable(false).uniqueResult());
+				version.append("|" + hibSession.createQuery(
+						"select max(s.commitDate) from Solution s where s.owner.session.uniqueId = :sessionId and s.commited = true"
+						).setLong("sessionId", session.getUniqueId()).setCacheable(false).uniqueResult());
+			}
+			if (eventIds != null && !eventIds.isEmpty()) {
+				List<Long> ids = new ArrayList<Long>();
+				for (String eventId: eventIds.split(",")) {
+					try {
+						if (!eventId.isEmpty()) ids.add(Long.valueOf(eventId));
+					} catch (NumberFormatException e) {}
+				}
+				if (!ids.isEmpty()) {
+					Object[] meetings = (Object[])hibSession.createQuery(
+							"select count(m), max(m.approvalDate) from Meeting m where m.event.uniqueId in (:eventIds)"
+							).setParameterList("eventIds", ids).setCacheable(false).uniqueResult();
+					version.append("|" + meetings[0] + "|" + meetings[1]);
+					Object[] notes = (Object[])hibSession.createQuery(
+							"select count(n), max(n.timeStamp) from EventNote n where n.event.uniqueId in (:eventIds)"
+							).setParameterList("eventIds", ids).setCacheable(false).uniqueResult();
+					version.append("|" + notes[0] + "|" + notes[1]);
+				}
+			}
+			if (userId != null && !userId.isEmpty()) {
+				Object[] enrollments = (Object[])hibSession.createQuery(
+						"select count(e), max(e.timestamp) from StudentClassEnrollment e where e.student.externalUniqueId = :externalId and e.student.session.uniqueId = :sessionId"
+						).setLong("sessionId", session.getUniqueId()).setString("externalId", userId).setCacheable(false).uniqueResult();
+				version.append("|" + enrollments[0] + "|" + enrollments[1]);
+			}
+			return version.toString();
+		} catch (Exception e) {
+			Debug.warning("Failed to compute calendar feed version: " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Cached feed of the given key, only returned when of the same version and not expired
+	 */
+	protected CalendarFeed getCachedFeed(String key, String version) {
+		if (version == null) return null;
+		CalendarFeed feed = null;
+		synchronized (sFeeds) {
+			feed = sFeeds.get(key);
+		}
+		if (feed == null || !version.equals(feed.getVersion())) return null;
+		if (System.currentTimeMillis() - feed.getCreated() > 1000l * ApplicationProperty.CalendarFeedCacheTimeToLive.intValue()) return null;
+		return feed;
+	}
+	
+	/**
+	 * Put a newly generated feed in the cache. When the content of the feed did not change, the last modification time is kept.
+	 */
+	protected CalendarFeed putCachedFeed(String key, CalendarFeed feed) {
+		synchronized (sFeeds) {
+			CalendarFeed previous = sFeeds.get(key);
+			if (previous != null && previous.getETag().equals(feed.getETag()))
+				feed.setLastModified(previous.getLastModified());
+			if (feed.getVersion() != null && ApplicationProperty.CalendarFeedCacheSize.intValue() > 0)
+				sFeeds.put(key, feed);
+		}
+		return feed;
+	}
+	
+	/**
+	 * Generated iCalendar feed, the ETag is computed from the content (see {@link CalendarFeed#getETag(String)})
+	 */
+	public static class CalendarFeed {
+		private String iVersion;
+		private String iContent;
+		private String iETag;
+		private long iCreated;
+		private long iLastModified;
+		
+		public CalendarFeed(String version, String content) {
+			iVersion = version;
+			iContent = content;
+			iCreated = System.currentTimeMillis();
+			iLastModified = 1000l * (iCreated / 1000l); // HTTP dates have a precision of one second
+			iETag = getETag(content);
+		}
+		
+		/**
+		 * ETag of the given iCalendar content. The DTSTAMP and UID properties are left out, as biweekly fills them in
+		 * with the current time and a random id (e.g., for the free times), so that the same data always gets the same ETag.
+		 */
+		public static String getETag(String content) {
+			StringBuffer data = new StringBuffer();
+			boolean skip = false;
+			for (String line: content.split("\r?\n")) {
+				if (line.startsWith(" ") || line.startsWith("\t")) {
+					// folded line, continuation of the previous property
+					if (skip) continue;
+				} else {
+					skip = line.startsWith("DTSTAMP:") || line.startsWith("DTSTAMP;") || line.startsWith("UID:") || line.startsWith("UID;");
+					if (skip) continue;
+				}
+				data.append(line).append("\n");
+			}
+			try {
+				MessageDigest md5 = MessageDigest.getInstance("MD5");
+				return "\"" + new BigInteger(1, md5.digest(data.toString().getBytes("UTF-8"))).toString(36) + "\"";
+			} catch (Exception e) {
+				return "\"" + Integer.toHexString(data.toString().hashCode()) + "-" + data.length() + "\"";
+			}
+		}
+		
+		public String getVersion() { return iVersion; }
+		public String getContent() { return iContent; }
+		public String getETag() { return iETag; }
+		public long getCreated() { return iCreated; }
+		public long getLastModified() { return iLastModified; }
+		public void setLastModified(long lastModified) { iLastModified = lastModified; }
+		
+		/**
+		 * Check conditional GET headers, If-None-Match takes precedence over If-Modified-Since
+		 */
+		public boolean isNotModified(HttpServletRequest request) {
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch != null) {
+				for (String etag: ifNoneMatch.split(",")) {
+					etag = etag.trim();
+					if (etag.startsWith("W/")) etag = etag.substring(2);
+					if (etag.equals("*") || etag.equals(getETag())) return true;
+				}
+				return false;
+			}
+			try {
+				long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+				return ifModifiedSince >= 0 && getLastModified() <= ifModifiedSince;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
 		}
 	}
 
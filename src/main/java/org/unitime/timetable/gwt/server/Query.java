@@ -183,7 +183,7 @@ public class Query implements Serializable {
 		
 		public void remove(Term t) { iTerms.remove(t); }
 		
-		protected List<Term> terms() { return iTerms; }
+		public List<Term> terms() { return iTerms; }
 		
 		public abstract String getOp();
 		
@@ -256,6 +256,8 @@ public class Query implements Serializable {
 			return !iTerm.match(m);
 		}
 		
+		public Term getTerm() { return iTerm; }
+		
 		public boolean hasAttribute(String attribute) {
 			return iTerm.hasAttribute(attribute);
 		}
@@ -279,6 +281,10 @@ public class Query implements Serializable {
 			return m.match(iAttr, iBody);
 		}
 		
+		public String getAttribute() { return iAttr; }
+		
+		public String getBody() { return iBody; }
+		
 		public boolean hasAttribute(String attribute) {
 			return attribute != null && attribute.equals(iAttr);
 		}
@@ -31,6 +31,7 @@ import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.unitime.timetable.model.base.BaseStudentSectioningQueue;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
+import org.unitime.timetable.onlinesectioning.server.DatabaseServer;
 import org.unitime.timetable.security.UserContext;
 
 /**
@@ -158,6 +159,7 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 	
 	public static void sessionStatusChanged(org.hibernate.Session hibSession, UserContext user, Long sessionId, boolean reload) {
 		addItem(hibSession, user, sessionId, (reload ? Type.SESSION_RELOAD : Type.SESSION_STATUS_CHANGE));
+		DatabaseServer.clearCourseIndex(sessionId);
 	}
 	
 	public static void allStudentsChanged(org.hibernate.Session hibSession, UserContext user, Long sessionId) {
@@ -178,9 +180,11 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 	
 	public static void offeringChanged(org.hibernate.Session hibSession, UserContext user, Long sessionId, Collection<Long> offeringId) {
 		addItem(hibSession, user, sessionId, Type.OFFERING_CHANGE, offeringId);
+		DatabaseServer.clearCourseIndex(sessionId);
 	}
 
 	public static void offeringChanged(org.hibernate.Session hibSession, UserContext user, Long sessionId, Long... offeringId) {
 		addItem(hibSession, user, sessionId, Type.OFFERING_CHANGE, offeringId);
+		DatabaseServer.clearCourseIndex(sessionId);
 	}
 }
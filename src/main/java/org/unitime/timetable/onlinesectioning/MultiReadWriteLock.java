@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -42,9 +43,53 @@ public class MultiReadWriteLock {
 	protected Lock iLock = new ReentrantLock();
 	protected Condition iLockNotAvailable = iLock.newCondition(), iGlobalLockNotAvailable = iLock.newCondition();
 	protected Map<Long, ReadWriteLock> iIndividualLocks = new HashMap<Long, ReadWriteLock>();
+	protected ReadWriteLock[] iStripes = null;
 	protected ReadWriteLock iGlobalLock = new ReentrantReadWriteLock(true);
 	protected int iGlobalLockRequests = 0;
 	
+	/** One lock per id, the lock of an id is kept until {@link MultiReadWriteLock#remove(Long)} or {@link MultiReadWriteLock#removeAll()} is called */
+	public MultiReadWriteLock() {}
+	
+	/**
+	 * Fixed number of locks (stripes), each id is mapped to one of them. The memory used does not grow with the number of ids
+	 * that have been locked, but two ids may share the same stripe.
+	 */
+	public MultiReadWriteLock(int nrStripes) {
+		iStripes = new ReadWriteLock[Math.max(1, nrStripes)];
+		for (int i = 0; i < iStripes.length; i++)
+			iStripes[i] = new ReentrantReadWriteLock(false);
+	}
+	
+	protected int stripe(Long id) {
+		long h = id.longValue();
+		h ^= (h >>> 32);
+		h ^= (h >>> 16);
+		return (int)((h & 0x7fffffffl) % iStripes.length);
+	}
+	
+	/** Locks of the given ids, each stripe is only returned once (and the stripes are ordered) */
+	protected Collection<ReadWriteLock> locks(Collection<Long> ids) {
+		if (iStripes != null) {
+			TreeSet<Integer> stripes = new TreeSet<Integer>();
+			for (Long id: ids)
+				stripes.add(stripe(id));
+			List<ReadWriteLock> locks = new ArrayList<ReadWriteLock>(stripes.size());
+			for (Integer stripe: stripes)
+				locks.add(iStripes[stripe]);
+			return locks;
+		}
+		List<ReadWriteLock> locks = new ArrayList<ReadWriteLock>(ids.size());
+		for (Long id: ids) {
+			ReadWriteLock lock = iIndividualLocks.get(id);
+			if (lock == null) {
+				lock = new ReentrantReadWriteLock(false);
+				iIndividualLocks.put(id, lock);
+			}
+			locks.add(lock);
+		}
+		return locks;
+	}
+	
 	public Unlock lock(boolean write, Long... ids) {
 		List<Long> list = new ArrayList<Long>(ids.length);
 		for (Long id: ids)
@@ -83,12 +128,7 @@ public class MultiReadWriteLock {
 			} else {
 				return null;
 			}
-			for (Long courseId: ids) {
-				ReadWriteLock courseLock = iIndividualLocks.get(courseId);
-				if (courseLock == null) {
-					courseLock = new ReentrantReadWriteLock(false);
-					iIndividualLocks.put(courseId, courseLock);
-				}
+			for (ReadWriteLock courseLock: locks(ids)) {
 				Lock lock =  (write ? courseLock.writeLock() : courseLock.readLock());
 				if (lock.tryLock()) {
 					acquiredLocks.add(lock);
@@ -19,51 +19,74 @@
 */
 package org.unitime.timetable.onlinesectioning;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.CacheMode;
+import org.hibernate.Transaction;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Session;
-import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.dao.OnlineSectioningLogDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
-import org.unitime.timetable.model.dao.StudentDAO;
 
 /**
+ * Persists online sectioning actions into the online sectioning log.<br>
+ * Actions are put in a bounded queue (see {@link ApplicationProperty#OnlineSchedulingLogLimit}). The logger thread
+ * takes them out in batches and a batch is persisted as soon as it is full ({@link ApplicationProperty#OnlineSchedulingLogBatchSize})
+ * or when the oldest action in it waited for too long ({@link ApplicationProperty#OnlineSchedulingLogFlushInterval}).
+ * Batches are saved by a small pool of writer threads ({@link ApplicationProperty#OnlineSchedulingLogThreads}), each using
+ * one transaction and the JDBC batching of Hibernate. When set, the log file is written by a separate thread.
+ *
  * @author Tomas Muller
  */
 public class OnlineSectioningLogger extends Thread {
 	private static Log sLog = LogFactory.getLog(OnlineSectioningLogger.class);
-	private List<OnlineSectioningLog.Action> iActions = new Vector<OnlineSectioningLog.Action>();
-	private boolean iActive = false;
+	private BlockingQueue<OnlineSectioningLog.Action> iActions;
+	private volatile boolean iActive = false;
 	private boolean iEnabled = false;
 	private int iLogLimit = -1;
-	private PrintWriter iOut = null;
-	
+	private int iBatchSize = 100;
+	private long iFlushInterval = 5000;
+	private AtomicLong iDropped = new AtomicLong(0);
+	private ExecutorService iWriters = null;
+	private LogFileWriter iOut = null;
+
 	private static OnlineSectioningLogger sInstance = null;
-	
+
 	public static OnlineSectioningLogger getInstance() {
 		if (sInstance == null) startLogger();
 		return sInstance;
 	}
-	
+
 	public static void startLogger() {
 		if (sInstance == null) {
 			sInstance = new OnlineSectioningLogger();
 			sInstance.start();
 		}
 	}
-	
+
 	public static void stopLogger() {
 		if (sInstance != null) {
 			sInstance.iActive = false;
@@ -74,20 +97,38 @@ public class OnlineSectioningLogger extends Thread {
 			sInstance = null;
 		}
 	}
-	
+
 	private OnlineSectioningLogger() {
 		super("OnlineSectioningLogger");
 		setDaemon(true);
-		iEnabled = ApplicationProperty.OnlineSchedulingLoggingEnabled.isTrue(); 
+		iEnabled = ApplicationProperty.OnlineSchedulingLoggingEnabled.isTrue();
 		iLogLimit = ApplicationProperty.OnlineSchedulingLogLimit.intValue();
+		iActions = (iLogLimit > 0 ? new LinkedBlockingQueue<OnlineSectioningLog.Action>(iLogLimit) : new LinkedBlockingQueue<OnlineSectioningLog.Action>());
+		iBatchSize = Math.max(1, ApplicationProperty.OnlineSchedulingLogBatchSize.intValue());
+		iFlushInterval = 1000l * Math.max(1, ApplicationProperty.OnlineSchedulingLogFlushInterval.intValue());
+		int nrThreads = ApplicationProperty.OnlineSchedulingLogThreads.intValue();
+		if (nrThreads > 1) {
+			// when all the writers are busy and a few batches are waiting, the logger thread saves the next batch by itself
+			iWriters = new ThreadPoolExecutor(nrThreads, nrThreads, 0l, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(nrThreads), new ThreadFactory() {
+				private AtomicInteger iCounter = new AtomicInteger(0);
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "OnlineSectioningLogger-" + iCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
 		try {
-			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null)
-				iOut = new PrintWriter(new FileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
+			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null) {
+				iOut = new LogFileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()));
+				iOut.start();
+			}
 		} catch (IOException e) {
 			sLog.warn("Unable to create sectioning log: " + e.getMessage(), e);
 		}
 	}
-	
+
 	public boolean isEnabled() { return iEnabled; }
 	public void setEnabled(boolean enabled) { iEnabled = enabled; }
 	public boolean isActive() { return iActive; }
@@ -96,106 +137,210 @@ public class OnlineSectioningLogger extends Thread {
 		if (log == null || !isEnabled() || !isActive()) return;
 		for (OnlineSectioningLog.Action action: log.getActionList()) {
 			if (action.hasStartTime() && action.hasStudent() && action.hasOperation() && action.hasSession()) {
-				synchronized (iActions) {
-					if (iLogLimit <= 0 || iActions.size() < iLogLimit)
-						iActions.add(action);
-				}
-				if (iOut != null) {
-					synchronized (iOut) {
-						iOut.print(OnlineSectioningLog.Log.newBuilder().addAction(action).build().toString());
-						iOut.flush();
-					}
-				}
+				if (!iActions.offer(action))
+					iDropped.incrementAndGet();
+				if (iOut != null)
+					iOut.record(action);
 			}
 		}
 	}
-	
+
 	public void run() {
 		sLog.info("Online Sectioning Logger is up.");
 		try {
 			iActive = true;
+			List<OnlineSectioningLog.Action> batch = new ArrayList<OnlineSectioningLog.Action>(iBatchSize);
+			long flushTime = System.currentTimeMillis() + iFlushInterval;
 			while (true) {
-				try {
-					sleep(60000);
-				} catch (InterruptedException e) {
-				}
-				List<OnlineSectioningLog.Action> actionsToSave = null;
-				synchronized (iActions) {
-					if (!iActions.isEmpty()) {
-						actionsToSave = new ArrayList<OnlineSectioningLog.Action>(iActions);
-						iActions.clear();
-					}
-				}
-				try {
-					if (actionsToSave != null) {
-						sLog.debug("Persisting " + actionsToSave.size() + " actions...");
-						if (iLogLimit > 0 && actionsToSave.size() >= iLogLimit)
-							sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages have been dropped.");
-						org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						try {
-							Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
-							for (OnlineSectioningLog.Action q: actionsToSave) {
-								org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
-								log.setAction(q.toByteArray());
-								log.setOperation(q.getOperation());
-								String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
-								if (studentExternalId == null || studentExternalId.isEmpty()) {
-									Student student = StudentDAO.getInstance().get(q.getStudent().getUniqueId(), hibSession);
-									if (student == null) continue;
-									studentExternalId = student.getExternalUniqueId();
-								}
-								log.setStudent(studentExternalId);
-								log.setTimeStamp(new Date(q.getStartTime()));
-								if (q.hasResult())
-									log.setResult(q.getResult().getNumber());
-								if (q.hasUser() && q.getUser().hasExternalId())
-									log.setUser(q.getUser().getExternalId());
-								if (q.hasCpuTime())
-									log.setCpuTime(q.getCpuTime());
-								if (q.hasStartTime() && q.hasEndTime())
-									log.setWallTime(q.getEndTime() - q.getStartTime());
-								if (q.hasApiGetTime())
-									log.setApiGetTime(q.getApiGetTime());
-								if (q.hasApiPostTime())
-									log.setApiPostTime(q.getApiPostTime());
-								if (q.hasApiException())
-									log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
-								if (!q.getMessageList().isEmpty()) {
-									String message = null; int level = 0;
-									for (OnlineSectioningLog.Message m: q.getMessageList()) {
-										if (message != null && !message.isEmpty() && (!m.hasLevel() || level < m.getLevel().getNumber())) continue;
-										if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
-										else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
-									}
-									if (message != null && !message.isEmpty())
-										log.setMessage(message.length() > 255 ? message.substring(0, 255) : message);
-								}
-								Long sessionId = q.getSession().getUniqueId();
-								Session session = sessions.get(sessionId);
-								if (session == null) {
-									session = SessionDAO.getInstance().get(sessionId, hibSession);
-									sessions.put(sessionId, session);
-								}
-								log.setSession(session);
-								hibSession.save(log);
-							}
-							hibSession.flush();
-						} finally {
-							hibSession.close();
+				long wait = flushTime - System.currentTimeMillis();
+				if (iActive && wait > 0 && batch.size() < iBatchSize) {
+					try {
+						OnlineSectioningLog.Action action = iActions.poll(wait, TimeUnit.MILLISECONDS);
+						if (action != null) {
+							batch.add(action);
+							iActions.drainTo(batch, iBatchSize - batch.size());
 						}
+					} catch (InterruptedException e) {
 					}
-				} catch (Throwable t) {
-					sLog.warn("Failed to save " + actionsToSave.size() + " log actions: " + t.getMessage(), t);
+					continue;
 				}
+				if (!iActive) iActions.drainTo(batch);
+				long dropped = iDropped.getAndSet(0);
+				if (dropped > 0)
+					sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, " + dropped + " messages have been dropped.");
+				if (!batch.isEmpty()) {
+					persist(batch);
+					batch = new ArrayList<OnlineSectioningLog.Action>(iBatchSize);
+				}
+				flushTime = System.currentTimeMillis() + iFlushInterval;
 				if (!iActive) break;
 			}
 		} catch (Throwable t) {
 			sLog.error("Online Sectioning Logger failed: " + t.getMessage(), t);
 		} finally {
 			iActive = false;
-			if (iOut != null) { iOut.flush(); iOut.close(); }
+			if (iWriters != null) {
+				iWriters.shutdown();
+				try {
+					iWriters.awaitTermination(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {}
+			}
+			if (iOut != null) iOut.close();
+		}
+		sLog.info("Online Sectioning Logger is down.");
+	}
+
+	protected void persist(final List<OnlineSectioningLog.Action> actions) {
+		if (iWriters == null) {
+			save(actions);
+		} else {
+			iWriters.execute(new Runnable() {
+				@Override
+				public void run() {
+					save(actions);
+				}
+			});
+		}
+	}
+
+	protected void save(List<OnlineSectioningLog.Action> actions) {
+		sLog.debug("Persisting " + actions.size() + " actions...");
+		org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
+		hibSession.setCacheMode(CacheMode.IGNORE);
+		Transaction tx = null;
+		try {
+			tx = hibSession.beginTransaction();
+
+			// resolve all the missing student external ids at once
+			Map<Long, String> externalIds = new HashMap<Long, String>();
+			Set<Long> studentIds = new HashSet<Long>();
+			for (OnlineSectioningLog.Action q: actions)
+				if (!q.getStudent().hasExternalId() || q.getStudent().getExternalId().isEmpty())
+					studentIds.add(q.getStudent().getUniqueId());
+			Iterator<Long> iterator = studentIds.iterator();
+			while (iterator.hasNext()) {
+				List<Long> ids = new ArrayList<Long>(1000);
+				while (iterator.hasNext() && ids.size() < 1000)
+					ids.add(iterator.next());
+				for (Object[] o: (List<Object[]>)hibSession.createQuery(
+						"select s.uniqueId, s.externalUniqueId from Student s where s.uniqueId in :studentIds")
+						.setParameterList("studentIds", ids).list()) {
+					externalIds.put((Long)o[0], (String)o[1]);
+				}
+			}
+
+			Map<Long, Session> sessions = new HashMap<Long, Session>();
+			int count = 0;
+			for (OnlineSectioningLog.Action q: actions) {
+				org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
+				log.setAction(q.toByteArray());
+				log.setOperation(q.getOperation());
+				String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
+				if (studentExternalId == null || studentExternalId.isEmpty()) {
+					studentExternalId = externalIds.get(q.getStudent().getUniqueId());
+					if (studentExternalId == null) continue;
+				}
+				log.setStudent(studentExternalId);
+				log.setTimeStamp(new Date(q.getStartTime()));
+				if (q.hasResult())
+					log.setResult(q.getResult().getNumber());
+				if (q.hasUser() && q.getUser().hasExternalId())
+					log.setUser(q.getUser().getExternalId());
+				if (q.hasCpuTime())
+					log.setCpuTime(q.getCpuTime());
+				if (q.hasStartTime() && q.hasEndTime())
+					log.setWallTime(q.getEndTime() - q.getStartTime());
+				if (q.hasApiGetTime())
+					log.setApiGetTime(q.getApiGetTime());
+				if (q.hasApiPostTime())
+					log.setApiPostTime(q.getApiPostTime());
+				if (q.hasApiException())
+					log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
+				if (!q.getMessageList().isEmpty()) {
+					String message = null; int level = 0;
+					for (OnlineSectioningLog.Message m: q.getMessageList()) {
+						if (message != null && !message.isEmpty() && (!m.hasLevel() || level < m.getLevel().getNumber())) continue;
+						if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
+						else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
+					}
+					if (message != null && !message.isEmpty())
+						log.setMessage(message.length() > 255 ? message.substring(0, 255) : message);
+				}
+				Long sessionId = q.getSession().getUniqueId();
+				Session session = sessions.get(sessionId);
+				if (session == null) {
+					session = SessionDAO.getInstance().get(sessionId, hibSession);
+					sessions.put(sessionId, session);
+				}
+				log.setSession(session);
+				hibSession.save(log);
+				// the inserts are sent to the database in JDBC batches (see hibernate.jdbc.batch_size)
+				if (++count % iBatchSize == 0) {
+					hibSession.flush(); hibSession.clear();
+				}
+			}
+			hibSession.flush();
+			tx.commit();
+		} catch (Throwable t) {
+			sLog.warn("Failed to save " + actions.size() + " log actions: " + t.getMessage(), t);
+			try {
+				if (tx != null && tx.isActive()) tx.rollback();
+			} catch (Exception e) {}
+		} finally {
+			hibSession.close();
 		}
-		sLog.info("Online Sectioning Logger is down.");	}
+	}
 
+	/**
+	 * Writes the actions into the log file, so that the threads recording the actions
+	 * do not need to wait for the file to be written.
+	 */
+	private static class LogFileWriter extends Thread {
+		private BlockingQueue<OnlineSectioningLog.Action> iQueue = new LinkedBlockingQueue<OnlineSectioningLog.Action>();
+		private PrintWriter iOut;
+		private volatile boolean iActive = true;
+
+		private LogFileWriter(File file) throws IOException {
+			super("OnlineSectioningLogger-File");
+			setDaemon(true);
+			iOut = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+		}
+
+		public void record(OnlineSectioningLog.Action action) {
+			iQueue.offer(action);
+		}
+
+		@Override
+		public void run() {
+			List<OnlineSectioningLog.Action> actions = new ArrayList<OnlineSectioningLog.Action>();
+			try {
+				while (iActive || !iQueue.isEmpty()) {
+					try {
+						OnlineSectioningLog.Action action = iQueue.poll(1, TimeUnit.SECONDS);
+						if (action == null) continue;
+						actions.add(action);
+					} catch (InterruptedException e) {
+						continue;
+					}
+					iQueue.drainTo(actions);
+					for (OnlineSectioningLog.Action action: actions)
+						iOut.print(OnlineSectioningLog.Log.newBuilder().addAction(action).build().toString());
+					actions.clear();
+					// flush only when there is nothing more to write
+					if (iQueue.isEmpty()) iOut.flush();
+				}
+			} finally {
+				iOut.flush();
+				iOut.close();
+			}
+		}
+
+		public void close() {
+			iActive = false;
+			interrupt();
+			try {
+				join();
+			} catch (InterruptedException e) {}
+		}
+	}
 }
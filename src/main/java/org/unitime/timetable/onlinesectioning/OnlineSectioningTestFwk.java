@@ -136,7 +136,7 @@ public abstract class OnlineSectioningTestFwk {
             	System.exit(0);
             }
         } else {
-            iServer = new InMemoryServer(new OnlineSectioningServerContext() {
+            iServer = createServer(new OnlineSectioningServerContext() {
     			@Override
     			public boolean isWaitTillStarted() {
     				return true;
@@ -160,6 +160,13 @@ public abstract class OnlineSectioningTestFwk {
         }
 	}
 	
+	/**
+	 * Create local (not remote) server, {@link InMemoryServer} by default
+	 */
+	protected OnlineSectioningServer createServer(OnlineSectioningServerContext context) {
+		return new InMemoryServer(context);
+	}
+	
 	protected void stopServer() {
 		if (iChannel == null && iServer != null) {
 			List<Long> offeringIds = iServer.getOfferingsToPersistExpectedSpaces(0);
@@ -320,12 +327,10 @@ public abstract class OnlineSectioningTestFwk {
 	        
 			startServer();
 			
-			List<Operation> operations = operations();
-			
-			Collections.shuffle(operations);
+			List<Operation> operations = select(operations(), nrTasks);
 			
 			for (int c: nrConcurrent) {
-				run(nrTasks <= 0 || operations.size() <= nrTasks ? operations : operations.subList(0, nrTasks), c);
+				run(operations, c);
 			}
 			
 			logCounters();
@@ -340,6 +345,14 @@ public abstract class OnlineSectioningTestFwk {
 		}
 	}
 	
+	/**
+	 * Operations to run, a random sample of the given size (all operations in a random order when nrTasks is not positive)
+	 */
+	protected List<Operation> select(List<Operation> operations, int nrTasks) {
+		Collections.shuffle(operations);
+		return (nrTasks <= 0 || operations.size() <= nrTasks ? operations : operations.subList(0, nrTasks));
+	}
+	
 	public double inc(String counter, double value) {
 		synchronized (iCounters) {
 			Counter cnt = iCounters.get(counter);
@@ -79,6 +79,7 @@ import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
 
 /**
  * @author Tomas Muller
@@ -337,6 +338,8 @@ public class GetInfo implements OnlineSectioningAction<Map<String, String>>{
 		} finally {
 			lock.release();
 		}
+		if (server instanceof AbstractServer && ((AbstractServer)server).getAsyncExecutor() != null)
+			info.put("Asynchronous actions", ((AbstractServer)server).getAsyncExecutor().toString());
 		return info;		
 	}
 	
@@ -27,10 +27,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.MultiLock;
+import org.unitime.timetable.onlinesectioning.MultiReadWriteLock;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
@@ -43,6 +45,7 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 public abstract class AbstractLockingServer extends AbstractServer {
 	private ReentrantReadWriteLock iLock = new ReentrantReadWriteLock();
 	private MultiLock iMultiLock;
+	private MultiReadWriteLock iStripedLock;
 	private Map<Long, Lock> iOfferingLocks = new Hashtable<Long, Lock>();
 	
 	public AbstractLockingServer(OnlineSectioningServerContext context) throws SectioningException {
@@ -52,14 +55,71 @@ public abstract class AbstractLockingServer extends AbstractServer {
 	protected AbstractLockingServer(AcademicSessionInfo session, boolean allowAsyncCalls) {
 		super(session, allowAsyncCalls);
 		iMultiLock = new MultiLock(getAcademicSession());
+		if (ApplicationProperty.OnlineSchedulingServerStripedLocking.isTrue())
+			iStripedLock = new MultiReadWriteLock(ApplicationProperty.OnlineSchedulingServerLockStripes.intValue());
 	}
 	
 	@Override
 	protected void load(OnlineSectioningServerContext context) {
 		iMultiLock = new MultiLock(getAcademicSession());
+		if (ApplicationProperty.OnlineSchedulingServerStripedLocking.isTrue())
+			iStripedLock = new MultiReadWriteLock(ApplicationProperty.OnlineSchedulingServerLockStripes.intValue());
 		super.load(context);
 	}
 	
+	/**
+	 * Striped locking: updates of a student or an offering only lock the affected student and offering ids
+	 * (students are using negative ids, the same way as in {@link AbstractLockingServer#lockStudent(Long, Collection, String)}),
+	 * the read-write lock of the whole academic session is only write-locked by {@link AbstractLockingServer#lockAll()}
+	 * (and by the un-keyed {@link AbstractLockingServer#writeLock()}).
+	 * The underlying data structures of the server must be safe to be read while being updated.
+	 */
+	public boolean isStripedLocking() {
+		return iStripedLock != null;
+	}
+	
+	/**
+	 * Read lock on the given student (negative) and offering (positive) ids.
+	 * Equivalent to {@link AbstractLockingServer#readLock()} when striped locking is not enabled.
+	 */
+	public Lock readLock(Collection<Long> ids) {
+		return lock(false, ids);
+	}
+	
+	/**
+	 * Write lock on the given student (negative) and offering (positive) ids.
+	 * Equivalent to {@link AbstractLockingServer#writeLock()} when striped locking is not enabled.
+	 */
+	public Lock writeLock(Collection<Long> ids) {
+		return lock(true, ids);
+	}
+	
+	protected Lock lock(boolean write, Collection<Long> ids) {
+		if (iLock == null || iStripedLock == null)
+			return (write ? writeLock() : readLock());
+		if (iLock.isWriteLockedByCurrentThread())
+			return new Lock() {
+				public void release() {}
+			};
+		iLock.readLock().lock();
+		final Lock stripes;
+		try {
+			stripes = iStripedLock.lock(write, ids);
+		} catch (RuntimeException e) {
+			iLock.readLock().unlock();
+			throw e;
+		}
+		return new Lock() {
+			public void release() {
+				try {
+					stripes.release();
+				} finally {
+					iLock.readLock().unlock();
+				}
+			}
+		};
+	}
+	
 	@Override
 	public Lock readLock() {
 		if (iLock == null)
@@ -105,6 +165,8 @@ public abstract class AbstractLockingServer extends AbstractServer {
 				public void release() {}
 			};
 		iLock.writeLock().lock();
+		// no stripe can be held while the whole session is write-locked, forget the ones that are no longer needed
+		if (iStripedLock != null) iStripedLock.removeAll();
 		return new Lock() {
 			public void release() {
 				iLock.writeLock().unlock();
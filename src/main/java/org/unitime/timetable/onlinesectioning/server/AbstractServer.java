@@ -24,6 +24,7 @@ import java.lang.reflect.Modifier;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
@@ -32,7 +33,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -65,6 +66,7 @@ import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.CacheElement;
+import org.unitime.timetable.onlinesectioning.HasAsyncKeys;
 import org.unitime.timetable.onlinesectioning.HasCacheMode;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningActionFactory;
@@ -81,6 +83,7 @@ import org.unitime.timetable.onlinesectioning.model.XTime;
 import org.unitime.timetable.onlinesectioning.updates.CheckAllOfferingsAction;
 import org.unitime.timetable.onlinesectioning.updates.PersistExpectedSpacesAction;
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
+import org.unitime.timetable.onlinesectioning.updates.ReloadFromSnapshot;
 import org.unitime.timetable.util.Formats;
 import org.unitime.timetable.util.MemoryCounter;
 
@@ -95,7 +98,6 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	private OnlineSectioningActionFactory iActionFactory = null;
 	
 	protected AsyncExecutor iExecutor = null;
-	private Queue<Runnable> iExecutorQueue = new LinkedList<Runnable>();
 	private HashSet<CacheElement<Long>> iOfferingsToPersistExpectedSpaces = new HashSet<CacheElement<Long>>();
 	private static ThreadLocal<LinkedList<OnlineSectioningHelper>> sHelper = new ThreadLocal<LinkedList<OnlineSectioningHelper>>();
 	protected Map<String, Object> iProperties = new HashMap<String, Object>();
@@ -164,13 +166,26 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 					.setExternalId(StudentClassEnrollment.SystemChange.SYSTEM.name())
 					.setName(StudentClassEnrollment.SystemChange.SYSTEM.getName())
 					.setType(OnlineSectioningLog.Entity.EntityType.OTHER).build();
+			final long t0 = System.currentTimeMillis();
+			final boolean snapshot = ApplicationProperty.OnlineSchedulingServerSnapshot.isTrue();
 			if (context.isWaitTillStarted()) {
-				try {
-					execute(createAction(ReloadAllData.class), user);
-				} catch (Throwable exception) {
-					iLog.error("Failed to load server: " + exception.getMessage(), exception);
-					throw exception;
+				boolean warm = false;
+				if (snapshot) {
+					try {
+						warm = Boolean.TRUE.equals(execute(createAction(ReloadFromSnapshot.class), user));
+					} catch (Throwable exception) {
+						iLog.warn("Failed to load server snapshot: " + exception.getMessage(), exception);
+					}
+				}
+				if (!warm) {
+					try {
+						execute(createAction(ReloadAllData.class), user);
+					} catch (Throwable exception) {
+						iLog.error("Failed to load server: " + exception.getMessage(), exception);
+						throw exception;
+					}
 				}
+				logStartUp(warm, t0);
 				if (getAcademicSession().isSectioningEnabled()) {
 					try {
 						execute(createAction(CheckAllOfferingsAction.class), user);
@@ -181,32 +196,23 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 				}
 				setReady(true);
 				getMemUsage();
-			} else {
-				execute(createAction(ReloadAllData.class), user, new ServerCallback<Boolean>() {
+			} else if (snapshot) {
+				execute(createAction(ReloadFromSnapshot.class), user, new ServerCallback<Boolean>() {
 					@Override
 					public void onSuccess(Boolean result) {
-						if (getAcademicSession().isSectioningEnabled())
-							execute(createAction(CheckAllOfferingsAction.class), user, new ServerCallback<Boolean>() {
-								@Override
-								public void onSuccess(Boolean result) {
-									setReady(true);
-									getMemUsage();
-								}
-								@Override
-								public void onFailure(Throwable exception) {
-									iLog.error("Failed to check all offerings: " + exception.getMessage(), exception);
-								}
-							});
-						else {
-							setReady(true);
-							getMemUsage();
-						}
+						if (Boolean.TRUE.equals(result))
+							loaded(user, true, t0).onSuccess(result);
+						else
+							execute(createAction(ReloadAllData.class), user, loaded(user, false, t0));
 					}
 					@Override
 					public void onFailure(Throwable exception) {
-						iLog.error("Failed to load server: " + exception.getMessage(), exception);
+						iLog.warn("Failed to load server snapshot: " + exception.getMessage(), exception);
+						execute(createAction(ReloadAllData.class), user, loaded(user, false, t0));
 					}
 				});
+			} else {
+				execute(createAction(ReloadAllData.class), user, loaded(user, false, t0));
 			}
 		} catch (Throwable t) {
 			if (t instanceof SectioningException) throw (SectioningException)t;
@@ -214,6 +220,39 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 	}
 	
+	private void logStartUp(boolean warm, long t0) {
+		iLog.info("Server loaded in " + new DecimalFormat("0.0").format((System.currentTimeMillis() - t0) / 1000.0) + " seconds (" + (warm ? "warm start from a snapshot" : "cold start") + ").");
+	}
+	
+	private ServerCallback<Boolean> loaded(final OnlineSectioningLog.Entity user, final boolean warm, final long t0) {
+		return new ServerCallback<Boolean>() {
+			@Override
+			public void onSuccess(Boolean result) {
+				logStartUp(warm, t0);
+				if (getAcademicSession().isSectioningEnabled())
+					execute(createAction(CheckAllOfferingsAction.class), user, new ServerCallback<Boolean>() {
+						@Override
+						public void onSuccess(Boolean result) {
+							setReady(true);
+							getMemUsage();
+						}
+						@Override
+						public void onFailure(Throwable exception) {
+							iLog.error("Failed to check all offerings: " + exception.getMessage(), exception);
+						}
+					});
+				else {
+					setReady(true);
+					getMemUsage();
+				}
+			}
+			@Override
+			public void onFailure(Throwable exception) {
+				iLog.error("Failed to load server: " + exception.getMessage(), exception);
+			}
+		};
+	}
+	
 	@Override
 	public long getMemUsage() {
 		Runtime rt = Runtime.getRuntime();
@@ -441,51 +480,141 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			return;
 		}
 		final String locale = Localization.getLocale();
-		synchronized (iExecutorQueue) {
-			iExecutorQueue.offer(new Runnable() {
-				@Override
-				public void run() {
-					Localization.setLocale(locale);
-					try {
-						callback.onSuccess(execute(action, user));
-					} catch (Throwable t) {
-						callback.onFailure(t);
-					}
-				}
-				
-				@Override
-				public String toString() {
-					return action.name();
+		iExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				Localization.setLocale(locale);
+				try {
+					callback.onSuccess(execute(action, user));
+				} catch (Throwable t) {
+					callback.onFailure(t);
 				}
-			});
-			iExecutorQueue.notify();
-		}
+			}
+			
+			@Override
+			public String toString() {
+				return action.name();
+			}
+		}, action instanceof HasAsyncKeys ? ((HasAsyncKeys)action).getAsyncKeys() : null);
 	}
 	
-	public class AsyncExecutor extends Thread {
+	/**
+	 * Executes asynchronous actions using a pool of worker threads (see {@link ApplicationProperty#OnlineSchedulingServerAsyncThreads}).
+	 * Jobs sharing a key are executed in the order in which they were submitted, jobs with no keys are executed exclusively
+	 * (after all the previously submitted jobs are finished and before any other job is started).
+	 */
+	public class AsyncExecutor {
+		private String iName;
+		private Thread[] iWorkers;
 		private boolean iStop = false;
+		private LinkedList<Job> iQueue = new LinkedList<Job>();
+		private Set<Long> iRunningKeys = new HashSet<Long>();
+		private int iRunning = 0;
+		private boolean iExclusive = false;
+		private long iExecuted = 0, iTotalWait = 0, iTotalTime = 0, iMaxWait = 0;
 		
 		public AsyncExecutor(AcademicSessionInfo session) {
-			setName("AsyncExecutor[" + session + "]");
-			setDaemon(true);
+			iName = "AsyncExecutor[" + session + "]";
+			int nrThreads = Math.max(1, ApplicationProperty.OnlineSchedulingServerAsyncThreads.intValue());
+			iWorkers = new Thread[nrThreads];
+			for (int i = 0; i < nrThreads; i++) {
+				iWorkers[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						work();
+					}
+				});
+				iWorkers[i].setName(nrThreads == 1 ? iName : iName + "-" + (1 + i));
+				iWorkers[i].setDaemon(true);
+			}
 		}
 		
-		public void run() {
+		public void start() {
+			for (Thread worker: iWorkers)
+				worker.start();
+		}
+		
+		public synchronized void stop() {
+			iStop = true;
+			notifyAll();
+		}
+		
+		public synchronized void submit(Runnable runnable, Collection<Long> keys) {
+			iQueue.add(new Job(runnable, keys));
+			notifyAll();
+		}
+		
+		private synchronized Job next() {
+			while (!iStop) {
+				Job job = poll();
+				if (job != null) {
+					iRunning ++;
+					if (job.isExclusive())
+						iExclusive = true;
+					else
+						iRunningKeys.addAll(job.getKeys());
+					return job;
+				}
+				try {
+					if (iQueue.isEmpty() && iLog.isDebugEnabled())
+						iLog.debug("Executor is waiting for a new job...");
+					wait();
+				} catch (InterruptedException e) {}
+			}
+			return null;
+		}
+		
+		/** First job that can be started now, null if there is none */
+		private Job poll() {
+			if (iExclusive) return null;
+			Set<Long> blocked = new HashSet<Long>(iRunningKeys);
+			for (Iterator<Job> i = iQueue.iterator(); i.hasNext(); ) {
+				Job job = i.next();
+				if (job.isExclusive()) {
+					// exclusive job must wait for all the jobs before it, no job after it can start
+					if (iRunning == 0 && job == iQueue.getFirst()) {
+						i.remove();
+						return job;
+					}
+					return null;
+				}
+				if (Collections.disjoint(blocked, job.getKeys())) {
+					i.remove();
+					return job;
+				}
+				// keep the order of the jobs with the same key
+				blocked.addAll(job.getKeys());
+			}
+			return null;
+		}
+		
+		private synchronized void done(Job job, long startTime) {
+			iRunning --;
+			if (job.isExclusive())
+				iExclusive = false;
+			else
+				iRunningKeys.removeAll(job.getKeys());
+			long wait = startTime - job.getCreated();
+			iExecuted ++;
+			iTotalWait += wait;
+			iTotalTime += System.currentTimeMillis() - startTime;
+			if (wait > iMaxWait) iMaxWait = wait;
+			notifyAll();
+		}
+		
+		private void work() {
 			try {
 				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
-				Runnable job;
-				while (!iStop) {
-					synchronized (iExecutorQueue) {
-						job = iExecutorQueue.poll();
-						if (job == null) {
-							try {
-								iLog.info("Executor is waiting for a new job...");
-								iExecutorQueue.wait();
-							} catch (InterruptedException e) {}
-							continue;
-						}		
+				Job job;
+				while ((job = next()) != null) {
+					long t0 = System.currentTimeMillis();
+					try {
+						job.run();
+					} catch (Throwable t) {
+						iLog.error("Job " + job + " failed: " + t.getMessage(), t);
+					} finally {
+						done(job, t0);
 					}
-					job.run();
 					if (_RootDAO.closeCurrentThreadSessions())
 						iLog.debug("Job " + job + " did not close current-thread hibernate session.");
 				}
@@ -497,16 +626,61 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			}
 		}
 		
+		/** Number of jobs waiting to be executed */
+		public synchronized int getQueueSize() { return iQueue.size(); }
+		
+		/** Number of jobs that are being executed */
+		public synchronized int getRunning() { return iRunning; }
+		
+		/** Number of executed jobs */
+		public synchronized long getExecuted() { return iExecuted; }
+		
+		/** Average time in milliseconds between a job was submitted and started */
+		public synchronized double getAverageWait() { return (iExecuted == 0 ? 0.0 : ((double)iTotalWait) / iExecuted); }
+		
+		/** Maximal time in milliseconds between a job was submitted and started */
+		public synchronized long getMaxWait() { return iMaxWait; }
+		
+		/** Average execution time of a job in milliseconds */
+		public synchronized double getAverageTime() { return (iExecuted == 0 ? 0.0 : ((double)iTotalTime) / iExecuted); }
+		
+		@Override
+		public synchronized String toString() {
+			DecimalFormat df = new DecimalFormat("0.0");
+			return iQueue.size() + " waiting, " + iRunning + " running, " + iExecuted + " executed (avg. wait " + df.format(getAverageWait()) + " ms, max. wait " + iMaxWait +
+					" ms, avg. time " + df.format(getAverageTime()) + " ms, " + iWorkers.length + " threads)";
+		}
 	}
 	
+	private static class Job implements Runnable {
+		private Runnable iRunnable;
+		private Set<Long> iKeys;
+		private long iCreated;
+		
+		private Job(Runnable runnable, Collection<Long> keys) {
+			iRunnable = runnable;
+			iKeys = (keys == null ? null : new HashSet<Long>(keys));
+			iCreated = System.currentTimeMillis();
+		}
+		
+		public boolean isExclusive() { return iKeys == null; }
+		public Set<Long> getKeys() { return iKeys; }
+		public long getCreated() { return iCreated; }
+		
+		@Override
+		public void run() { iRunnable.run(); }
+		
+		@Override
+		public String toString() { return iRunnable.toString(); }
+	}
+	
+	/** Asynchronous executor, null if the asynchronous calls are not allowed */
+	public AsyncExecutor getAsyncExecutor() { return iExecutor; }
+	
 	@Override
 	public void unload() {
-		if (iExecutor != null) {
-			iExecutor.iStop = true;
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.notify();
-			}
-		}
+		if (iExecutor != null)
+			iExecutor.stop();
 		if (iMasterThread != null)
 			iMasterThread.dispose();
 	}
@@ -694,20 +868,17 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 		
 		private void executeLoadOnMaster() {
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.offer(new Runnable() {
-					@Override
-					public void run() {
-						loadOnMaster(iContext);
-					}
-					
-					@Override
-					public String toString() {
-						return "load-on-master";
-					}
-				});
-				iExecutorQueue.notify();
-			};
+			iExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					loadOnMaster(iContext);
+				}
+				
+				@Override
+				public String toString() {
+					return "load-on-master";
+				}
+			}, null);
 		}
 		
 		@Override
@@ -792,4 +963,20 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		else if (courseName != null) return getCourse(courseName);
 		else return null;
 	}
+	
+	/**
+	 * Student attribute index used to narrow down the students matching a filter query (see {@link StudentAttributeIndex#compile(OnlineSectioningServer, org.unitime.timetable.gwt.server.Query)})
+	 * @return null if the server does not maintain the index
+	 */
+	public StudentAttributeIndex getStudentAttributeIndex() {
+		return null;
+	}
+
+	/**
+	 * Cache of the offering structures used by {@link org.unitime.timetable.onlinesectioning.solver.FindAssignmentAction} (see {@link OfferingStructureCache#getStructure(OnlineSectioningServer, org.unitime.timetable.onlinesectioning.model.XOffering)})
+	 * @return null if the server does not maintain the cache
+	 */
+	public OfferingStructureCache getOfferingStructureCache() {
+		return null;
+	}
 }
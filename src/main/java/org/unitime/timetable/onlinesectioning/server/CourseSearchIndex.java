@@ -0,0 +1,168 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+
+/**
+ * In-memory course search index used by {@link org.unitime.timetable.onlinesectioning.OnlineSectioningServer#findCourses(String, Integer, CourseMatcher)}.<br>
+ * The course name index contains the lower case course name, course name followed by the title, and course name - title
+ * (see {@link XCourseId#matchCourseName(String)}). The title index contains all the suffixes of the lower case title
+ * that start at the beginning of a word (see {@link XCourseId#matchTitle(String)}). A query is then a prefix range lookup
+ * in one of the sorted maps, which returns the same courses as a scan over all the courses would.<br>
+ * The index can be read and updated concurrently.
+ *
+ * @author Tomas Muller
+ */
+public class CourseSearchIndex {
+	private static final char SEPARATOR = '\u0000';
+	private Map<Long, XCourseId> iCourses = new ConcurrentHashMap<Long, XCourseId>();
+	private NavigableMap<String, XCourseId> iNames = new ConcurrentSkipListMap<String, XCourseId>();
+	private NavigableMap<String, XCourseId> iTitles = new ConcurrentSkipListMap<String, XCourseId>();
+
+	public CourseSearchIndex() {}
+
+	public CourseSearchIndex(Collection<? extends XCourseId> courses) {
+		for (XCourseId course: courses)
+			update(course);
+	}
+
+	protected static List<String> nameKeys(XCourseId course) {
+		List<String> keys = new ArrayList<String>(3);
+		keys.add(course.getCourseName().toLowerCase());
+		if (course.getTitle() != null) {
+			keys.add((course.getCourseName() + " " + course.getTitle()).toLowerCase());
+			keys.add((course.getCourseName() + " - " + course.getTitle()).toLowerCase());
+		}
+		return keys;
+	}
+
+	protected static List<String> titleKeys(XCourseId course) {
+		List<String> keys = new ArrayList<String>();
+		if (course.getTitle() == null) return keys;
+		String title = course.getTitle().toLowerCase();
+		for (int i = 0; i < title.length(); i++)
+			if (i == 0 || title.charAt(i - 1) == ' ')
+				keys.add(title.substring(i));
+		return keys;
+	}
+
+	private static String key(String text, XCourseId course) {
+		return text + SEPARATOR + course.getCourseId();
+	}
+
+	/** Add or replace the given course */
+	public void update(XCourseId course) {
+		remove(course.getCourseId());
+		iCourses.put(course.getCourseId(), course);
+		for (String name: nameKeys(course))
+			iNames.put(key(name, course), course);
+		for (String title: titleKeys(course))
+			iTitles.put(key(title, course), course);
+	}
+
+	/** Remove course of the given id */
+	public void remove(Long courseId) {
+		XCourseId course = iCourses.remove(courseId);
+		if (course == null) return;
+		for (String name: nameKeys(course))
+			iNames.remove(key(name, course));
+		for (String title: titleKeys(course))
+			iTitles.remove(key(title, course));
+	}
+
+	public void clear() {
+		iCourses.clear();
+		iNames.clear();
+		iTitles.clear();
+	}
+
+	public int size() {
+		return iCourses.size();
+	}
+
+	public XCourseId get(Long courseId) {
+		return iCourses.get(courseId);
+	}
+
+	private static Set<XCourseId> prefix(NavigableMap<String, XCourseId> index, String queryInLowerCase) {
+		return new HashSet<XCourseId>(index.subMap(queryInLowerCase, true, queryInLowerCase + Character.MAX_VALUE, false).values());
+	}
+
+	/** Courses for which {@link XCourseId#matchCourseName(String)} is true */
+	public Set<XCourseId> findByCourseName(String queryInLowerCase) {
+		return prefix(iNames, queryInLowerCase);
+	}
+
+	/** Courses for which {@link XCourseId#matchTitle(String)} is true */
+	public Set<XCourseId> findByTitle(String queryInLowerCase) {
+		Set<XCourseId> ret = prefix(iTitles, queryInLowerCase);
+		for (XCourseId course: findByCourseName(queryInLowerCase))
+			ret.remove(course);
+		return ret;
+	}
+	
+	/** Courses whose title contains the query anywhere (not just at the start of a word), excluding the courses with a matching course name */
+	public Set<XCourseId> findByTitleSubstring(String queryInLowerCase) {
+		Set<XCourseId> ret = new HashSet<XCourseId>();
+		for (XCourseId course: iCourses.values())
+			if (course.getTitle() != null && course.getTitle().toLowerCase().contains(queryInLowerCase) && !course.matchCourseName(queryInLowerCase))
+				ret.add(course);
+		return ret;
+	}
+
+	/**
+	 * Courses matching the given query, ordered by {@link CourseComparator} and limited to the given number of courses,
+	 * the same way as the linear search over all the courses did.
+	 */
+	public SubSet<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
+		return findCourses(query, limit, matcher, false);
+	}
+	
+	/**
+	 * Courses matching the given query, ordered by {@link CourseComparator} and limited to the given number of courses.
+	 * @param titleSubstring when true, the title matches when it contains the query anywhere (see {@link #findByTitleSubstring(String)}),
+	 * otherwise only at the start of a word (see {@link #findByTitle(String)})
+	 */
+	public SubSet<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher, boolean titleSubstring) {
+		SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
+		String queryInLowerCase = query.toLowerCase();
+		for (XCourseId c: findByCourseName(queryInLowerCase)) {
+			if (matcher == null || matcher.match(c)) ret.add(c);
+		}
+		if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
+			for (XCourseId c: (titleSubstring ? findByTitleSubstring(queryInLowerCase) : findByTitle(queryInLowerCase))) {
+				if (matcher == null || matcher.match(c)) ret.add(c);
+			}
+		}
+		return ret;
+	}
+}
@@ -22,11 +22,19 @@ package org.unitime.timetable.onlinesectioning.server;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.cpsolver.coursett.constraint.GroupConstraint;
 import org.cpsolver.coursett.constraint.IgnoreStudentConflictsConstraint;
+import org.cpsolver.ifs.util.JProf;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.server.SectioningServlet;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.model.Class_;
@@ -36,6 +44,7 @@ import org.unitime.timetable.model.DistributionPref;
 import org.unitime.timetable.model.InstructionalOffering;
 import org.unitime.timetable.model.PreferenceLevel;
 import org.unitime.timetable.model.Student;
+import org.unitime.timetable.model.StudentSectioningQueue;
 import org.unitime.timetable.model.dao.CourseOfferingDAO;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
@@ -65,25 +74,114 @@ public class DatabaseServer extends AbstractLockingServer {
 		super(session, allowAsyncCalls);
 	}
 
+	/**
+	 * Course search indexes by academic session id. A database server is created for each HTTP session (see
+	 * the OnlineSectioning.DummyServer session attribute), so the indexes are shared by all the database servers of the same academic session.
+	 * An index is built by the first caller outside of any global monitor, other callers of the same academic session wait for it to be built.
+	 */
+	private static ConcurrentHashMap<Long, CourseIndexEntry> sCourseIndexes = new ConcurrentHashMap<Long, CourseIndexEntry>();
+	
+	/**
+	 * Course search index of all offered courses of the academic session. It is dropped when an offering is changed
+	 * (see {@link DatabaseServer#clearCourseIndex(Long)}, called from the {@link StudentSectioningQueue} offering and session status changes)
+	 * and rebuilt when older than {@link ApplicationProperty#OnlineSchedulingDatabaseServerCourseIndexTTL} seconds, which bounds the staleness
+	 * of changes that are not recorded in the student sectioning queue (or that are made on another server).
+	 */
+	protected CourseSearchIndex getCourseIndex() {
+		final Long sessionId = getAcademicSession().getUniqueId();
+		long ttl = 1000l * ApplicationProperty.OnlineSchedulingDatabaseServerCourseIndexTTL.intValue();
+		while (true) {
+			CourseIndexEntry entry = sCourseIndexes.get(sessionId);
+			if (entry != null && entry.isDone() && JProf.currentTimeMillis() - entry.created() >= ttl) {
+				sCourseIndexes.remove(sessionId, entry);
+				entry = null;
+			}
+			if (entry == null) {
+				CourseIndexEntry newEntry = new CourseIndexEntry(new Callable<CourseSearchIndex>() {
+					@Override
+					public CourseSearchIndex call() throws Exception {
+						CourseSearchIndex index = new CourseSearchIndex();
+						for (CourseOffering c: (List<CourseOffering>)getCurrentHelper().getHibSession().createQuery(
+								"select c from CourseOffering c inner join fetch c.subjectArea sa inner join fetch c.instructionalOffering io left join fetch c.courseType ct where " +
+								"sa.session.uniqueId = :sessionId and io.notOffered = false")
+								.setLong("sessionId", sessionId)
+								.setCacheable(true).list()) {
+							index.update(new XCourseId(c));
+						}
+						return index;
+					}
+				});
+				entry = sCourseIndexes.putIfAbsent(sessionId, newEntry);
+				if (entry == null) {
+					entry = newEntry;
+					entry.run();
+				}
+			}
+			try {
+				return entry.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SectioningException(e.getMessage(), e);
+			} catch (ExecutionException e) {
+				sCourseIndexes.remove(sessionId, entry);
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+				throw new SectioningException(e.getCause().getMessage(), e.getCause());
+			} catch (CancellationException e) {
+				// the index has been dropped while being built -> try again
+			}
+		}
+	}
+	
+	protected void clearCourseIndex() {
+		clearCourseIndex(getAcademicSession().getUniqueId());
+	}
+	
+	/**
+	 * Drop the course search index of the given academic session, it will be rebuilt on the next course search.
+	 */
+	public static void clearCourseIndex(Long sessionId) {
+		if (sessionId == null) return;
+		CourseIndexEntry entry = sCourseIndexes.remove(sessionId);
+		if (entry != null && !entry.isDone()) entry.cancel(false);
+	}
+	
+	private static class CourseIndexEntry extends FutureTask<CourseSearchIndex> {
+		private long iCreated = JProf.currentTimeMillis();
+		
+		CourseIndexEntry(Callable<CourseSearchIndex> callable) {
+			super(callable);
+		}
+		
+		long created() { return iCreated; }
+	}
+
 	@Override
 	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
 		if (matcher != null) matcher.setServer(this);
 		Collection<XCourseId> ret = new ArrayList<XCourseId>();
-		for (CourseOffering c: (List<CourseOffering>)getCurrentHelper().getHibSession().createQuery(
-				"select c from CourseOffering c where " +
-				"c.subjectArea.session.uniqueId = :sessionId and c.instructionalOffering.notOffered = false and (" +
-				"(lower(c.subjectArea.subjectAreaAbbreviation || ' ' || c.courseNbr) like :q || '%' or lower(c.subjectArea.subjectAreaAbbreviation || ' ' || c.courseNbr || ' - ' || c.title) like :q || '%') " +
-				(query.length() > 2 ? "or lower(c.title) like '%' || :q || '%'" : "") + ") " +
-				"order by case " +
-				"when lower(c.subjectArea.subjectAreaAbbreviation || ' ' || c.courseNbr) like :q || '%' then 0 else 1 end," + // matches on course name first
-				"c.subjectArea.subjectAreaAbbreviation, c.courseNbr")
-				.setString("q", query.toLowerCase())
-				.setLong("sessionId", getAcademicSession().getUniqueId())
-				.setCacheable(true).list()) {
-			XCourse course = new XCourse(c);
-			if (matcher == null || matcher.match(course))
-				ret.add(course);
-			if (limit != null && ret.size() >= limit) break;
+		// matching courses, ordered by the course comparator (courses with matching course name first)
+		// the title can match anywhere, as it did with the like '%query%' condition of the database query
+		Iterator<XCourseId> candidates = getCourseIndex().findCourses(query, null, null, true).iterator();
+		int chunk = (limit == null ? 100 : Math.max(limit, 10));
+		while (candidates.hasNext() && (limit == null || ret.size() < limit)) {
+			List<Long> ids = new ArrayList<Long>(chunk);
+			while (candidates.hasNext() && ids.size() < chunk)
+				ids.add(candidates.next().getCourseId());
+			Map<Long, CourseOffering> courses = new HashMap<Long, CourseOffering>();
+			for (CourseOffering c: (List<CourseOffering>)getCurrentHelper().getHibSession().createQuery(
+					"select c from CourseOffering c where c.uniqueId in :courseIds")
+					.setParameterList("courseIds", ids)
+					.setCacheable(true).list()) {
+				courses.put(c.getUniqueId(), c);
+			}
+			for (Long id: ids) {
+				CourseOffering c = courses.get(id);
+				if (c == null) continue;
+				XCourse course = new XCourse(c);
+				if (matcher == null || matcher.match(course))
+					ret.add(course);
+				if (limit != null && ret.size() >= limit) break;
+			}
 		}
 		return ret;
 	}
@@ -241,14 +339,17 @@ public class DatabaseServer extends AbstractLockingServer {
 
 	@Override
 	public void remove(XOffering offering) {
+		clearCourseIndex();
 	}
 
 	@Override
 	public void update(XOffering offering) {
+		clearCourseIndex();
 	}
 
 	@Override
 	public void clearAll() {
+		clearCourseIndex();
 	}
 
 	@Override
@@ -21,11 +21,14 @@ package org.unitime.timetable.onlinesectioning.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
@@ -41,38 +44,70 @@ import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 
 /**
+ * In memory online sectioning server.<br>
+ * With striped locking (see {@link AbstractLockingServer#isStripedLocking()}), updates only hold the stripes of the affected
+ * students and offerings while readers that only take {@link #readLock()} may run at the same time. The following is safe
+ * to read that way: the student, offering, course, expectations, and instructor tables (concurrent maps), the offering
+ * request lists (copy-on-write lists), the course name sets (copy-on-write, a new set replaces the old one on each change),
+ * and the course search, student attribute, and offering structure indexes (internally synchronized).
+ * The {@link XStudent} and {@link XOffering} objects themselves are not: an update action holding a stripe may be changing them
+ * (e.g., a course request of a student, or the enrollments of an offering). A reader that needs a consistent view of
+ * a particular student or offering must read-lock its id using {@link #readLock(Collection)} (students are negative).
+ *
  * @author Tomas Muller
  */
 public class InMemoryServer extends AbstractLockingServer {
-	private Hashtable<Long, XCourseId> iCourseForId = new Hashtable<Long, XCourseId>();
-	private Hashtable<String, TreeSet<XCourseId>> iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+	private Map<Long, XCourseId> iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
+	private Map<String, TreeSet<XCourseId>> iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
+	private CourseSearchIndex iCourseIndex = new CourseSearchIndex();
+	private StudentAttributeIndex iStudentIndex = new StudentAttributeIndex();
+	private OfferingStructureCache iOfferingStructures = new OfferingStructureCache();
 	
-	private Hashtable<Long, XStudent> iStudentTable = new Hashtable<Long, XStudent>();
-	private Hashtable<Long, XOffering> iOfferingTable = new Hashtable<Long, XOffering>();
-	private Hashtable<Long, List<XCourseRequest>> iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
-	private Hashtable<Long, XExpectations> iExpectations = new Hashtable<Long, XExpectations>();
-	private Hashtable<String, Set<Long>> iInstructedOfferings = new Hashtable<String, Set<Long>>();
+	private Map<Long, XStudent> iStudentTable = new ConcurrentHashMap<Long, XStudent>();
+	private Map<Long, XOffering> iOfferingTable = new ConcurrentHashMap<Long, XOffering>();
+	private Map<Long, List<XCourseRequest>> iOfferingRequests = new ConcurrentHashMap<Long, List<XCourseRequest>>();
+	private Map<Long, XExpectations> iExpectations = new ConcurrentHashMap<Long, XExpectations>();
+	private Map<String, Set<Long>> iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
 	
 	public InMemoryServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
 	}
+	
+	private List<XCourseRequest> newRequestList() {
+		// with striped locking, the lists can be iterated over by one thread while being updated by another
+		return isStripedLocking() ? new CopyOnWriteArrayList<XCourseRequest>() : new ArrayList<XCourseRequest>();
+	}
+	
+	private Set<Long> newOfferingIdSet() {
+		return isStripedLocking() ? Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>()) : new HashSet<Long>();
+	}
+	
+	private Set<Long> lockIds(XStudent student) {
+		Set<Long> ids = new HashSet<Long>();
+		if (student != null) {
+			ids.add(-student.getStudentId());
+			for (XRequest request: student.getRequests())
+				if (request instanceof XCourseRequest)
+					for (XCourseId course: ((XCourseRequest)request).getCourseIds())
+						ids.add(course.getOfferingId());
+		}
+		return ids;
+	}
+	
+	private Set<Long> lockIds(XCourseRequest request) {
+		Set<Long> ids = new HashSet<Long>();
+		ids.add(-request.getStudentId());
+		for (XCourseId course: request.getCourseIds())
+			ids.add(course.getOfferingId());
+		return ids;
+	}
 
 	@Override
 	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
-			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
-			String queryInLowerCase = query.toLowerCase();
-			for (XCourseId c : iCourseForId.values()) {
-				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-			}
-			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
-				for (XCourseId c : iCourseForId.values()) {
-					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-				}
-			}
-			return ret;
+			return iCourseIndex.findCourses(query, limit, matcher);
 		} finally {
 			lock.release();
 		}
@@ -111,22 +146,26 @@ public class InMemoryServer extends AbstractLockingServer {
 	public XCourseId getCourse(String course) {
 		Lock lock = readLock();
 		try {
-			for (int idx = course.indexOf('-'); idx >= 0; idx = course.indexOf('-', idx + 1)) {
-				String courseName = course.substring(0, idx).trim();
-				String title = course.substring(idx + 1).trim();
-				TreeSet<XCourseId> infos = iCourseForName.get(courseName.toLowerCase());
-				if (infos!= null && !infos.isEmpty())
-					for (XCourseId info: infos)
-						if (title.equalsIgnoreCase(info.getTitle())) return info;
-			}
-			TreeSet<XCourseId> infos = iCourseForName.get(course.toLowerCase());
-			if (infos!= null && !infos.isEmpty()) return infos.first();
-			return null;
+			return getCourseByName(course);
 		} finally {
 			lock.release();
 		}
 	}
 	
+	private XCourseId getCourseByName(String course) {
+		for (int idx = course.indexOf('-'); idx >= 0; idx = course.indexOf('-', idx + 1)) {
+			String courseName = course.substring(0, idx).trim();
+			String title = course.substring(idx + 1).trim();
+			TreeSet<XCourseId> infos = iCourseForName.get(courseName.toLowerCase());
+			if (infos!= null && !infos.isEmpty())
+				for (XCourseId info: infos)
+					if (title.equalsIgnoreCase(info.getTitle())) return info;
+		}
+		TreeSet<XCourseId> infos = iCourseForName.get(course.toLowerCase());
+		if (infos!= null && !infos.isEmpty()) return infos.first();
+		return null;
+	}
+	
 	private XCourse toCourse(XCourseId course) {
 		if (course == null) return null;
 		if (course instanceof XCourse)
@@ -188,9 +227,10 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public void update(XExpectations expectations) {
-		Lock lock = writeLock();
+		Lock lock = writeLock(Collections.singleton(expectations.getOfferingId()));
 		try {
 			iExpectations.put(expectations.getOfferingId(), expectations);
+			iOfferingStructures.invalidate(expectations.getOfferingId());
 		} finally {
 			lock.release();
 		}
@@ -198,49 +238,68 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public void remove(XStudent student) {
-		Lock lock = writeLock();
-		try {
-			XStudent oldStudent = iStudentTable.remove(student.getStudentId());
-			if (oldStudent != null) {
-				for (XRequest request: oldStudent.getRequests())
-					if (request instanceof XCourseRequest)
-						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-							if (requests != null) requests.remove(request);
-						}
+		while (true) {
+			Set<Long> ids = lockIds(iStudentTable.get(student.getStudentId()));
+			ids.add(-student.getStudentId());
+			Lock lock = writeLock(ids);
+			try {
+				// the student may have changed before the lock was acquired, lock again when some of the offerings are not locked
+				if (!ids.containsAll(lockIds(iStudentTable.get(student.getStudentId())))) continue;
+				XStudent oldStudent = iStudentTable.remove(student.getStudentId());
+				if (oldStudent != null) {
+					iStudentIndex.remove(oldStudent);
+					for (XRequest request: oldStudent.getRequests())
+						if (request instanceof XCourseRequest)
+							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+								List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
+								if (requests != null) requests.remove(request);
+							}
+					invalidateOfferingStructures(oldStudent);
+				}
+				return;
+			} finally {
+				lock.release();
 			}
-		} finally {
-			lock.release();
 		}
 	}
 
 	@Override
 	public void update(XStudent student, boolean updateRequests) {
-		Lock lock = writeLock();
-		try {
-			XStudent oldStudent = iStudentTable.put(student.getStudentId(), student);
-			if (updateRequests) {
-				if (oldStudent != null) {
-					for (XRequest request: oldStudent.getRequests())
+		while (true) {
+			Set<Long> ids = lockIds(student);
+			if (updateRequests) ids.addAll(lockIds(iStudentTable.get(student.getStudentId())));
+			Lock lock = writeLock(ids);
+			try {
+				// the previous student may have changed before the lock was acquired, lock again when some of its offerings are not locked
+				if (updateRequests && !ids.containsAll(lockIds(iStudentTable.get(student.getStudentId())))) continue;
+				XStudent oldStudent = iStudentTable.put(student.getStudentId(), student);
+				iStudentIndex.update(oldStudent, student);
+				if (updateRequests) {
+					if (oldStudent != null) {
+						for (XRequest request: oldStudent.getRequests())
+							if (request instanceof XCourseRequest)
+								for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+									List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
+									if (requests != null) requests.remove(request);
+								}
+					}
+					for (XRequest request: student.getRequests())
 						if (request instanceof XCourseRequest)
 							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
 								List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-								if (requests != null) requests.remove(request);
+								if (requests == null) {
+									requests = newRequestList();
+									iOfferingRequests.put(course.getOfferingId(), requests);
+								}
+								requests.add((XCourseRequest)request);
 							}
+					invalidateOfferingStructures(oldStudent);
+					invalidateOfferingStructures(student);
 				}
-				for (XRequest request: student.getRequests())
-					if (request instanceof XCourseRequest)
-						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-							if (requests == null) {
-								requests = new ArrayList<XCourseRequest>();
-								iOfferingRequests.put(course.getOfferingId(), requests);
-							}
-							requests.add((XCourseRequest)request);
-						}
+				return;
+			} finally {
+				lock.release();
 			}
-		} finally {
-			lock.release();
 		}
 	}
 
@@ -250,20 +309,28 @@ public class InMemoryServer extends AbstractLockingServer {
 	}
 	
 	protected void remove(XOffering offering, boolean removeExpectations) {
-		Lock lock = writeLock();
+		Lock lock = writeLock(Collections.singleton(offering.getOfferingId()));
 		try {
-			for (XCourse course: offering.getCourses()) {
-				iCourseForId.remove(course.getCourseId());
-				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
-				if (courses != null) {
-					courses.remove(course);
-					if (courses.size() == 1) 
-						for (XCourseId x: courses) x.setHasUniqueName(true);
-					if (courses.isEmpty())
-						iCourseForName.remove(course.getCourseNameInLowerCase());
+			synchronized (iCourseForName) {
+				for (XCourse course: offering.getCourses()) {
+					iCourseForId.remove(course.getCourseId());
+					iCourseIndex.remove(course.getCourseId());
+					TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+					if (courses != null) {
+						// copy on write, the sets are read without any synchronization
+						courses = new TreeSet<XCourseId>(courses);
+						courses.remove(course);
+						if (courses.size() == 1) 
+							for (XCourseId x: courses) x.setHasUniqueName(true);
+						if (courses.isEmpty())
+							iCourseForName.remove(course.getCourseNameInLowerCase());
+						else
+							iCourseForName.put(course.getCourseNameInLowerCase(), courses);
+					}
 				}
 			}
 			iOfferingTable.remove(offering.getOfferingId());
+			iOfferingStructures.invalidate(offering.getOfferingId());
 			if (removeExpectations)
 				iExpectations.remove(offering.getOfferingId());
 			for (String externalId: offering.getInstructorExternalIds()) {
@@ -277,33 +344,38 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public void update(XOffering offering) {
-		Lock lock = writeLock();
+		Lock lock = writeLock(Collections.singleton(offering.getOfferingId()));
 		try {
 			XOffering oldOffering = iOfferingTable.get(offering.getOfferingId());
 			if (oldOffering != null)
 				remove(oldOffering, false);
 			
 			iOfferingTable.put(offering.getOfferingId(), offering);
-			for (XCourse course: offering.getCourses()) {
-				iCourseForId.put(course.getCourseId(), course);
-				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
-				if (courses == null) {
-					courses = new TreeSet<XCourseId>();
+			iOfferingStructures.invalidate(offering.getOfferingId());
+			synchronized (iCourseForName) {
+				for (XCourse course: offering.getCourses()) {
+					iCourseForId.put(course.getCourseId(), course);
+					iCourseIndex.update(course);
+					TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+					// copy on write, the sets are read without any synchronization
+					courses = (courses == null ? new TreeSet<XCourseId>() : new TreeSet<XCourseId>(courses));
+					courses.add(course);
+					if (courses.size() == 1) 
+						for (XCourseId x: courses) x.setHasUniqueName(true);
+					else if (courses.size() > 1)
+						for (XCourseId x: courses) x.setHasUniqueName(false);
 					iCourseForName.put(course.getCourseNameInLowerCase(), courses);
 				}
-				courses.add(course);
-				if (courses.size() == 1) 
-					for (XCourseId x: courses) x.setHasUniqueName(true);
-				else if (courses.size() > 1)
-					for (XCourseId x: courses) x.setHasUniqueName(false);
 			}
-			for (String externalId: offering.getInstructorExternalIds()) {
-				Set<Long> offeringIds = iInstructedOfferings.get(externalId);
-				if (offeringIds == null) {
-					offeringIds = new HashSet<Long>();
-					iInstructedOfferings.put(externalId, offeringIds);
+			synchronized (iInstructedOfferings) {
+				for (String externalId: offering.getInstructorExternalIds()) {
+					Set<Long> offeringIds = iInstructedOfferings.get(externalId);
+					if (offeringIds == null) {
+						offeringIds = newOfferingIdSet();
+						iInstructedOfferings.put(externalId, offeringIds);
+					}
+					offeringIds.add(offering.getOfferingId());
 				}
-				offeringIds.add(offering.getOfferingId());
 			}
 		} finally {
 			lock.release();
@@ -315,31 +387,43 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			if (iStudentTable == null)
-				iStudentTable = new Hashtable<Long, XStudent>();
+				iStudentTable = new ConcurrentHashMap<Long, XStudent>();
 			else
 				iStudentTable.clear();
 			if (iOfferingTable == null)
-				iOfferingTable = new Hashtable<Long, XOffering>();
+				iOfferingTable = new ConcurrentHashMap<Long, XOffering>();
 			else
 				iOfferingTable.clear();
 			if (iOfferingRequests == null)
-				iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
+				iOfferingRequests = new ConcurrentHashMap<Long, List<XCourseRequest>>();
 			else
 				iOfferingRequests.clear();
 			if (iExpectations == null)
-				iExpectations = new Hashtable<Long, XExpectations>();
+				iExpectations = new ConcurrentHashMap<Long, XExpectations>();
 			else
 				iExpectations.clear();
 			if (iCourseForId == null)
-				iCourseForId = new Hashtable<Long, XCourseId>();
+				iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
 			else
 				iCourseForId.clear();
 			if (iCourseForName == null)
-				iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+				iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
 			else
 				iCourseForName.clear();
+			if (iCourseIndex == null)
+				iCourseIndex = new CourseSearchIndex();
+			else
+				iCourseIndex.clear();
+			if (iStudentIndex == null)
+				iStudentIndex = new StudentAttributeIndex();
+			else
+				iStudentIndex.clear();
+			if (iOfferingStructures == null)
+				iOfferingStructures = new OfferingStructureCache();
+			else
+				iOfferingStructures.clear();
 			if (iInstructedOfferings == null)
-				iInstructedOfferings = new Hashtable<String, Set<Long>>();
+				iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
 			else
 				iInstructedOfferings.clear();
 		} finally {
@@ -352,7 +436,9 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			iStudentTable.clear();
+			iStudentIndex.clear();
 			iOfferingRequests.clear();
+			iOfferingStructures.clear();
 		} finally {
 			lock.release();
 		}
@@ -360,7 +446,7 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public XCourseRequest assign(XCourseRequest request, XEnrollment enrollment) {
-		Lock lock = writeLock();
+		Lock lock = writeLock(lockIds(request));
 		try {
 			XStudent student = iStudentTable.get(request.getStudentId());
 			for (XRequest r: student.getRequests()) {
@@ -375,12 +461,14 @@ public class InMemoryServer extends AbstractLockingServer {
 
 					// assign
 					cr.setEnrollment(enrollment);
+					for (XCourseId course: cr.getCourseIds())
+						iOfferingStructures.invalidate(course.getOfferingId());
 					
 					// put new requests
 					for (XCourseId course: cr.getCourseIds()) {
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests == null) {
-							requests = new ArrayList<XCourseRequest>();
+							requests = newRequestList();
 							iOfferingRequests.put(course.getOfferingId(), requests);
 						}
 						requests.add(cr);
@@ -395,9 +483,20 @@ public class InMemoryServer extends AbstractLockingServer {
 		}
 	}
 
+	/**
+	 * Increment the offering structure versions of all the offerings the student is requesting
+	 */
+	protected void invalidateOfferingStructures(XStudent student) {
+		if (student == null) return;
+		for (XRequest request: student.getRequests())
+			if (request instanceof XCourseRequest)
+				for (XCourseId course: ((XCourseRequest)request).getCourseIds())
+					iOfferingStructures.invalidate(course.getOfferingId());
+	}
+
 	@Override
 	public XCourseRequest waitlist(XCourseRequest request, boolean waitlist) {
-		Lock lock = writeLock();
+		Lock lock = writeLock(lockIds(request));
 		try {
 			XStudent student = iStudentTable.get(request.getStudentId());
 			for (XRequest r: student.getRequests()) {
@@ -417,7 +516,7 @@ public class InMemoryServer extends AbstractLockingServer {
 					for (XCourseId course: cr.getCourseIds()) {
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests == null) {
-							requests = new ArrayList<XCourseRequest>();
+							requests = newRequestList();
 							iOfferingRequests.put(course.getOfferingId(), requests);
 						}
 						requests.add(cr);
@@ -442,4 +541,13 @@ public class InMemoryServer extends AbstractLockingServer {
 		}
 	}
 
+	@Override
+	public StudentAttributeIndex getStudentAttributeIndex() {
+		return iStudentIndex;
+	}
+	
+	@Override
+	public OfferingStructureCache getOfferingStructureCache() {
+		return iOfferingStructures;
+	}
 }
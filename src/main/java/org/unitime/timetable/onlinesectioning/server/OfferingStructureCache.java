@@ -0,0 +1,239 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cpsolver.coursett.model.RoomLocation;
+import org.cpsolver.coursett.model.TimeLocation;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.model.XConfig;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XDistribution;
+import org.unitime.timetable.onlinesectioning.model.XDistributionType;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRoom;
+import org.unitime.timetable.onlinesectioning.model.XSection;
+import org.unitime.timetable.onlinesectioning.model.XSubpart;
+
+/**
+ * Cache of the student independent part of the conversion of an offering into the student sectioning model, used by
+ * {@link org.unitime.timetable.onlinesectioning.solver.FindAssignmentAction} and
+ * {@link org.unitime.timetable.onlinesectioning.solver.ComputeSuggestionsAction}.<br>
+ * An {@link OfferingStructure} is immutable: it contains enrollment counts of courses, configurations, sections and reservations,
+ * expected space, time and room locations and ignored conflicts of the sections, and enrollments of the offering by student.
+ * The student specific state (e.g., limits that do not count the student's own enrollment) is computed for each request on top of it.<br>
+ * Each offering has a version counter that the server increments (see {@link OfferingStructureCache#invalidate(Long)}) whenever the offering,
+ * its expected space, or its enrollments change. A cached structure is only returned when it was built with the current version
+ * (and from the same offering instance), so the validation does not depend on the number of requests of the offering.
+ *
+ * @author Tomas Muller
+ */
+public class OfferingStructureCache {
+	private Map<Long, OfferingStructure> iStructures = new ConcurrentHashMap<Long, OfferingStructure>();
+	private ConcurrentHashMap<Long, AtomicLong> iVersions = new ConcurrentHashMap<Long, AtomicLong>();
+	
+	public OfferingStructureCache() {}
+	
+	/** Current version of the given offering */
+	public long getVersion(Long offeringId) {
+		AtomicLong version = iVersions.get(offeringId);
+		return version == null ? 0l : version.get();
+	}
+	
+	/** Cached structure of the given offering, null when missing or when built with a different version */
+	public OfferingStructure get(Long offeringId, long version) {
+		OfferingStructure structure = iStructures.get(offeringId);
+		return (structure != null && structure.getVersion() == version ? structure : null);
+	}
+	
+	public void put(OfferingStructure structure) {
+		iStructures.put(structure.getOffering().getOfferingId(), structure);
+	}
+	
+	/**
+	 * Increment the version of the given offering, to be called after the offering, its expected space, or its enrollments have been changed.
+	 */
+	public void invalidate(Long offeringId) {
+		AtomicLong version = iVersions.get(offeringId);
+		if (version == null) {
+			version = new AtomicLong(0l);
+			AtomicLong old = iVersions.putIfAbsent(offeringId, version);
+			if (old != null) version = old;
+		}
+		version.incrementAndGet();
+		iStructures.remove(offeringId);
+	}
+	
+	public void clear() {
+		iStructures.clear();
+		iVersions.clear();
+	}
+	
+	public int size() {
+		return iStructures.size();
+	}
+	
+	/**
+	 * Structure of the given offering, using the cache of the server when it has one.
+	 */
+	public static OfferingStructure getStructure(OnlineSectioningServer server, XOffering offering) {
+		OfferingStructureCache cache = (server instanceof AbstractServer ? ((AbstractServer)server).getOfferingStructureCache() : null);
+		if (cache == null)
+			return new OfferingStructure(offering, server.getExpectations(offering.getOfferingId()), server.getRequests(offering.getOfferingId()), 0l);
+		// the version must be read before the expectations and the requests
+		long version = cache.getVersion(offering.getOfferingId());
+		OfferingStructure structure = cache.get(offering.getOfferingId(), version);
+		if (structure != null && structure.getOffering() == offering)
+			return structure;
+		structure = new OfferingStructure(offering, server.getExpectations(offering.getOfferingId()), server.getRequests(offering.getOfferingId()), version);
+		cache.put(structure);
+		return structure;
+	}
+	
+	/**
+	 * Immutable, student independent structure of an offering
+	 */
+	public static class OfferingStructure {
+		private XOffering iOffering;
+		private long iVersion;
+		private Map<Long, Double> iExpectedSpace = new HashMap<Long, Double>();
+		private Map<Long, Integer> iCourseEnrollments = new HashMap<Long, Integer>();
+		private Map<Long, Integer> iConfigEnrollments = new HashMap<Long, Integer>();
+		private Map<Long, Integer> iSectionEnrollments = new HashMap<Long, Integer>();
+		private Map<Long, Integer> iReservationEnrollments = new HashMap<Long, Integer>();
+		private Map<Long, List<XEnrollment>> iStudentEnrollments = new HashMap<Long, List<XEnrollment>>();
+		private Map<Long, TimeLocation> iTimes = new HashMap<Long, TimeLocation>();
+		private Map<Long, List<RoomLocation>> iRooms = new HashMap<Long, List<RoomLocation>>();
+		private Map<Long, Set<Long>> iIgnoreConflictWith = new HashMap<Long, Set<Long>>();
+		
+		public OfferingStructure(XOffering offering, XExpectations expectations, Collection<XCourseRequest> requests, long version) {
+			iOffering = offering;
+			iVersion = version;
+			for (XEnrollment enrollment: enrollments(offering, requests)) {
+				inc(iCourseEnrollments, enrollment.getCourseId());
+				inc(iConfigEnrollments, enrollment.getConfigId());
+				if (enrollment.getReservation() != null)
+					inc(iReservationEnrollments, enrollment.getReservation().getReservationId());
+				for (Long sectionId: enrollment.getSectionIds())
+					inc(iSectionEnrollments, sectionId);
+				List<XEnrollment> studentEnrollments = iStudentEnrollments.get(enrollment.getStudentId());
+				if (studentEnrollments == null) {
+					studentEnrollments = new ArrayList<XEnrollment>(1);
+					iStudentEnrollments.put(enrollment.getStudentId(), studentEnrollments);
+				}
+				studentEnrollments.add(enrollment);
+			}
+			for (XDistribution distribution: offering.getDistributions()) {
+				if (distribution.getDistributionType() != XDistributionType.IngoreConflicts) continue;
+				for (Long sectionId: distribution.getSectionIds()) {
+					Set<Long> ignore = iIgnoreConflictWith.get(sectionId);
+					if (ignore == null) {
+						ignore = new HashSet<Long>();
+						iIgnoreConflictWith.put(sectionId, ignore);
+					}
+					for (Long id: distribution.getSectionIds())
+						if (!id.equals(sectionId)) ignore.add(id);
+				}
+			}
+			for (XConfig config: offering.getConfigs())
+				for (XSubpart subpart: config.getSubparts())
+					for (XSection section: subpart.getSections()) {
+						iExpectedSpace.put(section.getSectionId(), expectations.getExpectedSpace(section.getSectionId()));
+						List<RoomLocation> rooms = new ArrayList<RoomLocation>();
+						for (XRoom r: section.getRooms())
+							rooms.add(new RoomLocation(r.getUniqueId(), r.getName(), null, 0, 0, r.getX(), r.getY(), r.getIgnoreTooFar(), null));
+						iRooms.put(section.getSectionId(), Collections.unmodifiableList(rooms));
+						if (section.getTime() != null && section.getTime().getDays() != 0)
+							iTimes.put(section.getSectionId(), new TimeLocation(section.getTime().getDays(), section.getTime().getSlot(), section.getTime().getLength(), 0, 0.0,
+									section.getTime().getDatePatternId(), section.getTime().getDatePatternName(), section.getTime().getWeeks(),
+									section.getTime().getBreakTime()));
+					}
+		}
+		
+		private static List<XEnrollment> enrollments(XOffering offering, Collection<XCourseRequest> requests) {
+			List<XEnrollment> enrollments = new ArrayList<XEnrollment>();
+			if (requests != null)
+				for (XCourseRequest request: requests) {
+					XEnrollment enrollment = request.getEnrollment();
+					if (enrollment != null && enrollment.getOfferingId().equals(offering.getOfferingId()))
+						enrollments.add(enrollment);
+				}
+			return enrollments;
+		}
+		
+		private static void inc(Map<Long, Integer> counts, Long id) {
+			Integer count = counts.get(id);
+			counts.put(id, count == null ? 1 : count + 1);
+		}
+		
+		private static int get(Map<Long, Integer> counts, Long id) {
+			Integer count = counts.get(id);
+			return count == null ? 0 : count.intValue();
+		}
+		
+		public XOffering getOffering() { return iOffering; }
+		
+		/** Version of the offering (see {@link OfferingStructureCache#getVersion(Long)}) the structure was built with */
+		public long getVersion() { return iVersion; }
+		
+		public int countEnrollmentsForCourse(Long courseId) { return get(iCourseEnrollments, courseId); }
+		public int countEnrollmentsForConfig(Long configId) { return get(iConfigEnrollments, configId); }
+		public int countEnrollmentsForSection(Long sectionId) { return get(iSectionEnrollments, sectionId); }
+		public int countEnrollmentsForReservation(Long reservationId) { return get(iReservationEnrollments, reservationId); }
+		
+		/** Enrollments of the given student in the offering (typically at most one) */
+		public List<XEnrollment> getEnrollmentsForStudent(Long studentId) {
+			List<XEnrollment> ret = iStudentEnrollments.get(studentId);
+			return ret == null ? Collections.<XEnrollment>emptyList() : Collections.unmodifiableList(ret);
+		}
+		
+		public double getExpectedSpace(Long sectionId) {
+			Double expected = iExpectedSpace.get(sectionId);
+			return expected == null ? 0.0 : expected.doubleValue();
+		}
+		
+		/** Time location of the section, null when the section has no time (or it is arranged hours) */
+		public TimeLocation getTime(Long sectionId) { return iTimes.get(sectionId); }
+		
+		/** Room locations of the section, the list must not be modified */
+		public List<RoomLocation> getRooms(Long sectionId) {
+			List<RoomLocation> rooms = iRooms.get(sectionId);
+			return rooms == null ? Collections.<RoomLocation>emptyList() : rooms;
+		}
+		
+		/** Sections with which the given section can overlap (there is an ignore conflicts distribution between them) */
+		public Set<Long> getIgnoreConflictWith(Long sectionId) {
+			Set<Long> ignore = iIgnoreConflictWith.get(sectionId);
+			return ignore == null ? Collections.<Long>emptySet() : ignore;
+		}
+	}
+}
@@ -44,6 +44,13 @@ import org.infinispan.distexec.DistributedCallable;
 import org.infinispan.distexec.DistributedExecutorService;
 import org.infinispan.jmx.CacheJmxRegistration;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.infinispan.transaction.LockingMode;
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
@@ -77,6 +84,8 @@ public class ReplicatedServer extends AbstractServer {
 	private Cache<Long, XExpectations> iExpectations;
 	private Cache<Long, Boolean> iOfferingLocks;
 	private Cache<String, Set<Long>> iInstructedOfferings; 
+	private CourseSearchIndex iCourseIndex;
+	private CourseIndexListener iCourseIndexListener;
 
 	public ReplicatedServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
@@ -106,6 +115,9 @@ public class ReplicatedServer extends AbstractServer {
 		iExpectations = getCache("Expectations");
 		iOfferingLocks = getCache("OfferingLocks");
 		iInstructedOfferings = getCache("InstructedOfferings");
+		iCourseIndex = new CourseSearchIndex(iCourseForId.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL).values());
+		iCourseIndexListener = new CourseIndexListener();
+		iCourseForId.addListener(iCourseIndexListener);
 
 		Map<String, Object> original = new HashMap<String, Object>(iProperties);
 		iProperties = getCache("Config");
@@ -131,6 +143,11 @@ public class ReplicatedServer extends AbstractServer {
 	@Override
 	public void unload() {
 		super.unload();
+		if (iCourseIndexListener != null) {
+			iCourseForId.removeListener(iCourseIndexListener);
+			iCourseIndexListener = null;
+		}
+		iCourseIndex.clear();
 		removeCache(iCourseForId);
 		removeCache(iCourseForName);
 		removeCache(iStudentTable);
@@ -466,6 +483,7 @@ public class ReplicatedServer extends AbstractServer {
 			iOfferingTable.clear();
 			iCourseForId.clear();
 			iCourseForName.clear();
+			iCourseIndex.clear();
 			iOfferingRequests.clear();
 			iInstructedOfferings.clear();
 		} finally {
@@ -585,6 +603,30 @@ public class ReplicatedServer extends AbstractServer {
 		}
 	}
 
+	/**
+	 * Keeps the local course search index in sync with the (local part of the) course table.
+	 */
+	@Listener(sync=true)
+	public class CourseIndexListener {
+		@CacheEntryCreated
+		public void created(CacheEntryCreatedEvent<Long, XCourseId> event) {
+			if (!event.isPre() && event.getValue() != null)
+				iCourseIndex.update(event.getValue());
+		}
+		
+		@CacheEntryModified
+		public void modified(CacheEntryModifiedEvent<Long, XCourseId> event) {
+			if (!event.isPre() && event.getValue() != null)
+				iCourseIndex.update(event.getValue());
+		}
+		
+		@CacheEntryRemoved
+		public void removed(CacheEntryRemovedEvent<Long, XCourseId> event) {
+			if (!event.isPre())
+				iCourseIndex.remove(event.getKey());
+		}
+	}
+	
 	private static OnlineSectioningServer getLocalServer(Long sessionId) {
 		SolverServer server = SolverServerImplementation.getInstance();
 		return server == null ? null : server.getOnlineStudentSchedulingContainer().getSolver(sessionId.toString());
@@ -612,8 +654,29 @@ public class ReplicatedServer extends AbstractServer {
 
 		@Override
 		public Collection<XCourseId> call() throws Exception {
-			if (iMatcher != null) iMatcher.setServer(getLocalServer(iSessionId));
+			OnlineSectioningServer server = getLocalServer(iSessionId);
+			if (iMatcher != null) iMatcher.setServer(server);
 			SubSet<XCourseId> ret = new SubSet<XCourseId>(iLimit, new CourseComparator(iQuery));
+			if (iQuery != null && server instanceof ReplicatedServer && ((ReplicatedServer)server).iCourseIndex != null) {
+				CourseSearchIndex index = ((ReplicatedServer)server).iCourseIndex;
+				// the index may contain courses that have been removed by clear(), only return courses that are still in the local cache
+				Cache<Long, XCourseId> local = iCache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL);
+				for (XCourseId c : index.findByCourseName(iQuery)) {
+					XCourseId course = local.get(c.getCourseId());
+					if (course == null) continue;
+					if (iMatcher != null && !iMatcher.match(course)) continue;
+					ret.add(course);
+				}
+				if (!ret.isLimitReached() && iQuery.length() > 2) {
+					for (XCourseId c : index.findByTitle(iQuery)) {
+						XCourseId course = local.get(c.getCourseId());
+						if (course == null) continue;
+						if (iMatcher != null && !iMatcher.match(course)) continue;
+						ret.add(course);
+					}
+				}
+				return ret;
+			}
 			for (XCourseId c : iCache.values()) {
 				if (iQuery != null && !c.matchCourseName(iQuery)) continue;
 				if (iMatcher != null && !iMatcher.match(c)) continue;
@@ -70,6 +70,8 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 	private EmbeddedCacheManager iCacheManager;
 	private Map<Long, XCourseId> iCourseForId;
 	private Map<String, XCourseIdSet> iCourseForName;
+	private CourseSearchIndex iCourseIndex;
+	private StudentAttributeIndex iStudentIndex;
 	private Cache<Long, XStudent> iStudentTable;
 	private Cache<Long, XOffering> iOfferingTable;
 	private Map<Long, XCourseRequestSet> iOfferingRequests;
@@ -99,6 +101,8 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		iCacheManager = context.getCacheManager();
 		iCourseForId = new Hashtable<Long, XCourseId>();
 		iCourseForName = new Hashtable<String, XCourseIdSet>();
+		iCourseIndex = new CourseSearchIndex();
+		iStudentIndex = new StudentAttributeIndex();
 		iStudentTable = getCache("StudentTable");
 		iOfferingTable = getCache("OfferingTable");
 		iOfferingRequests = new HashMap<Long, XCourseRequestSet>();
@@ -126,6 +130,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 	@Override
 	public void unload() {
 		super.unload();
+		iCourseIndex.clear();
 		removeCache(iStudentTable);
 		removeCache(iExpectations);
 		removeCache(iOfferingTable);
@@ -144,17 +149,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
-			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
-			String queryInLowerCase = query.toLowerCase();
-			for (XCourseId c : iCourseForId.values()) {
-				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-			}
-			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
-				for (XCourseId c : iCourseForId.values()) {
-					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-				}
-			}
-			return ret;
+			return iCourseIndex.findCourses(query, limit, matcher);
 		} finally {
 			lock.release();
 		}
@@ -339,6 +334,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		try {
 			iStudentTable.clear();
 			iOfferingTable.clear();
+			iCourseIndex.clear();
 			iExpectations.clear();
 			iOfferingLocks.clear();
 		} finally {
@@ -594,6 +590,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			try {
 				for (XCourse course: offering.getCourses()) {
 					iCourseForId.remove(course.getCourseId());
+					iCourseIndex.remove(course.getCourseId());
 					XCourseIdSet courses = iCourseForName.get(course.getCourseNameInLowerCase());
 					if (courses != null) {
 						courses.remove(course);
@@ -616,7 +613,9 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			Lock lock = writeLockIfNotHeld();
 			try {
 				for (XCourse course: offering.getCourses()) {
-					iCourseForId.put(course.getCourseId(), new XCourseId(course));
+					XCourseId courseId = new XCourseId(course);
+					iCourseForId.put(course.getCourseId(), courseId);
+					iCourseIndex.update(courseId);
 					XCourseIdSet courses = iCourseForName.get(course.getCourseNameInLowerCase());
 					if (courses == null) {
 						courses = new XCourseIdSet();
@@ -675,6 +674,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		public void removeRequests(XStudent oldStudent) {
 			Lock lock = writeLockIfNotHeld();
 			try {
+				iStudentIndex.remove(oldStudent);
 				for (XRequest request: oldStudent.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
@@ -695,6 +695,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		public void addRequests(XStudent student) {
 			Lock lock = writeLockIfNotHeld();
 			try {
+				iStudentIndex.update(null, student);
 				for (XRequest request: student.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
@@ -793,4 +794,9 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			lock.release();
 		}
 	}
+	
+	@Override
+	public StudentAttributeIndex getStudentAttributeIndex() {
+		return iStudentIndex;
+	}
 }
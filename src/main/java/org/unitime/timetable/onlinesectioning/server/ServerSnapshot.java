@@ -0,0 +1,217 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.match.AnyCourseMatcher;
+import org.unitime.timetable.onlinesectioning.match.AnyStudentMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.model.XStudentId;
+
+/**
+ * Compact binary snapshot of the offerings, students, and expected spaces of an online sectioning server.
+ * The records are written using their {@link java.io.Externalizable} implementation into a compressed file
+ * in the sectioning folder of the data directory. The snapshot remembers the time it was taken and the last
+ * student sectioning queue time stamp that was processed by the server at that time, so that a server loaded
+ * from the snapshot can catch up with the changes that were made since (see {@link org.unitime.timetable.onlinesectioning.updates.ReloadFromSnapshot}).<br>
+ * Each record is read and written while it is read-locked (see {@link #lock(OnlineSectioningServer, Long)}), so that
+ * no record can be written while an update is changing it. The snapshot as a whole is not taken under one lock: changes
+ * made while it is being written are not guaranteed to be included, but they are all made after the snapshot time stamp.
+ *
+ * @author Tomas Muller
+ */
+public class ServerSnapshot {
+	private static final int VERSION = 2;
+	private static final int RESET_INTERVAL = 1000;
+
+	private Long iSessionId;
+	private Date iTimeStamp;
+	private Date iQueueTimeStamp;
+	private List<XOffering> iOfferings = new ArrayList<XOffering>();
+	private List<XExpectations> iExpectations = new ArrayList<XExpectations>();
+	private List<XStudent> iStudents = new ArrayList<XStudent>();
+
+	private ServerSnapshot(Long sessionId, Date timeStamp, Date queueTimeStamp) {
+		iSessionId = sessionId;
+		iTimeStamp = timeStamp;
+		iQueueTimeStamp = queueTimeStamp;
+	}
+
+	/** Academic session of the snapshot */
+	public Long getSessionId() { return iSessionId; }
+	/** Time when the snapshot was taken */
+	public Date getTimeStamp() { return iTimeStamp; }
+	/** Last student sectioning queue time stamp processed before the snapshot was taken, null if none */
+	public Date getQueueTimeStamp() { return iQueueTimeStamp; }
+	public List<XOffering> getOfferings() { return iOfferings; }
+	public List<XExpectations> getExpectations() { return iExpectations; }
+	public List<XStudent> getStudents() { return iStudents; }
+
+	public static File getSnapshotFile(Long sessionId) {
+		File dir = new File(ApplicationProperties.getDataFolder(), "sectioning");
+		dir.mkdirs();
+		return new File(dir, sessionId + ".snapshot");
+	}
+
+	/**
+	 * Write snapshot of the given server
+	 * @param server online sectioning server
+	 * @param queueTimeStamp last student sectioning queue time stamp that has been processed by the server
+	 * @return number of records written
+	 */
+	public static int save(OnlineSectioningServer server, Date queueTimeStamp) throws IOException {
+		Long sessionId = server.getAcademicSession().getUniqueId();
+		Date timeStamp = new Date();
+
+		Set<Long> offeringIds = new HashSet<Long>();
+		for (XCourseId course: server.findCourses(new AnyCourseMatcher()))
+			offeringIds.add(course.getOfferingId());
+		List<Long> studentIds = new ArrayList<Long>();
+		for (XStudentId id: server.findStudents(new AnyStudentMatcher()))
+			studentIds.add(id.getStudentId());
+
+		File file = getSnapshotFile(sessionId);
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+		int count = 0;
+		try {
+			out.writeInt(VERSION);
+			out.writeLong(sessionId);
+			out.writeLong(timeStamp.getTime());
+			out.writeLong(queueTimeStamp == null ? -1l : queueTimeStamp.getTime());
+
+			// records that are removed in the mean time are skipped, each record is prefixed by a flag
+			out.writeInt(offeringIds.size());
+			for (Long offeringId: offeringIds) {
+				Lock lock = lock(server, offeringId);
+				try {
+					XOffering offering = server.getOffering(offeringId);
+					out.writeBoolean(offering != null);
+					if (offering != null) offering.writeExternal(out);
+				} finally {
+					lock.release();
+				}
+				if (++count % RESET_INTERVAL == 0) out.reset();
+			}
+			out.writeInt(offeringIds.size());
+			for (Long offeringId: offeringIds) {
+				Lock lock = lock(server, offeringId);
+				try {
+					XExpectations expectation = (server.getOffering(offeringId) == null ? null : server.getExpectations(offeringId));
+					out.writeBoolean(expectation != null);
+					if (expectation != null) expectation.writeExternal(out);
+				} finally {
+					lock.release();
+				}
+				if (++count % RESET_INTERVAL == 0) out.reset();
+			}
+			out.writeInt(studentIds.size());
+			for (Long studentId: studentIds) {
+				Lock lock = lock(server, -studentId);
+				try {
+					XStudent student = server.getStudent(studentId);
+					out.writeBoolean(student != null);
+					if (student != null) student.writeExternal(out);
+				} finally {
+					lock.release();
+				}
+				if (++count % RESET_INTERVAL == 0) out.reset();
+			}
+			out.flush();
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete())
+			throw new IOException("Failed to replace " + file);
+		if (!temp.renameTo(file))
+			throw new IOException("Failed to rename " + temp + " to " + file);
+		return count;
+	}
+
+	/**
+	 * Read lock of a record: only the given id (offering, or negative student id) is locked when the server is using
+	 * striped locking, otherwise the whole server is read-locked (which excludes all the updates).
+	 */
+	protected static Lock lock(OnlineSectioningServer server, Long id) {
+		if (server instanceof AbstractLockingServer)
+			return ((AbstractLockingServer)server).readLock(Collections.singleton(id));
+		return server.readLock();
+	}
+
+	/**
+	 * Read snapshot of the given academic session
+	 * @param sessionId academic session
+	 * @param maxAge maximal age of the snapshot in milliseconds
+	 * @return null if there is no snapshot, it belongs to a different session, or it is too old
+	 */
+	public static ServerSnapshot load(Long sessionId, long maxAge) throws IOException, ClassNotFoundException {
+		File file = getSnapshotFile(sessionId);
+		if (!file.exists() || System.currentTimeMillis() - file.lastModified() > maxAge) return null;
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+		try {
+			if (in.readInt() != VERSION) return null;
+			if (in.readLong() != sessionId) return null;
+			Date timeStamp = new Date(in.readLong());
+			if (System.currentTimeMillis() - timeStamp.getTime() > maxAge) return null;
+			long queueTimeStamp = in.readLong();
+			ServerSnapshot snapshot = new ServerSnapshot(sessionId, timeStamp, queueTimeStamp < 0 ? null : new Date(queueTimeStamp));
+
+			int nrOfferings = in.readInt();
+			for (int i = 0; i < nrOfferings; i++)
+				if (in.readBoolean()) snapshot.iOfferings.add(new XOffering(in));
+			int nrExpectations = in.readInt();
+			for (int i = 0; i < nrExpectations; i++)
+				if (in.readBoolean()) snapshot.iExpectations.add(new XExpectations(in));
+			int nrStudents = in.readInt();
+			for (int i = 0; i < nrStudents; i++)
+				if (in.readBoolean()) snapshot.iStudents.add(new XStudent(in));
+			return snapshot;
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return iOfferings.size() + " offerings, " + iStudents.size() + " students, taken at " + iTimeStamp;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.unitime.timetable.gwt.server.Query;
+import org.unitime.timetable.gwt.server.Query.AndTerm;
+import org.unitime.timetable.gwt.server.Query.AtomTerm;
+import org.unitime.timetable.gwt.server.Query.OrTerm;
+import org.unitime.timetable.gwt.server.Query.Term;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.model.XAreaClassificationMajor;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+
+/**
+ * Inverted indexes of student ids by academic area, classification, major, student group, accommodation, and
+ * student status. Each student is given an ordinal number, so that the indexes can be kept as bit sets.<br>
+ * A {@link Query} is compiled into a set of candidate students: indexed attributes are resolved from the index,
+ * and-terms are intersected and or-terms are united. Terms that cannot be resolved from the index (including not-terms)
+ * do not restrict the candidates, so the candidates are always a superset of the students matching the query and the
+ * query still needs to be evaluated on them.
+ *
+ * @author Tomas Muller
+ */
+public class StudentAttributeIndex {
+	private ReentrantReadWriteLock iLock = new ReentrantReadWriteLock();
+	private Map<Long, Integer> iOrdinals = new HashMap<Long, Integer>();
+	private List<Long> iStudentIds = new ArrayList<Long>();
+	private Map<String, Map<String, BitSet>> iIndex = new HashMap<String, Map<String, BitSet>>();
+	private BitSet iNoStatus = new BitSet();
+
+	/** Case normalization consistent with {@link String#equalsIgnoreCase(String)} */
+	protected static String normalize(String text) {
+		if (text == null) return null;
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		return new String(chars);
+	}
+
+	protected static String attribute(String attr) {
+		if (attr == null) return null;
+		if ("area".equals(attr)) return "area";
+		if ("clasf".equals(attr) || "classification".equals(attr)) return "clasf";
+		if ("major".equals(attr)) return "major";
+		if ("group".equals(attr)) return "group";
+		if ("accommodation".equals(attr)) return "accommodation";
+		if ("status".equals(attr)) return "status";
+		return null;
+	}
+
+	private int ordinal(Long studentId) {
+		Integer ordinal = iOrdinals.get(studentId);
+		if (ordinal == null) {
+			ordinal = iStudentIds.size();
+			iStudentIds.add(studentId);
+			iOrdinals.put(studentId, ordinal);
+		}
+		return ordinal;
+	}
+
+	private void set(String attr, String value, int ordinal, boolean add) {
+		if (value == null) return;
+		String key = normalize(value);
+		Map<String, BitSet> values = iIndex.get(attr);
+		if (values == null) {
+			if (!add) return;
+			values = new HashMap<String, BitSet>();
+			iIndex.put(attr, values);
+		}
+		BitSet bits = values.get(key);
+		if (bits == null) {
+			if (!add) return;
+			bits = new BitSet();
+			values.put(key, bits);
+		}
+		bits.set(ordinal, add);
+	}
+
+	private void set(XStudent student, boolean add) {
+		int ordinal = ordinal(student.getStudentId());
+		for (XAreaClassificationMajor acm: student.getMajors()) {
+			set("area", acm.getArea(), ordinal, add);
+			set("clasf", acm.getClassification(), ordinal, add);
+			set("major", acm.getMajor(), ordinal, add);
+		}
+		for (String group: student.getGroups())
+			set("group", group, ordinal, add);
+		for (String accommodation: student.getAccomodations())
+			set("accommodation", accommodation, ordinal, add);
+		if (student.getStatus() == null)
+			iNoStatus.set(ordinal, add);
+		else
+			set("status", student.getStatus(), ordinal, add);
+	}
+
+	/** Replace the old student (if not null) with the new one (if not null) */
+	public void update(XStudent oldStudent, XStudent newStudent) {
+		iLock.writeLock().lock();
+		try {
+			if (oldStudent != null) set(oldStudent, false);
+			if (newStudent != null) set(newStudent, true);
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	public void remove(XStudent student) {
+		update(student, null);
+	}
+
+	public void clear() {
+		iLock.writeLock().lock();
+		try {
+			iOrdinals = new HashMap<Long, Integer>();
+			iStudentIds = new ArrayList<Long>();
+			iIndex = new HashMap<String, Map<String, BitSet>>();
+			iNoStatus = new BitSet();
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	private BitSet get(String attr, String value) {
+		Map<String, BitSet> values = iIndex.get(attr);
+		BitSet bits = (values == null ? null : values.get(normalize(value)));
+		return (bits == null ? new BitSet() : (BitSet)bits.clone());
+	}
+
+	/**
+	 * Resolve the term from the index
+	 * @return students that may match the term, null if all the students may match the term
+	 */
+	private BitSet resolve(Term term, String defaultStatus) {
+		if (term instanceof AtomTerm) {
+			AtomTerm atom = (AtomTerm)term;
+			String attr = attribute(atom.getAttribute());
+			if (attr == null) return null;
+			String body = atom.getBody();
+			if ("status".equals(attr)) {
+				if ("default".equalsIgnoreCase(body) || "Not Set".equalsIgnoreCase(body))
+					return (BitSet)iNoStatus.clone();
+				BitSet bits = get("status", body);
+				if (body.equalsIgnoreCase(defaultStatus)) bits.or(iNoStatus);
+				return bits;
+			}
+			return get(attr, body);
+		} else if (term instanceof AndTerm) {
+			BitSet ret = null;
+			for (Term t: ((AndTerm)term).terms()) {
+				BitSet bits = resolve(t, defaultStatus);
+				if (bits == null) continue;
+				if (ret == null)
+					ret = bits;
+				else
+					ret.and(bits);
+			}
+			return ret;
+		} else if (term instanceof OrTerm) {
+			if (((OrTerm)term).terms().isEmpty()) return null;
+			BitSet ret = new BitSet();
+			for (Term t: ((OrTerm)term).terms()) {
+				BitSet bits = resolve(t, defaultStatus);
+				if (bits == null) return null;
+				ret.or(bits);
+			}
+			return ret;
+		}
+		return null;
+	}
+
+	/**
+	 * Compile the query into the set of candidate students.
+	 * @return students that may match the query, null when the query cannot be narrowed down using the index
+	 */
+	public Candidates compile(Query query, String defaultStatus) {
+		if (query == null || query.getQuery() == null) return null;
+		iLock.readLock().lock();
+		try {
+			BitSet bits = resolve(query.getQuery(), defaultStatus);
+			return (bits == null ? null : new Candidates(bits, iStudentIds));
+		} finally {
+			iLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Compile the query using the index of the given server.
+	 * @return null when the server does not have a student attribute index or the query cannot be narrowed down
+	 */
+	public static Candidates compile(OnlineSectioningServer server, Query query) {
+		if (server == null || !(server instanceof AbstractServer)) return null;
+		StudentAttributeIndex index = ((AbstractServer)server).getStudentAttributeIndex();
+		if (index == null) return null;
+		return index.compile(query, server.getAcademicSession().getDefaultSectioningStatus());
+	}
+
+	/**
+	 * Students that may match a compiled query
+	 */
+	public static class Candidates {
+		private Set<Long> iStudentIds;
+
+		private Candidates(BitSet bits, List<Long> studentIds) {
+			iStudentIds = new HashSet<Long>(2 * bits.cardinality());
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+				iStudentIds.add(studentIds.get(i));
+		}
+
+		public boolean contains(Long studentId) {
+			return iStudentIds.contains(studentId);
+		}
+
+		public Set<Long> getStudentIds() {
+			return iStudentIds;
+		}
+
+		public int size() {
+			return iStudentIds.size();
+		}
+	}
+}
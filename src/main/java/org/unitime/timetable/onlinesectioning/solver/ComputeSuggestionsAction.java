@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.onlinesectioning.solver;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,10 +32,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cpsolver.ifs.assignment.Assignment;
 import org.cpsolver.ifs.assignment.AssignmentComparator;
 import org.cpsolver.ifs.assignment.AssignmentMap;
+import org.cpsolver.ifs.util.DataProperties;
 import org.cpsolver.studentsct.extension.DistanceConflict;
 import org.cpsolver.studentsct.extension.TimeOverlapsCounter;
 import org.cpsolver.studentsct.heuristics.selection.BranchBoundSelection.BranchBoundNeighbour;
@@ -81,6 +84,8 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 public class ComputeSuggestionsAction extends FindAssignmentAction {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
+	private static AtomicLong sNrSearches = new AtomicLong(0), sNrTimeouts = new AtomicLong(0);
+	private static DecimalFormat sDF = new DecimalFormat("0.0");
 	private ClassAssignmentInterface.ClassAssignment iSelection;
 	private double iValue = 0.0;
 	private String iFilter = null;
@@ -182,7 +187,7 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 								if (ci != null) {
 									XOffering x = server.getOffering(ci.getOfferingId());
 									if (x != null) {
-										cr.getCourses().add(clone(x, server.getEnrollments(x.getOfferingId()), ci.getCourseId(), student.getId(), original, classTable, server, model));
+										cr.getCourses().add(clone(x, ci.getCourseId(), student.getId(), original, classTable, server, model));
 										distributions.addAll(x.getDistributions());
 									}
 								}
@@ -308,6 +313,7 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 		if (selectedRequest == null) return new ArrayList<ClassAssignmentInterface>();
         
 		SuggestionsBranchAndBound suggestionBaB = null;
+		ParallelSuggestions parallelBaB = null;
 		
 		boolean avoidOverExpected = server.getAcademicSession().isSectioningEnabled();
 		if (avoidOverExpected && helper.getUser() != null && helper.getUser().hasType() && helper.getUser().getType() != OnlineSectioningLog.Entity.EntityType.STUDENT)
@@ -348,7 +354,60 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 			filter = new SuggestionsFilter(getFilter(), server.getAcademicSession().getDatePatternFirstDate());
 		}
 		
-		if (server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true)) {
+		int nrWorkers = ParallelSuggestions.getDefaultNrWorkers();
+		if (nrWorkers > 1) {
+			final boolean multiCriteria = server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true);
+			final boolean priorityWeighting = server.getConfig().getPropertyBoolean("StudentWeights.PriorityWeighting", true);
+			final DataProperties properties = model.getProperties();
+			final Student fStudent = student;
+			final Hashtable<CourseRequest, Set<Section>> fRequiredSections = requiredSectionsForCourse;
+			final Set<FreeTimeRequest> fRequiredFreeTimes = requiredFreeTimes;
+			final Hashtable<CourseRequest, Set<Section>> fPreferredSections = preferredSectionsForCourse;
+			final Request fSelectedRequest = selectedRequest;
+			final Section fSelectedSection = selectedSection;
+			final SuggestionsFilter fFilter = filter;
+			final double fMaxOverExpected = maxOverExpected;
+			parallelBaB = new ParallelSuggestions(properties, nrWorkers) {
+				@Override
+				protected SuggestionsBranchAndBound createSearch(Assignment<Request, Enrollment> assignment, final Partition partition) {
+					if (multiCriteria) {
+						return new MultiCriteriaBranchAndBoundSuggestions(properties, fStudent, assignment,
+								fRequiredSections, fRequiredFreeTimes, fPreferredSections, fSelectedRequest, fSelectedSection,
+								fFilter, fMaxOverExpected, priorityWeighting) {
+							@Override
+							protected List<Enrollment> values(Request request) {
+								return partition.values(request, super.values(request));
+							}
+							@Override
+							protected boolean canContinue(ArrayList<Request> requests2resolve, int idx, int depth) {
+								return partition.canContinue() && super.canContinue(requests2resolve, idx, depth);
+							}
+							@Override
+							protected boolean canContinueEvaluation() {
+								return partition.canContinue() && super.canContinueEvaluation();
+							}
+						};
+					} else {
+						return new SuggestionsBranchAndBound(properties, fStudent, assignment,
+								fRequiredSections, fRequiredFreeTimes, fPreferredSections, fSelectedRequest, fSelectedSection,
+								fFilter, fMaxOverExpected) {
+							@Override
+							protected List<Enrollment> values(Request request) {
+								return partition.values(request, super.values(request));
+							}
+							@Override
+							protected boolean canContinue(ArrayList<Request> requests2resolve, int idx, int depth) {
+								return partition.canContinue() && super.canContinue(requests2resolve, idx, depth);
+							}
+							@Override
+							protected boolean canContinueEvaluation() {
+								return partition.canContinue() && super.canContinueEvaluation();
+							}
+						};
+					}
+				}
+			};
+		} else if (server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true)) {
 			suggestionBaB = new MultiCriteriaBranchAndBoundSuggestions(
 					model.getProperties(), student, assignment,
 					requiredSectionsForCourse, requiredFreeTimes, preferredSectionsForCourse,
@@ -364,13 +423,26 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 				(server.getConfig().getPropertyBoolean("StudentWeights.PriorityWeighting", true) ? "priority" : "equal") + " weighting model" +
 				" with " + server.getConfig().getPropertyInt("Suggestions.Timeout", 5000) +" ms time limit" +
 				(maxOverExpected < 0 ? "" : ", maximal over-expected of " + maxOverExpected) +
-				" and maximal depth of " + server.getConfig().getPropertyInt("Suggestions.MaxDepth", 4) + ".");
+				" and maximal depth of " + server.getConfig().getPropertyInt("Suggestions.MaxDepth", 4) +
+				(parallelBaB == null ? "" : ", using " + nrWorkers + " workers") + ".");
 
-        TreeSet<SuggestionsBranchAndBound.Suggestion> suggestions = suggestionBaB.computeSuggestions();
-		iValue = (suggestions.isEmpty() ? 0.0 : - suggestions.first().getValue());
+		List<SuggestionsBranchAndBound.Suggestion> suggestions = null;
+		long time; int nrSolutionsSeen; boolean timeoutReached;
+		if (parallelBaB != null) {
+			suggestions = parallelBaB.computeSuggestions(model, assignment);
+			time = parallelBaB.getTime(); nrSolutionsSeen = parallelBaB.getNrSolutionsSeen(); timeoutReached = parallelBaB.isTimeoutReached();
+		} else {
+			suggestions = new ArrayList<SuggestionsBranchAndBound.Suggestion>(suggestionBaB.computeSuggestions());
+			time = suggestionBaB.getTime(); nrSolutionsSeen = suggestionBaB.getNrSolutionsSeen(); timeoutReached = suggestionBaB.isTimeoutReached();
+		}
+		iValue = (suggestions.isEmpty() ? 0.0 : - suggestions.get(0).getValue());
+		long nrSearches = sNrSearches.incrementAndGet();
+		long nrTimeouts = (timeoutReached ? sNrTimeouts.incrementAndGet() : sNrTimeouts.get());
         
 		long t3 = System.currentTimeMillis();
-		helper.debug("  -- suggestion B&B took "+suggestionBaB.getTime()+"ms"+(suggestionBaB.isTimeoutReached()?", timeout reached":""));
+		helper.debug("  -- suggestion B&B took "+time+"ms"+(timeoutReached?", timeout reached":"") +
+				(parallelBaB == null ? "" : parallelBaB.getNrWorkersUsed() <= 1 ? ", no free workers" : " (" + parallelBaB.getNrTimeouts() + " of " + parallelBaB.getNrWorkersUsed() + " workers)") +
+				", " + nrSolutionsSeen + " solutions seen, timeout rate " + sDF.format(100.0 * nrTimeouts / nrSearches) + "% of " + nrSearches + " computations");
 
 		for (SuggestionsBranchAndBound.Suggestion suggestion : suggestions) {
 			ClassAssignmentInterface ca = convert(server, assignment, suggestion.getEnrollments(), requiredSectionsForCourse, requiredFreeTimes, true, model.getDistanceConflict(), enrolled); 
@@ -92,7 +92,6 @@ import org.unitime.timetable.onlinesectioning.model.XDistributionType;
 import org.unitime.timetable.onlinesectioning.model.XDummyReservation;
 import org.unitime.timetable.onlinesectioning.model.XEnrollment;
 import org.unitime.timetable.onlinesectioning.model.XEnrollments;
-import org.unitime.timetable.onlinesectioning.model.XExpectations;
 import org.unitime.timetable.onlinesectioning.model.XDistribution;
 import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
@@ -102,6 +101,8 @@ import org.unitime.timetable.onlinesectioning.model.XRoom;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.OfferingStructureCache;
+import org.unitime.timetable.onlinesectioning.server.OfferingStructureCache.OfferingStructure;
 
 /**
  * @author Tomas Muller
@@ -204,7 +205,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 								if (ci != null) {
 									XOffering x = server.getOffering(ci.getOfferingId());
 									if (x != null) {
-										cr.getCourses().add(clone(x, server.getEnrollments(x.getOfferingId()), ci.getCourseId(), student.getId(), original, classTable, server, model));
+										cr.getCourses().add(clone(x, ci.getCourseId(), student.getId(), original, classTable, server, model));
 										distributions.addAll(x.getDistributions());
 									}
 								}
@@ -378,18 +379,21 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 	}
 	
 	@SuppressWarnings("unchecked")
-	protected Course clone(XOffering offering, XEnrollments enrollments, Long courseId, long studentId, XStudent originalStudent, Map<Long, Section> sections, OnlineSectioningServer server, StudentSectioningModel model) {
+	protected Course clone(XOffering offering, Long courseId, long studentId, XStudent originalStudent, Map<Long, Section> sections, OnlineSectioningServer server, StudentSectioningModel model) {
+		// student independent part (enrollment counts, times, rooms, etc.) is cached, only the student specific state is computed here
+		OfferingStructure structure = OfferingStructureCache.getStructure(server, offering);
+		List<XEnrollment> studentEnrollments = structure.getEnrollmentsForStudent(studentId);
 		Offering clonedOffering = new Offering(offering.getOfferingId(), offering.getName());
 		clonedOffering.setModel(model);
-		XExpectations expectations = server.getExpectations(offering.getOfferingId());
 		XCourse course = offering.getCourse(courseId);
+		XEnrollment courseEnrollment = null;
+		for (XEnrollment enrollment: studentEnrollments)
+			if (enrollment.getCourseId().equals(courseId)) { courseEnrollment = enrollment; break; }
 		int courseLimit = course.getLimit();
 		if (courseLimit >= 0) {
-			courseLimit -= enrollments.countEnrollmentsForCourse(courseId);
+			courseLimit -= structure.countEnrollmentsForCourse(courseId);
 			if (courseLimit < 0) courseLimit = 0;
-			for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId)) {
-				if (enrollment.getStudentId().equals(studentId)) { courseLimit++; break; }
-			}
+			if (courseEnrollment != null) courseLimit++;
 		}
 		Course clonedCourse = new Course(courseId, course.getSubjectArea(), course.getCourseNumber(), clonedOffering, courseLimit, course.getProjected());
 		clonedCourse.setNote(course.getNote());
@@ -397,11 +401,11 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		Hashtable<Long, Subpart> subparts = new Hashtable<Long, Subpart>();
 		for (XConfig config: offering.getConfigs()) {
 			int configLimit = config.getLimit();
-			int configEnrl = enrollments.countEnrollmentsForConfig(config.getConfigId());
+			int configEnrl = structure.countEnrollmentsForConfig(config.getConfigId());
 			boolean configStudent = false;
 			if (studentId >= 0)
-				for (XEnrollment enrollment: enrollments.getEnrollmentsForConfig(config.getConfigId()))
-					if (enrollment.getStudentId().equals(studentId)) { configEnrl--; configStudent = true; break; }
+				for (XEnrollment enrollment: studentEnrollments)
+					if (enrollment.getConfigId().equals(config.getConfigId())) { configEnrl--; configStudent = true; break; }
 			if (configLimit >= 0) {
 				// limited configuration, deduct enrollments
 				configLimit -= configEnrl;
@@ -423,39 +427,31 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				subparts.put(subpart.getSubpartId(), clonedSubpart);
 				for (XSection section: subpart.getSections()) {
 					int limit = section.getLimit();
-					int enrl = enrollments.countEnrollmentsForSection(section.getSectionId());
+					int enrl = structure.countEnrollmentsForSection(section.getSectionId());
 					boolean student = false;
 					if (studentId >= 0)
-						for (XEnrollment enrollment: enrollments.getEnrollmentsForSection(section.getSectionId()))
-							if (enrollment.getStudentId().equals(studentId)) { enrl--; student = true; break; }
+						for (XEnrollment enrollment: studentEnrollments)
+							if (enrollment.getSectionIds().contains(section.getSectionId())) { enrl--; student = true; break; }
 					if (limit >= 0) {
 						// limited section, deduct enrollments
 						limit -= enrl;
 						if (limit < 0) limit = 0; // over-enrolled, but not unlimited
 						if (student && limit == 0) limit = 1; // allow enrolled student in
 					}
-                    List<RoomLocation> rooms = new ArrayList<RoomLocation>();
-                    for (XRoom r: section.getRooms())
-                    	rooms.add(new RoomLocation(r.getUniqueId(), r.getName(), null, 0, 0, r.getX(), r.getY(), r.getIgnoreTooFar(), null));
-                    Placement placement = section.getTime() == null || section.getTime().getDays() == 0 ? null : new Placement(
+					TimeLocation time = structure.getTime(section.getSectionId());
+                    Placement placement = time == null ? null : new Placement(
                     		new Lecture(section.getSectionId(), null, section.getSubpartId(), section.getName(), new ArrayList<TimeLocation>(), new ArrayList<RoomLocation>(), section.getNrRooms(), null, section.getLimit(), section.getLimit(), 1.0),
-                    		new TimeLocation(section.getTime().getDays(), section.getTime().getSlot(), section.getTime().getLength(), 0, 0.0,
-                    				section.getTime().getDatePatternId(), section.getTime().getDatePatternName(), section.getTime().getWeeks(),
-                    				section.getTime().getBreakTime()),
-                    		rooms);
+                    		time, new ArrayList<RoomLocation>(structure.getRooms(section.getSectionId())));
 					OnlineSection clonedSection = new OnlineSection(section.getSectionId(), limit,
 							section.getName(course.getCourseId()), clonedSubpart, placement, section.toInstructors(),
 							(section.getParentId() == null ? null : sections.get(section.getParentId())));
 					clonedSection.setName(-1l, section.getName(-1l));
 					clonedSection.setNote(section.getNote());
-					clonedSection.setSpaceExpected(expectations.getExpectedSpace(section.getSectionId()));
+					clonedSection.setSpaceExpected(structure.getExpectedSpace(section.getSectionId()));
 					clonedSection.setEnrollment(enrl);
 					clonedSection.setCancelled(section.isCancelled());
-					for (XDistribution distribution: offering.getDistributions())
-						if (distribution.getDistributionType() == XDistributionType.IngoreConflicts && distribution.hasSection(section.getSectionId()))
-							for (Long id: distribution.getSectionIds())
-								if (!id.equals(section.getSectionId()))
-									clonedSection.addIgnoreConflictWith(id);
+					for (Long id: structure.getIgnoreConflictWith(section.getSectionId()))
+						clonedSection.addIgnoreConflictWith(id);
 			        if (limit > 0) {
 			        	double available = Math.round(clonedSection.getSpaceExpected() - limit);
 						clonedSection.setPenalty(available / section.getLimit());
@@ -468,10 +464,10 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		for (XReservation reservation: offering.getReservations()) {
 			int reservationLimit = (int)Math.round(reservation.getLimit());
 			if (reservationLimit >= 0) {
-				reservationLimit -= enrollments.countEnrollmentsForReservation(reservation.getReservationId());
+				reservationLimit -= structure.countEnrollmentsForReservation(reservation.getReservationId());
 				if (reservationLimit < 0) reservationLimit = 0;
-				for (XEnrollment enrollment: enrollments.getEnrollmentsForReservation(reservation.getReservationId())) {
-					if (enrollment.getStudentId().equals(studentId)) { reservationLimit++; break; }
+				for (XEnrollment enrollment: studentEnrollments) {
+					if (enrollment.getReservation() != null && enrollment.getReservation().getReservationId().equals(reservation.getReservationId())) { reservationLimit++; break; }
 				}
 				if (reservationLimit <= 0 && !(reservation.mustBeUsed() & !reservation.isExpired())) continue;
 			}
@@ -480,8 +476,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				applicable = ((XCourseReservation)reservation).getCourseId().equals(courseId);
 			if (reservation instanceof XDummyReservation) {
 				// Ignore by reservation only flag (dummy reservation) when the student is already enrolled in the course
-				for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId))
-					if (enrollment.getStudentId().equals(studentId)) { applicable = true; break; }
+				if (courseEnrollment != null) applicable = true;
 			}
 			if (applicable && reservation.mustBeUsed() && !reservation.isExpired()) hasMustUse = true;
 			Reservation clonedReservation = new OnlineReservation(reservation.getType().ordinal(), reservation.getReservationId(), clonedOffering,
@@ -497,23 +492,20 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 			}
 		}
 		// There are reservations >> allow user to keep the current enrollment by providing a dummy reservation for it
-		if (!offering.getReservations().isEmpty())
-			for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId))
-				if (enrollment.getStudentId().equals(studentId)) {
-					Reservation clonedReservation = null;
-					if (hasMustUse) {
-						clonedReservation = new OnlineReservation(XReservationType.Dummy.ordinal(), -2l, clonedOffering, 0, false, 1, true, true, false, true) {
-							@Override
-							public boolean mustBeUsed() { return true; }
-						};
-					} else {
-						clonedReservation = new OnlineReservation(XReservationType.Dummy.ordinal(), -2l, clonedOffering, 0, false, 1, true, false, false, true);
-					}
-					clonedReservation.addConfig(configs.get(enrollment.getConfigId()));
-					for (Long sectionId: enrollment.getSectionIds())
-						clonedReservation.addSection(sections.get(sectionId));
-					break;
-				}
+		if (!offering.getReservations().isEmpty() && courseEnrollment != null) {
+			Reservation clonedReservation = null;
+			if (hasMustUse) {
+				clonedReservation = new OnlineReservation(XReservationType.Dummy.ordinal(), -2l, clonedOffering, 0, false, 1, true, true, false, true) {
+					@Override
+					public boolean mustBeUsed() { return true; }
+				};
+			} else {
+				clonedReservation = new OnlineReservation(XReservationType.Dummy.ordinal(), -2l, clonedOffering, 0, false, 1, true, false, false, true);
+			}
+			clonedReservation.addConfig(configs.get(courseEnrollment.getConfigId()));
+			for (Long sectionId: courseEnrollment.getSectionIds())
+				clonedReservation.addSection(sections.get(sectionId));
+		}
 		return clonedCourse;
 	}
 	
@@ -538,7 +530,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 					XOffering offering = null;
 					if (courseInfo != null) offering = server.getOffering(courseInfo.getOfferingId());
 					if (offering != null) {
-						Course course = clone(offering, server.getEnrollments(offering.getOfferingId()), courseInfo.getCourseId(), student.getId(), originalStudent, classTable, server, model);
+						Course course = clone(offering, courseInfo.getCourseId(), student.getId(), originalStudent, classTable, server, model);
 						cr.add(course);
 						if (rc.hasSelectedIntructionalMethods()) {
 							for (Config config: course.getOffering().getConfigs()) {
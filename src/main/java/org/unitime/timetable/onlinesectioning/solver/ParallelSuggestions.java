@@ -0,0 +1,294 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cpsolver.ifs.assignment.Assignment;
+import org.cpsolver.ifs.assignment.AssignmentMap;
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.studentsct.StudentSectioningModel;
+import org.cpsolver.studentsct.model.Enrollment;
+import org.cpsolver.studentsct.model.Request;
+import org.cpsolver.studentsct.model.SctAssignment;
+import org.cpsolver.studentsct.online.selection.SuggestionsBranchAndBound;
+import org.cpsolver.studentsct.online.selection.SuggestionsBranchAndBound.Suggestion;
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
+import org.unitime.timetable.gwt.shared.SectioningException;
+
+/**
+ * Parallel suggestions branch and bound. The search tree of {@link SuggestionsBranchAndBound} is split among a number of workers
+ * of a shared thread pool (see {@link ApplicationProperty#OnlineSchedulingSuggestionsThreads}): each worker searches over its own
+ * copy of the assignment and only considers every n-th value of the first request that has more than one value
+ * (see {@link Partition#values(Request, List)}). All the workers share the same deadline (Suggestions.Timeout parameter),
+ * counted from the start of the search. The suggestions of all the workers are then merged, keeping the best
+ * Suggestions.MaxSuggestions of them.<br>
+ * The workers of a computation are reserved up front, so that their tasks never wait in the queue behind other requests
+ * (and start after the deadline). When there are not enough free workers, the whole tree is searched in the calling thread,
+ * the same way as without the parallel search. The pool is rebuilt when the number of workers is changed.
+ *
+ * @author Tomas Muller
+ */
+public abstract class ParallelSuggestions {
+	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
+	private static WorkerPool sPool = null;
+	
+	private int iNrWorkers;
+	private long iTimeout;
+	private int iMaxSuggestions;
+	private long iTime = 0;
+	private int iNrSolutionsSeen = 0;
+	private int iNrTimeouts = 0;
+	private int iNrWorkersUsed = 0;
+	
+	public ParallelSuggestions(DataProperties properties, int nrWorkers) {
+		iNrWorkers = nrWorkers;
+		iTimeout = properties.getPropertyLong("Suggestions.Timeout", 5000);
+		iMaxSuggestions = properties.getPropertyInt("Suggestions.MaxSuggestions", 20);
+	}
+	
+	/** Number of workers a suggestions computation is split into, 1 (or less) if the parallel search is disabled */
+	public static int getDefaultNrWorkers() {
+		return ApplicationProperty.OnlineSchedulingSuggestionsThreads.intValue();
+	}
+	
+	/** Shared worker pool, it is rebuilt when the configured number of workers has changed */
+	protected static synchronized WorkerPool getPool() {
+		int size = Math.max(1, getDefaultNrWorkers());
+		if (sPool == null || sPool.getSize() != size) {
+			if (sPool != null) sPool.shutdown();
+			sPool = new WorkerPool(size);
+		}
+		return sPool;
+	}
+	
+	/**
+	 * Fixed thread pool with a count of the free workers, tasks are only submitted for the reserved workers
+	 * (so they never wait in the queue).
+	 */
+	protected static class WorkerPool {
+		private ExecutorService iExecutor;
+		private Semaphore iFreeWorkers;
+		private int iSize;
+		
+		protected WorkerPool(int size) {
+			iSize = size;
+			iFreeWorkers = new Semaphore(size);
+			iExecutor = Executors.newFixedThreadPool(size, new ThreadFactory() {
+				private AtomicInteger iCounter = new AtomicInteger(0);
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Suggestions-" + iCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		public int getSize() { return iSize; }
+		
+		/** Reserve the given number of workers, false if there are not enough free workers */
+		public boolean reserve(int nrWorkers) { return iFreeWorkers.tryAcquire(nrWorkers); }
+		
+		public void release(int nrWorkers) { iFreeWorkers.release(nrWorkers); }
+		
+		public <T> Future<T> submit(Callable<T> task) { return iExecutor.submit(task); }
+		
+		/** Running tasks are finished, the threads are stopped afterwards */
+		public void shutdown() { iExecutor.shutdown(); }
+	}
+	
+	/**
+	 * Create the branch and bound search of the given worker. The returned instance should delegate
+	 * {@link SuggestionsBranchAndBound#values(Request)}, {@link SuggestionsBranchAndBound#canContinue(ArrayList, int, int)}, and
+	 * {@link SuggestionsBranchAndBound#canContinueEvaluation()} to the partition.
+	 * @param assignment worker's own copy of the assignment
+	 * @param partition part of the search tree to be searched by the worker
+	 */
+	protected abstract SuggestionsBranchAndBound createSearch(Assignment<Request, Enrollment> assignment, Partition partition);
+	
+	/**
+	 * Compute suggestions using all the workers
+	 * @param model student sectioning model (only read by the workers)
+	 * @param assignment current assignment (not changed)
+	 * @return best suggestions, ordered from the best one
+	 */
+	public List<Suggestion> computeSuggestions(StudentSectioningModel model, Assignment<Request, Enrollment> assignment) {
+		long t0 = System.currentTimeMillis();
+		long deadline = t0 + iTimeout;
+		WorkerPool pool = getPool();
+		int nrWorkers = Math.min(iNrWorkers, pool.getSize());
+		final List<SuggestionsBranchAndBound> searches = new ArrayList<SuggestionsBranchAndBound>(nrWorkers);
+		final List<Partition> partitions = new ArrayList<Partition>(nrWorkers);
+		List<Suggestion> suggestions = new ArrayList<Suggestion>();
+		if (nrWorkers <= 1 || !pool.reserve(nrWorkers)) {
+			// not enough free workers (e.g., under a peak load): search the whole tree in this thread instead of waiting in the queue
+			Partition partition = new Partition(0, 1, deadline);
+			partitions.add(partition);
+			SuggestionsBranchAndBound search = createSearch(assignment, partition);
+			searches.add(search);
+			suggestions.addAll(search.computeSuggestions());
+		} else {
+			try {
+				for (int i = 0; i < nrWorkers; i++) {
+					Assignment<Request, Enrollment> copy = new AssignmentMap<Request, Enrollment>();
+					for (Request request: model.variables()) {
+						Enrollment enrollment = assignment.getValue(request);
+						if (enrollment != null) copy.assign(0, enrollment);
+					}
+					Partition partition = new Partition(i, nrWorkers, deadline);
+					partitions.add(partition);
+					searches.add(createSearch(copy, partition));
+				}
+				List<Future<TreeSet<Suggestion>>> tasks = new ArrayList<Future<TreeSet<Suggestion>>>(nrWorkers);
+				for (final SuggestionsBranchAndBound search: searches) {
+					tasks.add(pool.submit(new Callable<TreeSet<Suggestion>>() {
+						@Override
+						public TreeSet<Suggestion> call() throws Exception {
+							return search.computeSuggestions();
+						}
+					}));
+				}
+				try {
+					for (Future<TreeSet<Suggestion>> task: tasks)
+						suggestions.addAll(task.get());
+				} catch (InterruptedException e) {
+					for (Future<TreeSet<Suggestion>> task: tasks)
+						task.cancel(true);
+					throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
+				} catch (ExecutionException e) {
+					for (Future<TreeSet<Suggestion>> task: tasks)
+						task.cancel(true);
+					if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+					throw new SectioningException(MSG.exceptionUnknown(e.getCause().getMessage()), e.getCause());
+				}
+			} finally {
+				pool.release(nrWorkers);
+			}
+		}
+		iNrSolutionsSeen = 0; iNrTimeouts = 0; iNrWorkersUsed = searches.size();
+		for (int i = 0; i < searches.size(); i++) {
+			iNrSolutionsSeen += searches.get(i).getNrSolutionsSeen();
+			if (searches.get(i).isTimeoutReached() || partitions.get(i).isDeadlineReached()) iNrTimeouts ++;
+		}
+		// all the workers end up with the same assignment, so their suggestions can be compared with one another
+		Collections.sort(suggestions);
+		List<Suggestion> ret = new ArrayList<Suggestion>(Math.min(iMaxSuggestions, suggestions.size()));
+		Set<String> keys = new HashSet<String>();
+		for (Suggestion suggestion: suggestions) {
+			if (ret.size() >= iMaxSuggestions) break;
+			if (keys.add(key(suggestion))) ret.add(suggestion);
+		}
+		iTime = System.currentTimeMillis() - t0;
+		return ret;
+	}
+	
+	/** Suggestions of different workers are the same when they have the same enrollments */
+	protected static String key(Suggestion suggestion) {
+		StringBuffer key = new StringBuffer();
+		for (Enrollment enrollment: suggestion.getEnrollments()) {
+			if (key.length() > 0) key.append("|");
+			if (enrollment == null) continue;
+			key.append(enrollment.getRequest().getId());
+			List<Long> ids = new ArrayList<Long>();
+			if (enrollment.getAssignments() != null)
+				for (SctAssignment a: enrollment.getAssignments())
+					ids.add(a.getId());
+			Collections.sort(ids);
+			key.append(":" + ids);
+		}
+		return key.toString();
+	}
+	
+	/** Wall time of the last computation in milliseconds */
+	public long getTime() { return iTime; }
+	
+	/** Total number of solutions seen by all the workers */
+	public int getNrSolutionsSeen() { return iNrSolutionsSeen; }
+	
+	/** Number of workers that have reached the time limit */
+	public int getNrTimeouts() { return iNrTimeouts; }
+	
+	public int getNrWorkers() { return iNrWorkers; }
+	
+	/** Number of workers used by the last computation, 1 when the whole tree was searched in the calling thread */
+	public int getNrWorkersUsed() { return iNrWorkersUsed; }
+	
+	public boolean isTimeoutReached() { return iNrTimeouts > 0; }
+	
+	/**
+	 * Part of the suggestions search tree that is searched by one worker
+	 */
+	public static class Partition {
+		private int iIndex, iCount;
+		private long iDeadline;
+		private Request iSplitRequest = null;
+		private List<Enrollment> iSplitValues = null, iValues = null;
+		private boolean iDeadlineReached = false;
+		
+		public Partition(int index, int count, long deadline) {
+			iIndex = index; iCount = count; iDeadline = deadline;
+		}
+		
+		/**
+		 * Values of a request that are to be considered by the worker. The first request with more than one value becomes
+		 * the split request, its values are divided among the workers. Since all the workers search the tree in the same order,
+		 * they all pick the same split request.
+		 */
+		public List<Enrollment> values(Request request, List<Enrollment> values) {
+			if (iSplitRequest == null && values.size() > 1) iSplitRequest = request;
+			if (!request.equals(iSplitRequest)) return values;
+			if (iSplitValues != values) {
+				iValues = new ArrayList<Enrollment>(1 + values.size() / iCount);
+				for (int i = iIndex; i < values.size(); i += iCount)
+					iValues.add(values.get(i));
+				iSplitValues = values;
+			}
+			return iValues;
+		}
+		
+		/** False when the shared deadline has been reached */
+		public boolean canContinue() {
+			if (iDeadlineReached) return false;
+			if (System.currentTimeMillis() > iDeadline) {
+				iDeadlineReached = true;
+				return false;
+			}
+			return true;
+		}
+		
+		public boolean isDeadlineReached() { return iDeadlineReached; }
+	}
+}
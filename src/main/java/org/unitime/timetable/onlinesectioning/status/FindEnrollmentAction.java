@@ -51,6 +51,7 @@ import org.unitime.timetable.onlinesectioning.model.XRoom;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.StudentAttributeIndex;
 
 /**
  * @author Tomas Muller
@@ -101,12 +102,14 @@ public class FindEnrollmentAction implements OnlineSectioningAction<List<ClassAs
 		OverExpectedCriterion overExp = server.getOverExpectedCriterion();
 		AcademicSessionInfo session = server.getAcademicSession();
 		Set<Long> studentIds = (iFilter == null ? null : server.createAction(SectioningStatusFilterAction.class).forRequest(iFilter).getStudentIds(server, helper));
+		StudentAttributeIndex.Candidates candidates = StudentAttributeIndex.compile(server, query());
 		
 		for (XCourseRequest request: enrollments.getRequests()) {
 			if (request.getEnrollment() != null && !request.getEnrollment().getCourseId().equals(courseId())) continue;
 			if (classId() != null && request.getEnrollment() != null && !request.getEnrollment().getSectionIds().contains(classId())) continue;
 			if (request.getEnrollment() == null && !request.getCourseIds().contains(course)) continue;
 			if (studentIds != null && !studentIds.contains(request.getStudentId())) continue;
+			if (candidates != null && !candidates.contains(request.getStudentId())) continue;
 			XStudent student = server.getStudent(request.getStudentId());
 			if (student == null) continue;
 			if (request.getEnrollment() == null && !student.canAssign(request)) continue;
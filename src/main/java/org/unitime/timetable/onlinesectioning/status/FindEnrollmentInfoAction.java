@@ -63,6 +63,7 @@ import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
 import org.unitime.timetable.onlinesectioning.server.DatabaseServer;
+import org.unitime.timetable.onlinesectioning.server.StudentAttributeIndex;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.CourseInfoMatcher;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.CourseRequestMatcher;
@@ -115,6 +116,7 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 		List<EnrollmentInfo> ret = new ArrayList<EnrollmentInfo>();
 		AcademicSessionInfo session = server.getAcademicSession();
 		Set<Long> studentIds = (iFilter == null ? null : server.createAction(SectioningStatusFilterAction.class).forRequest(iFilter).getStudentIds(server, helper));
+		StudentAttributeIndex.Candidates candidates = StudentAttributeIndex.compile(server, query());
 		if (courseId() == null) {
 			Set<Long> students = new HashSet<Long>();
 			Set<Long> matchingStudents = new HashSet<Long>();
@@ -169,7 +171,7 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 					XStudent student = server.getStudent(request.getStudentId());
 					if (student == null) continue;
 					CourseRequestMatcher m = new CourseRequestMatcher(session, course, student, offering, request, isConsentToDoCourse);
-					if (query().match(m)) {
+					if ((candidates == null || candidates.contains(request.getStudentId())) && query().match(m)) {
 						matchingStudents.add(request.getStudentId());
 						match++;
 						if (m.enrollment() != null) {
@@ -415,7 +417,7 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 					XStudent student = server.getStudent(request.getStudentId());
 					if (student == null) continue;
 					CourseRequestMatcher m = new CourseRequestMatcher(session, info, student, offering, request, isConsentToDoCourse);
-					if (query().match(m)) {
+					if ((candidates == null || candidates.contains(request.getStudentId())) && query().match(m)) {
 						match++;
 						enrl ++;
 						if (m.enrollment().getReservation() != null) res ++;
@@ -450,7 +452,7 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 					}
 					if (!hasEnrollment) continue;
 					
-					if (query().match(m)) {
+					if ((candidates == null || candidates.contains(request.getStudentId())) && query().match(m)) {
 						match++;
 						unasg++;
 						if (request.isWaitlist())
@@ -52,6 +52,7 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
 import org.unitime.timetable.onlinesectioning.server.DatabaseServer;
+import org.unitime.timetable.onlinesectioning.server.StudentAttributeIndex;
 import org.unitime.timetable.onlinesectioning.status.FindEnrollmentInfoAction.FindEnrollmentInfoCourseMatcher;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.CourseRequestMatcher;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.StudentMatcher;
@@ -108,6 +109,7 @@ public class FindStudentInfoAction implements OnlineSectioningAction<List<Studen
 		Set<Long> unassigned = new HashSet<Long>();
 		AcademicSessionInfo session = server.getAcademicSession();
 		Set<Long> studentIds = (iFilter == null ? null : server.createAction(SectioningStatusFilterAction.class).forRequest(iFilter).getStudentIds(server, helper));
+		StudentAttributeIndex.Candidates candidates = StudentAttributeIndex.compile(server, query());
 		for (XCourseId info: findCourses(server, helper)) {
 			XOffering offering = server.getOffering(info.getOfferingId());
 			if (offering == null) continue;
@@ -120,6 +122,7 @@ public class FindStudentInfoAction implements OnlineSectioningAction<List<Studen
 				if (!request.hasCourse(info.getCourseId())) continue;
 				if (request.getEnrollment() != null && !request.getEnrollment().getCourseId().equals(info.getCourseId())) continue;
 				if (studentIds != null && !studentIds.contains(request.getStudentId())) continue;
+				if (candidates != null && !candidates.contains(request.getStudentId())) continue;
 				XStudent student = server.getStudent(request.getStudentId());
 				if (student == null) continue;
 				CourseRequestMatcher m = new CourseRequestMatcher(session, course, student, offering, request, isConsentToDoCourse);
@@ -247,6 +250,7 @@ public class FindStudentInfoAction implements OnlineSectioningAction<List<Studen
 			FindStudentInfoMatcher m = new FindStudentInfoMatcher(session, query());
 			for (Long id: studentIds) {
 				if (students.containsKey(id)) continue;
+				if (candidates != null && !candidates.contains(id)) continue;
 				XStudent student = server.getStudent(id);
 				if (student == null) continue;
 				if (!m.match(student)) continue;
@@ -276,7 +280,20 @@ public class FindStudentInfoAction implements OnlineSectioningAction<List<Studen
 				ret.add(s);
 			}
 		} else {
-			for (XStudentId id: server.findStudents(new FindStudentInfoMatcher(session, query()))) {
+			Collection<? extends XStudentId> matching = null;
+			if (candidates != null) {
+				// only the candidate students can match the query, no need to check all the students
+				FindStudentInfoMatcher m = new FindStudentInfoMatcher(session, query());
+				List<XStudent> list = new ArrayList<XStudent>();
+				for (Long id: candidates.getStudentIds()) {
+					XStudent student = server.getStudent(id);
+					if (student != null && m.match(student)) list.add(student);
+				}
+				matching = list;
+			} else {
+				matching = server.findStudents(new FindStudentInfoMatcher(session, query()));
+			}
+			for (XStudentId id: matching) {
 				XStudent student = (id instanceof XStudent ? (XStudent)id : server.getStudent(id.getStudentId()));
 				StudentInfo s = new StudentInfo();
 				ClassAssignmentInterface.Student st = new ClassAssignmentInterface.Student(); s.setStudent(st);
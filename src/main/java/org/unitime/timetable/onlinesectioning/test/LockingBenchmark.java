@@ -0,0 +1,193 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningTestFwk;
+import org.unitime.timetable.onlinesectioning.match.AnyCourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
+
+/**
+ * Lock contention benchmark of the {@link InMemoryServer}, comparing the single read-write lock of the academic session
+ * with the striped locking (run it once with unitime.enrollment.server.stripedLocking=false and once with true,
+ * use remote=false so that the server is loaded locally).<br>
+ * Enrollment operations lock a student using {@link OnlineSectioningServer#lockStudent(Long, Collection, String)} and
+ * update it (which write-locks the student and its offerings), offering operations lock an offering using
+ * {@link OnlineSectioningServer#lockOffering(Long, Collection, String)} and read its requests,
+ * and search operations are course searches under the {@link OnlineSectioningServer#readLock()}.
+ * The lock waits of the server are counted separately for each lock type.
+ *
+ * @author Tomas Muller
+ */
+public class LockingBenchmark extends OnlineSectioningTestFwk {
+	private ThreadLocal<Boolean> iLocking = new ThreadLocal<Boolean>();
+	
+	/** Lock wait is only counted for the outer most lock of a thread (some locks are implemented by calling other locks) */
+	protected void waited(String lockType, long t0, boolean outer) {
+		if (outer) {
+			inc("Lock wait [ms] " + lockType, (System.nanoTime() - t0) / 1000000.0);
+			iLocking.remove();
+		}
+	}
+	
+	protected boolean startLocking() {
+		if (iLocking.get() != null) return false;
+		iLocking.set(Boolean.TRUE);
+		return true;
+	}
+	
+	@Override
+	protected OnlineSectioningServer createServer(OnlineSectioningServerContext context) {
+		return new InMemoryServer(context) {
+			@Override
+			public Lock readLock() {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.readLock();
+				} finally {
+					waited("read", t0, outer);
+				}
+			}
+			
+			@Override
+			public Lock writeLock() {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.writeLock();
+				} finally {
+					waited("write", t0, outer);
+				}
+			}
+			
+			@Override
+			protected Lock lock(boolean write, Collection<Long> ids) {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.lock(write, ids);
+				} finally {
+					waited(write ? "write(ids)" : "read(ids)", t0, outer);
+				}
+			}
+			
+			@Override
+			public Lock lockStudent(Long studentId, Collection<Long> offeringIds, String actionName) {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.lockStudent(studentId, offeringIds, actionName);
+				} finally {
+					waited("student", t0, outer);
+				}
+			}
+			
+			@Override
+			public Lock lockOffering(Long offeringId, Collection<Long> studentIds, String actionName) {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.lockOffering(offeringId, studentIds, actionName);
+				} finally {
+					waited("offering", t0, outer);
+				}
+			}
+		};
+	}
+	
+	@Override
+	public List<Operation> operations() {
+		org.hibernate.Session hibSession = new _RootDAO().getSession();
+		
+		List<Operation> operations = new ArrayList<Operation>();
+		
+		for (final Long studentId: (List<Long>)hibSession.createQuery(
+				"select s.uniqueId from Student s where s.session.uniqueId = :sessionId")
+				.setLong("sessionId", getServer().getAcademicSession().getUniqueId()).list()) {
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					long t0 = System.nanoTime();
+					Lock lock = s.lockStudent(studentId, null, "LockingBenchmark");
+					try {
+						XStudent student = s.getStudent(studentId);
+						if (student != null) s.update(student, true);
+					} finally {
+						lock.release();
+					}
+					inc("Enrollment [ms]", (System.nanoTime() - t0) / 1000000.0);
+					return 1.0;
+				}
+			});
+		}
+		
+		for (final Long offeringId: (List<Long>)hibSession.createQuery(
+				"select io.uniqueId from InstructionalOffering io where io.session.uniqueId = :sessionId and io.notOffered = false")
+				.setLong("sessionId", getServer().getAcademicSession().getUniqueId()).list()) {
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					long t0 = System.nanoTime();
+					Lock lock = s.lockOffering(offeringId, null, "LockingBenchmark");
+					try {
+						Collection<XCourseRequest> requests = s.getRequests(offeringId);
+						if (requests != null)
+							for (XCourseRequest request: requests)
+								s.getStudent(request.getStudentId());
+					} finally {
+						lock.release();
+					}
+					inc("Offering [ms]", (System.nanoTime() - t0) / 1000000.0);
+					return 1.0;
+				}
+			});
+		}
+		
+		for (final String name: (List<String>)hibSession.createQuery(
+				"select co.subjectAreaAbbv || ' ' || co.courseNbr from CourseOffering co where co.instructionalOffering.session.uniqueId = :sessionId and co.instructionalOffering.notOffered = false")
+				.setLong("sessionId", getServer().getAcademicSession().getUniqueId()).list()) {
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					long t0 = System.nanoTime();
+					for (int i = 1; i < name.length(); i++)
+						s.findCourses(name.substring(0, i), 20, new AnyCourseMatcher());
+					s.getCourse(name);
+					inc("Search [ms]", (System.nanoTime() - t0) / 1000000.0);
+					return 1.0;
+				}
+			});
+		}
+		hibSession.close();
+		
+		return operations;
+	}
+	
+	public static void main(String args[]) {
+		new LockingBenchmark().test(
+				Integer.valueOf(System.getProperty("nrTasks", "-1")),
+				Integer.valueOf(System.getProperty("nrConcurrent", "50")));
+	}
+}
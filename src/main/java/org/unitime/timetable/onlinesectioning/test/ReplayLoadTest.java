@@ -0,0 +1,415 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
+import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
+import org.unitime.timetable.onlinesectioning.updates.ReloadFromSnapshot;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Load test replaying a recorded online sectioning log (see {@link ReplayLogTest}) against an {@link InMemoryServer}
+ * of the academic session (use remote=false). Unless the snapshot system property is set to false, the server is loaded
+ * from the last server snapshot ({@link ReloadFromSnapshot}), falling back to {@link ReloadAllData} when there is no usable snapshot.<br>
+ * When nrTasks is set, a random sample of the operations is replayed: the operations are first ordered by their start times
+ * (and student ids, keeping the log order otherwise) and the sample is drawn using the seed system property, so that the same
+ * seed always replays the same operations (the seed is recorded in the report).<br>
+ * Operations are replayed in the order of their logged start times, sped up by the speedUp system property
+ * (e.g., speedUp=10 replays an hour of the log in six minutes, speedUp=0 replays as fast as possible).
+ * Latency histograms (with p50, p95, and p99) are recorded for each action and for the whole replayed operations,
+ * together with the delay of operations that could not be started on time (schedule lag), lock wait times, and throughput.
+ * The results are written into a JSON report (report system property, defaults to load-test-report.json).
+ *
+ * @author Tomas Muller
+ */
+public class ReplayLoadTest extends ReplayLogTest {
+	private double iSpeedUp = Double.valueOf(System.getProperty("speedUp", "1.0"));
+	private File iReportFile = new File(System.getProperty("report", "load-test-report.json"));
+	private Map<String, Histogram> iActions = new ConcurrentHashMap<String, Histogram>();
+	private Map<String, Histogram> iLocks = new ConcurrentHashMap<String, Histogram>();
+	private Histogram iOperations = new Histogram(), iLag = new Histogram();
+	private ThreadLocal<Boolean> iLocking = new ThreadLocal<Boolean>();
+	private JsonArray iRuns = new JsonArray();
+	private long iSeed = Long.valueOf(System.getProperty("seed", "1"));
+	private boolean iSnapshot = "true".equalsIgnoreCase(System.getProperty("snapshot", "true"));
+	private int iNrLoggedOperations = 0;
+	
+	/** Order by start time (operations with no start time last), then by student id */
+	protected static Comparator<Operation> sStartTimeComparator = new Comparator<Operation>() {
+		@Override
+		public int compare(Operation o1, Operation o2) {
+			Long s1 = getStartTime(o1), s2 = getStartTime(o2);
+			if (s1 == null) {
+				if (s2 != null) return 1;
+			} else {
+				if (s2 == null) return -1;
+				int cmp = s1.compareTo(s2);
+				if (cmp != 0) return cmp;
+			}
+			Long i1 = getStudentId(o1), i2 = getStudentId(o2);
+			if (i1 == null) return (i2 == null ? 0 : 1);
+			if (i2 == null) return -1;
+			return i1.compareTo(i2);
+		}
+	};
+	
+	protected ReplayLoadTest(File logFile) {
+		super(logFile);
+	}
+	
+	protected static Histogram get(Map<String, Histogram> histograms, String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			synchronized (histograms) {
+				histogram = histograms.get(name);
+				if (histogram == null) {
+					histogram = new Histogram();
+					histograms.put(name, histogram);
+				}
+			}
+		}
+		return histogram;
+	}
+	
+	@Override
+	protected void executed(OnlineSectioningAction<?> action, long nanos, boolean success) {
+		get(iActions, action.name()).add(nanos / 1000l, success);
+	}
+	
+	/** Lock wait is only counted for the outer most lock of a thread (some locks are implemented by calling other locks) */
+	protected void waited(String lockType, long t0, boolean outer) {
+		if (outer) {
+			get(iLocks, lockType).add((System.nanoTime() - t0) / 1000l, true);
+			iLocking.remove();
+		}
+	}
+	
+	protected boolean startLocking() {
+		if (iLocking.get() != null) return false;
+		iLocking.set(Boolean.TRUE);
+		return true;
+	}
+	
+	@Override
+	protected OnlineSectioningServer createServer(OnlineSectioningServerContext context) {
+		if (iSnapshot) {
+			// the server is loaded in the constructor: warm start from a snapshot when available, cold start otherwise
+			ApplicationProperties.getDefaultProperties().setProperty(ApplicationProperty.OnlineSchedulingServerSnapshot.key(), "true");
+			ApplicationProperties.changed();
+		}
+		return new InMemoryServer(context) {
+			@Override
+			public Lock readLock() {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.readLock();
+				} finally {
+					waited("read", t0, outer);
+				}
+			}
+			
+			@Override
+			public Lock writeLock() {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.writeLock();
+				} finally {
+					waited("write", t0, outer);
+				}
+			}
+			
+			@Override
+			public Lock writeLockIfNotHeld() {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.writeLockIfNotHeld();
+				} finally {
+					waited("write(if not held)", t0, outer);
+				}
+			}
+			
+			@Override
+			public Lock lockAll() {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.lockAll();
+				} finally {
+					waited("all", t0, outer);
+				}
+			}
+			
+			@Override
+			protected Lock lock(boolean write, Collection<Long> ids) {
+				boolean outer = startLocking(); long t0 = System.nanoTime();
+				try {
+					return super.lock(write, ids);
+				} finally {
+					waited(write ? "write(ids)" : "read(ids)", t0, outer);
+				}
+			}
+		};
+	}
+	
+	protected static Long getStartTime(Operation operation) {
+		return operation instanceof ReplayOperation ? ((ReplayOperation)operation).getStartTime() : null;
+	}
+	
+	protected static Long getStudentId(Operation operation) {
+		return operation instanceof ReplayOperation ? ((ReplayOperation)operation).getStudentId() : null;
+	}
+	
+	/**
+	 * Deterministic sample: the operations are ordered first (the sort is stable, so the log order is kept for the same start time and student),
+	 * then a sample of nrTasks operations is drawn using the seed.
+	 */
+	@Override
+	protected List<Operation> select(List<Operation> operations, int nrTasks) {
+		iNrLoggedOperations = operations.size();
+		List<Operation> ordered = new ArrayList<Operation>(operations);
+		Collections.sort(ordered, sStartTimeComparator);
+		if (nrTasks <= 0 || ordered.size() <= nrTasks) return ordered;
+		sLog.info("Sampling " + nrTasks + " of " + ordered.size() + " operations with seed " + iSeed + "...");
+		Collections.shuffle(ordered, new Random(iSeed));
+		List<Operation> sample = new ArrayList<Operation>(ordered.subList(0, nrTasks));
+		Collections.sort(sample, sStartTimeComparator);
+		return sample;
+	}
+	
+	@Override
+	public synchronized void run(List<Operation> operations, int nrConcurrent) {
+		final List<Operation> ordered = new ArrayList<Operation>(operations);
+		Collections.sort(ordered, sStartTimeComparator);
+		Long first = null;
+		for (Operation operation: ordered) {
+			first = getStartTime(operation);
+			if (first != null) break;
+		}
+		final Long firstStartTime = first;
+		iActions.clear(); iLocks.clear(); iOperations = new Histogram(); iLag = new Histogram();
+		sLog.info("Replaying " + ordered.size() + " operations with " + nrConcurrent + " runners" + (iSpeedUp > 0.0 ? " at " + sDF.format(iSpeedUp) + "x speed" : " as fast as possible") + "...");
+		
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicInteger finished = new AtomicInteger(0);
+		final long t0 = System.currentTimeMillis();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < nrConcurrent; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int index;
+					while ((index = next.getAndIncrement()) < ordered.size()) {
+						Operation operation = ordered.get(index);
+						Long startTime = getStartTime(operation);
+						if (iSpeedUp > 0.0 && startTime != null && firstStartTime != null) {
+							long due = t0 + Math.round((startTime - firstStartTime) / iSpeedUp);
+							long wait = due - System.currentTimeMillis();
+							if (wait > 0) {
+								try {
+									Thread.sleep(wait);
+								} catch (InterruptedException e) {
+									break;
+								}
+							}
+							iLag.add(1000l * Math.max(0l, System.currentTimeMillis() - due), true);
+						}
+						long t1 = System.nanoTime();
+						boolean success = false;
+						try {
+							operation.execute(getServer());
+							success = true;
+						} catch (Throwable t) {
+							sLog.warn("Task failed: " + t.getMessage(), t);
+						} finally {
+							iOperations.add((System.nanoTime() - t1) / 1000l, success);
+							finished.incrementAndGet();
+						}
+					}
+				}
+			});
+			thread.setDaemon(true); thread.setName("Runner #" + (1 + i));
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread: threads) {
+			try {
+				while (thread.isAlive()) {
+					thread.join(10000);
+					if (thread.isAlive())
+						sLog.info(finished.get() + " of " + ordered.size() + " operations replayed in " + sDF.format((System.currentTimeMillis() - t0) / 1000.0) + " s, " + iOperations);
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		double time = (System.currentTimeMillis() - t0) / 1000.0;
+		
+		JsonObject run = new JsonObject();
+		run.addProperty("nrOperations", ordered.size());
+		run.addProperty("nrConcurrent", nrConcurrent);
+		run.addProperty("speedUp", iSpeedUp);
+		run.addProperty("timeInSeconds", time);
+		run.addProperty("throughput", time <= 0.0 ? 0.0 : finished.get() / time);
+		run.add("operations", iOperations.toJson(time));
+		run.add("scheduleLag", iLag.toJson(time));
+		JsonObject actions = new JsonObject();
+		for (Map.Entry<String, Histogram> e: new TreeMap<String, Histogram>(iActions).entrySet()) {
+			actions.add(e.getKey(), e.getValue().toJson(time));
+			sLog.info("  " + e.getKey() + ": " + e.getValue());
+		}
+		run.add("actions", actions);
+		JsonObject locks = new JsonObject();
+		for (Map.Entry<String, Histogram> e: new TreeMap<String, Histogram>(iLocks).entrySet()) {
+			locks.add(e.getKey(), e.getValue().toJson(time));
+			sLog.info("  lock " + e.getKey() + ": " + e.getValue());
+		}
+		run.add("lockWaits", locks);
+		sLog.info("All " + finished.get() + " operations replayed in " + sDF.format(time) + " s (throughput " + sDF.format(time <= 0.0 ? 0.0 : finished.get() / time) + " operations / s), " + iOperations);
+		iRuns.add(run);
+		writeReport();
+	}
+	
+	protected void writeReport() {
+		JsonObject report = new JsonObject();
+		report.addProperty("created", System.currentTimeMillis());
+		if (iSessionId != null) report.addProperty("sessionId", iSessionId);
+		report.addProperty("seed", iSeed);
+		report.addProperty("snapshot", iSnapshot);
+		report.addProperty("nrLoggedOperations", iNrLoggedOperations);
+		report.add("runs", iRuns);
+		try {
+			Writer writer = new FileWriter(iReportFile);
+			try {
+				new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+			} finally {
+				writer.close();
+			}
+			sLog.info("Report written to " + iReportFile.getAbsolutePath());
+		} catch (IOException e) {
+			sLog.error("Failed to write report: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Lock-free latency histogram with logarithmic buckets (each bucket is 2% wider than the previous one),
+	 * values are in microseconds.
+	 */
+	public static class Histogram {
+		private static final double RATIO = 1.02;
+		private static final int NR_BUCKETS = 1200;
+		private AtomicLongArray iBuckets = new AtomicLongArray(NR_BUCKETS);
+		private AtomicLong iCount = new AtomicLong(0), iErrors = new AtomicLong(0), iSum = new AtomicLong(0), iMax = new AtomicLong(0);
+		
+		protected static int bucket(long value) {
+			if (value <= 0) return 0;
+			return Math.min(NR_BUCKETS - 1, 1 + (int)Math.floor(Math.log(value) / Math.log(RATIO)));
+		}
+		
+		protected static long upperBound(int bucket) {
+			return bucket == 0 ? 0 : (long)Math.ceil(Math.pow(RATIO, bucket));
+		}
+		
+		public void add(long value, boolean success) {
+			iBuckets.incrementAndGet(bucket(value));
+			iCount.incrementAndGet();
+			if (!success) iErrors.incrementAndGet();
+			iSum.addAndGet(value);
+			long max = iMax.get();
+			while (value > max && !iMax.compareAndSet(max, value))
+				max = iMax.get();
+		}
+		
+		public long count() { return iCount.get(); }
+		
+		public long errors() { return iErrors.get(); }
+		
+		public double mean() {
+			long count = iCount.get();
+			return count == 0 ? 0.0 : ((double)iSum.get()) / count;
+		}
+		
+		public long max() { return iMax.get(); }
+		
+		/** Upper estimate of the given percentile (e.g., 0.95 for p95) */
+		public long percentile(double p) {
+			long count = iCount.get();
+			if (count == 0) return 0;
+			long target = (long)Math.ceil(p * count), sum = 0;
+			for (int i = 0; i < NR_BUCKETS; i++) {
+				sum += iBuckets.get(i);
+				if (sum >= target) return Math.min(upperBound(i), max());
+			}
+			return max();
+		}
+		
+		public JsonObject toJson(double timeInSeconds) {
+			JsonObject ret = new JsonObject();
+			ret.addProperty("count", count());
+			ret.addProperty("errors", errors());
+			ret.addProperty("throughput", timeInSeconds <= 0.0 ? 0.0 : count() / timeInSeconds);
+			ret.addProperty("meanMs", mean() / 1000.0);
+			ret.addProperty("p50Ms", percentile(0.50) / 1000.0);
+			ret.addProperty("p95Ms", percentile(0.95) / 1000.0);
+			ret.addProperty("p99Ms", percentile(0.99) / 1000.0);
+			ret.addProperty("maxMs", max() / 1000.0);
+			return ret;
+		}
+		
+		@Override
+		public String toString() {
+			return count() + " calls (" + errors() + " errors)," +
+					" mean " + sDF.format(mean() / 1000.0) + " ms," +
+					" p50 " + sDF.format(percentile(0.50) / 1000.0) + " ms," +
+					" p95 " + sDF.format(percentile(0.95) / 1000.0) + " ms," +
+					" p99 " + sDF.format(percentile(0.99) / 1000.0) + " ms," +
+					" max " + sDF.format(max() / 1000.0) + " ms";
+		}
+	}
+	
+	public static void main(String args[]) {
+		new ReplayLoadTest(new File(args[0])).test(
+				Integer.valueOf(System.getProperty("nrTasks", "-1")),
+				Integer.valueOf(System.getProperty("nrConcurrent", "10")));
+	}
+}
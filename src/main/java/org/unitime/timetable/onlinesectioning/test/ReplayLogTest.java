@@ -62,7 +62,7 @@ public class ReplayLogTest extends OnlineSectioningTestFwk {
 			"No courses requested\\.",
 	};
 	
-	private ReplayLogTest(File logFile) {
+	protected ReplayLogTest(File logFile) {
 		iLogFile = logFile;
 	}
 	
@@ -275,10 +275,13 @@ public class ReplayLogTest extends OnlineSectioningTestFwk {
 	            while ((log = readLog(cin)) != null) {
 	            	List<OnlineSectioningAction<?>> actions = new ArrayList<OnlineSectioningAction<?>>();
 	            	Long studentId = null;
+	            	Long startTime = null;
 	            	boolean hasSectionOrSuggestion = false;
 	            	for (OnlineSectioningLog.Action action: log.getActionList()) {
 	            		if (studentId == null && action.hasStudent() && action.getStudent().hasExternalId())
 	            			studentId = toStudentId(action.getStudent());
+	            		if (action.hasStartTime() && (startTime == null || startTime > action.getStartTime()))
+	            			startTime = action.getStartTime();
 	            		OnlineSectioningAction<?> a = convert(action);
 	            		if (a != null) {
 	            			if (a instanceof FindAssignmentAction || a instanceof ComputeSuggestionsAction)
@@ -287,7 +290,7 @@ public class ReplayLogTest extends OnlineSectioningTestFwk {
 	            		}
 	            	}
 	            	if (studentId != null && !actions.isEmpty() && hasSectionOrSuggestion)
-	            		operations.add(new ReplayOperation(studentId, actions));
+	            		operations.add(new ReplayOperation(studentId, actions, startTime));
 	            	
 	            	if (nrTasks > 0 && operations.size() >= 3 * nrTasks) break;
 	            }
@@ -300,26 +303,51 @@ public class ReplayLogTest extends OnlineSectioningTestFwk {
 		return operations;
 	}
 	
-	private class ReplayOperation implements Operation {
+	/**
+	 * Called after each replayed action
+	 * @param action replayed action
+	 * @param nanos time it took to execute the action in nanoseconds
+	 * @param success false if the action failed (with an exception that is not listed as acceptable)
+	 */
+	protected void executed(OnlineSectioningAction<?> action, long nanos, boolean success) {
+	}
+	
+	protected class ReplayOperation implements Operation {
 		private Long iStudentId = null;
 		private List<OnlineSectioningAction<?>> iActions = null;
+		private Long iStartTime = null;
 		private OnlineSectioningServer iServer;
 		private int iGood = 0;
 		
-		public ReplayOperation(Long studentId, List<OnlineSectioningAction<?>> actions) {
+		public ReplayOperation(Long studentId, List<OnlineSectioningAction<?>> actions, Long startTime) {
 			iStudentId = studentId;
 			iActions = actions;
+			iStartTime = startTime;
 		}
 		
+		/** Time of the first logged action of the operation, null if not known */
+		public Long getStartTime() { return iStartTime; }
+		
+		public Long getStudentId() { return iStudentId; }
+		
 		private <E> E executeAction(OnlineSectioningAction<E> action) {
 			E ret = null;
+			long t0 = System.nanoTime();
 			try {
 				ret = iServer.execute(action, user());
 				iGood ++;
+				executed(action, System.nanoTime() - t0, true);
 			} catch (SectioningException e) {
 				for (String ok: sOkErrors)
-					if (e.getMessage() != null && e.getMessage().matches(ok)) return null;
+					if (e.getMessage() != null && e.getMessage().matches(ok)) {
+						executed(action, System.nanoTime() - t0, true);
+						return null;
+					}
+				executed(action, System.nanoTime() - t0, false);
 				sLog.warn("Failed to run " + action.name() + " for " + iStudentId + ": " + e.getMessage(), e);
+			} catch (RuntimeException e) {
+				executed(action, System.nanoTime() - t0, false);
+				throw e;
 			}
 			return ret;
 		}
@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.onlinesectioning.updates;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.unitime.localization.impl.Localization;
@@ -45,6 +46,12 @@ public class CheckAllOfferingsAction extends CheckOfferingAction{
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 	
+	@Override
+	public Collection<Long> getAsyncKeys() {
+		// checks all the offerings -> cannot run in parallel with other actions
+		return null;
+	}
+	
 	@Override
 	public Boolean execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
 		List<Long> offeringIds = null;
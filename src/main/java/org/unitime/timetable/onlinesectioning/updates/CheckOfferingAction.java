@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +45,7 @@ import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.dao.Class_DAO;
 import org.unitime.timetable.model.dao.CourseOfferingDAO;
 import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.onlinesectioning.HasAsyncKeys;
 import org.unitime.timetable.onlinesectioning.HasCacheMode;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
@@ -66,10 +68,11 @@ import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
-public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolean> implements HasCacheMode {
+public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolean> implements HasCacheMode, HasAsyncKeys {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 	private Collection<Long> iOfferingIds;
+	private Set<Long> iStudentIds = null;
 	
 	public CheckOfferingAction forOfferings(Long... offeringIds) {
 		iOfferingIds = new ArrayList<Long>();
@@ -84,6 +87,32 @@ public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolea
 	}
 	
 	public Collection<Long> getOfferingIds() { return iOfferingIds; }
+	
+	/**
+	 * Include the students that have a request for one of the offerings in the asynchronous keys, to be called before
+	 * the action is submitted for an asynchronous execution. The check re-sections these students, so it must not run in parallel with
+	 * other asynchronous actions of the same students (e.g., a check of another offering the student is wait-listed for).
+	 * Students that request the offering after the action has been submitted are not included.
+	 */
+	public CheckOfferingAction withAffectedStudents(OnlineSectioningServer server) {
+		iStudentIds = new HashSet<Long>();
+		for (Long offeringId: getOfferingIds()) {
+			Collection<XCourseRequest> requests = server.getRequests(offeringId);
+			if (requests != null)
+				for (XCourseRequest request: requests)
+					iStudentIds.add(request.getStudentId());
+		}
+		return this;
+	}
+	
+	@Override
+	public Collection<Long> getAsyncKeys() {
+		if (iStudentIds == null) return getOfferingIds();
+		Set<Long> keys = new HashSet<Long>(getOfferingIds());
+		for (Long studentId: iStudentIds)
+			keys.add(-studentId);
+		return keys;
+	}
 
 	@Override
 	public Boolean execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
@@ -699,7 +699,7 @@ public class EnrollStudent implements OnlineSectioningAction<ClassAssignmentInte
 					}
 					
 					if (checkOffering)
-						server.execute(server.createAction(CheckOfferingAction.class).forOfferings(oldEnrollment.getOfferingId()), helper.getUser(), offeringChecked);
+						server.execute(server.createAction(CheckOfferingAction.class).forOfferings(oldEnrollment.getOfferingId()).withAffectedStudents(server), helper.getUser(), offeringChecked);
 					
 					updateSpace(server,
 							newEnrollment == null ? null : SectioningRequest.convert(newStudent, newRequest, server, offering, newEnrollment),
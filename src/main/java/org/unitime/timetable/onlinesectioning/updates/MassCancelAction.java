@@ -233,7 +233,7 @@ public class MassCancelAction implements OnlineSectioningAction<Boolean>{
 		
 		for (Long offeringId: offeringsToCheck) {
 			server.persistExpectedSpaces(offeringId);
-			server.execute(server.createAction(CheckOfferingAction.class).forOfferings(offeringId), helper.getUser(), offeringChecked);
+			server.execute(server.createAction(CheckOfferingAction.class).forOfferings(offeringId).withAffectedStudents(server), helper.getUser(), offeringChecked);
 		}
 		
 		if (caughtException != null) {
@@ -30,6 +30,7 @@ import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
 import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.Location;
 import org.unitime.timetable.model.SectioningInfo;
+import org.unitime.timetable.onlinesectioning.HasAsyncKeys;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
@@ -40,7 +41,7 @@ import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
-public class PersistExpectedSpacesAction implements OnlineSectioningAction<Boolean>{
+public class PersistExpectedSpacesAction implements OnlineSectioningAction<Boolean>, HasAsyncKeys {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 	private Collection<Long> iOfferingIds;
@@ -59,6 +60,9 @@ public class PersistExpectedSpacesAction implements OnlineSectioningAction<Boole
 	}
 	
 	public Collection<Long> getOfferingIds() { return iOfferingIds; }
+	
+	@Override
+	public Collection<Long> getAsyncKeys() { return getOfferingIds(); }
 
 	@Override
 	public Boolean execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
@@ -0,0 +1,129 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.updates;
+
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.CheckMaster;
+import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
+import org.unitime.timetable.onlinesectioning.server.ServerSnapshot;
+
+/**
+ * Warm start of the online sectioning server: load the server data from the last {@link ServerSnapshot}
+ * instead of reloading everything from the database ({@link ReloadAllData}).<br>
+ * Students whose enrollments or course requests changed since the snapshot was taken are reloaded from the database,
+ * the remaining changes (e.g., offering or class assignment changes) are caught up by the updater from the student sectioning
+ * queue, starting with the last queue time stamp processed before the snapshot was taken.<br>
+ * The action returns false when there is no usable snapshot and the data need to be reloaded from the database.
+ * 
+ * @author Tomas Muller
+ */
+@CheckMaster(Master.REQUIRED)
+public class ReloadFromSnapshot extends ReloadAllData {
+	private static final long serialVersionUID = 1L;
+	/** Time stamps of the changes are taken by different machines, allow for some clock difference */
+	private static final long CLOCK_SLACK = 60000l;
+
+	@Override
+	public Boolean execute(final OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		Lock lock = server.lockAll();
+		try {
+			long t0 = System.currentTimeMillis();
+			ServerSnapshot snapshot = null;
+			try {
+				snapshot = ServerSnapshot.load(server.getAcademicSession().getUniqueId(), 60000l * ApplicationProperty.OnlineSchedulingServerSnapshotMaxAge.intValue());
+			} catch (Exception e) {
+				helper.warn("Failed to read server snapshot: " + e.getMessage(), e);
+			}
+			if (snapshot == null) return false;
+			helper.info("Loading session " + server.getAcademicSession() + " from a snapshot (" + snapshot + ")");
+
+			helper.beginTransaction();
+			try {
+				server.clearAll();
+				for (XOffering offering: snapshot.getOfferings())
+					server.update(offering);
+				for (XExpectations expectations: snapshot.getExpectations())
+					server.update(expectations);
+				for (XStudent student: snapshot.getStudents())
+					server.update(student, true);
+				long t1 = System.currentTimeMillis();
+
+				Date since = new Date(snapshot.getTimeStamp().getTime() - CLOCK_SLACK);
+				Long sessionId = server.getAcademicSession().getUniqueId();
+				Set<Long> studentIds = new HashSet<Long>();
+				studentIds.addAll((List<Long>)helper.getHibSession().createQuery(
+						"select distinct e.student.uniqueId from StudentClassEnrollment e where e.student.session.uniqueId = :sessionId and e.timestamp >= :since")
+						.setLong("sessionId", sessionId).setTimestamp("since", since).list());
+				studentIds.addAll((List<Long>)helper.getHibSession().createQuery(
+						"select distinct d.student.uniqueId from CourseDemand d where d.student.session.uniqueId = :sessionId and d.timestamp >= :since")
+						.setLong("sessionId", sessionId).setTimestamp("since", since).list());
+				// dropped enrollments and requests are no longer in the database, use the log of the online sectioning actions instead
+				studentIds.addAll((List<Long>)helper.getHibSession().createQuery(
+						"select distinct s.uniqueId from Student s, OnlineSectioningLog l where l.session.uniqueId = :sessionId and l.timeStamp >= :since and " +
+						"s.session.uniqueId = :sessionId and s.externalUniqueId = l.student")
+						.setLong("sessionId", sessionId).setTimestamp("since", since).list());
+				for (Long studentId: studentIds) {
+					XStudent oldStudent = server.getStudent(studentId);
+					if (oldStudent != null)
+						server.remove(oldStudent);
+					org.unitime.timetable.model.Student student = StudentDAO.getInstance().get(studentId, helper.getHibSession());
+					if (student != null) {
+						XStudent newStudent = loadStudent(student, null, server, helper);
+						if (newStudent != null)
+							server.update(newStudent, true);
+					}
+				}
+				long t2 = System.currentTimeMillis();
+
+				// the updater will process all the queue items after this time stamp (all the items if there was no queue time stamp)
+				server.setProperty("Updater.LastTimeStamp", snapshot.getQueueTimeStamp() == null ? new Date(0) : snapshot.getQueueTimeStamp());
+
+				helper.commitTransaction();
+				DecimalFormat df = new DecimalFormat("0.0");
+				helper.info("  Snapshot of session " + server.getAcademicSession() + " loaded in " + df.format((t1 - t0) / 1000.0) + " seconds, " +
+						studentIds.size() + " changed students reloaded in " + df.format((t2 - t1) / 1000.0) + " seconds.");
+				return true;
+			} catch (Exception e) {
+				helper.rollbackTransaction();
+				helper.warn("Failed to load server snapshot: " + e.getMessage(), e);
+				server.clearAll();
+				return false;
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public String name() { return "reload-snapshot"; }
+}
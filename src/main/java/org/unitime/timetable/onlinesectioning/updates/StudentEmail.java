@@ -35,6 +35,8 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -60,6 +62,7 @@ import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.model.StudentSectioningStatus;
 import org.unitime.timetable.model.TimetableManager;
 import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.onlinesectioning.HasAsyncKeys;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
@@ -93,7 +96,7 @@ import freemarker.template.TemplateException;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
-public class StudentEmail implements OnlineSectioningAction<Boolean> {
+public class StudentEmail implements OnlineSectioningAction<Boolean>, HasAsyncKeys {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 	private static StudentSectioningConstants CONST = Localization.create(StudentSectioningConstants.class);
@@ -131,6 +134,9 @@ public class StudentEmail implements OnlineSectioningAction<Boolean> {
 	}
 	
 	public Long getStudentId() { return iStudentId; }
+	
+	@Override
+	public Collection<Long> getAsyncKeys() { return (iStudentId == null ? null : Collections.singleton(-iStudentId)); }
 
 	public Date getTimeStamp() { return iTimeStamp; }
 	private String getSubject() { return iSubject; }
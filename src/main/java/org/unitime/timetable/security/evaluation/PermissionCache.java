@@ -0,0 +1,221 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.security.evaluation;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.security.UserAuthority;
+import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.security.rights.Right;
+
+/**
+ * Cache of permission decisions, keyed by the user, authority, right, and the target (type and id).<br>
+ * The decisions are kept for the duration of a request, that is while the current thread's Hibernate session
+ * stays open (see {@link org.unitime.timetable.filter.HibSessionFilter}), so that the domain objects the decisions
+ * were made on cannot change underneath. When {@link ApplicationProperty#PermissionCacheTimeToLive} is set,
+ * the decisions are also shared between requests for the given number of seconds, until {@link #clear()} is called.
+ *
+ * @author Tomas Muller
+ */
+public class PermissionCache {
+	private static final int MAX_SHARED_DECISIONS = 100000;
+	private static ThreadLocal<RequestCache> sRequestCache = new ThreadLocal<RequestCache>();
+	private static Map<Key, Decision> sSharedCache = new ConcurrentHashMap<Key, Decision>();
+	private static AtomicLong sGeneration = new AtomicLong(0);
+	
+	private static Map<String, String> sRootEntityNames = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * Cache key for the given target, null if the decision cannot be cached.
+	 * The target is identified by the root entity name of its class, so that the checks by id (e.g., Location) and by object (e.g., Room) share the same decisions.
+	 */
+	public static Key key(UserContext user, Right right, String targetClass, Serializable targetId) {
+		if (user == null || user.getCurrentAuthority() == null || right == null || targetClass == null || targetId == null) return null;
+		return new Key(user, right, getRootEntityName(targetClass), targetId);
+	}
+	
+	private static String getRootEntityName(String entityName) {
+		String rootEntityName = sRootEntityNames.get(entityName);
+		if (rootEntityName == null) {
+			try {
+				SessionFactoryImplementor factory = (SessionFactoryImplementor)new _RootDAO().getSession().getSessionFactory();
+				rootEntityName = factory.getEntityPersister(entityName).getRootEntityName();
+			} catch (Exception e) {
+				rootEntityName = entityName;
+			}
+			sRootEntityNames.put(entityName, rootEntityName);
+		}
+		return rootEntityName;
+	}
+	
+	/**
+	 * Cache key for the given domain object, null if the object is not associated with the current thread's Hibernate session
+	 */
+	public static Key key(UserContext user, Right right, Object domainObject) {
+		Session hibSession = new _RootDAO().getCurrentThreadSession();
+		if (hibSession == null || !hibSession.isOpen() || domainObject == null) return null;
+		try {
+			if (!hibSession.contains(domainObject)) return null;
+			return key(user, right, hibSession.getEntityName(domainObject), hibSession.getIdentifier(domainObject));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	private static Map<Key, Boolean> getRequestCache(boolean create) {
+		Session hibSession = new _RootDAO().getCurrentThreadSession();
+		if (hibSession == null || !hibSession.isOpen()) {
+			if (create) sRequestCache.remove();
+			return null;
+		}
+		RequestCache cache = sRequestCache.get();
+		if (cache == null || cache.getSession() != hibSession) {
+			if (!create) return null;
+			cache = new RequestCache(hibSession);
+			sRequestCache.set(cache);
+		}
+		return cache.getDecisions();
+	}
+	
+	/**
+	 * Cached decision, null if there is none
+	 */
+	public static Boolean get(Key key) {
+		if (key == null) return null;
+		Map<Key, Boolean> request = getRequestCache(false);
+		if (request != null) {
+			Boolean decision = request.get(key);
+			if (decision != null) return decision;
+		}
+		Decision decision = sSharedCache.get(key);
+		if (decision != null) {
+			if (decision.isValid()) {
+				if (request != null) request.put(key, decision.getValue());
+				return decision.getValue();
+			}
+			sSharedCache.remove(key);
+		}
+		return null;
+	}
+	
+	/**
+	 * Remember the decision
+	 */
+	public static void put(Key key, boolean value) {
+		if (key == null) return;
+		Map<Key, Boolean> request = getRequestCache(true);
+		if (request != null) request.put(key, value);
+		Integer ttl = ApplicationProperty.PermissionCacheTimeToLive.intValue();
+		if (ttl != null && ttl > 0) {
+			if (sSharedCache.size() >= MAX_SHARED_DECISIONS) sSharedCache.clear();
+			sSharedCache.put(key, new Decision(value, System.currentTimeMillis() + 1000l * ttl));
+		}
+	}
+	
+	/**
+	 * Drop all the decisions shared between requests, e.g., when roles, permissions, or statuses are changed.
+	 * Decisions cached within the current request are dropped as well.
+	 */
+	public static void clear() {
+		sGeneration.incrementAndGet();
+		sSharedCache.clear();
+		sRequestCache.remove();
+	}
+	
+	private static class RequestCache {
+		private WeakReference<Session> iSession;
+		private Map<Key, Boolean> iDecisions = new HashMap<Key, Boolean>();
+		
+		RequestCache(Session session) {
+			iSession = new WeakReference<Session>(session);
+		}
+		
+		Session getSession() { return iSession.get(); }
+		Map<Key, Boolean> getDecisions() { return iDecisions; }
+	}
+	
+	private static class Decision {
+		private boolean iValue;
+		private long iExpiration;
+		private long iGeneration;
+		
+		Decision(boolean value, long expiration) {
+			iValue = value;
+			iExpiration = expiration;
+			iGeneration = sGeneration.get();
+		}
+		
+		boolean getValue() { return iValue; }
+		boolean isValid() { return iGeneration == sGeneration.get() && System.currentTimeMillis() < iExpiration; }
+	}
+	
+	public static class Key {
+		private String iUserId;
+		private String iAuthority;
+		private Long iAuthorityId;
+		private Long iSessionId;
+		private Right iRight;
+		private String iTargetClass;
+		private Serializable iTargetId;
+		private int iHashCode;
+		
+		private Key(UserContext user, Right right, String targetClass, Serializable targetId) {
+			UserAuthority authority = user.getCurrentAuthority();
+			iUserId = user.getExternalUserId();
+			iAuthority = authority.getAuthority();
+			iAuthorityId = authority.getUniqueId();
+			iSessionId = user.getCurrentAcademicSessionId();
+			iRight = right;
+			iTargetClass = targetClass;
+			iTargetId = targetId;
+			iHashCode = hash(iUserId) ^ 31 * hash(iAuthority) ^ 17 * hash(iAuthorityId) ^ 13 * hash(iSessionId) ^
+					7 * iRight.hashCode() ^ 5 * iTargetClass.hashCode() ^ 3 * iTargetId.hashCode();
+		}
+		
+		private static int hash(Object o) { return (o == null ? 0 : o.hashCode()); }
+		
+		private static boolean equals(Object o1, Object o2) { return (o1 == null ? o2 == null : o1.equals(o2)); }
+		
+		@Override
+		public int hashCode() { return iHashCode; }
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return iHashCode == k.iHashCode && iRight == k.iRight && equals(iTargetId, k.iTargetId) && equals(iTargetClass, k.iTargetClass) &&
+					equals(iAuthorityId, k.iAuthorityId) && equals(iAuthority, k.iAuthority) && equals(iSessionId, k.iSessionId) && equals(iUserId, k.iUserId);
+		}
+		
+		@Override
+		public String toString() {
+			return iUserId + ":" + iAuthority + ":" + iRight + ":" + iTargetClass + "@" + iTargetId;
+		}
+	}
+}
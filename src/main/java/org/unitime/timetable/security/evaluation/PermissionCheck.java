@@ -20,6 +20,8 @@
 package org.unitime.timetable.security.evaluation;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Set;
 
 import org.springframework.security.access.AccessDeniedException;
 import org.unitime.timetable.security.Qualifiable;
@@ -46,5 +48,11 @@ public interface PermissionCheck {
     public boolean hasPermissionAnyAuthority(UserContext user, Serializable targetId, String targetType, Right right, Qualifiable... filter);
     
     public boolean hasPermissionAnyAuthority(UserContext user, Object targetObject, Right right, Qualifiable... filter);
+    
+    /**
+     * Batch variant of {@link #hasPermission(UserContext, Serializable, String, Right)}, the target objects are loaded in one query.
+     * @return ids of the targets for which the user has the permission
+     */
+    public Set<Long> filterPermitted(UserContext user, Collection<Long> targetIds, String targetType, Right right);
 
 }
\ No newline at end of file
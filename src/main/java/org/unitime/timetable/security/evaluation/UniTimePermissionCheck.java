@@ -20,9 +20,14 @@
 package org.unitime.timetable.security.evaluation;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -67,6 +72,35 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 	@Autowired
 	PermissionSession permissionSession;
 	
+	private static Map<String, Class<?>> sClasses = new ConcurrentHashMap<String, Class<?>>();
+	private Map<Right, CheckMethod> iCheckMethods = new ConcurrentHashMap<Right, CheckMethod>();
+	
+	private static Class<?> getTargetClass(String className) throws ClassNotFoundException {
+		Class<?> clazz = sClasses.get(className);
+		if (clazz == null) {
+			clazz = Class.forName(className);
+			sClasses.put(className, clazz);
+		}
+		return clazz;
+	}
+	
+	/**
+	 * Permission bean of the given right and its check method, null if there is no such bean
+	 */
+	private CheckMethod getCheckMethod(Right right) throws NoSuchMethodException {
+		CheckMethod check = iCheckMethods.get(right);
+		if (check == null) {
+			try {
+				Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
+				check = (perm == null ? CheckMethod.NONE : new CheckMethod(perm));
+			} catch (BeansException e) {
+				check = CheckMethod.NONE;
+			}
+			iCheckMethods.put(right, check);
+		}
+		return (check == CheckMethod.NONE ? null : check);
+	}
+	
 	@Override
     public void checkPermission(UserContext user, Serializable targetId, String targetType, Right right) throws AccessDeniedException {
 		if (user == null)
@@ -207,7 +241,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
-			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
+			Object domainObject = new _RootDAO().getSession().get(getTargetClass(className), targetId);
 			if (domainObject == null)
 				throw new AccessDeniedException(MSG.domainObjectNotExists(right.toString(), targetType));
 			checkPermission(user, domainObject, right);
@@ -260,15 +294,14 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 		}
 		
 		try {
-			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
-			if (perm != null && perm.type().isInstance(domainObject)) {
-				if ((Boolean)perm.getClass().getMethod("check", UserContext.class, perm.type()).invoke(perm, user, domainObject)) {
+			CheckMethod check = getCheckMethod(right);
+			if (check != null && check.isInstance(domainObject)) {
+				if (check.check(user, domainObject)) {
 					return;
 				} else {
 					throw new AccessDeniedException(MSG.permissionCheckFailed(right.toString(), domainObject.toString()));
 				}
 			}
-		} catch (BeansException e) {
 		} catch (AccessDeniedException e) {
 			throw e;
 		} catch (Exception e) {
@@ -443,7 +476,11 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
-			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
+			PermissionCache.Key key = PermissionCache.key(user, right, className, targetId);
+			Boolean cached = PermissionCache.get(key);
+			if (cached != null) return cached;
+			
+			Object domainObject = new _RootDAO().getSession().get(getTargetClass(className), targetId);
 			if (domainObject == null)
 				return false;
 
@@ -482,10 +519,21 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 			return false;
 		}
 		
+		PermissionCache.Key key = PermissionCache.key(user, right, domainObject);
+		Boolean cached = PermissionCache.get(key);
+		if (cached != null) return cached;
+		
+		boolean decision = checkDomainObject(user, domainObject, right);
+		PermissionCache.put(key, decision);
+		return decision;
+	}
+	
+	private boolean checkDomainObject(UserContext user, Object domainObject, Right right) {
 		try {
-			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
-			if (perm != null && perm.type().isInstance(domainObject))
-				return (Boolean)perm.getClass().getMethod("check", UserContext.class, perm.type()).invoke(perm, user, domainObject);
+			CheckMethod check = getCheckMethod(right);
+			if (check == null) return false;
+			if (check.isInstance(domainObject))
+				return check.check(user, domainObject);
 		} catch (Exception e) {
 			return false;
 		}
@@ -498,6 +546,73 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 		
 		return true;
 	}
+	
+	@Override
+	public Set<Long> filterPermitted(UserContext user, Collection<Long> targetIds, String targetType, Right right) {
+		Set<Long> ret = new HashSet<Long>();
+		if (targetIds == null || targetIds.isEmpty()) return ret;
+		if (user == null || user.getCurrentAuthority() == null) return ret;
+		if (right == null || !user.getCurrentAuthority().hasRight(right)) return ret;
+		
+		if (targetType == null && right.hasType())
+			targetType = right.type().getSimpleName();
+		
+		if (targetType == null) {
+			ret.addAll(targetIds);
+			return ret;
+		}
+		
+		try {
+			String className = targetType;
+			if (className.indexOf('.') < 0) className = "org.unitime.timetable.model." + className;
+			
+			List<Long> load = new ArrayList<Long>();
+			for (Long id: new HashSet<Long>(targetIds)) {
+				if (id == null) continue;
+				Boolean cached = PermissionCache.get(PermissionCache.key(user, right, className, id));
+				if (cached == null)
+					load.add(id);
+				else if (cached)
+					ret.add(id);
+			}
+			if (load.isEmpty()) return ret;
+			
+			org.hibernate.Session hibSession = new _RootDAO().getSession();
+			Class<?> clazz = getTargetClass(className);
+			String idProperty = hibSession.getSessionFactory().getClassMetadata(clazz).getIdentifierPropertyName();
+			for (int i = 0; i < load.size(); i += 1000) {
+				List<Long> ids = load.subList(i, Math.min(i + 1000, load.size()));
+				for (Object domainObject: hibSession.createQuery("from " + clazz.getName() + " where " + idProperty + " in :ids").setParameterList("ids", ids).list()) {
+					if (hasPermission(user, domainObject, right))
+						ret.add((Long)hibSession.getIdentifier(domainObject));
+				}
+			}
+		} catch (Exception e) {
+			sLog.warn("Failed to check " + right + " permission for " + targetIds.size() + " " + targetType + "(s): " + e.getMessage(), e);
+		}
+		return ret;
+	}
+	
+	private static class CheckMethod {
+		static final CheckMethod NONE = new CheckMethod();
+		private Permission<?> iPermission;
+		private Method iMethod;
+		
+		private CheckMethod() {}
+		
+		CheckMethod(Permission<?> permission) throws NoSuchMethodException {
+			iPermission = permission;
+			iMethod = permission.getClass().getMethod("check", UserContext.class, permission.type());
+		}
+		
+		boolean isInstance(Object domainObject) {
+			return iPermission.type().isInstance(domainObject);
+		}
+		
+		boolean check(UserContext user, Object domainObject) throws Exception {
+			return (Boolean)iMethod.invoke(iPermission, user, domainObject);
+		}
+	}
 
 	@Override
 	public boolean hasPermissionAnyAuthority(UserContext user, Serializable targetId, String targetType, Right right, Qualifiable... filter) {
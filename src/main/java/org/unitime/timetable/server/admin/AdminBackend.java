@@ -35,6 +35,7 @@ import org.unitime.timetable.gwt.shared.SimpleEditInterface.PageName;
 import org.unitime.timetable.gwt.shared.SimpleEditInterface.Record;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.security.SessionContext;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 
 /**
  * @author Tomas Muller
@@ -105,6 +106,7 @@ public class AdminBackend {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				PermissionCache.clear();
 
 				for (Iterator<Record> i = data.getRecords().iterator(); i.hasNext(); )
 					if (i.next().getUniqueId() == null) i.remove();
@@ -145,6 +147,7 @@ public class AdminBackend {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				PermissionCache.clear();
 				
 				return request.getRecord();
 			} catch (PageAccessException e) {
@@ -179,6 +182,7 @@ public class AdminBackend {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				PermissionCache.clear();
 				
 				return request.getRecord();
 			} catch (PageAccessException e) {
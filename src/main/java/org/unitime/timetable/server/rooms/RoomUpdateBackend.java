@@ -37,6 +37,7 @@ import org.hibernate.criterion.Restrictions;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.events.EventAction.EventContext;
+import org.unitime.timetable.events.RoomCatalog;
 import org.unitime.timetable.gwt.command.client.GwtRpcException;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplementation;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
@@ -270,8 +271,10 @@ public class RoomUpdateBackend implements GwtRpcImplementation<RoomUpdateRpcRequ
 				hibSession.saveOrUpdate(a);
 				i.remove();
 			}
+			Long sessionId = location.getSession().getUniqueId();
 			hibSession.delete(location);
 			tx.commit(); tx = null;
+			RoomCatalog.invalidate(sessionId);
 			return permId;
 		} catch (Throwable t) {
 			if (future)
@@ -716,6 +719,7 @@ public class RoomUpdateBackend implements GwtRpcImplementation<RoomUpdateRpcRequ
             hibSession.flush();
 			
 			tx.commit(); tx = null;
+			RoomCatalog.invalidate(location.getSession().getUniqueId());
 			return location;
 		} catch (Throwable t) {
 			if (future)
@@ -1121,6 +1125,7 @@ public class RoomUpdateBackend implements GwtRpcImplementation<RoomUpdateRpcRequ
             hibSession.flush();
 			
 			tx.commit(); tx = null;
+			RoomCatalog.invalidate(session.getUniqueId());
 			return location;
 		} catch (Throwable t) {
 			if (future)
@@ -81,6 +81,9 @@ public class ScriptExecution extends QueueItem {
 
 	@Override
 	public String type() { return "Script"; }
+	
+	@Override
+	public String exclusiveGroup() { return exclusiveGroup(sExclusiveGroupSessionData); }
 
 	@Override
 	public String name() { return iRequest.getScriptName(); }
@@ -21,17 +21,23 @@ package org.unitime.timetable.solver;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,6 +63,7 @@ import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.solver.remote.BackupFileFilter;
+import org.unitime.timetable.solver.remote.BinaryBackup;
 import org.unitime.timetable.util.Constants;
 
 /**
@@ -77,10 +84,14 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     private String iPassivationPuid = null;
     protected Thread iWorkThread = null;
     
+    private static Map<AbstractSolver<?, ?, ?>, Boolean> sSolvers = Collections.synchronizedMap(new WeakHashMap<AbstractSolver<?, ?, ?>, Boolean>());
+    private static ReentrantLock sActivationLock = new ReentrantLock();
+    
     public AbstractSolver(DataProperties properties, SolverDisposeListener disposeListener) {
         super(properties);
         iDisposeListener = disposeListener;
         sLog = LogFactory.getLog(getClass());
+        sSolvers.put(this, Boolean.TRUE);
     }
     
     @Override
@@ -175,6 +186,7 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
         if (currentSolution()!=null && currentSolution().getModel()!=null)
             Progress.removeInstance(currentSolution().getModel());
         setInitalSolution((org.cpsolver.ifs.solution.Solution)null);
+        if (unregister) sSolvers.remove(this);
         if (unregister && iDisposeListener!=null) iDisposeListener.onDispose();
     }
     
@@ -382,24 +394,18 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
         Lock lock = currentSolution().getLock().readLock();
         lock.lock();
         try {
-            File outXmlFile = new File(folder, getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+            File outBinFile = new File(folder, getType().getPrefix() + puid + BackupFileFilter.sBinaryExtension);
             try {
-                FileOutputStream fos = null;
-                try {
-                    fos = new FileOutputStream(outXmlFile);
-                    Document document = createCurrentSolutionBackup(false, false);
-                    saveProperties(document);
-                    (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
-                    fos.flush(); fos.close(); fos=null;
-                } finally {
-                    try {
-                        if (fos!=null) fos.close();
-                    } catch (IOException e) {}
-                }
+                Document document = createCurrentSolutionBackup(false, false);
+                saveProperties(document);
+                BinaryBackup.write(document, new FileOutputStream(outBinFile));
+                // remove XML backup of the same solver, if there is one
+                File outXmlFile = new File(folder, getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+                if (outXmlFile.exists()) outXmlFile.delete();
                 return true;
             } catch (Exception e) {
                 sLog.error(e.getMessage(),e);
-                if (outXmlFile.exists()) outXmlFile.delete();
+                if (outBinFile.exists()) outBinFile.delete();
             }
         } finally {
         	lock.unlock();
@@ -417,6 +423,7 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     @Override
     public boolean restore(File folder, String puid, boolean removeFiles) {
         sLog.debug("restore(folder="+folder+","+puid+")");
+        File inBinFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sBinaryExtension);
         File inXmlFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
         
         M model = null;
@@ -424,7 +431,8 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
             if (isRunning()) stopSolver();
             disposeNoInherit(false);
 
-            Document document = (new SAXReader()).read(inXmlFile);
+            // binary backup, fall back to an XML backup (created by an older version)
+            Document document = (inBinFile.exists() ? BinaryBackup.read(new FileInputStream(inBinFile)) : (new SAXReader()).read(inXmlFile));
             readProperties(document);
             
             model = createModel(getProperties());
@@ -436,7 +444,8 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
             Progress.getInstance(model).setStatus("Awaiting commands ...");
             
             if (removeFiles) {
-                inXmlFile.delete();
+                if (inBinFile.exists()) inBinFile.delete();
+                if (inXmlFile.exists()) inXmlFile.delete();
             }
             
             return true;
@@ -493,7 +502,64 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     }
     
     @Override
-    public synchronized boolean activateIfNeeded() {
+    public boolean activateIfNeeded() {
+        if (isPassivated()) makeRoomForActivation();
+        return activate();
+    }
+    
+    protected static long getAvailableMemory() {
+    	return Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+    }
+    
+    /**
+     * Before a passivated solver is activated, make sure that the solver server has enough memory left: when the available memory
+     * is below the solver memory limit, other idle solvers of this server are passivated (least recently used first).
+     * Only solvers that have not been used for at least {@link ApplicationProperty#SolverPasivationMinIdleTime} are passivated,
+     * if there are not enough of them the activation goes over the limit (instead of solvers in use passivating one another).
+     * Only one activation at a time does this, so that two activating solvers never wait for each other.
+     */
+    protected void makeRoomForActivation() {
+    	if (ApplicationProperty.SolverPasivationTime.intValue() <= 0 || !sActivationLock.tryLock()) return;
+    	try {
+    		long limit = 1024l * 1024l * ApplicationProperty.SolverMemoryLimit.intValue();
+    		if (getAvailableMemory() >= limit) return;
+    		System.gc();
+    		if (getAvailableMemory() >= limit) return;
+    		List<AbstractSolver<?, ?, ?>> solvers = null;
+    		synchronized (sSolvers) {
+    			solvers = new ArrayList<AbstractSolver<?, ?, ?>>(sSolvers.keySet());
+    		}
+    		solvers.remove(this);
+    		final Map<AbstractSolver<?, ?, ?>, Long> lastUsed = new HashMap<AbstractSolver<?, ?, ?>, Long>();
+    		for (AbstractSolver<?, ?, ?> solver: solvers)
+    			lastUsed.put(solver, solver.timeFromLastUsed());
+    		Collections.sort(solvers, new Comparator<AbstractSolver<?, ?, ?>>() {
+				@Override
+				public int compare(AbstractSolver<?, ?, ?> s1, AbstractSolver<?, ?, ?> s2) {
+					return lastUsed.get(s2).compareTo(lastUsed.get(s1));
+				}
+			});
+    		long minIdle = 1000l * ApplicationProperty.SolverPasivationMinIdleTime.intValue();
+    		for (AbstractSolver<?, ?, ?> solver: solvers) {
+    			if (lastUsed.get(solver) < minIdle) {
+    				sLog.info("Not enough memory to activate " + iPassivationPuid + ", but there are no other idle solvers to passivate.");
+    				break;
+    			}
+    			if (solver.passivateIdle())
+    				sLog.info("Solver " + solver.iPassivationPuid + " passivated to make room for " + iPassivationPuid + ".");
+    			if (getAvailableMemory() >= limit) break;
+    		}
+    	} finally {
+    		sActivationLock.unlock();
+    	}
+    }
+    
+    private synchronized boolean passivateIdle() {
+    	if (isPassivated() || iPassivationFolder == null || iPassivationPuid == null || isWorking()) return false;
+    	return passivate(iPassivationFolder, iPassivationPuid);
+    }
+    
+    protected synchronized boolean activate() {
         iLastTimeStamp = System.currentTimeMillis();
         if (!isPassivated()) return false;
         sLog.debug("<activate "+iPassivationPuid+">");
@@ -536,6 +602,10 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
 
     @Override
     public synchronized boolean passivateIfNeeded(File folder, String puid) {
+		if (!isPassivated()) {
+			iPassivationFolder = folder;
+			iPassivationPuid = puid;
+		}
 		long inactiveTimeToPassivate = 60000l * ApplicationProperty.SolverPasivationTime.intValue();
 		if (isPassivated() || inactiveTimeToPassivate <= 0 || timeFromLastUsed() < inactiveTimeToPassivate || isWorking()) return false;
         return passivate(folder, puid);
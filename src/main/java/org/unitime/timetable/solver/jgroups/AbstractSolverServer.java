@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.solver.jgroups;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -141,6 +142,13 @@ public abstract class AbstractSolverServer implements SolverServer {
 		return getMemoryLimit() <= getAvailableMemory();
 	}
 	
+	@Override
+	public SolverServerLoad getLoad() {
+		if (isActive() && getMemoryLimit() > getAvailableMemory()) System.gc();
+		return new SolverServerLoad(isActive(), getUsage(), getAvailableMemory(), getMemoryLimit(), getAvailableProcessors(),
+				ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage());
+	}
+	
 	@Override
 	public RoomAvailabilityInterface getRoomAvailability() {
 		return RoomAvailability.getInstance();
@@ -62,6 +62,7 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 		
 	public CourseSolverContainerRemote(JChannel channel, short scope, boolean saveFileInfos) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteMarshaller.install(iDispatcher, SolverProxy.class, RemoteSolver.class);
 		iSaveFileInfos = saveFileInfos;
 	}
 	
@@ -91,6 +91,7 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 		iInstructorSchedulingContainer = new DummyContainer<InstructorSchedulingProxy>(channel, SCOPE_INSTRUCTOR, InstructorSchedulingProxy.class);
 		iOnlineStudentSchedulingContainer = new ReplicatedDummyContainer<OnlineSectioningServer>(channel, SCOPE_ONLINE, OnlineSectioningServer.class);
 		iRoomAvailabilityDispatcher = new MuxRpcDispatcher(SCOPE_AVAILABILITY, channel, null, null, this);
+		RemoteMarshaller.install(iRoomAvailabilityDispatcher, RoomAvailabilityInterface.class);
 		
 		iCourseSolverContainerWrapper = new SolverContainerWrapper<SolverProxy>(iDispatcher, iCourseSolverContainer, false);
 		iExamSolverContainerWrapper = new SolverContainerWrapper<ExamSolverProxy>(iDispatcher, iExamSolverContainer, false);
@@ -220,6 +221,7 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 		public DummyContainer(JChannel channel, short scope, Class<T> clazz) {
 			iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
 			iClazz = clazz;
+			RemoteMarshaller.install(iDispatcher, iClazz, RemoteSolver.class);
 		}
 		
 		@Override
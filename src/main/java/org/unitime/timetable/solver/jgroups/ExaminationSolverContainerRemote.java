@@ -46,6 +46,7 @@ public class ExaminationSolverContainerRemote extends ExaminationSolverContainer
 		
 	public ExaminationSolverContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteMarshaller.install(iDispatcher, ExamSolverProxy.class, RemoteSolver.class);
 	}
 	
 	@Override
@@ -46,6 +46,7 @@ public class InstructorSchedulingContainerRemote extends InstructorSchedulingCon
 		
 	public InstructorSchedulingContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteMarshaller.install(iDispatcher, InstructorSchedulingProxy.class, RemoteSolver.class);
 	}
 	
 	@Override
@@ -68,6 +68,7 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 
 	public OnlineStudentSchedulingContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteMarshaller.install(iDispatcher, OnlineSectioningServer.class, RemoteSolver.class);
 		iLockService = new LockService(channel);
 	}
 	
@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.solver.jgroups;
 
+import java.text.DecimalFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -36,6 +37,7 @@ import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.ServerCallback;
+import org.unitime.timetable.onlinesectioning.server.ServerSnapshot;
 import org.unitime.timetable.onlinesectioning.updates.CheckAllOfferingsAction;
 import org.unitime.timetable.onlinesectioning.updates.ClassAssignmentChanged;
 import org.unitime.timetable.onlinesectioning.updates.ExpireReservationsAction;
@@ -56,6 +58,7 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 	private OnlineStudentSchedulingContainer iContainer = null;
 	private AcademicSessionInfo iSession = null; 
 	private Date iLastTimeStamp = null;
+	private Thread iSnapshotThread = null;
 	
 	public OnlineStudentSchedulingUpdater(OnlineStudentSchedulingContainer container, AcademicSessionInfo session, Date lastTimeStamp) {
 		super();
@@ -86,6 +89,7 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 							if (!iRun) break;
 							checkForExpiredReservations(server);
 							persistExpectedSpaces(server);
+							saveSnapshot(server);
 						} else if (!ApplicationProperty.OnlineSchedulingServerReplicated.isTrue()) {
 							// not master, but replication is disabled -> unload
 							try {
@@ -156,6 +160,36 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 		}
 	}
 	
+	/**
+	 * Save server snapshot (when enabled and due), the snapshot is written in a separate thread so that the updates are not delayed
+	 */
+	public void saveSnapshot(final OnlineSectioningServer server) {
+		if (!ApplicationProperty.OnlineSchedulingServerSnapshot.isTrue() || !server.isReady()) return;
+		if (iSnapshotThread != null && iSnapshotThread.isAlive()) return; // previous snapshot is still being written
+		final long ts = System.currentTimeMillis(); // current time stamp
+		Long lastSnapshot = server.getProperty("Updater.LastSnapshot", null);
+		if (lastSnapshot != null && ts - lastSnapshot < 1000l * ApplicationProperty.OnlineSchedulingServerSnapshotInterval.intValue()) return;
+		server.setProperty("Updater.LastSnapshot", ts);
+		final Date queueTimeStamp = server.getProperty("Updater.LastTimeStamp", iLastTimeStamp);
+		iSnapshotThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
+					int records = ServerSnapshot.save(server, queueTimeStamp);
+					iLog.info("Snapshot of " + records + " records saved in " + new DecimalFormat("0.0").format((System.currentTimeMillis() - ts) / 1000.0) + " seconds.");
+				} catch (Exception e) {
+					iLog.error("Failed to save server snapshot: " + e.getMessage(), e);
+				} finally {
+					ApplicationProperties.setSessionId(null);
+				}
+			}
+		};
+		iSnapshotThread.setDaemon(true);
+		iSnapshotThread.setName("Snapshot[" + getAcademicSession().toCompactString() + "]");
+		iSnapshotThread.start();
+	}
+	
 	protected OnlineSectioningLog.Entity user() {
 		return OnlineSectioningLog.Entity.newBuilder()
 			.setExternalId(StudentClassEnrollment.SystemChange.SYSTEM.name())
@@ -0,0 +1,443 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.jgroups;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.Buffer;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Compact marshaller for the solver proxy calls. A proxy call is an invocation of the container's invoke method
+ * (method name, user or session id, parameter types, arguments). Instead of the method name and the parameter types
+ * a method id is sent. The ids are given by the {@link MethodTable} that is computed from the proxy interfaces the same
+ * way on all the nodes; the table checksum is sent along with the id, so that a call between nodes with different
+ * tables fails instead of calling a wrong method.<br>
+ * Arguments and results are streamed: primitive wrappers, strings, classes, arrays, and basic collections are written
+ * directly, {@link Externalizable} objects (e.g., the online sectioning model classes) are written using their
+ * {@link Externalizable#writeExternal(java.io.ObjectOutput)} with the class name written only once per message,
+ * everything else falls back to the Java serialization. Arrays, collections, maps, and externalizable objects that appear more than once
+ * in a message are written only once (the other occurrences are written as back-references), so that shared instances are not duplicated
+ * and cyclic structures can be written.
+ *
+ * @author Tomas Muller
+ */
+public class RemoteMarshaller implements RpcDispatcher.Marshaller {
+	private static Log sLog = LogFactory.getLog(RemoteMarshaller.class);
+	
+	private static final byte MSG_OBJECT = 0, MSG_INVOKE = 1, MSG_INVOKE_NO_USER = 2;
+	private static final byte T_NULL = 0, T_TRUE = 1, T_FALSE = 2, T_INT = 3, T_LONG = 4, T_DOUBLE = 5, T_STRING = 6,
+			T_CLASS = 7, T_ARRAY = 8, T_CLASS_ARRAY = 9, T_LIST = 10, T_SET = 11, T_MAP = 12, T_EXTERNALIZABLE = 13,
+			T_REFERENCE = 14, T_OBJECT = 15;
+	private static final String INVOKE = "invoke";
+	private static final Class[] INVOKE_TYPES = new Class[] { String.class, String.class, Class[].class, Object[].class };
+	private static final Class[] INVOKE_NO_USER_TYPES = new Class[] { String.class, Class[].class, Object[].class };
+	private static final Map<String, Class> sPrimitives = new HashMap<String, Class>();
+	static {
+		for (Class clazz: new Class[] { boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class })
+			sPrimitives.put(clazz.getName(), clazz);
+	}
+	
+	private MethodTable iTable;
+	
+	public RemoteMarshaller(Class... interfaces) {
+		iTable = new MethodTable(interfaces);
+	}
+	
+	public MethodTable getMethodTable() { return iTable; }
+	
+	/**
+	 * Use the compact marshaller on the given dispatcher, unless disabled by the unitime.solver.jgroups.compact property.
+	 * The same interfaces must be used on all the nodes for the dispatchers of the same scope.
+	 */
+	public static void install(RpcDispatcher dispatcher, Class... interfaces) {
+		if (!ApplicationProperty.SolverClusterCompactMarshaller.isTrue()) return;
+		RemoteMarshaller marshaller = new RemoteMarshaller(interfaces);
+		dispatcher.setMarshaller(marshaller);
+		sLog.debug("Using compact marshaller with " + marshaller.getMethodTable());
+	}
+	
+	@Override
+	public Buffer objectToBuffer(Object obj) throws Exception {
+		Output buffer = new Output();
+		ObjectOutputStream out = new ObjectOutputStream(buffer);
+		Writer writer = new Writer(out);
+		if (obj instanceof MethodCall && INVOKE.equals(((MethodCall)obj).getName()) && isInvoke(((MethodCall)obj).getArgs())) {
+			Object[] args = ((MethodCall)obj).getArgs();
+			boolean user = (args.length == 4);
+			out.writeByte(user ? MSG_INVOKE : MSG_INVOKE_NO_USER);
+			out.writeInt(iTable.getChecksum());
+			String name = (String)args[0];
+			Class[] types = (Class[])args[user ? 2 : 1];
+			int id = iTable.getId(name, types);
+			out.writeShort(id);
+			if (id < 0) {
+				writer.writeString(name);
+				writer.writeClasses(types);
+			}
+			if (user) writer.writeString((String)args[1]);
+			writer.writeArray((Object[])args[user ? 3 : 2]);
+		} else {
+			out.writeByte(MSG_OBJECT);
+			writer.write(obj);
+		}
+		out.close();
+		return buffer.getBuffer();
+	}
+	
+	@Override
+	public Object objectFromBuffer(byte[] buf, int offset, int length) throws Exception {
+		ObjectInputStream in = new Input(new ByteArrayInputStream(buf, offset, length));
+		try {
+			Reader reader = new Reader(in);
+			byte type = in.readByte();
+			if (type == MSG_OBJECT) return reader.read();
+			boolean user = (type == MSG_INVOKE);
+			int checksum = in.readInt();
+			if (checksum != iTable.getChecksum())
+				throw new IOException("Remote method table does not match (checksum " + Integer.toHexString(checksum) + " received, " + Integer.toHexString(iTable.getChecksum()) + " expected).");
+			short id = in.readShort();
+			String name; Class[] types;
+			if (id >= 0) {
+				name = iTable.getName(id);
+				types = iTable.getTypes(id);
+			} else {
+				name = reader.readString();
+				types = reader.readClasses();
+			}
+			if (user) {
+				String owner = reader.readString();
+				return new MethodCall(INVOKE, new Object[] { name, owner, types, reader.readArray() }, INVOKE_TYPES);
+			} else {
+				return new MethodCall(INVOKE, new Object[] { name, types, reader.readArray() }, INVOKE_NO_USER_TYPES);
+			}
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static boolean isInvoke(Object[] args) {
+		if (args == null) return false;
+		if (args.length == 4)
+			return (args[0] instanceof String) && (args[1] == null || args[1] instanceof String) && (args[2] instanceof Class[]) && (args[3] == null || args[3].getClass() == Object[].class);
+		if (args.length == 3)
+			return (args[0] instanceof String) && (args[1] instanceof Class[]) && (args[2] == null || args[2].getClass() == Object[].class);
+		return false;
+	}
+	
+	private static ClassLoader getClassLoader() {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		return (loader == null ? RemoteMarshaller.class.getClassLoader() : loader);
+	}
+	
+	private static Class classForName(String name) throws ClassNotFoundException {
+		Class primitive = sPrimitives.get(name);
+		if (primitive != null) return primitive;
+		try {
+			return Class.forName(name, false, getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return Class.forName(name, false, RemoteMarshaller.class.getClassLoader());
+		}
+	}
+	
+	/**
+	 * Method ids of the given interfaces. Methods are ordered by their signatures, so the table does not depend
+	 * on the order in which the methods are returned by the reflection.
+	 */
+	public static class MethodTable {
+		private List<Method> iMethods = new ArrayList<Method>();
+		private Map<String, Integer> iIds = new HashMap<String, Integer>();
+		private int iChecksum;
+		
+		public MethodTable(Class... interfaces) {
+			TreeMap<String, Method> methods = new TreeMap<String, Method>();
+			for (Class clazz: interfaces)
+				for (Method method: clazz.getMethods()) {
+					String signature = signature(method.getName(), method.getParameterTypes());
+					if (!methods.containsKey(signature)) methods.put(signature, method);
+				}
+			StringBuffer all = new StringBuffer();
+			for (Map.Entry<String, Method> e: methods.entrySet()) {
+				if (iMethods.size() == Short.MAX_VALUE) break;
+				iIds.put(e.getKey(), iMethods.size());
+				iMethods.add(e.getValue());
+				all.append(e.getKey()).append(';');
+			}
+			iChecksum = all.toString().hashCode();
+		}
+		
+		protected static String signature(String name, Class[] types) {
+			StringBuffer s = new StringBuffer(name).append('(');
+			if (types != null)
+				for (int i = 0; i < types.length; i++)
+					s.append(i == 0 ? "" : ",").append(types[i].getName());
+			return s.append(')').toString();
+		}
+		
+		/** Method id, -1 if not in the table */
+		public int getId(String name, Class[] types) {
+			Integer id = iIds.get(signature(name, types));
+			return (id == null ? -1 : id.intValue());
+		}
+		
+		public String getName(int id) throws IOException {
+			if (id >= iMethods.size()) throw new IOException("Unknown remote method " + id + ".");
+			return iMethods.get(id).getName();
+		}
+		
+		public Class[] getTypes(int id) throws IOException {
+			if (id >= iMethods.size()) throw new IOException("Unknown remote method " + id + ".");
+			return iMethods.get(id).getParameterTypes();
+		}
+		
+		public int size() { return iMethods.size(); }
+		
+		public int getChecksum() { return iChecksum; }
+		
+		@Override
+		public String toString() {
+			return "method table of " + size() + " methods (checksum " + Integer.toHexString(iChecksum) + ")";
+		}
+	}
+	
+	private static class Output extends ByteArrayOutputStream {
+		Output() { super(512); }
+		
+		Buffer getBuffer() { return new Buffer(buf, 0, count); }
+	}
+	
+	private static class Input extends ObjectInputStream {
+		Input(InputStream in) throws IOException { super(in); }
+		
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			try {
+				return classForName(desc.getName());
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(desc);
+			}
+		}
+	}
+	
+	private static class Writer {
+		private ObjectOutputStream iOut;
+		private Map<String, Integer> iClassNames = new HashMap<String, Integer>();
+		private Map<Object, Integer> iReferences = new IdentityHashMap<Object, Integer>();
+		
+		Writer(ObjectOutputStream out) { iOut = out; }
+		
+		void writeString(String s) throws IOException {
+			if (s == null) {
+				iOut.writeBoolean(false);
+			} else {
+				iOut.writeBoolean(true);
+				iOut.writeUTF(s);
+			}
+		}
+		
+		void writeClassName(String name) throws IOException {
+			Integer index = iClassNames.get(name);
+			if (index != null) {
+				iOut.writeShort(index);
+			} else {
+				iOut.writeShort(-1);
+				iOut.writeUTF(name);
+				if (iClassNames.size() < Short.MAX_VALUE)
+					iClassNames.put(name, iClassNames.size());
+			}
+		}
+		
+		void writeClasses(Class[] classes) throws IOException {
+			iOut.writeInt(classes.length);
+			for (Class clazz: classes)
+				writeClassName(clazz.getName());
+		}
+		
+		void writeArray(Object[] array) throws IOException {
+			if (array == null) {
+				iOut.writeInt(-1);
+			} else {
+				iOut.writeInt(array.length);
+				for (Object o: array) write(o);
+			}
+		}
+		
+		void write(Object o) throws IOException {
+			if (o == null) {
+				iOut.writeByte(T_NULL);
+			} else if (o instanceof Boolean) {
+				iOut.writeByte((Boolean)o ? T_TRUE : T_FALSE);
+			} else if (o.getClass() == Integer.class) {
+				iOut.writeByte(T_INT); iOut.writeInt((Integer)o);
+			} else if (o.getClass() == Long.class) {
+				iOut.writeByte(T_LONG); iOut.writeLong((Long)o);
+			} else if (o.getClass() == Double.class) {
+				iOut.writeByte(T_DOUBLE); iOut.writeDouble((Double)o);
+			} else if (o instanceof String && ((String)o).length() <= 16384) {
+				iOut.writeByte(T_STRING); iOut.writeUTF((String)o);
+			} else if (o instanceof Class) {
+				iOut.writeByte(T_CLASS); writeClassName(((Class)o).getName());
+			} else if (o.getClass() == Class[].class) {
+				iOut.writeByte(T_CLASS_ARRAY); writeClasses((Class[])o);
+			} else if (o.getClass() == Object[].class) {
+				if (writeReference(o)) return;
+				iOut.writeByte(T_ARRAY); writeArray((Object[])o);
+			} else if (o.getClass() == ArrayList.class || o.getClass() == HashSet.class) {
+				if (writeReference(o)) return;
+				iOut.writeByte(o.getClass() == ArrayList.class ? T_LIST : T_SET);
+				iOut.writeInt(((Collection)o).size());
+				for (Object e: (Collection)o) write(e);
+			} else if (o.getClass() == HashMap.class) {
+				if (writeReference(o)) return;
+				iOut.writeByte(T_MAP);
+				iOut.writeInt(((Map)o).size());
+				for (Object e: ((Map)o).entrySet()) {
+					write(((Map.Entry)e).getKey()); write(((Map.Entry)e).getValue());
+				}
+			} else if (o instanceof Externalizable) {
+				if (writeReference(o)) return;
+				iOut.writeByte(T_EXTERNALIZABLE);
+				writeClassName(o.getClass().getName());
+				((Externalizable)o).writeExternal(iOut);
+			} else {
+				iOut.writeByte(T_OBJECT); iOut.writeObject(o);
+			}
+		}
+		
+		/**
+		 * Write a back-reference when the object has been written already, otherwise remember it (before its content is written,
+		 * so that the content can refer back to it) and return false.
+		 */
+		boolean writeReference(Object o) throws IOException {
+			Integer ref = iReferences.get(o);
+			if (ref != null) {
+				iOut.writeByte(T_REFERENCE); iOut.writeInt(ref);
+				return true;
+			}
+			iReferences.put(o, iReferences.size());
+			return false;
+		}
+	}
+	
+	private static class Reader {
+		private ObjectInputStream iIn;
+		private List<Class> iClasses = new ArrayList<Class>();
+		private List<Object> iReferences = new ArrayList<Object>();
+		
+		Reader(ObjectInputStream in) { iIn = in; }
+		
+		String readString() throws IOException {
+			return iIn.readBoolean() ? iIn.readUTF() : null;
+		}
+		
+		Class readClass() throws IOException, ClassNotFoundException {
+			short index = iIn.readShort();
+			if (index >= 0) return iClasses.get(index);
+			Class clazz = classForName(iIn.readUTF());
+			if (iClasses.size() < Short.MAX_VALUE) iClasses.add(clazz);
+			return clazz;
+		}
+		
+		Class[] readClasses() throws IOException, ClassNotFoundException {
+			Class[] classes = new Class[iIn.readInt()];
+			for (int i = 0; i < classes.length; i++)
+				classes[i] = readClass();
+			return classes;
+		}
+		
+		Object[] readArray() throws Exception {
+			return readArray(false);
+		}
+		
+		Object[] readArray(boolean reference) throws Exception {
+			int length = iIn.readInt();
+			if (length < 0) return null;
+			Object[] array = new Object[length];
+			if (reference) iReferences.add(array);
+			for (int i = 0; i < length; i++)
+				array[i] = read();
+			return array;
+		}
+		
+		Object read() throws Exception {
+			byte type = iIn.readByte();
+			switch (type) {
+			case T_NULL: return null;
+			case T_TRUE: return Boolean.TRUE;
+			case T_FALSE: return Boolean.FALSE;
+			case T_INT: return iIn.readInt();
+			case T_LONG: return iIn.readLong();
+			case T_DOUBLE: return iIn.readDouble();
+			case T_STRING: return iIn.readUTF();
+			case T_CLASS: return readClass();
+			case T_ARRAY: return readArray(true);
+			case T_CLASS_ARRAY: return readClasses();
+			case T_LIST:
+			case T_SET:
+				int size = iIn.readInt();
+				Collection<Object> collection = (type == T_LIST ? new ArrayList<Object>(size) : new HashSet<Object>(2 * size));
+				iReferences.add(collection);
+				for (int i = 0; i < size; i++) collection.add(read());
+				return collection;
+			case T_MAP:
+				int entries = iIn.readInt();
+				Map<Object, Object> map = new HashMap<Object, Object>(2 * entries);
+				iReferences.add(map);
+				for (int i = 0; i < entries; i++) {
+					Object key = read();
+					map.put(key, read());
+				}
+				return map;
+			case T_EXTERNALIZABLE:
+				Class clazz = readClass();
+				Externalizable ext = (Externalizable)clazz.newInstance();
+				iReferences.add(ext);
+				ext.readExternal(iIn);
+				return ext;
+			case T_REFERENCE:
+				return iReferences.get(iIn.readInt());
+			case T_OBJECT:
+				return iIn.readObject();
+			default:
+				throw new IOException("Unknown type " + type + ".");
+			}
+		}
+	}
+}
@@ -41,6 +41,7 @@ public class RemoteRoomAvailability {
 		
 	public RemoteRoomAvailability(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteMarshaller.install(iDispatcher, RoomAvailabilityInterface.class);
 	}
 	
 	public RpcDispatcher getDispatcher() {
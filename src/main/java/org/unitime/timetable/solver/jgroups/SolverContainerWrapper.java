@@ -131,16 +131,27 @@ public class SolverContainerWrapper<T> implements SolverContainer<T> {
 
 	@Override
 	public T createSolver(String user, DataProperties config) {
+		return createSolver(user, config, 0l);
+	}
+	
+	/**
+	 * Create a new solver instance on the solver server with the best placement score (see {@link SolverServerLoad#score(long)}),
+	 * taking into account the server usage, its system load, and the memory that would remain available once the problem is loaded.
+	 * @param estimatedMemory estimated memory needed by the new solver instance in bytes (0 if not known)
+	 */
+	public T createSolver(String user, DataProperties config, long estimatedMemory) {
 		try {
 			Address bestAddress = null;
-			int bestUsage = 0;
-			RspList<Boolean> ret = iDispatcher.callRemoteMethods(null, "isAvailable", new Object[] {}, new Class[] {}, SolverServerImplementation.sAllResponses);
-			for (Rsp<Boolean> rsp : ret) {
-				if (Boolean.TRUE.equals(rsp.getValue())) {
-					Integer usage = iDispatcher.callRemoteMethod(rsp.getSender(), "getUsage", new Object[] {}, new Class[] {}, SolverServerImplementation.sFirstResponse);
-					if (bestAddress == null || bestUsage > usage) {
+			double bestScore = 0.0;
+			RspList<SolverServerLoad> ret = iDispatcher.callRemoteMethods(null, "getLoad", new Object[] {}, new Class[] {}, SolverServerImplementation.sAllResponses);
+			for (Rsp<SolverServerLoad> rsp : ret) {
+				SolverServerLoad load = rsp.getValue();
+				if (load != null && load.isAvailable()) {
+					double score = load.score(estimatedMemory);
+					sLog.debug("Server " + rsp.getSender() + " (" + load + ") has score " + score);
+					if (bestAddress == null || bestScore > score) {
 						bestAddress = rsp.getSender();
-		                bestUsage = usage;
+						bestScore = score;
 		            }
 				}
 			}
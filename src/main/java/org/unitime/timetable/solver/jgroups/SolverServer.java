@@ -69,6 +69,8 @@ public interface SolverServer {
 	
 	public boolean isAvailable();
 	
+	public SolverServerLoad getLoad();
+	
 	public void shutdown();
 	
 	public SolverContainer<SolverProxy> getCourseSolverContainer();
@@ -0,0 +1,88 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.jgroups;
+
+import java.io.Serializable;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Snapshot of the load of a solver server, used to decide where a new solver instance is to be created
+ * (see {@link SolverContainerWrapper#createSolver(String, org.cpsolver.ifs.util.DataProperties, long)}).
+ *
+ * @author Tomas Muller
+ */
+public class SolverServerLoad implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final double GB = 1024.0 * 1024.0 * 1024.0;
+	
+	private boolean iActive;
+	private int iUsage;
+	private long iAvailableMemory, iMemoryLimit;
+	private int iAvailableProcessors;
+	private double iSystemLoad;
+	
+	public SolverServerLoad(boolean active, int usage, long availableMemory, long memoryLimit, int availableProcessors, double systemLoad) {
+		iActive = active;
+		iUsage = usage;
+		iAvailableMemory = availableMemory;
+		iMemoryLimit = memoryLimit;
+		iAvailableProcessors = availableProcessors;
+		iSystemLoad = systemLoad;
+	}
+	
+	public boolean isActive() { return iActive; }
+	public int getUsage() { return iUsage; }
+	public long getAvailableMemory() { return iAvailableMemory; }
+	public long getMemoryLimit() { return iMemoryLimit; }
+	public int getAvailableProcessors() { return iAvailableProcessors; }
+	/** System load average for the last minute, negative if not available */
+	public double getSystemLoad() { return iSystemLoad; }
+	
+	/** Same as {@link SolverServer#isAvailable()} */
+	public boolean isAvailable() {
+		return isActive() && getMemoryLimit() <= getAvailableMemory();
+	}
+	
+	/** True if the server has enough memory left (above the memory limit) for a problem of the given size */
+	public boolean canFit(long estimatedMemory) {
+		return getAvailableMemory() - estimatedMemory >= getMemoryLimit();
+	}
+	
+	/**
+	 * Placement score of the server, the lower the better. The score is the server usage (see {@link SolverServer#getUsage()}),
+	 * increased by the system load per processor and decreased by the memory (in GB) that would remain available once the problem
+	 * of the given size is loaded. Servers on which the problem does not fit are heavily penalized.
+	 * @param estimatedMemory estimated memory needed by the new solver instance in bytes (0 if not known)
+	 */
+	public double score(long estimatedMemory) {
+		double score = getUsage();
+		if (getSystemLoad() >= 0.0 && getAvailableProcessors() > 0)
+			score += ApplicationProperty.SolverPlacementLoadWeight.doubleValue() * getSystemLoad() / getAvailableProcessors();
+		score -= ApplicationProperty.SolverPlacementMemoryWeight.doubleValue() * (getAvailableMemory() - estimatedMemory) / GB;
+		if (!canFit(estimatedMemory)) score += 1000.0;
+		return score;
+	}
+	
+	@Override
+	public String toString() {
+		return "usage: " + getUsage() + ", memory: " + Math.round(getAvailableMemory() / 1048576.0) + "/" + Math.round(getMemoryLimit() / 1048576.0) + " MB, load: " + getSystemLoad() + "/" + getAvailableProcessors();
+	}
+}
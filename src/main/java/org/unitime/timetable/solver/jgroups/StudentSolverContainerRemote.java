@@ -46,6 +46,7 @@ public class StudentSolverContainerRemote extends StudentSolverContainer impleme
 		
 	public StudentSolverContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteMarshaller.install(iDispatcher, StudentSolverProxy.class, RemoteSolver.class);
 	}
 	
 	@Override
@@ -0,0 +1,220 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+
+/**
+ * Compact binary (compressed) format of the solver backups, used for the solver passivation and for the backups that are
+ * restored on the solver server start-up. XML is only kept for the export (see {@link org.unitime.timetable.solver.CommonSolverInterface#exportXml()}).<br>
+ * The document is written as a sequence of elements, where element and attribute names are only written once and then
+ * referenced by their index, and there is no pretty-printing. When read, the document is created directly, without
+ * the need to parse any XML.
+ *
+ * @author Tomas Muller
+ */
+public class BinaryBackup {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x55544242; // UTBB
+	private static final int VERSION = 1;
+
+	private static final byte END = 0;
+	private static final byte ELEMENT = 1;
+	private static final byte TEXT = 2;
+	private static final byte CDATA = 3;
+
+	/** Write the given document into the given stream, the stream is closed afterwards */
+	public static void write(Document document, OutputStream stream) throws IOException {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(stream, deflater, 65536), 65536));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeByte(ELEMENT);
+			new Writer(out).write(document.getRootElement());
+			out.flush();
+		} finally {
+			out.close();
+			deflater.end();
+		}
+	}
+
+	/** Read document from the given stream, the stream is closed afterwards */
+	public static Document read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(stream), 65536));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a binary solver backup.");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported solver backup version " + version + ".");
+			Reader reader = new Reader(in);
+			if (in.readByte() != ELEMENT)
+				throw new IOException("Solver backup has no root element.");
+			Document document = DocumentHelper.createDocument();
+			reader.read(document.addElement(reader.name()));
+			return document;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed solver backup.");
+	}
+
+	private static class Writer {
+		private DataOutputStream iOut;
+		private Map<String, Integer> iNames = new HashMap<String, Integer>();
+
+		private Writer(DataOutputStream out) { iOut = out; }
+
+		private void string(String text) throws IOException {
+			byte[] bytes = text.getBytes(UTF8);
+			writeInt(iOut, bytes.length);
+			iOut.write(bytes);
+		}
+
+		/** Names are written the first time they are used, then only their index + 1 is written */
+		private void name(String name) throws IOException {
+			Integer index = iNames.get(name);
+			if (index != null) {
+				writeInt(iOut, index + 1);
+			} else {
+				iNames.put(name, iNames.size());
+				writeInt(iOut, 0);
+				string(name);
+			}
+		}
+
+		private void write(Element element) throws IOException {
+			name(element.getQualifiedName());
+			writeInt(iOut, element.attributeCount());
+			for (Iterator<Attribute> i = element.attributeIterator(); i.hasNext(); ) {
+				Attribute attribute = i.next();
+				name(attribute.getQualifiedName());
+				string(attribute.getValue());
+			}
+			for (Iterator<Node> i = element.nodeIterator(); i.hasNext(); ) {
+				Node node = i.next();
+				switch (node.getNodeType()) {
+				case Node.ELEMENT_NODE:
+					iOut.writeByte(ELEMENT);
+					write((Element)node);
+					break;
+				case Node.TEXT_NODE:
+					iOut.writeByte(TEXT);
+					string(node.getText());
+					break;
+				case Node.CDATA_SECTION_NODE:
+					iOut.writeByte(CDATA);
+					string(node.getText());
+					break;
+				}
+			}
+			iOut.writeByte(END);
+		}
+	}
+
+	private static class Reader {
+		private DataInputStream iIn;
+		private List<String> iNames = new ArrayList<String>();
+
+		private Reader(DataInputStream in) { iIn = in; }
+
+		private String string() throws IOException {
+			byte[] bytes = new byte[readInt(iIn)];
+			iIn.readFully(bytes);
+			return new String(bytes, UTF8);
+		}
+
+		private String name() throws IOException {
+			int index = readInt(iIn);
+			if (index > 0) {
+				if (index > iNames.size()) throw new IOException("Malformed solver backup.");
+				return iNames.get(index - 1);
+			}
+			String name = string();
+			iNames.add(name);
+			return name;
+		}
+
+		private void read(Element element) throws IOException {
+			int attributes = readInt(iIn);
+			for (int i = 0; i < attributes; i++) {
+				String name = name();
+				element.addAttribute(name, string());
+			}
+			while (true) {
+				byte type = iIn.readByte();
+				switch (type) {
+				case END:
+					return;
+				case ELEMENT:
+					read(element.addElement(name()));
+					break;
+				case TEXT:
+					element.addText(string());
+					break;
+				case CDATA:
+					element.addCDATA(string());
+					break;
+				default:
+					throw new IOException("Malformed solver backup.");
+				}
+			}
+		}
+	}
+}
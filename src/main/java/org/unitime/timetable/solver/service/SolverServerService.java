@@ -55,6 +55,10 @@ import org.unitime.timetable.solver.studentsct.StudentSolverProxy;
 @DependsOn({"startupService"})
 public class SolverServerService implements InitializingBean, DisposableBean {
 	private static Log sLog = LogFactory.getLog(SolverServerService.class);
+	private static final long sMemoryPerClass = 200l * 1024l;
+	private static final long sMemoryPerExam = 50l * 1024l;
+	private static final long sMemoryPerStudent = 50l * 1024l;
+	private static final long sMemoryPerTeachingRequest = 20l * 1024l;
 	private JChannel iChannel = null;
 	private SolverServer iServer = null;
 	
@@ -158,7 +162,7 @@ public class SolverServerService implements InitializingBean, DisposableBean {
 	    		}
 	    	}
 	    }
-	    SolverProxy solver = iCourseSolverContainer.createSolver(user, properties);
+	    SolverProxy solver = createSolver(iCourseSolverContainer, user, properties, estimateCourseMemory(properties));
 	    return solver;
 	}
 	
@@ -179,7 +183,7 @@ public class SolverServerService implements InitializingBean, DisposableBean {
 	    		}
 	    	}
 	    }
-	    ExamSolverProxy solver = iExamSolverContainer.createSolver(user, properties);
+	    ExamSolverProxy solver = createSolver(iExamSolverContainer, user, properties, estimateExamMemory(properties));
 	    return solver;
 	}
 	
@@ -200,7 +204,7 @@ public class SolverServerService implements InitializingBean, DisposableBean {
 	    		}
 	    	}
 	    }
-	    StudentSolverProxy solver = iStudentSolverContainer.createSolver(user, properties);
+	    StudentSolverProxy solver = createSolver(iStudentSolverContainer, user, properties, estimateStudentMemory(properties));
 	    return solver;
 	}
 	
@@ -221,10 +225,85 @@ public class SolverServerService implements InitializingBean, DisposableBean {
 	    		}
 	    	}
 	    }
-	    InstructorSchedulingProxy solver = iInstructorSchedulingContainer.createSolver(user, properties);
+	    InstructorSchedulingProxy solver = createSolver(iInstructorSchedulingContainer, user, properties, estimateInstructorMemory(properties));
 	    return solver;
 	}
 	
+	private <T> T createSolver(SolverContainer<T> container, String user, DataProperties properties, long estimatedMemory) {
+		if (container instanceof SolverContainerWrapper)
+			return ((SolverContainerWrapper<T>)container).createSolver(user, properties, estimatedMemory);
+		return container.createSolver(user, properties);
+	}
+	
+	/**
+	 * Rough estimate of the memory needed by a course timetabling solver, based on the number of classes of the solver groups.
+	 */
+	protected long estimateCourseMemory(DataProperties properties) {
+		Long[] solverGroupIds = properties.getPropertyLongArry("General.SolverGroupId", null);
+		if (solverGroupIds == null || solverGroupIds.length == 0) return 0l;
+		try {
+			Number classes = (Number)SessionDAO.getInstance().getSession().createQuery(
+					"select count(c) from Class_ c where c.managingDept.solverGroup.uniqueId in :solverGroupIds")
+					.setParameterList("solverGroupIds", solverGroupIds).setCacheable(true).uniqueResult();
+			return (classes == null ? 0l : classes.longValue() * sMemoryPerClass);
+		} catch (Exception e) {
+			sLog.warn("Failed to estimate solver size: " + e.getMessage(), e);
+			return 0l;
+		}
+	}
+	
+	/**
+	 * Rough estimate of the memory needed by an examination solver, based on the number of exams of the given type.
+	 */
+	protected long estimateExamMemory(DataProperties properties) {
+		Long sessionId = properties.getPropertyLong("General.SessionId", null);
+		Long examTypeId = properties.getPropertyLong("Exam.Type", null);
+		if (sessionId == null || examTypeId == null) return 0l;
+		try {
+			Number exams = (Number)SessionDAO.getInstance().getSession().createQuery(
+					"select count(x) from Exam x where x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId")
+					.setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).setCacheable(true).uniqueResult();
+			return (exams == null ? 0l : exams.longValue() * sMemoryPerExam);
+		} catch (Exception e) {
+			sLog.warn("Failed to estimate solver size: " + e.getMessage(), e);
+			return 0l;
+		}
+	}
+	
+	/**
+	 * Rough estimate of the memory needed by a student scheduling solver, based on the number of students of the academic session.
+	 */
+	protected long estimateStudentMemory(DataProperties properties) {
+		Long sessionId = properties.getPropertyLong("General.SessionId", null);
+		if (sessionId == null) return 0l;
+		try {
+			Number students = (Number)SessionDAO.getInstance().getSession().createQuery(
+					"select count(s) from Student s where s.session.uniqueId = :sessionId")
+					.setLong("sessionId", sessionId).setCacheable(true).uniqueResult();
+			return (students == null ? 0l : students.longValue() * sMemoryPerStudent);
+		} catch (Exception e) {
+			sLog.warn("Failed to estimate solver size: " + e.getMessage(), e);
+			return 0l;
+		}
+	}
+	
+	/**
+	 * Rough estimate of the memory needed by an instructor scheduling solver, based on the number of teaching requests of the solver groups.
+	 */
+	protected long estimateInstructorMemory(DataProperties properties) {
+		Long[] solverGroupIds = properties.getPropertyLongArry("General.SolverGroupId", null);
+		if (solverGroupIds == null || solverGroupIds.length == 0) return 0l;
+		try {
+			Number requests = (Number)SessionDAO.getInstance().getSession().createQuery(
+					"select count(distinct r) from Class_ c inner join c.teachingRequests r where c.controllingDept.solverGroup.uniqueId in :solverGroupIds and c.cancelled = false")
+					.setParameterList("solverGroupIds", solverGroupIds).setCacheable(true).uniqueResult();
+			return (requests == null ? 0l : requests.longValue() * sMemoryPerTeachingRequest);
+		} catch (Exception e) {
+			sLog.warn("Failed to estimate solver size: " + e.getMessage(), e);
+			return 0l;
+		}
+	}
+	
 	public SolverContainer<OnlineSectioningServer> getOnlineStudentSchedulingContainer() {
 		return iOnlineStudentSchedulingContainer;
 	}
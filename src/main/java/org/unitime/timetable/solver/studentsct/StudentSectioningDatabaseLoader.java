@@ -32,12 +32,20 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -167,6 +175,8 @@ public class StudentSectioningDatabaseLoader extends StudentSectioningLoader {
 	private boolean iLinkedClassesMustBeUsed = false;
 	private boolean iAllowDefaultCourseAlternatives = false;
 	private boolean iIncludeUnavailabilities = true;
+	private int iStudentChunkSize = 0;
+	private int iStudentLoadThreads = 4;
     
     private Progress iProgress = null;
     
@@ -198,6 +208,8 @@ public class StudentSectioningDatabaseLoader extends StudentSectioningLoader {
         iLinkedClassesMustBeUsed = model.getProperties().getPropertyBoolean("LinkedClasses.mustBeUsed", false);
         iAllowDefaultCourseAlternatives = ApplicationProperty.StudentSchedulingAlternativeCourse.isTrue();
         iIncludeUnavailabilities = model.getProperties().getPropertyBoolean("Load.IncludeUnavailabilities", iIncludeUnavailabilities);
+        iStudentChunkSize = model.getProperties().getPropertyInt("Load.StudentChunkSize", iStudentChunkSize);
+        iStudentLoadThreads = Math.max(1, model.getProperties().getPropertyInt("Load.StudentThreads", iStudentLoadThreads));
         
         try {
         	String studentCourseDemandsClassName = getModel().getProperties().getProperty("StudentSct.ProjectedCourseDemadsClass", LastLikeStudentCourseDemands.class.getName());
@@ -555,6 +567,173 @@ public class StudentSectioningDatabaseLoader extends StudentSectioningLoader {
         return offering;
     }
     
+    protected void addStudent(org.unitime.timetable.model.Student s, Hashtable<Long,Course> courseTable, Hashtable<Long,Section> classTable, Map<String, Student> ext2student) {
+        if (s.getCourseDemands().isEmpty() && s.getClassEnrollments().isEmpty() && s.getWaitlists().isEmpty()) return;
+        Student student = loadStudent(s, courseTable, classTable);
+        if (student == null) return;
+        updateCurriculumCounts(student);
+        if (iProjections) {
+        	// Decrease the limits accordingly
+        	for (Request request: student.getRequests()) {
+        		if (request.getInitialAssignment() != null && request.getInitialAssignment().isCourseRequest()) {
+        			Enrollment enrollment = request.getInitialAssignment();
+        			if (enrollment.getConfig().getLimit() > 0)
+        				enrollment.getConfig().setLimit(enrollment.getConfig().getLimit() - 1);
+        			for (Section section: enrollment.getSections())
+        				if (section.getLimit() > 0)
+        					section.setLimit(section.getLimit() - 1);
+        			if (enrollment.getCourse() != null && enrollment.getCourse().getLimit() > 0)
+        				enrollment.getCourse().setLimit(enrollment.getCourse().getLimit() - 1);
+        			if (enrollment.getReservation() != null) {
+        				if (enrollment.getReservation() instanceof GroupReservation && enrollment.getReservation().getReservationLimit() >= 1.0) {
+        					((GroupReservation)enrollment.getReservation()).getStudentIds().remove(student.getId());
+        					((GroupReservation)enrollment.getReservation()).setReservationLimit(((GroupReservation)enrollment.getReservation()).getReservationLimit() - 1.0);
+        				} else if (enrollment.getReservation() instanceof IndividualReservation) {
+        					((IndividualReservation)enrollment.getReservation()).getStudentIds().remove(student.getId());
+        				} else if (enrollment.getReservation() instanceof CurriculumReservation && enrollment.getReservation().getReservationLimit() >= 1.0) {
+        					((CurriculumReservation)enrollment.getReservation()).setReservationLimit(enrollment.getReservation().getReservationLimit() - 1.0);
+        				}
+        			}
+        		}
+        		if (request instanceof CourseRequest) {
+        			for (Course course: ((CourseRequest)request).getCourses()) {
+        				course.getRequests().remove(request);
+        			}
+        		}
+        	}
+        } else {
+        	if (iLoadRequestGroups) loadRequestGroups(student, s);
+        	if (student.getExternalId() != null && !student.getExternalId().isEmpty())
+        		ext2student.put(student.getExternalId(), student);
+            getModel().addStudent(student);
+            // assignStudent(student);
+        }
+    }
+    
+    /**
+     * Load students in chunks of Load.StudentChunkSize students (ordered by their ids), each chunk is loaded in its own Hibernate session
+     * by one of Load.StudentThreads worker threads. Each association is fetched by its own query (see {@link StudentChunk#load(Long, Long, Long, boolean)}),
+     * avoiding the large cartesian product of the single fetch-join query. The chunks are added to the model one by one in the order of the student ids,
+     * using the same thread that is loading the rest of the model.
+     */
+    protected void loadStudents(Session session, org.hibernate.Session hibSession, Hashtable<Long,Course> courseTable, Hashtable<Long,Section> classTable, Map<String, Student> ext2student) {
+    	final Long sessionId = session.getUniqueId();
+    	List<Long> studentIds = (List<Long>)hibSession.createQuery(
+    			"select s.uniqueId from Student s where s.session.uniqueId = :sessionId order by s.uniqueId"
+    			).setLong("sessionId", sessionId).list();
+    	iProgress.setPhase("Loading student requests...", studentIds.size());
+    	ExecutorService executor = Executors.newFixedThreadPool(iStudentLoadThreads, new ThreadFactory() {
+			private AtomicInteger iCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "StudentLoader-" + iCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+    	// only a limited number of chunks is loaded ahead to keep the memory footprint low
+    	LinkedList<Future<StudentChunk>> chunks = new LinkedList<Future<StudentChunk>>();
+    	try {
+    		int next = 0;
+    		while (next < studentIds.size() || !chunks.isEmpty()) {
+    			while (next < studentIds.size() && chunks.size() < 2 * iStudentLoadThreads) {
+    				final Long firstId = studentIds.get(next);
+    				next = Math.min(next + iStudentChunkSize, studentIds.size());
+    				final Long lastId = studentIds.get(next - 1);
+    				chunks.add(executor.submit(new Callable<StudentChunk>() {
+						@Override
+						public StudentChunk call() throws Exception {
+							return StudentChunk.load(sessionId, firstId, lastId, iLoadStudentInfo);
+						}
+					}));
+    			}
+    			StudentChunk chunk = chunks.removeFirst().get();
+    			try {
+    				for (org.unitime.timetable.model.Student s: chunk.getStudents()) {
+    					iProgress.incProgress();
+    					addStudent(s, courseTable, classTable, ext2student);
+    				}
+    			} finally {
+    				chunk.close();
+    			}
+    		}
+    	} catch (ExecutionException e) {
+    		throw new RuntimeException("Failed to load students: " + e.getCause().getMessage(), e.getCause());
+    	} catch (InterruptedException e) {
+    		throw new RuntimeException("Failed to load students: " + e.getMessage(), e);
+    	} finally {
+    		executor.shutdown();
+    		// make sure that all the opened Hibernate sessions are closed
+    		for (Future<StudentChunk> f: chunks) {
+    			try {
+    				f.get().close();
+    			} catch (Exception e) {}
+    		}
+    	}
+    }
+    
+    /**
+     * Students with a range of ids, loaded in its own Hibernate session. The session is kept open until the chunk is closed,
+     * so that the remaining lazy associations can be still initialized.
+     */
+    protected static class StudentChunk {
+    	private org.hibernate.Session iHibSession;
+    	private List<org.unitime.timetable.model.Student> iStudents;
+    	
+    	private StudentChunk(org.hibernate.Session hibSession, List<org.unitime.timetable.model.Student> students) {
+    		iHibSession = hibSession; iStudents = students;
+    	}
+    	
+    	public List<org.unitime.timetable.model.Student> getStudents() { return iStudents; }
+    	
+    	public void close() {
+    		if (iHibSession != null && iHibSession.isOpen()) iHibSession.close();
+    	}
+    	
+    	private static void fetch(org.hibernate.Session hibSession, String query, Long sessionId, Long firstId, Long lastId) {
+    		hibSession.createQuery(query).setLong("sessionId", sessionId).setLong("firstId", firstId).setLong("lastId", lastId).list();
+    	}
+    	
+    	public static StudentChunk load(Long sessionId, Long firstId, Long lastId, boolean loadStudentInfo) {
+    		org.hibernate.Session hibSession = StudentDAO.getInstance().createNewSession();
+    		try {
+    			hibSession.setCacheMode(CacheMode.IGNORE);
+    			hibSession.setFlushMode(FlushMode.MANUAL);
+    			hibSession.setDefaultReadOnly(true);
+    			List<org.unitime.timetable.model.Student> students = (List<org.unitime.timetable.model.Student>)hibSession.createQuery(
+    					"select s from Student s left join fetch s.sectioningStatus " +
+    					"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId order by s.uniqueId"
+    					).setLong("sessionId", sessionId).setLong("firstId", firstId).setLong("lastId", lastId).list();
+    			// the following queries only initialize the collections of the students (and their course demands and requests) loaded above
+    			fetch(hibSession, "select distinct s from Student s left join fetch s.courseDemands cd left join fetch cd.freeTime " +
+    					"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			fetch(hibSession, "select distinct cd from CourseDemand cd left join fetch cd.courseRequests " +
+    					"where cd.student.session.uniqueId = :sessionId and cd.student.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			fetch(hibSession, "select distinct cr from CourseRequest cr left join fetch cr.classWaitLists " +
+    					"where cr.courseDemand.student.session.uniqueId = :sessionId and cr.courseDemand.student.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			fetch(hibSession, "select distinct cr from CourseRequest cr left join fetch cr.courseRequestOptions " +
+    					"where cr.courseDemand.student.session.uniqueId = :sessionId and cr.courseDemand.student.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			fetch(hibSession, "select distinct s from Student s left join fetch s.classEnrollments " +
+    					"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			fetch(hibSession, "select distinct s from Student s left join fetch s.waitlists " +
+    					"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			if (loadStudentInfo) {
+    				fetch(hibSession, "select distinct s from Student s left join fetch s.areaClasfMajors a " +
+    						"left join fetch a.academicArea left join fetch a.academicClassification left join fetch a.major " +
+    						"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    				fetch(hibSession, "select distinct s from Student s left join fetch s.groups " +
+    						"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    				fetch(hibSession, "select distinct s from Student s left join fetch s.accomodations " +
+    						"where s.session.uniqueId = :sessionId and s.uniqueId between :firstId and :lastId", sessionId, firstId, lastId);
+    			}
+    			return new StudentChunk(hibSession, students);
+    		} catch (RuntimeException e) {
+    			hibSession.close();
+    			throw e;
+    		}
+    	}
+    }
+    
     public void skipStudent(org.unitime.timetable.model.Student s, Hashtable<Long,Course> courseTable, Hashtable<Long,Section> classTable) {
     	iProgress.debug("Skipping student "+s.getUniqueId()+" (id="+s.getExternalUniqueId()+", name="+NameFormat.defaultFormat().format(s)+")");
     	
@@ -1495,61 +1674,26 @@ public class StudentSectioningDatabaseLoader extends StudentSectioningLoader {
         
         Map<String, Student> ext2student = new HashMap<String, Student>();
         if (iIncludeCourseDemands || iProjections) {
-            List students = hibSession.createQuery(
-                    "select distinct s from Student s " +
-                    "left join fetch s.courseDemands as cd "+
-                    "left join fetch cd.courseRequests as cr "+
-                    "left join fetch cr.classWaitLists as cw " +
-                    "left join fetch s.classEnrollments as e " +
-                    "left join fetch s.waitlists as w " +
-                    (iLoadStudentInfo ? "left join fetch s.areaClasfMajors as a left join fetch s.groups as g " : "") +
-                    "where s.session.uniqueId=:sessionId").
-                    setLong("sessionId",session.getUniqueId().longValue()).
-                    setFetchSize(1000).list();
-            iProgress.setPhase("Loading student requests...", students.size());
-            for (Iterator i=students.iterator();i.hasNext();) {
-                org.unitime.timetable.model.Student s = (org.unitime.timetable.model.Student)i.next(); iProgress.incProgress();
-                if (s.getCourseDemands().isEmpty() && s.getClassEnrollments().isEmpty() && s.getWaitlists().isEmpty()) continue;
-                Student student = loadStudent(s, courseTable, classTable);
-                if (student == null) continue;
-                updateCurriculumCounts(student);
-                if (iProjections) {
-                	// Decrease the limits accordingly
-                	for (Request request: student.getRequests()) {
-                		if (request.getInitialAssignment() != null && request.getInitialAssignment().isCourseRequest()) {
-                			Enrollment enrollment = request.getInitialAssignment();
-                			if (enrollment.getConfig().getLimit() > 0)
-                				enrollment.getConfig().setLimit(enrollment.getConfig().getLimit() - 1);
-                			for (Section section: enrollment.getSections())
-                				if (section.getLimit() > 0)
-                					section.setLimit(section.getLimit() - 1);
-                			if (enrollment.getCourse() != null && enrollment.getCourse().getLimit() > 0)
-                				enrollment.getCourse().setLimit(enrollment.getCourse().getLimit() - 1);
-                			if (enrollment.getReservation() != null) {
-                				if (enrollment.getReservation() instanceof GroupReservation && enrollment.getReservation().getReservationLimit() >= 1.0) {
-                					((GroupReservation)enrollment.getReservation()).getStudentIds().remove(student.getId());
-                					((GroupReservation)enrollment.getReservation()).setReservationLimit(((GroupReservation)enrollment.getReservation()).getReservationLimit() - 1.0);
-                				} else if (enrollment.getReservation() instanceof IndividualReservation) {
-                					((IndividualReservation)enrollment.getReservation()).getStudentIds().remove(student.getId());
-                				} else if (enrollment.getReservation() instanceof CurriculumReservation && enrollment.getReservation().getReservationLimit() >= 1.0) {
-                					((CurriculumReservation)enrollment.getReservation()).setReservationLimit(enrollment.getReservation().getReservationLimit() - 1.0);
-                				}
-                			}
-                		}
-                		if (request instanceof CourseRequest) {
-                			for (Course course: ((CourseRequest)request).getCourses()) {
-                				course.getRequests().remove(request);
-                			}
-                		}
-                	}
-                } else {
-                	if (iLoadRequestGroups) loadRequestGroups(student, s);
-                	if (student.getExternalId() != null && !student.getExternalId().isEmpty())
-                		ext2student.put(student.getExternalId(), student);
-                    getModel().addStudent(student);
-                    // assignStudent(student);
-                }
-            }
+        	if (iStudentChunkSize > 0) {
+        		loadStudents(session, hibSession, courseTable, classTable, ext2student);
+        	} else {
+	            List students = hibSession.createQuery(
+	                    "select distinct s from Student s " +
+	                    "left join fetch s.courseDemands as cd "+
+	                    "left join fetch cd.courseRequests as cr "+
+	                    "left join fetch cr.classWaitLists as cw " +
+	                    "left join fetch s.classEnrollments as e " +
+	                    "left join fetch s.waitlists as w " +
+	                    (iLoadStudentInfo ? "left join fetch s.areaClasfMajors as a left join fetch s.groups as g " : "") +
+	                    "where s.session.uniqueId=:sessionId").
+	                    setLong("sessionId",session.getUniqueId().longValue()).
+	                    setFetchSize(1000).list();
+	            iProgress.setPhase("Loading student requests...", students.size());
+	            for (Iterator i=students.iterator();i.hasNext();) {
+	                org.unitime.timetable.model.Student s = (org.unitime.timetable.model.Student)i.next(); iProgress.incProgress();
+	                addStudent(s, courseTable, classTable, ext2student);
+	            }
+        	}
         }
         
         List<DistributionPref> distPrefs = hibSession.createQuery(
@@ -0,0 +1,81 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.text.DecimalFormat;
+
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Application property lookup benchmark comparing the resolved property snapshot
+ * (see {@link ApplicationProperties#getSnapshot()}) with resolving each property on every call.
+ * Use system property nrLookups to change the number of lookups.
+ *
+ * @author Tomas Muller
+ */
+public class ApplicationPropertyBenchmark {
+	private static DecimalFormat sDF = new DecimalFormat("0.000");
+	private static ApplicationProperty[] sProperties = new ApplicationProperty[] {
+		ApplicationProperty.OnlineSchedulingLoggingEnabled,
+		ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds,
+		ApplicationProperty.CourseOfferingNumberMustBeUnique,
+		ApplicationProperty.MaxSubjectsToSearchAutomatically,
+		ApplicationProperty.Locale,
+		ApplicationProperty.SolverMemoryLimit,
+	};
+	
+	private int iNrLookups = Integer.getInteger("nrLookups", 1000000);
+	
+	private void run(boolean snapshot) {
+		long t0 = System.nanoTime();
+		int count = 0;
+		for (int i = 0; i < iNrLookups; i++) {
+			ApplicationProperty property = sProperties[i % sProperties.length];
+			String value = (snapshot ? property.value() : property.value(null, null));
+			if (value != null) count++;
+		}
+		double time = (System.nanoTime() - t0) / 1000.0;
+		System.out.println((snapshot ? "Snapshot" : "Direct") + " lookups: " + sDF.format(time / iNrLookups) + " us per lookup (" + count + " values)");
+	}
+	
+	private void rebuild() {
+		long t0 = System.nanoTime();
+		int count = 100;
+		for (int i = 0; i < count; i++) {
+			ApplicationProperties.changed();
+			ApplicationProperties.getSnapshot();
+		}
+		System.out.println("Snapshot rebuild: " + sDF.format((System.nanoTime() - t0) / 1000000.0 / count) + " ms");
+	}
+
+	public static void main(String[] args) {
+		try {
+			ApplicationPropertyBenchmark benchmark = new ApplicationPropertyBenchmark();
+			for (int i = 0; i < 2; i++) {
+				benchmark.run(false);
+				benchmark.run(true);
+			}
+			benchmark.rebuild();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
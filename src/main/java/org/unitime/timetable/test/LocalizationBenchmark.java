@@ -0,0 +1,95 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.lang.reflect.Proxy;
+import java.text.DecimalFormat;
+
+import org.unitime.localization.impl.Localization;
+import org.unitime.localization.messages.CourseMessages;
+
+/**
+ * Localization benchmark comparing the message bundles with and without the per-locale message cache
+ * (see {@link Localization.Bundle}). Each page roughly corresponds to the messages used by the
+ * {@link org.unitime.timetable.webutil.WebInstructionalOfferingTableBuilder} when listing the offerings of a subject area.
+ * Use system properties nrPages, nrOfferings, and locale to change the defaults.
+ *
+ * @author Tomas Muller
+ */
+public class LocalizationBenchmark {
+	private static DecimalFormat sDF = new DecimalFormat("0.000");
+	
+	private int iNrPages = Integer.getInteger("nrPages", 1000);
+	private int iNrOfferings = Integer.getInteger("nrOfferings", 200);
+	private CourseMessages iMessages;
+	private boolean iCache;
+	
+	public LocalizationBenchmark(boolean cache) {
+		iCache = cache;
+		iMessages = (CourseMessages)Proxy.newProxyInstance(Localization.class.getClassLoader(),
+				new Class[] {CourseMessages.class, Localization.StrutsActionsRetriever.class}, new Localization.Bundle(CourseMessages.class, cache));
+	}
+	
+	private int page() {
+		int length = 0;
+		String[] header = new String[] {
+				iMessages.columnExternalId(), iMessages.columnDemand(), iMessages.columnProjectedDemand(), iMessages.columnLimit(),
+				iMessages.columnSnapshotLimit(), iMessages.columnRoomRatio(), iMessages.columnManager(), iMessages.columnDatePattern(),
+				iMessages.columnMinPerWk(), iMessages.columnTimePattern(), iMessages.columnPreferences(), iMessages.columnInstructor(),
+				iMessages.columnTimetable(), iMessages.columnOfferingCredit(), iMessages.columnSubpartCredit(), iMessages.columnSchedulePrintNote(),
+				iMessages.columnNote(), iMessages.columnConsent(), iMessages.columnTitle(), iMessages.columnExam()
+		};
+		for (String h: header) length += h.length();
+		for (int i = 0; i < iNrOfferings; i++) {
+			length += iMessages.labelConfiguration("Config " + i).length();
+			length += iMessages.noConsentRequired().length();
+			length += iMessages.altHasNoteToMgr().length();
+			for (int j = 0; j < 5; j++) {
+				length += iMessages.columnAssignedTime().length();
+				length += iMessages.columnAssignedRoom().length();
+				length += iMessages.columnAssignedRoomCapacity().length();
+				length += iMessages.prefTitleRoom("Preferred", "Lec " + j).length();
+			}
+		}
+		return length;
+	}
+	
+	public void run() {
+		for (int i = 0; i < 10; i++) page(); // warm-up
+		long t0 = System.nanoTime();
+		long length = 0;
+		for (int i = 0; i < iNrPages; i++)
+			length += page();
+		double time = (System.nanoTime() - t0) / 1000000.0;
+		System.out.println((iCache ? "Cached" : "Uncached") + " messages: " + sDF.format(time / iNrPages) + " ms per page (" + length + " characters)");
+	}
+
+	public static void main(String[] args) {
+		try {
+			Localization.setLocale(System.getProperty("locale", "en"));
+			new LocalizationBenchmark(false).run();
+			new LocalizationBenchmark(true).run();
+			new LocalizationBenchmark(false).run();
+			new LocalizationBenchmark(true).run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
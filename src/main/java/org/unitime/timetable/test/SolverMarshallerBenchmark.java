@@ -0,0 +1,111 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.util.Buffer;
+import org.jgroups.util.Util;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.match.StudentMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XStudentId;
+import org.unitime.timetable.solver.jgroups.RemoteMarshaller;
+import org.unitime.timetable.solver.jgroups.RemoteSolver;
+
+/**
+ * Compares the default JGroups marshalling of the solver proxy calls with the {@link RemoteMarshaller}.
+ * For a few typical online student scheduling calls, the request (invoke method call) and the response are marshalled
+ * and unmarshalled back, the bytes on the wire and the average marshalling time per call (request and response,
+ * both directions) are printed. Use system properties iterations (number of calls) and size (number of courses
+ * and students returned) to change the defaults.
+ *
+ * @author Tomas Muller
+ */
+public class SolverMarshallerBenchmark {
+	private static DecimalFormat sDF = new DecimalFormat("0.000");
+	private static final Class[] INVOKE_TYPES = new Class[] { String.class, String.class, Class[].class, Object[].class };
+	
+	private int iIterations = Integer.getInteger("iterations", 10000);
+	private int iSize = Integer.getInteger("size", 100);
+	private RemoteMarshaller iMarshaller = new RemoteMarshaller(OnlineSectioningServer.class, RemoteSolver.class);
+	
+	private static MethodCall invoke(Method method, Object... args) {
+		return new MethodCall("invoke", new Object[] { method.getName(), "1234567", method.getParameterTypes(), args }, INVOKE_TYPES);
+	}
+	
+	private void run(String name, MethodCall request, Object response) throws Exception {
+		long defaultBytes = Util.objectToByteBuffer(request).length + Util.objectToByteBuffer(response).length;
+		long compactBytes = iMarshaller.objectToBuffer(request).getLength() + iMarshaller.objectToBuffer(response).getLength();
+		
+		long t0 = System.nanoTime();
+		for (int i = 0; i < iIterations; i++) {
+			Util.objectFromByteBuffer(Util.objectToByteBuffer(request));
+			Util.objectFromByteBuffer(Util.objectToByteBuffer(response));
+		}
+		long t1 = System.nanoTime();
+		for (int i = 0; i < iIterations; i++) {
+			Buffer req = iMarshaller.objectToBuffer(request);
+			iMarshaller.objectFromBuffer(req.getBuf(), req.getOffset(), req.getLength());
+			Buffer rsp = iMarshaller.objectToBuffer(response);
+			iMarshaller.objectFromBuffer(rsp.getBuf(), rsp.getOffset(), rsp.getLength());
+		}
+		long t2 = System.nanoTime();
+		
+		System.out.println(name + ":");
+		System.out.println("  default: " + defaultBytes + " bytes, " + sDF.format((t1 - t0) / 1000000.0 / iIterations) + " ms per call");
+		System.out.println("  compact: " + compactBytes + " bytes, " + sDF.format((t2 - t1) / 1000000.0 / iIterations) + " ms per call");
+	}
+	
+	public void run() throws Exception {
+		System.out.println("Using " + iMarshaller.getMethodTable());
+		
+		run("getCourse(Long, String)",
+				invoke(OnlineSectioningServer.class.getMethod("getCourse", Long.class, String.class), 1234l, "MATH 101"),
+				new XCourseId(1l, 1234l, "MATH 101"));
+		
+		List<XCourseId> courses = new ArrayList<XCourseId>();
+		for (int i = 0; i < iSize; i++)
+			courses.add(new XCourseId(1000l + i, 2000l + i, "MATH " + (100 + i)));
+		run("findCourses(String, Integer, CourseMatcher)",
+				invoke(OnlineSectioningServer.class.getMethod("findCourses", String.class, Integer.class, CourseMatcher.class), "MATH", iSize, null),
+				courses);
+		
+		List<XStudentId> students = new ArrayList<XStudentId>();
+		for (int i = 0; i < iSize; i++)
+			students.add(new XStudentId(3000l + i, String.valueOf(100000 + i), "Student " + i));
+		run("findStudents(StudentMatcher)",
+				invoke(OnlineSectioningServer.class.getMethod("findStudents", StudentMatcher.class), new Object[] { null }),
+				students);
+	}
+	
+	public static void main(String[] args) {
+		try {
+			new SolverMarshallerBenchmark().run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
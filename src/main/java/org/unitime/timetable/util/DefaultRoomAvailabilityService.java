@@ -20,14 +20,21 @@
 package org.unitime.timetable.util;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.hibernate.Query;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -42,10 +49,16 @@ import org.unitime.timetable.model.dao.LocationDAO;
 import org.unitime.timetable.model.dao._RootDAO;
 
 /**
+ * Default room availability service, the availability is computed from the events stored in the database.<br>
+ * An activated time frame keeps an in-memory index of meeting blocks per room (permanent id) and per instructor (negative instructor id),
+ * see {@link CacheElement}. The index is updated incrementally on each activation (only new or changed meetings are loaded)
+ * and it can be read without any locking.
+ *
  * @author Tomas Muller
  */
 public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface {
-    private Vector<CacheElement> iCache = new Vector<CacheElement>();
+    private List<CacheElement> iCache = new CopyOnWriteArrayList<CacheElement>();
+    private Map<Long, Long> iLocationPermanentIds = new ConcurrentHashMap<Long, Long>();
     private boolean iInstructorAvailabilityEnabled = false;
     
     public String getTimeStamp(Date startTime, Date endTime, String excludeType) {
@@ -55,69 +68,76 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
     }
     
     public CacheElement get(TimeFrame time, String excludeType) {
-        synchronized (iCache) {
-            for (CacheElement cache : iCache) if (cache.cover(time) && cache.exclude(excludeType)) return cache;
-        }
+        for (CacheElement cache : iCache) if (cache.cover(time) && cache.exclude(excludeType)) return cache;
         return null;
     }
+    
     public Collection<TimeBlock> getRoomAvailability(Long locationId, Date startTime, Date endTime, String excludeType) {
-    	Location location = LocationDAO.getInstance().get(locationId);
-        if (location == null || location.getPermanentId() == null) return null;
-        EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(location.getSession().getUniqueId()) : null);
         TimeFrame time = new TimeFrame(startTime, endTime);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache!=null) return cache.get(location.getPermanentId(), excludeType);
-            Calendar start = Calendar.getInstance(Locale.US); start.setTime(startTime);
-            int startMin = 60*start.get(Calendar.HOUR_OF_DAY) + start.get(Calendar.MINUTE);
-            start.add(Calendar.MINUTE, -startMin);
-            Calendar end = Calendar.getInstance(Locale.US); end.setTime(endTime);
-            int endMin = 60*end.get(Calendar.HOUR_OF_DAY) + start.get(Calendar.MINUTE);
-            end.add(Calendar.MINUTE, -endMin);
-            int startSlot = (startMin - Constants.FIRST_SLOT_TIME_MIN)/Constants.SLOT_LENGTH_MIN;
-            int endSlot = (endMin - Constants.FIRST_SLOT_TIME_MIN)/Constants.SLOT_LENGTH_MIN;
-            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
-            String exclude = null;
-            if (excludeType!=null) {
-                if (sFinalExamType.equals(excludeType))
-                    exclude = "FinalExamEvent";
-                else if (sMidtermExamType.equals(excludeType))
-                    exclude = "MidtermExamEvent";
-                else if (sClassType.equals(excludeType))
-                    exclude = "ClassEvent";
-            }
-            Query q = new _RootDAO().getSession().createQuery(
-                    "select m from Meeting m where m.locationPermanentId=:locPermId and "+
-                    "m.approvalStatus = 1 and "+
-                    "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                    "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                    (exclude!=null?" and m.event.class!="+exclude:""))
-                    .setLong("locPermId", location.getPermanentId())
-                    .setDate("startDate", start.getTime())
-                    .setDate("endDate", end.getTime())
-                    .setInteger("startSlot", startSlot)
-                    .setInteger("endSlot", endSlot)
-                    .setCacheable(true);
-            for (Iterator i=q.list().iterator();i.hasNext();) {
-                Meeting m = (Meeting)i.next();
-                MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	ret.add(block);
-            }
-            return ret;
+        Long permanentId = iLocationPermanentIds.get(locationId);
+        if (permanentId == null) {
+            Location location = LocationDAO.getInstance().get(locationId);
+            if (location == null || location.getPermanentId() == null) return null;
+            permanentId = location.getPermanentId();
+            iLocationPermanentIds.put(locationId, permanentId);
         }
+        CacheElement cache = get(time, excludeType);
+        if (cache!=null) return cache.get(permanentId, excludeType, time);
+        Location location = LocationDAO.getInstance().get(locationId);
+        if (location == null) return null;
+        EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(location.getSession().getUniqueId()) : null);
+        TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+        String exclude = getExcludeEventClass(excludeType);
+        Query q = new _RootDAO().getSession().createQuery(
+                "select m from Meeting m where m.locationPermanentId=:locPermId and "+
+                "m.approvalStatus = 1 and "+
+                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                (exclude!=null?" and m.event.class!="+exclude:""))
+                .setLong("locPermId", permanentId)
+                .setDate("startDate", time.getStartDate())
+                .setDate("endDate", time.getEndDate())
+                .setInteger("startSlot", time.getStartSlot())
+                .setInteger("endSlot", time.getEndSlot())
+                .setCacheable(true);
+        for (Iterator i=q.list().iterator();i.hasNext();) {
+            Meeting m = (Meeting)i.next();
+            MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+            if (block.getStartTime() != null)
+            	ret.add(block);
+        }
+        return ret;
     }
+    
+    protected static String getExcludeEventClass(String excludeType) {
+        if (excludeType!=null) {
+            if (sFinalExamType.equals(excludeType))
+                return "FinalExamEvent";
+            else if (sMidtermExamType.equals(excludeType))
+                return "MidtermExamEvent";
+            else if (sClassType.equals(excludeType))
+                return "ClassEvent";
+        }
+        return null;
+    }
+    
     public void activate(Session session, Date startTime, Date endTime, String excludeType, boolean waitForSync) {
         iInstructorAvailabilityEnabled = ApplicationProperty.RoomAvailabilityIncludeInstructors.isTrue();
         TimeFrame time = new TimeFrame(startTime, endTime);
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(session.getUniqueId()) : null);
+        for (Object[] o: (List<Object[]>)new _RootDAO().getSession().createQuery(
+                "select l.uniqueId, l.permanentId from Location l where l.session.uniqueId = :sessionId and l.permanentId is not null")
+                .setLong("sessionId", session.getUniqueId()).setCacheable(true).list())
+            iLocationPermanentIds.put((Long)o[0], (Long)o[1]);
         synchronized(iCache) {
             CacheElement cache = get(time, excludeType);
             if (cache==null) {
                 cache = new CacheElement(time, excludeType);
-                iCache.insertElementAt(cache, 0);
+                cache.update(class2eventDateMap, iInstructorAvailabilityEnabled ? session.getUniqueId() : null);
+                iCache.add(0, cache);
+            } else {
+                cache.update(class2eventDateMap, iInstructorAvailabilityEnabled ? session.getUniqueId() : null);
             }
-            cache.update(class2eventDateMap, iInstructorAvailabilityEnabled ? session.getUniqueId() : null);
         }
     }
     
@@ -161,28 +181,33 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         }
     }
 
+    /**
+     * Meeting blocks of an activated time frame, indexed by room permanent id (and negative instructor id).<br>
+     * The blocks of a resource are kept in an immutable {@link MeetingBlocks} that is replaced on update, so the
+     * index can be read without locking. Each update only loads meetings that are new or that have changed (using a
+     * light-weight query returning a signature of each meeting), and only the affected resources are rebuilt.
+     */
     public static class CacheElement{
         private TimeFrame iTime;
-        private Hashtable<Long, TreeSet<TimeBlock>> iAvailability = new Hashtable();
+        private Map<Long, MeetingBlocks> iAvailability = new ConcurrentHashMap<Long, MeetingBlocks>();
+        private Map<Long, Map<Long, String>> iSignatures = new HashMap<Long, Map<Long, String>>();
         private String iTimestamp = null;
         private String iExcludeType = null;
         public CacheElement(TimeFrame time, String excludeType) {
             iTime = time;
             iExcludeType = excludeType;
         };
-        public void update(EventDateMapping.Class2EventDateMap class2eventDateMap, Long sessionId) {
-            iAvailability.clear();
-            String exclude = null;
-            if (iExcludeType!=null) {
-                if (sFinalExamType.equals(iExcludeType))
-                    exclude = "FinalExamEvent";
-                else if (sMidtermExamType.equals(iExcludeType))
-                    exclude = "MidtermExamEvent";
-                else if (sClassType.equals(iExcludeType))
-                    exclude = "ClassEvent";	
-            }
-            Query q = new _RootDAO().getSession().createQuery(
-                    "select m from Meeting m where m.locationPermanentId!=null and "+
+        protected static String signature(Object[] o) {
+            // meeting date, start period, stop period, start offset, stop offset, event name
+            return ((Date)o[2]).getTime() + ":" + o[3] + ":" + o[4] + ":" + o[5] + ":" + o[6] + ":" + o[7];
+        }
+        public synchronized void update(EventDateMapping.Class2EventDateMap class2eventDateMap, Long sessionId) {
+            String exclude = getExcludeEventClass(iExcludeType);
+            org.hibernate.Session hibSession = new _RootDAO().getSession();
+            Map<Long, Map<Long, String>> signatures = new HashMap<Long, Map<Long, String>>();
+            Query q = hibSession.createQuery(
+                    "select m.uniqueId, m.locationPermanentId, m.meetingDate, m.startPeriod, m.stopPeriod, m.startOffset, m.stopOffset, m.event.eventName " +
+                    "from Meeting m where m.locationPermanentId!=null and "+
                     "m.approvalStatus = 1 and "+
                     "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
                     "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" + 
@@ -190,21 +215,19 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                     .setDate("startDate", iTime.getStartDate())
                     .setDate("endDate", iTime.getEndDate())
                     .setInteger("startSlot", iTime.getStartSlot())
-                    .setInteger("endSlot", iTime.getEndSlot())
-                    .setCacheable(true);
+                    .setInteger("endSlot", iTime.getEndSlot());
             for (Iterator i=q.list().iterator();i.hasNext();) {
-                Meeting m = (Meeting)i.next(); 
-                TreeSet<TimeBlock> blocks = iAvailability.get(m.getLocationPermanentId());
-                if (blocks==null) {
-                    blocks = new TreeSet(); iAvailability.put(m.getLocationPermanentId(), blocks);
+                Object[] o = (Object[])i.next();
+                Map<Long, String> meetings = signatures.get((Long)o[1]);
+                if (meetings == null) {
+                    meetings = new HashMap<Long, String>(); signatures.put((Long)o[1], meetings);
                 }
-                MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	blocks.add(block);
+                meetings.put((Long)o[0], signature(o));
             }
             if (sessionId != null) {
-                q = new _RootDAO().getSession().createQuery(
-                		"select distinct m, -i.uniqueId from Meeting m left outer join m.event.additionalContacts c, DepartmentalInstructor i where " +
+                q = hibSession.createQuery(
+                		"select distinct m.uniqueId, -i.uniqueId, m.meetingDate, m.startPeriod, m.stopPeriod, m.startOffset, m.stopOffset, m.event.eventName " +
+                		"from Meeting m left outer join m.event.additionalContacts c, DepartmentalInstructor i where " +
                         "i.department.session.uniqueId = :sessionId and i.externalUniqueId is not null and "+
                 		"(m.event.mainContact.externalUniqueId = i.externalUniqueId or c.externalUniqueId = i.externalUniqueId) and "+
                 		"m.approvalStatus = 1 and "+
@@ -215,32 +238,91 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                         .setDate("endDate", iTime.getEndDate())
                         .setLong("sessionId", sessionId)
                         .setInteger("startSlot", iTime.getStartSlot())
-                        .setInteger("endSlot", iTime.getEndSlot())
-                        .setCacheable(true);
+                        .setInteger("endSlot", iTime.getEndSlot());
                 for (Iterator i=q.list().iterator();i.hasNext();) {
                 	Object[] o = (Object[])i.next();
-                	Meeting m = (Meeting)o[0];
-                	Long id = (Long)o[1];
-                    TreeSet<TimeBlock> blocks = iAvailability.get(id);
-                    if (blocks==null) {
-                        blocks = new TreeSet(); iAvailability.put(id, blocks);
+                    Map<Long, String> meetings = signatures.get((Long)o[1]);
+                    if (meetings == null) {
+                        meetings = new HashMap<Long, String>(); signatures.put((Long)o[1], meetings);
                     }
-                    MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                    if (block.getStartTime() != null)
-                    	blocks.add(block);
-                }            	
+                    meetings.put((Long)o[0], signature(o));
+                }
+            }
+            
+            // Compare with the previous signatures: find resources that have changed and meetings that need to be loaded
+            Set<Long> changedResources = new HashSet<Long>();
+            Set<Long> meetingsToLoad = new HashSet<Long>();
+            for (Map.Entry<Long, Map<Long, String>> entry: signatures.entrySet()) {
+                Map<Long, String> old = iSignatures.get(entry.getKey());
+                for (Map.Entry<Long, String> meeting: entry.getValue().entrySet()) {
+                    if (old == null || !meeting.getValue().equals(old.get(meeting.getKey()))) {
+                        changedResources.add(entry.getKey());
+                        meetingsToLoad.add(meeting.getKey());
+                    }
+                }
+                if (old != null && !changedResources.contains(entry.getKey()))
+                    for (Long meetingId: old.keySet())
+                        if (!entry.getValue().containsKey(meetingId)) { changedResources.add(entry.getKey()); break; }
+            }
+            for (Long resourceId: iSignatures.keySet())
+                if (!signatures.containsKey(resourceId)) changedResources.add(resourceId);
+            
+            // Load new and changed meetings
+            Map<Long, MeetingTimeBlock> loaded = new HashMap<Long, MeetingTimeBlock>();
+            if (!meetingsToLoad.isEmpty()) {
+                List<Long> ids = new ArrayList<Long>(meetingsToLoad);
+                for (int i = 0; i < ids.size(); i += 1000) {
+                    for (Meeting m: (List<Meeting>)hibSession.createQuery(
+                            "select m from Meeting m inner join fetch m.event where m.uniqueId in (:ids)")
+                            .setParameterList("ids", ids.subList(i, Math.min(i + 1000, ids.size()))).list()) {
+                        MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+                        if (block.getStartTime() != null)
+                            loaded.put(m.getUniqueId(), block);
+                    }
+                }
+            }
+            
+            // Rebuild the changed resources
+            for (Long resourceId: changedResources) {
+                Map<Long, String> meetings = signatures.get(resourceId);
+                if (meetings == null) {
+                    iAvailability.remove(resourceId);
+                    continue;
+                }
+                List<MeetingTimeBlock> blocks = new ArrayList<MeetingTimeBlock>(meetings.size());
+                MeetingBlocks old = iAvailability.get(resourceId);
+                if (old != null)
+                    for (MeetingTimeBlock block: old.getBlocks())
+                        if (meetings.containsKey(block.getMeetingId()) && !meetingsToLoad.contains(block.getMeetingId())) blocks.add(block);
+                for (Long meetingId: meetings.keySet()) {
+                    MeetingTimeBlock block = loaded.get(meetingId);
+                    if (block != null) blocks.add(block);
+                }
+                if (blocks.isEmpty())
+                    iAvailability.remove(resourceId);
+                else
+                    iAvailability.put(resourceId, new MeetingBlocks(blocks));
             }
+            iSignatures = signatures;
             iTimestamp = new Date().toString();
         }
         public TreeSet<TimeBlock> get(Long roomPermId, String excludeType) {
-            TreeSet<TimeBlock> roomAvailability = iAvailability.get(roomPermId);
-            if (roomAvailability==null || excludeType==null || excludeType.equals(iExcludeType)) return roomAvailability;
-            TreeSet<TimeBlock> ret = new TreeSet();
-            for (TimeBlock block : roomAvailability) {
-            	if (excludeType.equals(block.getEventType())) continue;
-                ret.add(block);
-            }
-            return ret;
+            MeetingBlocks roomAvailability = iAvailability.get(roomPermId);
+            if (roomAvailability==null) return null;
+            return roomAvailability.get(excludeType==null || excludeType.equals(iExcludeType) ? null : excludeType);
+        }
+        /**
+         * Blocks of the given resource, when the given time frame is narrower than the cached one only
+         * blocks overlapping with the dates of the time frame are returned
+         */
+        public TreeSet<TimeBlock> get(Long roomPermId, String excludeType, TimeFrame time) {
+            if (time == null || time.getStartDate().compareTo(iTime.getStartDate()) <= 0 && iTime.getEndDate().compareTo(time.getEndDate()) <= 0)
+                return get(roomPermId, excludeType);
+            MeetingBlocks roomAvailability = iAvailability.get(roomPermId);
+            if (roomAvailability==null) return null;
+            Calendar end = Calendar.getInstance(Locale.US); end.setTime(time.getEndDate());
+            end.add(Calendar.DAY_OF_YEAR, 1);
+            return roomAvailability.get(time.getStartDate().getTime(), end.getTimeInMillis(), excludeType==null || excludeType.equals(iExcludeType) ? null : excludeType);
         }
         public TimeFrame getTimeFrame() { return iTime; }
         public String getExcludeType() { return iExcludeType; }
@@ -259,6 +341,58 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         }
     }
     
+    /**
+     * Immutable list of meeting blocks of a room (or an instructor), ordered by the start time.
+     * Together with the maximal end time of all the blocks up to each index, this allows for a quick
+     * lookup of the blocks that overlap with a time interval.
+     */
+    public static class MeetingBlocks {
+        private MeetingTimeBlock[] iBlocks;
+        private long[] iStart, iMaxEnd;
+        
+        public MeetingBlocks(Collection<MeetingTimeBlock> blocks) {
+            iBlocks = blocks.toArray(new MeetingTimeBlock[blocks.size()]);
+            Arrays.sort(iBlocks);
+            iStart = new long[iBlocks.length];
+            iMaxEnd = new long[iBlocks.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < iBlocks.length; i++) {
+                iStart[i] = iBlocks[i].getStartTime().getTime();
+                maxEnd = Math.max(maxEnd, iBlocks[i].getEndTime().getTime());
+                iMaxEnd[i] = maxEnd;
+            }
+        }
+        
+        public List<MeetingTimeBlock> getBlocks() { return Arrays.asList(iBlocks); }
+        public int size() { return iBlocks.length; }
+        
+        /** All blocks, except of the given event type (if not null) */
+        public TreeSet<TimeBlock> get(String excludeType) {
+            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+            for (MeetingTimeBlock block: iBlocks) {
+                if (excludeType != null && excludeType.equals(block.getEventType())) continue;
+                ret.add(block);
+            }
+            return ret;
+        }
+        
+        /** Blocks overlapping with the interval [start, end), except of the given event type (if not null) */
+        public TreeSet<TimeBlock> get(long start, long end, String excludeType) {
+            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+            // last block that starts before the end of the interval
+            int idx = Arrays.binarySearch(iStart, end);
+            if (idx < 0) idx = -idx - 1;
+            while (idx > 0 && iStart[idx - 1] >= end) idx--;
+            for (int i = idx - 1; i >= 0 && iMaxEnd[i] > start; i--) {
+                MeetingTimeBlock block = iBlocks[i];
+                if (block.getEndTime().getTime() <= start) continue;
+                if (excludeType != null && excludeType.equals(block.getEventType())) continue;
+                ret.add(block);
+            }
+            return ret;
+        }
+    }
+    
     public static class MeetingTimeBlock implements TimeBlock, Comparable<TimeBlock> {
 		private static final long serialVersionUID = -5557707709984628517L;
 		Long iEventId, iMeetingId;
@@ -303,51 +437,34 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
 	@Override
 	public Collection<TimeBlock> getInstructorAvailability(Long instructorId, Date startTime, Date endTime, String excludeType) {
         if (!iInstructorAvailabilityEnabled) return null;
+        TimeFrame time = new TimeFrame(startTime, endTime);
+        CacheElement cache = get(time, excludeType);
+        // instructors without an external id are not in the index
+        if (cache!=null) return cache.get(-instructorId, excludeType, time);
         DepartmentalInstructor instructor = DepartmentalInstructorDAO.getInstance().get(instructorId);
         if (instructor == null || instructor.getExternalUniqueId() == null) return null;
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(instructor.getDepartment().getSession().getUniqueId()) : null);
-        TimeFrame time = new TimeFrame(startTime, endTime);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache!=null) return cache.get(-instructor.getUniqueId(), excludeType);
-            Calendar start = Calendar.getInstance(Locale.US); start.setTime(startTime);
-            int startMin = 60*start.get(Calendar.HOUR_OF_DAY) + start.get(Calendar.MINUTE);
-            start.add(Calendar.MINUTE, -startMin);
-            Calendar end = Calendar.getInstance(Locale.US); end.setTime(endTime);
-            int endMin = 60*end.get(Calendar.HOUR_OF_DAY) + start.get(Calendar.MINUTE);
-            end.add(Calendar.MINUTE, -endMin);
-            int startSlot = (startMin - Constants.FIRST_SLOT_TIME_MIN)/Constants.SLOT_LENGTH_MIN;
-            int endSlot = (endMin - Constants.FIRST_SLOT_TIME_MIN)/Constants.SLOT_LENGTH_MIN;
-            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
-            String exclude = null;
-            if (excludeType!=null) {
-                if (sFinalExamType.equals(excludeType))
-                    exclude = "FinalExamEvent";
-                else if (sMidtermExamType.equals(excludeType))
-                    exclude = "MidtermExamEvent";
-                else if (sClassType.equals(excludeType))
-                    exclude = "ClassEvent";
-            }
-            Query q = new _RootDAO().getSession().createQuery(
-            		"select m from Meeting m left outer join m.event.additionalContacts c where " +
-            		"(m.event.mainContact.externalUniqueId = :user or c.externalUniqueId = :user) and "+
-            		"m.approvalStatus = 1 and "+
-                    "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                    "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                    (exclude!=null?" and m.event.class!="+exclude:""))
-                    .setString("user", instructor.getExternalUniqueId())
-                    .setDate("startDate", start.getTime())
-                    .setDate("endDate", end.getTime())
-                    .setInteger("startSlot", startSlot)
-                    .setInteger("endSlot", endSlot)
-                    .setCacheable(true);
-            for (Iterator i=q.list().iterator();i.hasNext();) {
-                Meeting m = (Meeting)i.next();
-                MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	ret.add(block);
-            }
-            return ret;
+        TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+        String exclude = getExcludeEventClass(excludeType);
+        Query q = new _RootDAO().getSession().createQuery(
+        		"select m from Meeting m left outer join m.event.additionalContacts c where " +
+        		"(m.event.mainContact.externalUniqueId = :user or c.externalUniqueId = :user) and "+
+        		"m.approvalStatus = 1 and "+
+                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                (exclude!=null?" and m.event.class!="+exclude:""))
+                .setString("user", instructor.getExternalUniqueId())
+                .setDate("startDate", time.getStartDate())
+                .setDate("endDate", time.getEndDate())
+                .setInteger("startSlot", time.getStartSlot())
+                .setInteger("endSlot", time.getEndSlot())
+                .setCacheable(true);
+        for (Iterator i=q.list().iterator();i.hasNext();) {
+            Meeting m = (Meeting)i.next();
+            MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+            if (block.getStartTime() != null)
+            	ret.add(block);
         }
+        return ret;
 	}
 }
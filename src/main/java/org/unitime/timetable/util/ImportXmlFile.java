@@ -19,11 +19,9 @@
 */
 package org.unitime.timetable.util;
 
-import java.io.File;
+import java.io.FileInputStream;
 
 import org.apache.log4j.Logger;
-import org.dom4j.Document;
-import org.dom4j.io.SAXReader;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.dataexchange.DataExchangeHelper;
@@ -50,9 +48,6 @@ public class ImportXmlFile {
 	        // Configure hibernate
 	        HibernateUtil.configureHibernate(ApplicationProperties.getProperties());
 	        
-	        // Load an XML file
-	        Document document = (new SAXReader()).read(new File(args[0]));
-	        
 	        // External id of the manager doing the import (can be null)
 	        String managerId = (args.length >= 2 ? args[1] : null);
 	        
@@ -64,8 +59,13 @@ public class ImportXmlFile {
 	        	}
 	        };
 	        
-	        // Import document
-	        DataExchangeHelper.importDocument(document, managerId, logger);
+	        // Import document (imports that support streaming do not need to load the whole file in memory)
+	        FileInputStream input = new FileInputStream(args[0]);
+	        try {
+	        	DataExchangeHelper.importDocument(input, managerId, logger);
+	        } finally {
+	        	input.close();
+	        }
 	        
 	        // Close hibernate
 	        HibernateUtil.closeHibernate();
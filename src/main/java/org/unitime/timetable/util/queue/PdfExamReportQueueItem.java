@@ -308,6 +308,7 @@ public class PdfExamReportQueueItem extends QueueItem {
             Hashtable<Student,File> sreports = null;
             Session session = getSession();
             for (int i=0;i<iForm.getReports().length;i++) {
+            	if (isCancelled()) return;
             	iProgress = 0.1 + (0.8 / iForm.getReports().length) * i;
                 setStatus("Generating "+iForm.getReports()[i]+"...");
                 Class reportClass = ExamPdfReportForm.sRegisteredReports.get(iForm.getReports()[i]);
@@ -347,6 +348,7 @@ public class PdfExamReportQueueItem extends QueueItem {
                     }
                 } else {
                     for (int j=0;j<iForm.getSubjects().length;j++) {
+                    	if (isCancelled()) return;
                         SubjectArea subject = new SubjectAreaDAO().get(Long.valueOf(iForm.getSubjects()[j]));
                         File file = ApplicationProperties.getTempFile(name+"_"+subject.getSubjectAreaAbbreviation(), (iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf"));
                         int nrExams = 0;
@@ -388,6 +390,7 @@ public class PdfExamReportQueueItem extends QueueItem {
                     }
                 }
             }
+        	if (isCancelled()) return;
         	iProgress = 0.9;
             byte[] buffer = new byte[32*1024];
             int len = 0;
@@ -495,6 +498,7 @@ public class PdfExamReportQueueItem extends QueueItem {
                 if (iForm.getEmailInstructors() && ireports!=null && !ireports.isEmpty()) {
                     setStatus("Emailing instructors...");
                     for (ExamInstructorInfo instructor : new TreeSet<ExamInstructorInfo>(ireports.keySet())) {
+                    	if (isCancelled()) return;
                         File report = ireports.get(instructor);
                         String email = instructor.getInstructor().getEmail();
                         if (email==null || email.length()==0) {
@@ -528,6 +532,7 @@ public class PdfExamReportQueueItem extends QueueItem {
                 if (iForm.getEmailStudents() && sreports!=null && !sreports.isEmpty()) {
                     setStatus("Emailing students...");
                     for (Student student : new TreeSet<Student>(sreports.keySet())) {
+                    	if (isCancelled()) return;
                         File report = sreports.get(student);
                         String email = student.getEmail();
                         if (email==null || email.length()==0) {
@@ -26,6 +26,7 @@ import org.apache.commons.logging.Log;
 import org.apache.log4j.Logger;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Session;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao._RootDAO;
@@ -49,6 +50,7 @@ public abstract class QueueItem implements Log {
 	private Date iCreated = new Date(), iStarted = null, iFinished = null;
 	private Throwable iException = null;
 	private String iLocale = null;
+	private volatile boolean iCancelled = false;
 	
 	private Long iId = null;
 	
@@ -102,8 +104,12 @@ public abstract class QueueItem implements Log {
 		if (iException != null) {
 			if (iException instanceof ThreadDeath)
 				iStatus = "Killed";
+			else if (iCancelled)
+				iStatus = "Cancelled";
 			else
 				iStatus = "Failed (" + iException.getMessage() + ")";
+		} else if (iCancelled) {
+			iStatus = "Cancelled";
 		}
 	}
 	
@@ -147,6 +153,65 @@ public abstract class QueueItem implements Log {
 	public Date started() { return iStarted; }
 	public Date finished() { return iFinished; }
 	
+	/** Time in milliseconds the item has been (or has so far been) waiting in the queue */
+	public long waitTime() {
+		return (iStarted == null ? new Date() : iStarted).getTime() - iCreated.getTime();
+	}
+	
+	/** Time in milliseconds the item has been (or has so far been) running, 0 if not started yet */
+	public long runTime() {
+		if (iStarted == null) return 0;
+		return (iFinished == null ? new Date() : iFinished).getTime() - iStarted.getTime();
+	}
+	
+	/** Item type as used in the queue configuration, see {@link ApplicationProperty#QueueItemPriority} */
+	protected String typeReference() {
+		return type().replace(' ', '_');
+	}
+	
+	/** Items of a higher priority are started first, see {@link ApplicationProperty#QueueItemPriority} */
+	public int priority() {
+		Integer priority = ApplicationProperty.QueueItemPriority.intValue(typeReference());
+		return (priority == null ? 0 : priority.intValue());
+	}
+	
+	/** Maximal number of items of this type that can run at the same time, 0 for no limit, see {@link ApplicationProperty#QueueItemMaxRunning} */
+	public int maxRunning() {
+		return maxRunning(0);
+	}
+	
+	protected int maxRunning(int defaultValue) {
+		try {
+			return Integer.parseInt(ApplicationProperty.QueueItemMaxRunning.value(typeReference(), String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+	
+	/** Exclusive group of the items that change the data of an academic session (roll forward, data exchange, scripts) */
+	public static final String sExclusiveGroupSessionData = "session-data";
+	
+	/**
+	 * Items of the same exclusive group never run at the same time, null if the item can run along with any other item.
+	 * See {@link ApplicationProperty#QueueItemExclusiveGroup}.
+	 */
+	public String exclusiveGroup() {
+		return exclusiveGroup(null);
+	}
+	
+	protected String exclusiveGroup(String defaultGroup) {
+		String group = ApplicationProperty.QueueItemExclusiveGroup.value(typeReference(), defaultGroup);
+		return (group == null || group.isEmpty() ? null : group);
+	}
+	
+	/**
+	 * Request the item to be cancelled. The roll forward stops before its next phase, the PDF exam reports before the next report
+	 * (or email), and a script can check log.isCancelled() on its own. A running item is also interrupted, and stopped when
+	 * cancelled for the second time, by the {@link QueueProcessor}.
+	 */
+	public void cancel() { iCancelled = true; }
+	public boolean isCancelled() { return iCancelled; }
+	
 	@Override
 	public void trace(Object message) {
 		iLogger.trace(message);
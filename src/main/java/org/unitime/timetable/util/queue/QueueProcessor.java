@@ -19,16 +19,31 @@
 */
 package org.unitime.timetable.util.queue;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.unitime.timetable.defaults.ApplicationProperty;
 
 /**
+ * Queue processor runs the queued items in the background.<br>
+ * Up to {@link ApplicationProperty#QueueProcessorWorkers} items can run at the same time, each in its own thread.
+ * Waiting items are started by their priority (see {@link QueueItem#priority()}), then owners with the least running items
+ * go first (so that one user with many items does not block the others), and then in the order in which they were added.
+ * Items of a type with a limit on the number of running items (see {@link QueueItem#maxRunning()}) wait until
+ * there is a free slot for the type. Items of an exclusive group (see {@link QueueItem#exclusiveGroup()}) wait until
+ * no other item of the same group is running, so that, e.g., a data import never runs along with a roll forward.
  * 
  * @author Tomas Muller
  *
@@ -38,11 +53,11 @@ public class QueueProcessor extends Thread {
     protected static Logger sLog = Logger.getLogger(QueueProcessor.class);
     protected static long sTimeToKeep = 1000 * 60 * 60 * 10; // Keep done items for at least 10 hours.
     protected static long sTimeToSleep = 1000 * 60 * 60; // Sleep no more than an hour.
+    protected static DecimalFormat sDF = new DecimalFormat("0.00");
 
-	private Queue<QueueItem> iQueue = new LinkedList<QueueItem>();
+	private List<QueueItem> iQueue = new LinkedList<QueueItem>();
 	private List<QueueItem> iFinished = new ArrayList<QueueItem>();
-	private QueueItem iItem = null;
-	private RunningItem iRunningItem = null;
+	private Map<Long, RunningItem> iRunning = new LinkedHashMap<Long, RunningItem>();
 	
 	private static QueueProcessor sInstance = null;
 
@@ -55,6 +70,11 @@ public class QueueProcessor extends Thread {
 		setDaemon(true);
 	}
 	
+	protected int getNrWorkers() {
+		Integer workers = ApplicationProperty.QueueProcessorWorkers.intValue();
+		return (workers == null || workers < 1 ? 1 : workers.intValue());
+	}
+	
 	public void run() {
 		sLog.info("Queue processor is up and running.");
 		
@@ -68,48 +88,83 @@ public class QueueProcessor extends Thread {
 					if (item.finished() == null || now - item.finished().getTime() > sTimeToKeep) i.remove();
 				}
 				
-				// Check for a new item from the queue
-				if (iQueue.isEmpty()) {
-					// Sleep for it, if there is nothing to do
-					sLog.info("Waiting for tasks to run...");
+				// Take the next item that can be started
+				QueueItem item = next();
+				
+				if (item == null) {
+					// Sleep for it, if there is nothing to do (or no free worker)
+					sLog.debug("Waiting for tasks to run...");
 					try {
 						iQueue.wait(sTimeToSleep);
 					} catch (InterruptedException e) {
 						sLog.info("Interrupted.");
 					}
+					continue;
 				}
 				
-				// Take new item from the top of the queue
-				iItem = iQueue.poll();
-				
-				// Null if queue is empty
-				if (iItem == null) continue;
+				// Execute the item
+				iQueue.remove(item);
+				sLog.info("Executing " + item.name() + " (waited " + sDF.format(item.waitTime() / 60000.0) + " min, " + (iRunning.size() + 1) + " running, " + iQueue.size() + " waiting)");
+				RunningItem runningItem = new RunningItem(item);
+				iRunning.put(item.getId(), runningItem);
+				runningItem.start();
 			}
-			
-			// Execute the item
-			sLog.info("Executing " + iItem.name());
-			iRunningItem = new RunningItem(iItem);
-			iRunningItem.start();
-			try {
-				iRunningItem.join();
-			} catch (InterruptedException e) {
-				sLog.info("Task " + iItem.name() + " was interrupted.");
-			}
-			
-			sLog.info("Task " + iItem.name() + (iItem.error() == null ? " is done." : " failed (" + iItem.error().getMessage() + ")."));
-
-			// Put the item into the list of finished items
-			synchronized (iQueue) {
-				iFinished.add(iItem);
-				
-				iItem = null;
-			}				
 		}
 		
 		sLog.info("Queue processor is down.");
 		sInstance = null;
 	}
 	
+	/** Called by the running item when it is finished */
+	protected void finished(QueueItem item) {
+		sLog.info("Task " + item.name() + (item.error() == null ? " is done" : " failed (" + item.error().getMessage() + ")") +
+				" (waited " + sDF.format(item.waitTime() / 60000.0) + " min, run " + sDF.format(item.runTime() / 60000.0) + " min).");
+		
+		// Put the item into the list of finished items
+		synchronized (iQueue) {
+			iRunning.remove(item.getId());
+			iFinished.add(item);
+			iQueue.notify();
+		}
+	}
+	
+	/**
+	 * Next item to be started, null if there is no free worker or no item that can be started.
+	 * Must be called while holding the queue lock.
+	 */
+	protected QueueItem next() {
+		if (iQueue.isEmpty() || iRunning.size() >= getNrWorkers()) return null;
+		final Map<String, Integer> owners = new HashMap<String, Integer>();
+		Map<String, Integer> types = new HashMap<String, Integer>();
+		Set<String> groups = new HashSet<String>();
+		for (RunningItem running: iRunning.values()) {
+			inc(owners, running.getItem().getOwnerId());
+			inc(types, running.getItem().type());
+			String group = running.getItem().exclusiveGroup();
+			if (group != null) groups.add(group);
+		}
+		Comparator<QueueItem> cmp = new QueueItemComparator(owners);
+		QueueItem next = null;
+		for (QueueItem item: iQueue) {
+			int max = item.maxRunning();
+			if (max > 0 && get(types, item.type()) >= max) continue;
+			String group = item.exclusiveGroup();
+			if (group != null && groups.contains(group)) continue;
+			if (next == null || cmp.compare(item, next) < 0) next = item;
+		}
+		return next;
+	}
+	
+	private static void inc(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+	
+	private static int get(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		return (count == null ? 0 : count.intValue());
+	}
+	
 	public static synchronized QueueProcessor getInstance() {
 		if (sInstance == null) {
 			sInstance = new QueueProcessor();
@@ -126,6 +181,11 @@ public class QueueProcessor extends Thread {
 		}
 	}
 	
+	/**
+	 * Finished, running, and waiting items (in this order) of the given owner, session, and type (null for all).
+	 * Waiting items are returned in the order in which they are expected to start.
+	 * See {@link QueueItem#waitTime()} and {@link QueueItem#runTime()} for the queue metrics.
+	 */
 	public List<QueueItem> getItems(String ownerId, Long sessionId, String type) {
 		synchronized (iQueue) {
 			List<QueueItem> ret = new ArrayList<QueueItem>();
@@ -137,38 +197,45 @@ public class QueueProcessor extends Thread {
 				ret.add(item);
 			}
 			
-			if (iItem != null) {
-				boolean add = true;
-				if (ownerId != null && !ownerId.equals(iItem.getOwnerId())) add = false;
-				if (sessionId != null && !sessionId.equals(iItem.getSessionId())) add = false;
-				if (type!=null && !type.equals(iItem.type())) add = false;
-				if (add) ret.add(iItem);
+			Map<String, Integer> owners = new HashMap<String, Integer>();
+			for (RunningItem running: iRunning.values()) {
+				QueueItem item = running.getItem();
+				inc(owners, item.getOwnerId());
+				if (ownerId != null && !ownerId.equals(item.getOwnerId())) continue;
+				if (sessionId != null && !sessionId.equals(item.getSessionId())) continue;
+				if (type!=null && !type.equals(item.type())) continue;
+				ret.add(item);
 			}
 			
+			List<QueueItem> waiting = new ArrayList<QueueItem>();
 			for (QueueItem item: iQueue) {
 				if (ownerId != null && !ownerId.equals(item.getOwnerId())) continue;
 				if (sessionId != null && !sessionId.equals(item.getSessionId())) continue;
 				if (type!=null && !type.equals(item.type())) continue;
-				ret.add(item);
+				waiting.add(item);
 			}
+			Collections.sort(waiting, new QueueItemComparator(owners));
+			ret.addAll(waiting);
 			
 			return ret;
 		}
 	}
 	
 	public void remove(Long id) {
+		RunningItem running = null;
 		synchronized (iQueue) {
 			for (Iterator<QueueItem> i = iQueue.iterator(); i.hasNext();) {
 				QueueItem item = i.next();
-				if (id.equals(item.getId())) i.remove();
+				if (id.equals(item.getId())) { item.cancel(); i.remove(); }
 			}
 			for (Iterator<QueueItem> i = iFinished.iterator(); i.hasNext();) {
 				QueueItem item = i.next();
 				if (id.equals(item.getId())) i.remove();
 			}
+			running = iRunning.get(id);
 		}
-		if (iItem != null && id.equals(iItem.getId())) {
-			iRunningItem.cancel();
+		if (running != null) {
+			running.cancel();
 		}
 	}
 
@@ -184,7 +251,27 @@ public class QueueProcessor extends Thread {
 		}
 	}
 	
-	static class RunningItem extends Thread {
+	/**
+	 * Higher priority first, then owners with fewer running items, then the order in which the items were added
+	 */
+	static class QueueItemComparator implements Comparator<QueueItem> {
+		private Map<String, Integer> iRunningItemsPerOwner;
+		
+		QueueItemComparator(Map<String, Integer> runningItemsPerOwner) {
+			iRunningItemsPerOwner = runningItemsPerOwner;
+		}
+
+		@Override
+		public int compare(QueueItem i1, QueueItem i2) {
+			int p1 = i1.priority(), p2 = i2.priority();
+			if (p1 != p2) return (p1 > p2 ? -1 : 1);
+			int r1 = get(iRunningItemsPerOwner, i1.getOwnerId()), r2 = get(iRunningItemsPerOwner, i2.getOwnerId());
+			if (r1 != r2) return (r1 < r2 ? -1 : 1);
+			return i1.getId().compareTo(i2.getId());
+		}
+	}
+	
+	class RunningItem extends Thread {
 		boolean iInterrupted = false;
 		QueueItem iRunningItem = null;
 		
@@ -194,13 +281,20 @@ public class QueueProcessor extends Thread {
 			setDaemon(true);
 		}
 		
+		public QueueItem getItem() { return iRunningItem; }
+		
 		@Override
 		public void run() {
-			iRunningItem.executeItem();
+			try {
+				iRunningItem.executeItem();
+			} finally {
+				finished(iRunningItem);
+			}
 		}
 		
 		@SuppressWarnings("deprecation")
 		public void cancel() {
+			iRunningItem.cancel();
 			if (iInterrupted) {
 				stop();
 			} else {
@@ -21,7 +21,9 @@ package org.unitime.timetable.webutil;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.TreeSet;
 
 import javax.servlet.jsp.JspWriter;
@@ -121,6 +123,13 @@ public class WebClassListTableBuilder extends
         
         if (isShowExam())
             setShowExamTimetable(examAssignment!=null || Exam.hasTimetable(context.getUser().getCurrentAcademicSessionId()));
+        
+        Set<Long> classIds = new HashSet<Long>();
+        for (Iterator i=classes.iterator();i.hasNext();) {
+        	Object[] o = (Object[])i.next();
+        	classIds.add(((Class_)o[0]).getUniqueId());
+        }
+        checkPermissions(context, classIds, "Class_", Right.ClassDetail);
 
         TableStream table = null;
         int ct = 0;
@@ -235,6 +244,11 @@ public class WebClassListTableBuilder extends
         }
         setUserSettings(context.getUser());
         
+        Set<Long> classIds = new HashSet<Long>();
+        for (Iterator i=classes.iterator();i.hasNext();)
+        	classIds.add(((Class_)i.next()).getUniqueId());
+        checkPermissions(context, classIds, "Class_", Right.ClassDetail);
+        
 		TableStream table = this.initTable(outputStream, context.getUser().getCurrentAcademicSessionId());
         Iterator it = classes.iterator();
         Class_ cls = null;
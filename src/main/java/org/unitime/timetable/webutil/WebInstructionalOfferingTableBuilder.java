@@ -26,8 +26,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
@@ -86,12 +89,14 @@ import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.model.dao.SubjectAreaDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.security.evaluation.PermissionCheck;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.solver.CachedClassAssignmentProxy;
 import org.unitime.timetable.solver.ClassAssignmentProxy;
 import org.unitime.timetable.solver.exam.ExamAssignmentProxy;
 import org.unitime.timetable.solver.exam.ui.ExamAssignment;
 import org.unitime.timetable.solver.ui.AssignmentPreferenceInfo;
+import org.unitime.timetable.spring.SpringApplicationContextHolder;
 import org.unitime.timetable.util.Formats;
 
 
@@ -179,6 +184,9 @@ public class WebInstructionalOfferingTableBuilder {
     
     private Comparator iClassComparator = new ClassComparator(ClassComparator.COMPARE_BY_ITYPE);
     
+    // Targets for which the permission was checked by checkPermissions (and granted)
+    private Map<Right, Set<Long>> iPermittedIds = new HashMap<Right, Set<Long>>();
+    
     // Set whether edit/modify config buttons are displayed
     private boolean displayConfigOpButtons = false;
     
@@ -1438,7 +1446,7 @@ public class WebInstructionalOfferingTableBuilder {
     private void buildSchedulingSubpartRow(ClassAssignmentProxy classAssignment, ExamAssignmentProxy examAssignment, TableStream table, CourseOffering co, SchedulingSubpart ss, int indentSpaces, SessionContext context){
     	boolean isHeaderRow = true;
     	TableRow row = this.initRow(isHeaderRow);
-    	boolean isEditable = context.hasPermission(ss, Right.SchedulingSubpartDetail);
+    	boolean isEditable = hasPermission(context, ss, ss.getUniqueId(), Right.SchedulingSubpartDetail);
         boolean isOffered = !ss.getInstrOfferingConfig().getInstructionalOffering().isNotOffered().booleanValue();        
 
         if(isOffered)
@@ -1477,7 +1485,7 @@ public class WebInstructionalOfferingTableBuilder {
  
     protected void buildClassRow(ClassAssignmentProxy classAssignment, ExamAssignmentProxy examAssignment, int ct, TableStream table, CourseOffering co, Class_ aClass, int indentSpaces, SessionContext context, String prevLabel){
     	boolean isHeaderRow = false;
-    	boolean isEditable = context.hasPermission(aClass, Right.ClassDetail);
+    	boolean isEditable = hasPermission(context, aClass, aClass.getUniqueId(), Right.ClassDetail);
     	TableRow row = this.initRow(isHeaderRow);
         row.setOnMouseOver(this.getRowMouseOver(isHeaderRow, isEditable));
         row.setOnMouseOut(this.getRowMouseOut(isHeaderRow));
@@ -1555,7 +1563,7 @@ public class WebInstructionalOfferingTableBuilder {
     //		buildTableHeader, addInstrOffrRowsToTable, buildClassOrSubpartRow, and buildConfigRow
 	protected void buildConfigRow(Vector subpartIds, ClassAssignmentProxy classAssignment, ExamAssignmentProxy examAssignment, TableStream table, CourseOffering co, InstrOfferingConfig ioc, SessionContext context, boolean printConfigLine, boolean printConfigReservation) {
 	    boolean isHeaderRow = true;
-	    boolean isEditable = context.hasPermission(ioc.getInstructionalOffering(), Right.InstructionalOfferingDetail);
+	    boolean isEditable = hasPermission(context, ioc.getInstructionalOffering(), ioc.getInstructionalOffering().getUniqueId(), Right.InstructionalOfferingDetail);
 	    String configName = ioc.getName();
 	    boolean unlimited = ioc.isUnlimitedEnrollment().booleanValue();
 	    boolean hasConfig = false;
@@ -1718,7 +1726,7 @@ public class WebInstructionalOfferingTableBuilder {
     //		buildTableHeader, addInstrOffrRowsToTable, buildClassOrSubpartRow, and buildConfigRow
     private void addInstrOffrRowsToTable(ClassAssignmentProxy classAssignment, ExamAssignmentProxy examAssignment, TableStream table, InstructionalOffering io, Long subjectAreaId, SessionContext context){
         CourseOffering co = io.findSortCourseOfferingForSubjectArea(subjectAreaId);
-        boolean isEditable = context.hasPermission(io, Right.InstructionalOfferingDetail);
+        boolean isEditable = hasPermission(context, io, io.getUniqueId(), Right.InstructionalOfferingDetail);
         TableRow row = (this.initRow(true));
         row.setOnMouseOver(this.getRowMouseOver(true, isEditable));
         row.setOnMouseOut(this.getRowMouseOut(true));
@@ -1952,6 +1960,31 @@ public class WebInstructionalOfferingTableBuilder {
         return(table);
     }
     
+    /**
+     * Check the permission for all the rows of a table at once, using {@link PermissionCheck#filterPermitted(UserContext, java.util.Collection, String, Right)}
+     * instead of loading and checking each target separately.
+     */
+    protected void checkPermissions(SessionContext context, Set<Long> targetIds, String targetType, Right right) {
+    	if (targetIds.isEmpty()) return;
+    	Set<Long> permitted = iPermittedIds.get(right);
+    	if (permitted == null) {
+    		permitted = new HashSet<Long>();
+    		iPermittedIds.put(right, permitted);
+    	}
+    	PermissionCheck permissionCheck = (PermissionCheck)SpringApplicationContextHolder.getBean("unitimePermissionCheck");
+    	permitted.addAll(permissionCheck.filterPermitted(context.getUser(), targetIds, targetType, right));
+    }
+    
+    /**
+     * Permission check of a table row, targets that have been checked by {@link #checkPermissions(SessionContext, Set, String, Right)}
+     * and denied are checked again (the decision is cached within the request).
+     */
+    protected boolean hasPermission(SessionContext context, Object target, Long targetId, Right right) {
+    	Set<Long> permitted = iPermittedIds.get(right);
+    	if (permitted != null && permitted.contains(targetId)) return true;
+    	return context.hasPermission(target, right);
+    }
+    
     protected TableStream initTable(JspWriter outputStream, Long sessionId){
     	ClassDurationType dtype = ClassDurationType.findDefaultType(sessionId, null);
     	return initTable(outputStream, sessionId, dtype == null ? MSG.columnMinPerWk() : dtype.getLabel());
@@ -2080,6 +2113,24 @@ public class WebInstructionalOfferingTableBuilder {
     	if (isShowExam())
     	    setShowExamTimetable(examAssignment!=null || Exam.hasTimetable(context.getUser().getCurrentAcademicSessionId()));
     	
+    	Set<Long> offeringIds = new HashSet<Long>(), subpartIds = new HashSet<Long>(), classIds = new HashSet<Long>();
+    	for (Iterator i=insructionalOfferings.iterator();i.hasNext();) {
+    		InstructionalOffering io = (InstructionalOffering)i.next();
+    		offeringIds.add(io.getUniqueId());
+    		for (Iterator j=io.getInstrOfferingConfigs().iterator();j.hasNext();) {
+    			InstrOfferingConfig ioc = (InstrOfferingConfig)j.next();
+    			for (Iterator k=ioc.getSchedulingSubparts().iterator();k.hasNext();) {
+    				SchedulingSubpart ss = (SchedulingSubpart)k.next();
+    				subpartIds.add(ss.getUniqueId());
+    				for (Iterator l=ss.getClasses().iterator();l.hasNext();)
+    					classIds.add(((Class_)l.next()).getUniqueId());
+    			}
+    		}
+    	}
+    	checkPermissions(context, offeringIds, "InstructionalOffering", Right.InstructionalOfferingDetail);
+    	checkPermissions(context, subpartIds, "SchedulingSubpart", Right.SchedulingSubpartDetail);
+    	checkPermissions(context, classIds, "Class_", Right.ClassDetail);
+    	
         ArrayList notOfferedOfferings = new ArrayList();
         ArrayList offeredOfferings = new ArrayList();
         
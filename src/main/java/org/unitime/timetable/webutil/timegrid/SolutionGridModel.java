@@ -82,10 +82,6 @@ public class SolutionGridModel extends TimetableGridModel {
     
 	public SolutionGridModel(String solutionIdsStr, Location room, org.hibernate.Session hibSession, TimetableGridContext context) {
 		super(sResourceTypeRoom, room.getUniqueId().intValue());
-		setName(room.getLabel());
-		setSize(room.getCapacity().intValue());
-		setFirstDay(context.getFirstDay());
-		iRoomId = room.getUniqueId();
 		Solution firstSolution = null;
 		String ownerIds = "";
 		HashSet deptIds = new HashSet();
@@ -104,14 +100,33 @@ public class SolutionGridModel extends TimetableGridModel {
 		Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.rooms as r where a.solution.uniqueId in ("+solutionIdsStr+") and r.uniqueId=:resourceId");
 		q.setLong("resourceId", room.getUniqueId());
 		q.setCacheable(true);
-		init(q.list(),hibSession,context);
+		List assignments = q.list();
 		
 		q = hibSession.createQuery("select distinct a from Room r inner join r.assignments as a "+
 		"where r.uniqueId=:roomId and a.solution.commited=true and a.solution.owner.session.uniqueId=:sessionId and a.solution.owner.uniqueId not in ("+ownerIds+")");
 		q.setLong("roomId",room.getUniqueId());
         q.setLong("sessionId", room.getSession().getUniqueId().longValue());
 		q.setCacheable(true);
-		List commitedAssignments = q.list();
+		init(room, assignments, q.list(), deptIds, hibSession, context);
+	}
+	
+	/**
+	 * Room model of already loaded assignments (see {@link SolutionGridModelLoader})
+	 * @param assignments assignments of the selected solutions using the room
+	 * @param commitedAssignments committed assignments of other solver groups using the room
+	 * @param deptIds departments of the owners of the selected solutions (for room sharing)
+	 */
+	public SolutionGridModel(Location room, List assignments, List commitedAssignments, Set deptIds, org.hibernate.Session hibSession, TimetableGridContext context) {
+		super(sResourceTypeRoom, room.getUniqueId().intValue());
+		init(room, assignments, commitedAssignments, deptIds, hibSession, context);
+	}
+	
+	private void init(Location room, List assignments, List commitedAssignments, Set deptIds, org.hibernate.Session hibSession, TimetableGridContext context) {
+		setName(room.getLabel());
+		setSize(room.getCapacity().intValue());
+		setFirstDay(context.getFirstDay());
+		iRoomId = room.getUniqueId();
+		init(assignments,hibSession,context);
 		for (Iterator x=commitedAssignments.iterator();x.hasNext();) {
 			Assignment a = (Assignment)x.next();
 			init(a,hibSession,context.getFirstDay(),sBgModeNotAvailable);
@@ -212,8 +227,6 @@ public class SolutionGridModel extends TimetableGridModel {
 	
 	public SolutionGridModel(String solutionIdsStr, DepartmentalInstructor instructor, org.hibernate.Session hibSession, TimetableGridContext context) {
 		super(sResourceTypeInstructor, instructor.getUniqueId().intValue());
-		setName(instructor.getLastName()+", "+instructor.getFirstName()+(instructor.getMiddleName()==null?"":" "+instructor.getMiddleName()));
-		setFirstDay(context.getFirstDay());
 		Solution firstSolution = null;
 		String ownerIds = "";
 		for (StringTokenizer s=new StringTokenizer(solutionIdsStr,",");s.hasMoreTokens();) {
@@ -224,7 +237,7 @@ public class SolutionGridModel extends TimetableGridModel {
 			if (ownerIds.length()>0) ownerIds += ",";
 			ownerIds += solution.getOwner().getUniqueId();
 		}
-		List commitedAssignments = null;
+		List assignments = null, commitedAssignments = null;
 		
 		if (ApplicationProperty.TimetableGridUseClassInstructors.isTrue()) {
 			String check = "";
@@ -236,7 +249,7 @@ public class SolutionGridModel extends TimetableGridModel {
 				Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.clazz.classInstructors as i where a.solution.uniqueId in (" + solutionIdsStr + ") and i.instructor.externalUniqueId = :extId" + check);
 				q.setString("extId", instructor.getExternalUniqueId());
 				q.setCacheable(true);
-				init(q.list(), hibSession, context);
+				assignments = q.list();
 				q = hibSession.createQuery("select distinct a from ClassInstructor i inner join i.classInstructing.assignments as a "+
 						"where i.instructor.externalUniqueId = :extId and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + ownerIds + ")" + check);
 				q.setString("extId",instructor.getExternalUniqueId());
@@ -247,7 +260,7 @@ public class SolutionGridModel extends TimetableGridModel {
 				Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.clazz.classInstructors as i where a.solution.uniqueId in (" + solutionIdsStr + ") and i.instructor.uniqueId = :instructorId" + check);
 				q.setLong("instructorId", instructor.getUniqueId());
 				q.setCacheable(true);
-				init(q.list(),hibSession,context);
+				assignments = q.list();
 				q = hibSession.createQuery("select distinct a from ClassInstructor i inner join i.classInstructing.assignments as a "+
 						"where i.instructor.uniqueId = :instructorId and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + ownerIds + ")" + check);
 				q.setLong("instructorId",instructor.getUniqueId());
@@ -260,7 +273,7 @@ public class SolutionGridModel extends TimetableGridModel {
 				Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.instructors as i where a.solution.uniqueId in ("+solutionIdsStr+") and i.externalUniqueId=:puid");
 				q.setString("puid", instructor.getExternalUniqueId());
 				q.setCacheable(true);
-				init(q.list(),hibSession,context);
+				assignments = q.list();
 				q = hibSession.createQuery("select distinct a from DepartmentalInstructor i inner join i.assignments as a "+
 						"where i.externalUniqueId=:puid and a.solution.commited=true and a.solution.owner.session.uniqueId=:sessionId and a.solution.owner.uniqueId not in ("+ownerIds+")");
 				q.setString("puid",instructor.getExternalUniqueId());
@@ -271,7 +284,7 @@ public class SolutionGridModel extends TimetableGridModel {
 				Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.instructors as i where a.solution.uniqueId in ("+solutionIdsStr+") and i.uniqueId=:resourceId");
 				q.setLong("resourceId", instructor.getUniqueId());
 				q.setCacheable(true);
-				init(q.list(),hibSession,context);
+				assignments = q.list();
 				q = hibSession.createQuery("select distinct a from DepartmentalInstructor i inner join i.assignments as a "+
 						"where i.uniqueId=:instructorId and a.solution.commited=true and a.solution.owner.session.uniqueId=:sessionId and a.solution.owner.uniqueId not in ("+ownerIds+")");
 				q.setLong("instructorId",instructor.getUniqueId());
@@ -280,7 +293,23 @@ public class SolutionGridModel extends TimetableGridModel {
 				commitedAssignments = q.list();
 			}
 		}
-		
+		init(instructor, assignments, commitedAssignments, hibSession, context);
+	}
+	
+	/**
+	 * Instructor model of already loaded assignments (see {@link SolutionGridModelLoader})
+	 * @param assignments assignments of the selected solutions taught by the instructor
+	 * @param commitedAssignments committed assignments of other solver groups taught by the instructor
+	 */
+	public SolutionGridModel(DepartmentalInstructor instructor, List assignments, List commitedAssignments, org.hibernate.Session hibSession, TimetableGridContext context) {
+		super(sResourceTypeInstructor, instructor.getUniqueId().intValue());
+		init(instructor, assignments, commitedAssignments, hibSession, context);
+	}
+	
+	private void init(DepartmentalInstructor instructor, List assignments, List commitedAssignments, org.hibernate.Session hibSession, TimetableGridContext context) {
+		setName(instructor.getLastName()+", "+instructor.getFirstName()+(instructor.getMiddleName()==null?"":" "+instructor.getMiddleName()));
+		setFirstDay(context.getFirstDay());
+		init(assignments,hibSession,context);
 		setUtilization(getUtilization() + countUtilization(context, commitedAssignments));
 		for (Iterator x=commitedAssignments.iterator();x.hasNext();) {
 			Assignment a = (Assignment)x.next();
@@ -385,30 +414,54 @@ public class SolutionGridModel extends TimetableGridModel {
 	
 	public SolutionGridModel(String solutionIdsStr, Department dept, org.hibernate.Session hibSession, TimetableGridContext context) {
 		super(sResourceTypeDepartment, dept.getUniqueId().longValue());
-		setName(dept.getShortLabel());
-		setFirstDay(context.getFirstDay());
 		Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings as o inner join o.subjectArea.department as d where " +
 				"a.solution.uniqueId in ("+solutionIdsStr+") and d.uniqueId=:resourceId and " +
 				"o.isControl=true");
 		q.setCacheable(true);
 		q.setLong("resourceId", dept.getUniqueId().longValue());
-		List a = q.list();
-		setSize(a.size());
-		init(a,hibSession,context);
+		init(dept, q.list(), hibSession, context);
+	}
+	
+	/**
+	 * Department model of already loaded assignments (see {@link SolutionGridModelLoader})
+	 * @param assignments assignments of the selected solutions of the classes controlled by the department
+	 */
+	public SolutionGridModel(Department dept, List assignments, org.hibernate.Session hibSession, TimetableGridContext context) {
+		super(sResourceTypeDepartment, dept.getUniqueId().longValue());
+		init(dept, assignments, hibSession, context);
+	}
+	
+	private void init(Department dept, List assignments, org.hibernate.Session hibSession, TimetableGridContext context) {
+		setName(dept.getShortLabel());
+		setFirstDay(context.getFirstDay());
+		setSize(assignments.size());
+		init(assignments,hibSession,context);
 	}
 	
 	public SolutionGridModel(String solutionIdsStr, SubjectArea sa, org.hibernate.Session hibSession, TimetableGridContext context) {
 		super(sResourceTypeSubjectArea, sa.getUniqueId().longValue());
-		setName(sa.getSubjectAreaAbbreviation());
-		setFirstDay(context.getFirstDay());
 		Query q = hibSession.createQuery("select distinct a from Assignment as a inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings as o inner join o.subjectArea as sa where " +
 				"a.solution.uniqueId in ("+solutionIdsStr+") and sa.uniqueId=:resourceId and " +
 				"o.isControl=true");
 		q.setCacheable(true);
 		q.setLong("resourceId", sa.getUniqueId().longValue());
-		List a = q.list();
-		setSize(a.size());
-		init(a,hibSession,context);
+		init(sa, q.list(), hibSession, context);
+	}
+	
+	/**
+	 * Subject area model of already loaded assignments (see {@link SolutionGridModelLoader})
+	 * @param assignments assignments of the selected solutions of the classes controlled by the subject area
+	 */
+	public SolutionGridModel(SubjectArea sa, List assignments, org.hibernate.Session hibSession, TimetableGridContext context) {
+		super(sResourceTypeSubjectArea, sa.getUniqueId().longValue());
+		init(sa, assignments, hibSession, context);
+	}
+	
+	private void init(SubjectArea sa, List assignments, org.hibernate.Session hibSession, TimetableGridContext context) {
+		setName(sa.getSubjectAreaAbbreviation());
+		setFirstDay(context.getFirstDay());
+		setSize(assignments.size());
+		init(assignments,hibSession,context);
 	}
 	
 	public SolutionGridModel(String solutionIdsStr, CurriculumClassification cc, org.hibernate.Session hibSession, TimetableGridContext context) {
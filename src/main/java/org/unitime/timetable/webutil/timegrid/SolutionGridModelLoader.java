@@ -0,0 +1,228 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.webutil.timegrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import org.hibernate.Query;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Department;
+import org.unitime.timetable.model.DepartmentalInstructor;
+import org.unitime.timetable.model.Location;
+import org.unitime.timetable.model.Solution;
+import org.unitime.timetable.model.SubjectArea;
+import org.unitime.timetable.model.dao.SolutionDAO;
+
+/**
+ * Creates {@link SolutionGridModel} of many resources at once. Instead of running a query (or two) for
+ * each resource, the assignments of all the given resources are loaded by a few set-based queries
+ * (returning pairs of a resource id and an assignment, in batches of {@link #sBatchSize} resources).
+ * The models are then created from the loaded assignments.
+ * 
+ * @author Tomas Muller
+ */
+public class SolutionGridModelLoader {
+	public static int sBatchSize = 1000;
+	private org.hibernate.Session iHibSession;
+	private TimetableGridContext iContext;
+	private String iSolutionIds;
+	private String iOwnerIds = "";
+	private Set<Long> iDeptIds = new HashSet<Long>();
+	private Long iSessionId = null;
+	
+	public SolutionGridModelLoader(String solutionIdsStr, org.hibernate.Session hibSession, TimetableGridContext context) {
+		iSolutionIds = solutionIdsStr;
+		iHibSession = hibSession;
+		iContext = context;
+		for (StringTokenizer s = new StringTokenizer(solutionIdsStr, ","); s.hasMoreTokens(); ) {
+			Solution solution = SolutionDAO.getInstance().get(Long.valueOf(s.nextToken()), hibSession);
+			if (solution == null) continue;
+			if (iSessionId == null) iSessionId = solution.getOwner().getSession().getUniqueId();
+			if (!iOwnerIds.isEmpty()) iOwnerIds += ",";
+			iOwnerIds += solution.getOwner().getUniqueId();
+			for (Department d: solution.getOwner().getDepartments())
+				iDeptIds.add(d.getUniqueId());
+		}
+	}
+	
+	/**
+	 * Run the given query for all the given resource ids (parameter resourceIds), in batches of {@link #sBatchSize}.
+	 * The query must return pairs of a resource id and an assignment.
+	 * @return assignments grouped by resource id
+	 */
+	protected Map<Object, List> load(String query, Collection ids, boolean session) {
+		Map<Object, List> ret = new HashMap<Object, List>();
+		if (ids.isEmpty()) return ret;
+		List batch = new ArrayList(Math.min(sBatchSize, ids.size()));
+		for (Iterator i = ids.iterator(); i.hasNext(); ) {
+			batch.add(i.next());
+			if (batch.size() == sBatchSize || !i.hasNext()) {
+				Query q = iHibSession.createQuery(query);
+				q.setParameterList("resourceIds", batch);
+				if (session) q.setLong("sessionId", iSessionId);
+				q.setCacheable(true);
+				for (Object[] o: (List<Object[]>)q.list()) {
+					List assignments = ret.get(o[0]);
+					if (assignments == null) {
+						assignments = new ArrayList();
+						ret.put(o[0], assignments);
+					}
+					assignments.add(o[1]);
+				}
+				batch.clear();
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Committed assignments of other solver groups using the given resources, empty when there are no other solver groups
+	 */
+	protected Map<Object, List> loadCommitted(String query, Collection ids) {
+		if (iSessionId == null || iOwnerIds.isEmpty()) return new HashMap<Object, List>();
+		return load(query, ids, true);
+	}
+	
+	private static List get(Map<Object, List> assignments, Object id) {
+		List ret = assignments.get(id);
+		return (ret == null ? new ArrayList() : ret);
+	}
+	
+	/**
+	 * Room models, in the same order as the given rooms
+	 */
+	public List<SolutionGridModel> createRoomModels(Collection<Location> rooms) {
+		List<Long> roomIds = new ArrayList<Long>(rooms.size());
+		for (Location room: rooms)
+			roomIds.add(room.getUniqueId());
+		Map<Object, List> assignments = load(
+				"select distinct r.uniqueId, a from Assignment as a inner join a.rooms as r where a.solution.uniqueId in (" + iSolutionIds + ") and r.uniqueId in (:resourceIds)",
+				roomIds, false);
+		Map<Object, List> commitedAssignments = loadCommitted(
+				"select distinct r.uniqueId, a from Room r inner join r.assignments as a " +
+				"where r.uniqueId in (:resourceIds) and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + iOwnerIds + ")",
+				roomIds);
+		List<SolutionGridModel> models = new ArrayList<SolutionGridModel>(rooms.size());
+		for (Location room: rooms)
+			models.add(new SolutionGridModel(room, get(assignments, room.getUniqueId()), get(commitedAssignments, room.getUniqueId()), iDeptIds, iHibSession, iContext));
+		return models;
+	}
+	
+	/**
+	 * Instructor models, in the same order as the given instructors.
+	 * Instructors with an external id are matched by the external id, other instructors by their unique id.
+	 */
+	public List<SolutionGridModel> createInstructorModels(Collection<DepartmentalInstructor> instructors) {
+		List<String> externalIds = new ArrayList<String>();
+		List<Long> instructorIds = new ArrayList<Long>();
+		for (DepartmentalInstructor instructor: instructors) {
+			if (instructor.getExternalUniqueId() != null && !instructor.getExternalUniqueId().isEmpty())
+				externalIds.add(instructor.getExternalUniqueId());
+			else
+				instructorIds.add(instructor.getUniqueId());
+		}
+		Map<Object, List> assignments = new HashMap<Object, List>();
+		Map<Object, List> commitedAssignments = new HashMap<Object, List>();
+		if (ApplicationProperty.TimetableGridUseClassInstructors.isTrue()) {
+			String check = "";
+			if (ApplicationProperty.TimetableGridUseClassInstructorsCheckLead.isTrue())
+				check += " and i.lead = true";
+			if (ApplicationProperty.TimetableGridUseClassInstructorsCheckClassDisplayInstructors.isTrue())
+				check += " and i.classInstructing.displayInstructor = true";
+			assignments.putAll(load(
+					"select distinct i.instructor.externalUniqueId, a from Assignment as a inner join a.clazz.classInstructors as i where a.solution.uniqueId in (" + iSolutionIds + ") and i.instructor.externalUniqueId in (:resourceIds)" + check,
+					externalIds, false));
+			assignments.putAll(load(
+					"select distinct i.instructor.uniqueId, a from Assignment as a inner join a.clazz.classInstructors as i where a.solution.uniqueId in (" + iSolutionIds + ") and i.instructor.uniqueId in (:resourceIds)" + check,
+					instructorIds, false));
+			commitedAssignments.putAll(loadCommitted(
+					"select distinct i.instructor.externalUniqueId, a from ClassInstructor i inner join i.classInstructing.assignments as a " +
+					"where i.instructor.externalUniqueId in (:resourceIds) and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + iOwnerIds + ")" + check,
+					externalIds));
+			commitedAssignments.putAll(loadCommitted(
+					"select distinct i.instructor.uniqueId, a from ClassInstructor i inner join i.classInstructing.assignments as a " +
+					"where i.instructor.uniqueId in (:resourceIds) and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + iOwnerIds + ")" + check,
+					instructorIds));
+		} else {
+			assignments.putAll(load(
+					"select distinct i.externalUniqueId, a from Assignment as a inner join a.instructors as i where a.solution.uniqueId in (" + iSolutionIds + ") and i.externalUniqueId in (:resourceIds)",
+					externalIds, false));
+			assignments.putAll(load(
+					"select distinct i.uniqueId, a from Assignment as a inner join a.instructors as i where a.solution.uniqueId in (" + iSolutionIds + ") and i.uniqueId in (:resourceIds)",
+					instructorIds, false));
+			commitedAssignments.putAll(loadCommitted(
+					"select distinct i.externalUniqueId, a from DepartmentalInstructor i inner join i.assignments as a " +
+					"where i.externalUniqueId in (:resourceIds) and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + iOwnerIds + ")",
+					externalIds));
+			commitedAssignments.putAll(loadCommitted(
+					"select distinct i.uniqueId, a from DepartmentalInstructor i inner join i.assignments as a " +
+					"where i.uniqueId in (:resourceIds) and a.solution.commited = true and a.solution.owner.session.uniqueId = :sessionId and a.solution.owner.uniqueId not in (" + iOwnerIds + ")",
+					instructorIds));
+		}
+		List<SolutionGridModel> models = new ArrayList<SolutionGridModel>(instructors.size());
+		for (DepartmentalInstructor instructor: instructors) {
+			Object id = (instructor.getExternalUniqueId() != null && !instructor.getExternalUniqueId().isEmpty() ? instructor.getExternalUniqueId() : instructor.getUniqueId());
+			models.add(new SolutionGridModel(instructor, get(assignments, id), get(commitedAssignments, id), iHibSession, iContext));
+		}
+		return models;
+	}
+	
+	/**
+	 * Department models, in the same order as the given departments
+	 */
+	public List<SolutionGridModel> createDepartmentModels(Collection<Department> departments) {
+		List<Long> deptIds = new ArrayList<Long>(departments.size());
+		for (Department dept: departments)
+			deptIds.add(dept.getUniqueId());
+		Map<Object, List> assignments = load(
+				"select distinct d.uniqueId, a from Assignment as a inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings as o inner join o.subjectArea.department as d where " +
+				"a.solution.uniqueId in (" + iSolutionIds + ") and d.uniqueId in (:resourceIds) and o.isControl = true",
+				deptIds, false);
+		List<SolutionGridModel> models = new ArrayList<SolutionGridModel>(departments.size());
+		for (Department dept: departments)
+			models.add(new SolutionGridModel(dept, get(assignments, dept.getUniqueId()), iHibSession, iContext));
+		return models;
+	}
+	
+	/**
+	 * Subject area models, in the same order as the given subject areas
+	 */
+	public List<SolutionGridModel> createSubjectAreaModels(Collection<SubjectArea> subjectAreas) {
+		List<Long> subjectIds = new ArrayList<Long>(subjectAreas.size());
+		for (SubjectArea sa: subjectAreas)
+			subjectIds.add(sa.getUniqueId());
+		Map<Object, List> assignments = load(
+				"select distinct sa.uniqueId, a from Assignment as a inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings as o inner join o.subjectArea as sa where " +
+				"a.solution.uniqueId in (" + iSolutionIds + ") and sa.uniqueId in (:resourceIds) and o.isControl = true",
+				subjectIds, false);
+		List<SolutionGridModel> models = new ArrayList<SolutionGridModel>(subjectAreas.size());
+		for (SubjectArea sa: subjectAreas)
+			models.add(new SolutionGridModel(sa, get(assignments, sa.getUniqueId()), iHibSession, iContext));
+		return models;
+	}
+}
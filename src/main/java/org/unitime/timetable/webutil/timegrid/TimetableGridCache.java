@@ -0,0 +1,150 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.webutil.timegrid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.unitime.commons.Debug;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Cache of timetable grid models computed from saved solutions (see {@link TimetableGridTable#reload}).<br>
+ * The models are kept in a serialized form: the models are changed while being printed, so each
+ * {@link #get(String, String)} returns a fresh copy. An entry is valid until the solutions change
+ * (the given version differs, see {@link #getVersion(org.hibernate.Session, Long)}), or its time
+ * to live ({@link ApplicationProperty#TimetableGridCacheTimeToLive}) is reached. At most
+ * {@link ApplicationProperty#TimetableGridCacheSize} least recently used entries are kept.
+ * 
+ * @author Tomas Muller
+ */
+public class TimetableGridCache {
+	private static Map<String, Entry> sCache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > ApplicationProperty.TimetableGridCacheSize.intValue();
+		}
+	};
+	
+	public static boolean isEnabled() {
+		return ApplicationProperty.TimetableGridCacheTimeToLive.intValue() > 0;
+	}
+	
+	/**
+	 * Version of the saved solutions of an academic session: it changes whenever a solution is created, deleted,
+	 * (un)committed, or its assignments are changed.
+	 */
+	public static String getVersion(org.hibernate.Session hibSession, Long sessionId) {
+		StringBuffer version = new StringBuffer();
+		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+				"select s.uniqueId, s.commited, s.commitDate, count(a), max(a.uniqueId) from Solution s left outer join s.assignments a " +
+				"where s.owner.session.uniqueId = :sessionId group by s.uniqueId, s.commited, s.commitDate order by s.uniqueId")
+				.setLong("sessionId", sessionId).list()) {
+			if (version.length() > 0) version.append(";");
+			version.append(o[0] + ":" + o[1] + ":" + (o[2] == null ? "" : ((Date)o[2]).getTime()) + ":" + o[3] + ":" + o[4]);
+		}
+		return version.toString();
+	}
+	
+	/**
+	 * Cached models
+	 * @param key cache key (selected solutions, resource type, week, and other display options)
+	 * @param version current version of the solutions
+	 * @return a copy of the cached models, null if not cached (or the cached models are outdated)
+	 */
+	public static Vector<TimetableGridModel> get(String key, String version) {
+		Entry entry = null;
+		synchronized (sCache) {
+			entry = sCache.get(key);
+			if (entry != null && !entry.isValid(version)) {
+				sCache.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) return null;
+		try {
+			return entry.getModels();
+		} catch (Exception e) {
+			Debug.error("Failed to read cached timetable grid: " + e.getMessage(), e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Put models into the cache
+	 * @param key cache key (selected solutions, resource type, week, and other display options)
+	 * @param version current version of the solutions
+	 * @param models models to cache (a copy is made)
+	 */
+	public static void put(String key, String version, Vector<TimetableGridModel> models) {
+		try {
+			Entry entry = new Entry(version, models);
+			synchronized (sCache) {
+				sCache.put(key, entry);
+			}
+		} catch (IOException e) {
+			Debug.error("Failed to cache timetable grid: " + e.getMessage(), e);
+		}
+	}
+	
+	public static void clear() {
+		synchronized (sCache) {
+			sCache.clear();
+		}
+	}
+	
+	private static class Entry {
+		private String iVersion;
+		private long iCreated;
+		private byte[] iData;
+		
+		private Entry(String version, Vector<TimetableGridModel> models) throws IOException {
+			iVersion = version;
+			iCreated = System.currentTimeMillis();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(models);
+			out.flush(); out.close();
+			iData = bytes.toByteArray();
+		}
+		
+		private boolean isValid(String version) {
+			return iVersion.equals(version) && System.currentTimeMillis() - iCreated < 1000l * ApplicationProperty.TimetableGridCacheTimeToLive.intValue();
+		}
+		
+		private Vector<TimetableGridModel> getModels() throws IOException, ClassNotFoundException {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(iData));
+			try {
+				return (Vector<TimetableGridModel>)in.readObject();
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@
 package org.unitime.timetable.webutil.timegrid;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
@@ -27,6 +28,7 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -908,20 +910,26 @@ public class TimetableGridTable {
 			if (hibSession.getTransaction()==null || !hibSession.getTransaction().isActive())
 				tx = hibSession.beginTransaction();
 			
+			String cacheKey = null, cacheVersion = null;
+			if (!getShowEvents() && TimetableGridCache.isEnabled()) {
+				cacheKey = getCacheKey(solutionIdsStr, cx, UserProperty.NameFormat.get(context.getUser()));
+				cacheVersion = TimetableGridCache.getVersion(hibSession, acadSession.getUniqueId());
+				Vector<TimetableGridModel> cached = TimetableGridCache.get(cacheKey, cacheVersion);
+				if (cached != null) {
+					if (tx!=null) tx.commit();
+					// same room availability activation and warning as when the models are created
+					if (getResourceType()==TimetableGridModel.sResourceTypeRoom && RoomAvailability.getInstance() != null)
+						activateRoomAvailability(request, acadSession);
+					iModels = cached;
+					Collections.sort(iModels,new TimetableGridModelComparator());
+					showUselessTimesIfDesired();
+					return true;
+				}
+			}
+			
 			if (getResourceType()==TimetableGridModel.sResourceTypeRoom) {
 				if (RoomAvailability.getInstance() != null) {
-			        Calendar startDateCal = Calendar.getInstance(Locale.US);
-			        startDateCal.setTime(DateUtils.getDate(1, acadSession.getStartMonth(), acadSession.getSessionStartYear()));
-			        startDateCal.set(Calendar.HOUR_OF_DAY, 0);
-			        startDateCal.set(Calendar.MINUTE, 0);
-			        startDateCal.set(Calendar.SECOND, 0);
-			        Calendar endDateCal = Calendar.getInstance(Locale.US);
-			        endDateCal.setTime(DateUtils.getDate(0, acadSession.getEndMonth() + 1, acadSession.getSessionStartYear()));
-			        endDateCal.set(Calendar.HOUR_OF_DAY, 23);
-			        endDateCal.set(Calendar.MINUTE, 59);
-			        endDateCal.set(Calendar.SECOND, 59);
-			        RoomAvailability.getInstance().activate(acadSession, startDateCal.getTime(), endDateCal.getTime(), RoomAvailabilityInterface.sClassType, false);
-		            RoomAvailability.setAvailabilityWarning(request, acadSession, true, true);
+					activateRoomAvailability(request, acadSession);
 				}
 				
 				Query q = hibSession.createQuery(
@@ -929,25 +937,16 @@ public class TimetableGridTable {
 						"Location as r inner join r.assignments as a where "+
 						"a.solution.uniqueId in ("+solutionIdsStr+")");
 				q.setCacheable(true);
+				List<Location> rooms = new ArrayList<Location>();
 				for (Iterator i=q.list().iterator();i.hasNext();) {
 					Location room = (Location)i.next();
 					if (!match(room)) continue;
-					iModels.add(new SolutionGridModel(solutionIdsStr, room, hibSession, cx));
+					rooms.add(room);
 				}
+				iModels.addAll(new SolutionGridModelLoader(solutionIdsStr, hibSession, cx).createRoomModels(rooms));
 			} else if (getResourceType()==TimetableGridModel.sResourceTypeInstructor) {
 				if (RoomAvailability.getInstance() != null && getShowEvents()) {
-			        Calendar startDateCal = Calendar.getInstance(Locale.US);
-			        startDateCal.setTime(DateUtils.getDate(1, acadSession.getStartMonth(), acadSession.getSessionStartYear()));
-			        startDateCal.set(Calendar.HOUR_OF_DAY, 0);
-			        startDateCal.set(Calendar.MINUTE, 0);
-			        startDateCal.set(Calendar.SECOND, 0);
-			        Calendar endDateCal = Calendar.getInstance(Locale.US);
-			        endDateCal.setTime(DateUtils.getDate(0, acadSession.getEndMonth() + 1, acadSession.getSessionStartYear()));
-			        endDateCal.set(Calendar.HOUR_OF_DAY, 23);
-			        endDateCal.set(Calendar.MINUTE, 59);
-			        endDateCal.set(Calendar.SECOND, 59);
-			        RoomAvailability.getInstance().activate(acadSession, startDateCal.getTime(), endDateCal.getTime(), RoomAvailabilityInterface.sClassType, false);
-		            RoomAvailability.setAvailabilityWarning(request, acadSession, true, true);
+					activateRoomAvailability(request, acadSession);
 				}
                 String instructorNameFormat = UserProperty.NameFormat.get(context.getUser());
 				Query q = null;
@@ -964,15 +963,19 @@ public class TimetableGridTable {
 				}
 				q.setCacheable(true);
 				HashSet puids = new HashSet();
+				List<DepartmentalInstructor> instructors = new ArrayList<DepartmentalInstructor>();
 				for (Iterator i=q.list().iterator();i.hasNext();) {
 					DepartmentalInstructor instructor = (DepartmentalInstructor)i.next();
 					String name = (instructor.getLastName()+", "+instructor.getFirstName()+" "+instructor.getMiddleName()).trim();
 					if (!match(name)) continue;
-					if (instructor.getExternalUniqueId()==null || instructor.getExternalUniqueId().length()<=0 || puids.add(instructor.getExternalUniqueId())) {
-                        SolutionGridModel m = new SolutionGridModel(solutionIdsStr, instructor, hibSession, cx);
-                        m.setName(instructor.getName(instructorNameFormat));
-						iModels.add(m);
-                    }
+					if (instructor.getExternalUniqueId()==null || instructor.getExternalUniqueId().length()<=0 || puids.add(instructor.getExternalUniqueId()))
+						instructors.add(instructor);
+				}
+				List<SolutionGridModel> models = new SolutionGridModelLoader(solutionIdsStr, hibSession, cx).createInstructorModels(instructors);
+				for (int i = 0; i < instructors.size(); i++) {
+					SolutionGridModel m = models.get(i);
+					m.setName(instructors.get(i).getName(instructorNameFormat));
+					iModels.add(m);
 				}
 			} else if (getResourceType()==TimetableGridModel.sResourceTypeDepartment) {
 				Query q = hibSession.createQuery(
@@ -980,24 +983,28 @@ public class TimetableGridTable {
 						"Assignment a inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings as o inner join o.subjectArea.department as d where "+
 						"a.solution.uniqueId in ("+solutionIdsStr+") and o.isControl=true");
 				q.setCacheable(true);
+				List<Department> departments = new ArrayList<Department>();
 				for (Iterator i=q.list().iterator();i.hasNext();) {
 					Department dept = (Department)i.next();
 					String name = dept.getAbbreviation();
 					if (!match(name)) continue;
-					iModels.add(new SolutionGridModel(solutionIdsStr, dept, hibSession, cx));
+					departments.add(dept);
 				}
+				iModels.addAll(new SolutionGridModelLoader(solutionIdsStr, hibSession, cx).createDepartmentModels(departments));
 			} else if (getResourceType()==TimetableGridModel.sResourceTypeSubjectArea) {
 				Query q = hibSession.createQuery(
 						"select distinct sa from "+
 						"Assignment a inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings as o inner join o.subjectArea as sa where "+
 						"a.solution.uniqueId in ("+solutionIdsStr+") and o.isControl=true");
 				q.setCacheable(true);
+				List<SubjectArea> subjectAreas = new ArrayList<SubjectArea>();
 				for (Iterator i=q.list().iterator();i.hasNext();) {
 					SubjectArea sa = (SubjectArea)i.next();
 					String name = sa.getSubjectAreaAbbreviation();
 					if (!match(name)) continue;
-					iModels.add(new SolutionGridModel(solutionIdsStr, sa, hibSession, cx));
+					subjectAreas.add(sa);
 				}
+				iModels.addAll(new SolutionGridModelLoader(solutionIdsStr, hibSession, cx).createSubjectAreaModels(subjectAreas));
 			} else if (getResourceType()==TimetableGridModel.sResourceTypeCurriculum) {
 				Query q = hibSession.createQuery(
 						"select distinct cc.classification from "+
@@ -1033,6 +1040,8 @@ public class TimetableGridTable {
 					}					
 				}
 			}
+			if (cacheKey != null)
+				TimetableGridCache.put(cacheKey, cacheVersion, iModels);
 			if (tx!=null) tx.commit();
 		} catch (Exception e) {
 			if (tx!=null) tx.rollback();
@@ -1044,6 +1053,33 @@ public class TimetableGridTable {
 		return true;
 	}
 		
+	/**
+	 * Make sure the room availability is loaded for the whole academic session, set the availability warning
+	 */
+	protected void activateRoomAvailability(HttpServletRequest request, Session acadSession) {
+        Calendar startDateCal = Calendar.getInstance(Locale.US);
+        startDateCal.setTime(DateUtils.getDate(1, acadSession.getStartMonth(), acadSession.getSessionStartYear()));
+        startDateCal.set(Calendar.HOUR_OF_DAY, 0);
+        startDateCal.set(Calendar.MINUTE, 0);
+        startDateCal.set(Calendar.SECOND, 0);
+        Calendar endDateCal = Calendar.getInstance(Locale.US);
+        endDateCal.setTime(DateUtils.getDate(0, acadSession.getEndMonth() + 1, acadSession.getSessionStartYear()));
+        endDateCal.set(Calendar.HOUR_OF_DAY, 23);
+        endDateCal.set(Calendar.MINUTE, 59);
+        endDateCal.set(Calendar.SECOND, 59);
+        RoomAvailability.getInstance().activate(acadSession, startDateCal.getTime(), endDateCal.getTime(), RoomAvailabilityInterface.sClassType, false);
+        RoomAvailability.setAvailabilityWarning(request, acadSession, true, true);
+	}
+	
+	/**
+	 * Timetable grid cache key: selected solutions, resource type, filter, week, and the display options that are used when the models are created
+	 */
+	protected String getCacheKey(String solutionIdsStr, TimetableGridContext cx, String instructorNameFormat) {
+		return solutionIdsStr + "|" + cx.getResourceType() + "|" + cx.getFilter() + "|" + cx.getFirstDay() + "|" + cx.getBgMode() + "|" +
+				cx.getDayCode() + "|" + cx.getFirstSlot() + "|" + cx.getLastSlot() + "|" + cx.getSlotsPerWeek() + "|" + cx.getNumberOfWeeks() +
+				(cx.getResourceType() == TimetableGridModel.sResourceTypeInstructor ? "|" + instructorNameFormat : "");
+	}
+	
 	public class TimetableGridModelComparator implements Comparator<TimetableGridModel> {
 		public int compareModels(TimetableGridModel m1, TimetableGridModel m2) {
 			switch (getOrderBy()) {